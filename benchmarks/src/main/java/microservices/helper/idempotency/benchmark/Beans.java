@@ -0,0 +1,179 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.util.ReflectionUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import microservices.helper.idempotency.audit.IdempotentOperationAuditWriter;
+import microservices.helper.idempotency.cache.CompletedKeyFilter;
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.OffHeapResultCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.completion.CompletionWaiterRegistry;
+import microservices.helper.idempotency.concurrency.AdaptiveConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.InFlightKeyTable;
+import microservices.helper.idempotency.config.IdempotencyServiceConfig;
+import microservices.helper.idempotency.enums.AuditBackpressure;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.repository.FailedIdempotentOperationResultRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationConfigRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationConfigRepositoryCustomImpl;
+import microservices.helper.idempotency.repository.IdempotentOperationLockRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationLockTempRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationLockTempRepositoryCustomImpl;
+import microservices.helper.idempotency.repository.IdempotentOperationRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationStateRepository;
+import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.repository.UnorderedInsertRepositoryImpl;
+import microservices.helper.idempotency.service.IdempotencyServiceImpl;
+import microservices.helper.idempotency.service.LockExpiryScheduler;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import microservices.helper.idempotency.store.InMemoryIdempotencyStore;
+import microservices.helper.idempotency.store.MongoIdempotencyStore;
+import microservices.helper.idempotency.store.log.LogIdempotencyStore;
+import microservices.helper.idempotency.tuning.LockDurationLearner;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+/**
+ * Wires the service beans by hand, without a Spring context, using the
+ * defaults from application.yml. Field-injected @Value settings and
+ * @PostConstruct methods are applied reflectively, as the container would.
+ */
+final class Beans {
+
+    private Beans() {
+    }
+
+    // The configs are kept by the in-memory storage engine, which only grows with them
+    static IdempotentOperationConfigCache operationConfigCache(List<IdempotentOperationConfig> operationConfigs) {
+        InMemoryIdempotencyStore idempotencyStore = new InMemoryIdempotencyStore();
+        operationConfigs.forEach(idempotencyStore::insertConfig);
+        IdempotentOperationConfigCache idempotentOperationConfigCache = new IdempotentOperationConfigCache(idempotencyStore);
+        setField(idempotentOperationConfigCache, "lockDuration", Duration.ofMinutes(1));
+        setField(idempotentOperationConfigCache, "resultCacheDuration", Duration.ofMinutes(10));
+        setField(idempotentOperationConfigCache, "retentionDuration", Duration.ofDays(30));
+        invoke(idempotentOperationConfigCache, "loadCache");
+        return idempotentOperationConfigCache;
+    }
+
+    static StoredIdempotentOperationResultCache resultCache(IdempotentOperationConfigCache idempotentOperationConfigCache, long maximumEntryBytes) {
+        return new StoredIdempotentOperationResultCache(idempotentOperationConfigCache, true, 64L * 1024 * 1024, maximumEntryBytes);
+    }
+
+    static OffHeapResultCache offHeapResultCache(IdempotentOperationConfigCache idempotentOperationConfigCache, boolean enabled) {
+        return new OffHeapResultCache(idempotentOperationConfigCache, new IdempotencyServiceConfig().objectMapper(), enabled,
+                256L * 1024 * 1024, 8 * 1024 * 1024, 65536);
+    }
+
+    static IdempotencyServiceImpl idempotencyService(IdempotentOperationConfigCache idempotentOperationConfigCache,
+                                                     StoredIdempotentOperationResultCache storedIdempotentOperationResultCache,
+                                                     StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository) {
+        return idempotencyService(idempotentOperationConfigCache, storedIdempotentOperationResultCache,
+                offHeapResultCache(idempotentOperationConfigCache, false), storedIdempotentOperationResultRepository);
+    }
+
+    // No MongoDB behind the repositories, and expiry tasks are dropped instead of piling up in the timer queue
+    static IdempotencyServiceImpl idempotencyService(IdempotentOperationConfigCache idempotentOperationConfigCache,
+                                                     StoredIdempotentOperationResultCache storedIdempotentOperationResultCache,
+                                                     OffHeapResultCache offHeapResultCache,
+                                                     StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository) {
+        // The no-op repositories keep nothing, every request writes an audit record that a storing engine would accumulate
+        IdempotencyStore idempotencyStore = new MongoIdempotencyStore(NoOpRepositories.create(IdempotentOperationRepository.class),
+                NoOpRepositories.create(IdempotentOperationLockRepository.class),
+                storedIdempotentOperationResultRepository,
+                NoOpRepositories.create(IdempotentOperationLockTempRepository.class),
+                NoOpRepositories.create(FailedIdempotentOperationResultRepository.class),
+                NoOpRepositories.create(IdempotentOperationConfigRepository.class),
+                null);
+        IdempotentOperationAuditWriter idempotentOperationAuditWriter = new IdempotentOperationAuditWriter(idempotencyStore,
+                false, 10000, 500, Duration.ofMillis(100), AuditBackpressure.SYNC, Duration.ofSeconds(10));
+        LockExpiryScheduler lockExpiryScheduler = new LockExpiryScheduler(false) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable task, Instant expiredAt) {
+                return null;
+            }
+
+            @Override
+            public void schedule(String lockId, Runnable task, Instant expiredAt) {
+            }
+        };
+        // Meters are recorded into an in-memory registry, as they would be into the Prometheus one
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        IdempotencyMetrics idempotencyMetrics = new IdempotencyMetrics(meterRegistry, lockExpiryScheduler, idempotencyStore,
+                NoOpRepositories.create(IdempotentOperationStateRepository.class), "collections", 200, Duration.ofSeconds(10));
+        return new IdempotencyServiceImpl(idempotencyStore,
+                idempotentOperationConfigCache,
+                storedIdempotentOperationResultCache,
+                offHeapResultCache,
+                new CompletionWaiterRegistry(meterRegistry, 10000),
+                new InFlightKeyTable(meterRegistry, true, 64, Duration.ofSeconds(2)),
+                new CompletedKeyFilter(null, meterRegistry, false, 16L * 1024 * 1024, 0.01),
+                idempotentOperationAuditWriter,
+                lockExpiryScheduler,
+                idempotencyKeyHasher(),
+                idempotencyMetrics,
+                new LockDurationLearner(idempotencyStore, idempotentOperationConfigCache, false, false, 0.99, 2.0,
+                        Duration.ofSeconds(5), Duration.ofMinutes(30), 100, 1000),
+                new AdaptiveConcurrencyLimiter(meterRegistry, false, "mongo", 20, 5, 200, 1.5, 0.2, 0.8,
+                        Duration.ofMillis(100), Duration.ofSeconds(1)));
+    }
+
+    // The log engine with the defaults from application.yml
+    static LogIdempotencyStore logIdempotencyStore(Path directory) {
+        return new LogIdempotencyStore(new IdempotencyServiceConfig().objectMapper(), new SimpleMeterRegistry(),
+                directory.toString(), 64L * 1024 * 1024, 1 << 20, 0.5);
+    }
+
+    // Repositories over a real MongoDB, with the unique lock index the application creates from the entity annotations
+    static MongoIdempotencyStore mongoIdempotencyStore(MongoTemplate mongoTemplate) {
+        mongoTemplate.indexOps(IdempotentOperationLockTemp.class).createIndex(new Index()
+                .on("service", Sort.Direction.ASC)
+                .on("operation", Sort.Direction.ASC)
+                .on("idempotencyKey", Sort.Direction.ASC)
+                .unique());
+        MongoRepositoryFactory repositoryFactory = new MongoRepositoryFactory(mongoTemplate);
+        RepositoryFragments unorderedInsert = RepositoryFragments.just(new UnorderedInsertRepositoryImpl<>(mongoTemplate));
+        return new MongoIdempotencyStore(repositoryFactory.getRepository(IdempotentOperationRepository.class, unorderedInsert),
+                repositoryFactory.getRepository(IdempotentOperationLockRepository.class, unorderedInsert),
+                repositoryFactory.getRepository(StoredIdempotentOperationResultRepository.class, unorderedInsert),
+                repositoryFactory.getRepository(IdempotentOperationLockTempRepository.class,
+                        unorderedInsert.append(RepositoryFragments.just(new IdempotentOperationLockTempRepositoryCustomImpl(mongoTemplate)))),
+                repositoryFactory.getRepository(FailedIdempotentOperationResultRepository.class, unorderedInsert),
+                repositoryFactory.getRepository(IdempotentOperationConfigRepository.class,
+                        RepositoryFragments.just(new IdempotentOperationConfigRepositoryCustomImpl(mongoTemplate))),
+                null);
+    }
+
+    static IdempotencyKeyHasher idempotencyKeyHasher() {
+        return new IdempotencyKeyHasher(KeyHashVersion.V2, true);
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static void invoke(Object target, String name) {
+        Method method = ReflectionUtils.findMethod(target.getClass(), name);
+        ReflectionUtils.makeAccessible(method);
+        ReflectionUtils.invokeMethod(method, target);
+    }
+
+}
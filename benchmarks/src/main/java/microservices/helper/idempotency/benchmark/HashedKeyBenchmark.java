@@ -0,0 +1,59 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+// Every request hashes its (service, operation, idempotencyKey) once before touching MongoDB
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HashedKeyBenchmark {
+
+    @Param({"16", "36", "128", "1024"})
+    private int keyLength;
+
+    @Param({"MD5", "V2"})
+    private KeyHashVersion version;
+
+    private IdempotencyKeyHasher idempotencyKeyHasher;
+    private String service;
+    private String operation;
+    private String idempotencyKey;
+
+    @Setup
+    public void setUp() {
+        idempotencyKeyHasher = new IdempotencyKeyHasher(version, false);
+        service = "payment-service";
+        operation = "capture-payment";
+        StringBuilder key = new StringBuilder(keyLength);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < keyLength; i++) {
+            key.append((char) ('a' + random.nextInt(26)));
+        }
+        idempotencyKey = key.toString();
+    }
+
+    @Benchmark
+    public String hash() {
+        return idempotencyKeyHasher.hash(service, operation, idempotencyKey);
+    }
+
+}
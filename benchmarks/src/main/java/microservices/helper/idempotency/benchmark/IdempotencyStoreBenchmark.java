@@ -0,0 +1,120 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.DuplicateKeyException;
+
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.store.InMemoryIdempotencyStore;
+
+/**
+ * The in-memory storage engine on its own: a lock taken and released, a lock
+ * refused because the key is held, and a stored result read by _id, from four
+ * threads over a store holding storedKeys results and locks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class IdempotencyStoreBenchmark {
+
+    @Param({"1000", "1000000"})
+    private int storedKeys;
+
+    private InMemoryIdempotencyStore idempotencyStore;
+    private String[] storedIds;
+    private IdempotentOperationLockTemp[] heldLocks;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        IdempotentOperationLockTemp freshLock;
+
+        // One lock per thread, taken and released on every call, so the store does not grow
+        @Setup(Level.Trial)
+        public void setUp() {
+            freshLock = tempLock("fresh-" + UUID.randomUUID());
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        idempotencyStore = new InMemoryIdempotencyStore();
+        storedIds = new String[storedKeys];
+        heldLocks = new IdempotentOperationLockTemp[storedKeys];
+        for (int i = 0; i < storedKeys; i++) {
+            StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+            storedResult.setId(Beans.idempotencyKeyHasher().hash("payment-service", "capture-payment", "stored-" + i));
+            storedResult.setService("payment-service");
+            storedResult.setOperation("capture-payment");
+            storedResult.setIdempotencyKey("stored-" + i);
+            storedResult.setIdempotentOperationResult("{\"status\":\"CAPTURED\"}");
+            idempotencyStore.insertResult(storedResult);
+            storedIds[i] = storedResult.getId();
+            heldLocks[i] = tempLock("held-" + i);
+            idempotencyStore.insertTempLock(heldLocks[i]);
+        }
+    }
+
+    private static IdempotentOperationLockTemp tempLock(String idempotencyKey) {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(UUID.randomUUID().toString());
+        tempLock.setService("payment-service");
+        tempLock.setOperation("capture-payment");
+        tempLock.setIdempotencyKey(idempotencyKey);
+        tempLock.setLockedAt(Instant.now());
+        tempLock.setExpiredAt(Instant.now().plus(Duration.ofMinutes(1)));
+        return tempLock;
+    }
+
+    private int next(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = i + 1 == storedKeys ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public void acquireAndRelease(Cursor cursor) {
+        idempotencyStore.insertTempLock(cursor.freshLock);
+        idempotencyStore.deleteTempLock(cursor.freshLock.getId());
+    }
+
+    // Includes the cost of the DuplicateKeyException, as the service pays it for every locked duplicate
+    @Benchmark
+    public boolean acquireHeldKey(Cursor cursor) {
+        try {
+            idempotencyStore.insertTempLock(heldLocks[next(cursor)]);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public Optional<StoredIdempotentOperationResult> findResult(Cursor cursor) {
+        return idempotencyStore.findResult(storedIds[next(cursor)]);
+    }
+
+}
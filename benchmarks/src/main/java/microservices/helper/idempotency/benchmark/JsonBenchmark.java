@@ -0,0 +1,68 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import microservices.helper.idempotency.config.IdempotencyServiceConfig;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+
+// Request and response bodies, with the ObjectMapper the service registers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JsonBenchmark {
+
+    @Param({"64", "4096", "262144"})
+    private int payloadSize;
+
+    private ObjectMapper objectMapper;
+    private IdempotentOperationResult result;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new IdempotencyServiceConfig().objectMapper();
+        result = new IdempotentOperationResult();
+        result.setIdempotencyId(UUID.randomUUID().toString());
+        result.setService("payment-service");
+        result.setOperation("capture-payment");
+        result.setIdempotencyKey(UUID.randomUUID().toString());
+        result.setLockId(UUID.randomUUID().toString());
+        result.setLockedAt(Instant.now());
+        result.setExpiredAt(Instant.now().plusSeconds(60));
+        result.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        result.setIdempotentOperationResult("{\"status\":\"" + "x".repeat(Math.max(0, payloadSize - 14)) + "\"}");
+        json = objectMapper.writeValueAsBytes(result);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(result);
+    }
+
+    @Benchmark
+    public IdempotentOperationResult deserialize() throws IOException {
+        return objectMapper.readValue(json, IdempotentOperationResult.class);
+    }
+
+}
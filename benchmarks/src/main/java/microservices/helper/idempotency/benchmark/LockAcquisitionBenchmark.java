@@ -0,0 +1,93 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.service.IdempotencyServiceImpl;
+
+/**
+ * POST /idempotent-operation without the MongoDB round trips: hashing, the
+ * config and result cache lookups, the IdempotentOperation and temp lock
+ * entities built by acquireLock and the response from
+ * createLockAcquiredResponse, or the stored result on a near-cache hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LockAcquisitionBenchmark {
+
+    @Param({"36", "256"})
+    private int keyLength;
+
+    @Param({"64", "16384"})
+    private int payloadSize;
+
+    private IdempotencyServiceImpl idempotencyService;
+    private IdempotentOperationResult freshKeyInput;
+    private IdempotentOperationResult storedKeyInput;
+
+    @Setup
+    public void setUp() {
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("payment-service");
+        operationConfig.setOperation("capture-payment");
+        IdempotentOperationConfigCache idempotentOperationConfigCache = Beans.operationConfigCache(List.of(operationConfig));
+
+        freshKeyInput = input("f".repeat(keyLength));
+        storedKeyInput = input("s".repeat(keyLength));
+
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(Beans.idempotencyKeyHasher().hash(storedKeyInput.getService(), storedKeyInput.getOperation(), storedKeyInput.getIdempotencyKey()));
+        storedResult.setService(storedKeyInput.getService());
+        storedResult.setOperation(storedKeyInput.getOperation());
+        storedResult.setIdempotencyKey(storedKeyInput.getIdempotencyKey());
+        storedResult.setIdempotentOperationResult("r".repeat(payloadSize));
+
+        var storedIdempotentOperationResultCache = Beans.resultCache(idempotentOperationConfigCache, Long.MAX_VALUE);
+        storedIdempotentOperationResultCache.put(storedResult);
+        idempotencyService = Beans.idempotencyService(idempotentOperationConfigCache, storedIdempotentOperationResultCache,
+                NoOpRepositories.create(StoredIdempotentOperationResultRepository.class));
+    }
+
+    private static IdempotentOperationResult input(String idempotencyKey) {
+        IdempotentOperationResult input = new IdempotentOperationResult();
+        input.setService("payment-service");
+        input.setOperation("capture-payment");
+        input.setIdempotencyKey(idempotencyKey);
+        return input;
+    }
+
+    // The no-op temp lock repository never reports a duplicate, so every call takes the lock
+    @Benchmark
+    public IdempotentOperationResult acquireLock() {
+        return idempotencyService.getStoredExecutionResultOrLockOperation(freshKeyInput);
+    }
+
+    @Benchmark
+    public IdempotentOperationResult storedResultFromNearCache() {
+        return idempotencyService.getStoredExecutionResultOrLockOperation(storedKeyInput);
+    }
+
+}
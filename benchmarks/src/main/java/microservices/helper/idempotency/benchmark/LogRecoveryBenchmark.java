@@ -0,0 +1,120 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.store.log.LogIdempotencyStore;
+
+/**
+ * Startup of the log engine over storedKeys results and a thousand locks in
+ * flight: with the index closed cleanly, and with it rebuilt from the log as
+ * after a crash. A node on MongoDB has nothing to replay, the expired lock
+ * sweeper takes over the locks of a node that died.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogRecoveryBenchmark {
+
+    private static final int IN_FLIGHT_LOCKS = 1000;
+
+    @Param({"100000", "1000000"})
+    private int storedKeys;
+
+    @Param({"clean", "rebuilt"})
+    private String index;
+
+    private Path directory;
+    private LogIdempotencyStore idempotencyStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("idempotency-log-recovery");
+        LogIdempotencyStore writer = Beans.logIdempotencyStore(directory);
+        List<StoredIdempotentOperationResult> batch = new ArrayList<>();
+        for (int i = 0; i < storedKeys; i++) {
+            StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+            storedResult.setId(Beans.idempotencyKeyHasher().hash("payment-service", "capture-payment", "stored-" + i));
+            storedResult.setService("payment-service");
+            storedResult.setOperation("capture-payment");
+            storedResult.setIdempotencyKey("stored-" + i);
+            storedResult.setIdempotentOperationResult("{\"status\":\"CAPTURED\"}");
+            storedResult.setExpireAt(Instant.now().plus(Duration.ofDays(30)));
+            batch.add(storedResult);
+            if (batch.size() == 1000) {
+                writer.insertResults(batch);
+                batch.clear();
+            }
+        }
+        writer.insertResults(batch);
+        for (int i = 0; i < IN_FLIGHT_LOCKS; i++) {
+            IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+            tempLock.setId(UUID.randomUUID().toString());
+            tempLock.setIdempotencyId(UUID.randomUUID().toString());
+            tempLock.setService("payment-service");
+            tempLock.setOperation("capture-payment");
+            tempLock.setIdempotencyKey("in-flight-" + i);
+            tempLock.setLockedAt(Instant.now());
+            tempLock.setExpiredAt(Instant.now().plus(Duration.ofDays(1)));
+            writer.insertTempLock(tempLock);
+        }
+        writer.close();
+    }
+
+    // Without a clean flag the index is dropped and refilled from the results in the log
+    @Setup(Level.Invocation)
+    public void crash() throws IOException {
+        if (index.equals("rebuilt")) {
+            Files.delete(directory.resolve("index.bin"));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        idempotencyStore.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int open() {
+        idempotencyStore = Beans.logIdempotencyStore(directory);
+        return idempotencyStore.findRecoveredTempLocks().size();
+    }
+
+}
@@ -0,0 +1,50 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Repository stand-ins that answer without I/O, so the benchmarks measure only
+ * the CPU and allocation cost of the service code around MongoDB. Inserts
+ * return their argument, lookups find nothing and findAll returns the given
+ * documents.
+ */
+final class NoOpRepositories {
+
+    private NoOpRepositories() {
+    }
+
+    static <T> T create(Class<T> repositoryType) {
+        return create(repositoryType, List.of());
+    }
+
+    static <T> T create(Class<T> repositoryType, List<?> documents) {
+        Object repository = Proxy.newProxyInstance(repositoryType.getClassLoader(), new Class<?>[]{repositoryType}, (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            return switch (method.getName()) {
+                case "insert", "save" -> args[0];
+                case "findAll" -> documents;
+                case "insertAllUnordered" -> Set.of();
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "NoOp" + repositoryType.getSimpleName();
+                default -> {
+                    if (returnType == Optional.class) {
+                        yield Optional.empty();
+                    } else if (Iterable.class.isAssignableFrom(returnType)) {
+                        yield List.of();
+                    } else if (returnType == boolean.class) {
+                        yield false;
+                    } else if (returnType == long.class) {
+                        yield 0L;
+                    }
+                    yield null;
+                }
+            };
+        });
+        return repositoryType.cast(repository);
+    }
+
+}
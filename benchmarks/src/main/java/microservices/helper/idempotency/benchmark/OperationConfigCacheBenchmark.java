@@ -0,0 +1,71 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+
+// Lock duration lookups on a warm snapshot, spread over every configured operation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OperationConfigCacheBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int configuredOperations;
+
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private String[] services;
+    private String[] operations;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        List<IdempotentOperationConfig> operationConfigs = new ArrayList<>(configuredOperations);
+        services = new String[configuredOperations];
+        operations = new String[configuredOperations];
+        for (int i = 0; i < configuredOperations; i++) {
+            services[i] = "service-" + (i % 50);
+            operations[i] = "operation-" + i;
+            IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+            operationConfig.setId(UUID.randomUUID().toString());
+            operationConfig.setService(services[i]);
+            operationConfig.setOperation(operations[i]);
+            operationConfig.setLockDuration(Duration.ofSeconds(30 + i % 60));
+            operationConfigs.add(operationConfig);
+        }
+        idempotentOperationConfigCache = Beans.operationConfigCache(operationConfigs);
+    }
+
+    @Benchmark
+    public Duration getLockDuration(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = i + 1 == configuredOperations ? 0 : i + 1;
+        // New String instances, as Jackson hands them to the service for every request
+        return idempotentOperationConfigCache.getLockDuration(new String(services[i]), new String(operations[i]));
+    }
+
+}
@@ -0,0 +1,97 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.OffHeapCachedResult;
+import microservices.helper.idempotency.config.IdempotencyServiceConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.service.IdempotencyServiceImpl;
+
+/**
+ * Replay of a stored result by POST /idempotent-operation, up to the bytes of
+ * the response body: from the on-heap near-cache, serialized by the
+ * ObjectMapper as the message converter does, or copied from the off-heap
+ * tier. Compare gc.alloc.rate.norm of both to see the heap each replay costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ResultReplayBenchmark {
+
+    @Param({"65536", "1048576"})
+    private int payloadSize;
+
+    private ObjectMapper objectMapper;
+    private IdempotencyServiceImpl heapService;
+    private IdempotencyServiceImpl offHeapService;
+    private IdempotentOperationResult input;
+
+    @Setup
+    public void setUp() {
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("payment-service");
+        operationConfig.setOperation("capture-payment");
+        IdempotentOperationConfigCache idempotentOperationConfigCache = Beans.operationConfigCache(List.of(operationConfig));
+        objectMapper = new IdempotencyServiceConfig().objectMapper();
+
+        input = new IdempotentOperationResult();
+        input.setService("payment-service");
+        input.setOperation("capture-payment");
+        input.setIdempotencyKey(UUID.randomUUID().toString());
+
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(Beans.idempotencyKeyHasher().hash(input.getService(), input.getOperation(), input.getIdempotencyKey()));
+        storedResult.setService(input.getService());
+        storedResult.setOperation(input.getOperation());
+        storedResult.setIdempotencyKey(input.getIdempotencyKey());
+        storedResult.setIdempotentOperationResult("{\"status\":\"" + "x".repeat(Math.max(0, payloadSize - 14)) + "\"}");
+
+        var storedIdempotentOperationResultCache = Beans.resultCache(idempotentOperationConfigCache, Long.MAX_VALUE);
+        storedIdempotentOperationResultCache.put(storedResult);
+        StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository = NoOpRepositories.create(StoredIdempotentOperationResultRepository.class);
+        heapService = Beans.idempotencyService(idempotentOperationConfigCache, storedIdempotentOperationResultCache, storedIdempotentOperationResultRepository);
+        offHeapService = Beans.idempotencyService(idempotentOperationConfigCache, storedIdempotentOperationResultCache,
+                Beans.offHeapResultCache(idempotentOperationConfigCache, true), storedIdempotentOperationResultRepository);
+        // The first replay finds the result on heap and moves it to the off-heap tier
+        offHeapService.getStoredExecutionResultOrLockOperation(input);
+    }
+
+    @Benchmark
+    public void replayFromHeap() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), heapService.getStoredExecutionResultOrLockOperation(input));
+    }
+
+    @Benchmark
+    public void replayFromOffHeap() throws IOException {
+        try (OffHeapCachedResult offHeapResult = (OffHeapCachedResult) offHeapService.getStoredExecutionResultOrLockOperation(input)) {
+            offHeapResult.writeTo(OutputStream.nullOutputStream());
+        }
+    }
+
+}
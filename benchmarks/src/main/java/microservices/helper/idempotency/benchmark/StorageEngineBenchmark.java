@@ -0,0 +1,156 @@
+package microservices.helper.idempotency.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import microservices.helper.idempotency.store.log.LogIdempotencyStore;
+
+/**
+ * The log engine against the MongoDB path, both durable: an operation taken
+ * and completed with the writes the service makes (audit record, temp lock,
+ * its release, lock record and result), and a stored result read by _id. The
+ * threads share the log's group commit as requests do. The mongo variant
+ * needs a mongod at -Dbenchmark.mongodb.uri, default mongodb://localhost:27017,
+ * and drops the idempotency-benchmark database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class StorageEngineBenchmark {
+
+    private static final int STORED_KEYS = 10000;
+
+    @Param({"log", "mongo"})
+    private String engine;
+
+    private IdempotencyStore idempotencyStore;
+    private MongoClient mongoClient;
+    private Path directory;
+    private String[] storedIds;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        if (engine.equals("log")) {
+            directory = Files.createTempDirectory("idempotency-log-benchmark");
+            idempotencyStore = Beans.logIdempotencyStore(directory);
+        } else {
+            mongoClient = MongoClients.create(System.getProperty("benchmark.mongodb.uri", "mongodb://localhost:27017"));
+            MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "idempotency-benchmark");
+            mongoTemplate.getDb().drop();
+            idempotencyStore = Beans.mongoIdempotencyStore(mongoTemplate);
+        }
+        storedIds = new String[STORED_KEYS];
+        for (int i = 0; i < STORED_KEYS; i++) {
+            StoredIdempotentOperationResult storedResult = storedResult("stored-" + i);
+            idempotencyStore.insertResult(storedResult);
+            storedIds[i] = storedResult.getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (idempotencyStore instanceof LogIdempotencyStore logIdempotencyStore) {
+            logIdempotencyStore.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        if (mongoClient != null) {
+            mongoClient.close();
+        }
+    }
+
+    private static StoredIdempotentOperationResult storedResult(String idempotencyKey) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(Beans.idempotencyKeyHasher().hash("payment-service", "capture-payment", idempotencyKey));
+        storedResult.setService("payment-service");
+        storedResult.setOperation("capture-payment");
+        storedResult.setIdempotencyKey(idempotencyKey);
+        storedResult.setIdempotentOperationResult("{\"status\":\"CAPTURED\"}");
+        storedResult.setExpireAt(Instant.now().plus(Duration.ofDays(30)));
+        return storedResult;
+    }
+
+    @Benchmark
+    public void acquireAndComplete() {
+        String idempotencyKey = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        IdempotentOperation idempotentOperation = new IdempotentOperation();
+        idempotentOperation.setId(UUID.randomUUID().toString());
+        idempotentOperation.setService("payment-service");
+        idempotentOperation.setOperation("capture-payment");
+        idempotentOperation.setIdempotencyKey(idempotencyKey);
+        idempotentOperation.setCreatedAt(now);
+        idempotencyStore.insertOperation(idempotentOperation);
+
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(Beans.idempotencyKeyHasher().hash("payment-service", "capture-payment", idempotencyKey));
+        tempLock.setService("payment-service");
+        tempLock.setOperation("capture-payment");
+        tempLock.setIdempotencyKey(idempotencyKey);
+        tempLock.setLockedAt(now);
+        tempLock.setExpiredAt(now.plus(Duration.ofMinutes(1)));
+        idempotencyStore.insertTempLock(tempLock);
+
+        idempotencyStore.deleteTempLock(tempLock.getId());
+        IdempotentOperationLock lock = new IdempotentOperationLock();
+        lock.setId(tempLock.getId());
+        lock.setIdempotencyId(tempLock.getIdempotencyId());
+        lock.setLockedAt(now);
+        lock.setExpiredAt(tempLock.getExpiredAt());
+        lock.setCreatedAt(now);
+        idempotencyStore.insertLockRecord(lock);
+        idempotencyStore.insertResult(storedResult(idempotencyKey));
+    }
+
+    @Benchmark
+    public Optional<StoredIdempotentOperationResult> findResult(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = i + 1 == STORED_KEYS ? 0 : i + 1;
+        return idempotencyStore.findResult(storedIds[i]);
+    }
+
+}
@@ -30,6 +30,30 @@ db.createCollection("idempotent_operation_config", {
                 lockDuration: {
                     bsonType: "string",
                     description: "Lock duration as Duration object - required"
+                },
+                resultCacheDuration: {
+                    bsonType: "string",
+                    description: "Node-local result cache TTL as Duration object - optional"
+                },
+                retentionDuration: {
+                    bsonType: "string",
+                    description: "How long documents of the operation are kept as Duration object - optional"
+                },
+                resultCompressionThreshold: {
+                    bsonType: "int",
+                    description: "UTF-8 size in bytes from which results are stored compressed - optional"
+                },
+                consistencyProfile: {
+                    enum: ["RELAXED", "DEFAULT", "DURABLE"],
+                    description: "Write concern, read preference and read concern of the operation - optional"
+                },
+                learnedLockDuration: {
+                    bsonType: "string",
+                    description: "Lock duration learned from observed execution times as Duration object - optional"
+                },
+                learnedAt: {
+                    bsonType: "date",
+                    description: "When learnedLockDuration was stored - optional"
                 }
             }
         }
@@ -66,6 +90,10 @@ db.createCollection("idempotent_operation", {
                 createdAt: {
                     bsonType: "date",
                     description: "Creation timestamp"
+                },
+                expireAt: {
+                    bsonType: "date",
+                    description: "Removal time of the TTL index - optional, absent keeps the record"
                 }
             }
         }
@@ -144,8 +172,16 @@ db.createCollection("stored_idempotent_operation_result", {
                     description: "Idempotency key - required string"
                 },
                 idempotentOperationResult: {
-                    bsonType: "string",
-                    description: "Operation result - required string"
+                    bsonType: ["string", "binData"],
+                    description: "Operation result - required string, or binary compressed with resultCodec"
+                },
+                resultCodec: {
+                    enum: ["deflate"],
+                    description: "Codec of a binary idempotentOperationResult - absent for plain strings"
+                },
+                expireAt: {
+                    bsonType: "date",
+                    description: "Removal time of the TTL index - optional, absent keeps the result"
                 }
             }
         }
@@ -182,6 +218,10 @@ db.createCollection("idempotent_operation_lock", {
                 createdAt: {
                     bsonType: "date",
                     description: "Lock release timestamp"
+                },
+                expireAt: {
+                    bsonType: "date",
+                    description: "Removal time of the TTL index - optional, absent keeps the record"
                 }
             }
         }
@@ -210,6 +250,10 @@ db.createCollection("failed_idempotent_operation_result", {
                 errorMessage: {
                     bsonType: "string",
                     description: "Error message - required string"
+                },
+                expireAt: {
+                    bsonType: "date",
+                    description: "Removal time of the TTL index - optional, absent keeps the result"
                 }
             }
         }
@@ -218,6 +262,70 @@ db.createCollection("failed_idempotent_operation_result", {
 
 print('✓ Created failed_idempotent_operation_result collection');
 
+// ========== idempotent_operation_state Collection ==========
+print('Creating idempotent_operation_state collection...');
+
+db.createCollection("idempotent_operation_state", {
+    validator: {
+        $jsonSchema: {
+            bsonType: "object",
+            required: ["service", "operation", "idempotencyKey", "state"],
+            properties: {
+                _id: {
+                    bsonType: "string",
+                    description: "base64 hashed string from combination of service, operation and idempotencyKey"
+                },
+                service: {
+                    bsonType: "string",
+                    description: "Service name - required string"
+                },
+                operation: {
+                    bsonType: "string",
+                    description: "Operation name - required string"
+                },
+                idempotencyKey: {
+                    bsonType: "string",
+                    description: "Idempotency key - required string"
+                },
+                state: {
+                    enum: ["LOCKED", "SUCCEEDED", "FAILED", "EXPIRED"],
+                    description: "Lifecycle state - required"
+                },
+                idempotencyId: {
+                    bsonType: "string",
+                    description: "UUID idempotency Id of the latest attempt"
+                },
+                lockId: {
+                    bsonType: "string",
+                    description: "UUID lock Id of the latest attempt"
+                },
+                lockedAt: {
+                    bsonType: "date",
+                    description: "Lock timestamp of the latest attempt"
+                },
+                expiredAt: {
+                    bsonType: "date",
+                    description: "Lock expiration timestamp of the latest attempt"
+                },
+                idempotentOperationResult: {
+                    bsonType: "string",
+                    description: "Operation result, set when SUCCEEDED"
+                },
+                errorMessage: {
+                    bsonType: "string",
+                    description: "Error message, set when FAILED or EXPIRED"
+                },
+                updatedAt: {
+                    bsonType: "date",
+                    description: "Last state change timestamp"
+                }
+            }
+        }
+    }
+});
+
+print('✓ Created idempotent_operation_state collection');
+
 print('All collections created successfully!');
 
 // ========== Create Unique Indexes for Atomic Operations ==========
@@ -245,6 +353,16 @@ db.idempotent_operation_lock_temp.createIndex(
 );
 print('✓ Created unique index on idempotent_operation_lock_temp');
 
+// Index used to count and sweep expired temp locks
+db.idempotent_operation_lock_temp.createIndex(
+    { "expiredAt": 1 },
+    {
+        name: "lock_temp_expired_at_idx",
+        background: true
+    }
+);
+print('✓ Created expiredAt index on idempotent_operation_lock_temp');
+
 // Unique index on stored results to prevent duplicate results
 db.stored_idempotent_operation_result.createIndex(
     { "service": 1, "operation": 1, "idempotencyKey": 1 }, 
@@ -256,6 +374,57 @@ db.stored_idempotent_operation_result.createIndex(
 );
 print('✓ Created unique index on stored_idempotent_operation_result');
 
+// Index used to expire locks of the single-document storage mode
+db.idempotent_operation_state.createIndex(
+    { "state": 1, "expiredAt": 1 },
+    {
+        name: "operation_state_expiry_idx",
+        background: true
+    }
+);
+print('✓ Created expiry index on idempotent_operation_state');
+
+// TTL indexes removing documents once their expireAt has passed, kept in sync with RetentionIndexInitializer
+db.idempotent_operation.createIndex(
+    { "expireAt": 1 },
+    {
+        name: "operation_expire_at_ttl_idx",
+        expireAfterSeconds: 0,
+        background: true
+    }
+);
+print('✓ Created TTL index on idempotent_operation');
+
+db.idempotent_operation_lock.createIndex(
+    { "expireAt": 1 },
+    {
+        name: "lock_expire_at_ttl_idx",
+        expireAfterSeconds: 0,
+        background: true
+    }
+);
+print('✓ Created TTL index on idempotent_operation_lock');
+
+db.failed_idempotent_operation_result.createIndex(
+    { "expireAt": 1 },
+    {
+        name: "failed_result_expire_at_ttl_idx",
+        expireAfterSeconds: 0,
+        background: true
+    }
+);
+print('✓ Created TTL index on failed_idempotent_operation_result');
+
+db.stored_idempotent_operation_result.createIndex(
+    { "expireAt": 1 },
+    {
+        name: "stored_result_expire_at_ttl_idx",
+        expireAfterSeconds: 0,
+        background: true
+    }
+);
+print('✓ Created TTL index on stored_idempotent_operation_result');
+
 print('All indexes created successfully!');
 
 // ========== Verify Collections ==========
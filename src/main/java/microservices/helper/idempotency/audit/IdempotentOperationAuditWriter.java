@@ -0,0 +1,212 @@
+package microservices.helper.idempotency.audit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.enums.AuditBackpressure;
+import microservices.helper.idempotency.model.AuditQueueStats;
+import microservices.helper.idempotency.store.IdempotencyStore;
+
+/**
+ * Write-behind pipeline for idempotent_operation audit records. Records are
+ * queued in memory and flushed with unordered insertMany batches, either when
+ * a batch is full or when the flush interval has passed since its first record.
+ * Disabled by default, the service then inserts each record synchronously.
+ */
+@Component
+@Slf4j
+public class IdempotentOperationAuditWriter {
+
+    private final IdempotencyStore idempotencyStore;
+    private final boolean writeBehind;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final AuditBackpressure backpressure;
+    private final Duration shutdownTimeout;
+    private final BlockingQueue<IdempotentOperation> queue;
+
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong synchronousFallbackCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public IdempotentOperationAuditWriter(IdempotencyStore idempotencyStore,
+                                          @Value("${idempotent.audit.write-behind.enabled}") boolean writeBehind,
+                                          @Value("${idempotent.audit.write-behind.queue-capacity}") int queueCapacity,
+                                          @Value("${idempotent.audit.write-behind.batch-size}") int batchSize,
+                                          @Value("${idempotent.audit.write-behind.flush-interval}") Duration flushInterval,
+                                          @Value("${idempotent.audit.write-behind.backpressure}") AuditBackpressure backpressure,
+                                          @Value("${idempotent.audit.write-behind.shutdown-timeout}") Duration shutdownTimeout) {
+        this.idempotencyStore = idempotencyStore;
+        this.writeBehind = writeBehind;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.backpressure = backpressure;
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    private void start() {
+        if (!writeBehind) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "idempotent-operation-audit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Write-behind for idempotent operation records started, capacity: {}, batch size: {}, backpressure: {}", queueCapacity, batchSize, backpressure);
+    }
+
+    // Let the flusher finish its current batch, then insert whatever is still queued before the MongoDB client closes
+    @PreDestroy
+    private void stop() throws InterruptedException {
+        if (!writeBehind) {
+            return;
+        }
+        running = false;
+        flusher.join(shutdownTimeout.toMillis());
+        if (flusher.isAlive()) {
+            // The flusher is still waiting for its batch to fill, interrupted it flushes the batch in hand
+            flusher.interrupt();
+            flusher.join(shutdownTimeout.toMillis());
+        }
+        List<IdempotentOperation> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            flush(remaining.subList(from, Math.min(from + batchSize, remaining.size())));
+        }
+        log.info("Write-behind for idempotent operation records stopped, {} records drained on shutdown", remaining.size());
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Queues the record for a later bulk insert. With the SYNC backpressure a
+     * full queue makes this insert synchronously, so repository exceptions
+     * reach the caller. Once the writer is stopped nothing drains the queue
+     * anymore, records are then inserted synchronously as well.
+     */
+    public void write(IdempotentOperation idempotentOperation) {
+        if (!running) {
+            insertSynchronously(idempotentOperation);
+            return;
+        }
+        if (queue.offer(idempotentOperation)) {
+            insertIfStopped(idempotentOperation);
+            return;
+        }
+        switch (backpressure) {
+            case BLOCK -> {
+                try {
+                    queue.put(idempotentOperation);
+                    insertIfStopped(idempotentOperation);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    insertSynchronously(idempotentOperation);
+                }
+            }
+            case DROP -> {
+                if (droppedCount.incrementAndGet() % 1000 == 1) {
+                    log.warn("Audit queue is full, {} idempotent operation records dropped so far", droppedCount.get());
+                }
+            }
+            case SYNC -> insertSynchronously(idempotentOperation);
+        }
+    }
+
+    public void writeAll(List<IdempotentOperation> idempotentOperations) {
+        idempotentOperations.forEach(this::write);
+    }
+
+    public AuditQueueStats getStats() {
+        AuditQueueStats stats = new AuditQueueStats();
+        stats.setWriteBehind(writeBehind);
+        stats.setBackpressure(backpressure.name());
+        stats.setQueueSize(queue.size());
+        stats.setQueueCapacity(queueCapacity);
+        stats.setFlushedCount(flushedCount.get());
+        stats.setFlushCount(flushCount.get());
+        stats.setDroppedCount(droppedCount.get());
+        stats.setSynchronousFallbackCount(synchronousFallbackCount.get());
+        stats.setFailedCount(failedCount.get());
+        return stats;
+    }
+
+    // stop() may have drained the queue between the running check and the enqueue, the record is taken back then
+    private void insertIfStopped(IdempotentOperation idempotentOperation) {
+        if (!running && queue.remove(idempotentOperation)) {
+            insertSynchronously(idempotentOperation);
+        }
+    }
+
+    private void insertSynchronously(IdempotentOperation idempotentOperation) {
+        synchronousFallbackCount.incrementAndGet();
+        idempotencyStore.insertOperation(idempotentOperation);
+    }
+
+    private void flushLoop() {
+        List<IdempotentOperation> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                IdempotentOperation first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    IdempotentOperation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Shutting down, the batch in hand is flushed below and the rest is drained by stop()
+                running = false;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<IdempotentOperation> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            idempotencyStore.insertOperations(batch);
+            flushedCount.addAndGet(batch.size());
+            flushCount.incrementAndGet();
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            log.error("Failed to flush {} idempotent operation records", batch.size(), e);
+        }
+    }
+
+}
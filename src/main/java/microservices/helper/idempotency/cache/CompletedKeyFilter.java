@@ -0,0 +1,336 @@
+package microservices.helper.idempotency.cache;
+
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.model.CompletedKeyFilterStats;
+
+/**
+ * Node-local Bloom filter over the _ids of stored_idempotent_operation_result,
+ * so that the result read can be skipped for keys that were definitely never
+ * completed. Ids saved on this node are added before their insert, ids saved
+ * on other nodes arrive on the completion change stream, and the filter is
+ * rebuilt from a scan of the _ids whenever the stream is (re)opened and on a
+ * fixed delay, which drops results removed by the TTL index.
+ * A negative answer is only trusted while the change stream has been followed
+ * without a gap since the scan started, otherwise every key may be completed.
+ */
+@Component
+@Slf4j
+public class CompletedKeyFilter {
+
+    private static final int SCAN_BATCH_SIZE = 10000;
+
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long maximumBytes;
+    private final double falsePositiveRate;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final long capacity;
+
+    // Adds go to building as well while a rebuild scans the collection
+    private volatile Bits current;
+    private volatile Bits building;
+    private volatile boolean trusted;
+    private volatile boolean following;
+    private volatile Instant lastRebuildAt;
+    private long streamGeneration;
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final LongAdder skippedReadCount = new LongAdder();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "completed-key-filter-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CompletedKeyFilter(MongoTemplate mongoTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${idempotent.completed-key-filter.enabled}") boolean enabled,
+                              @Value("${idempotent.completed-key-filter.maximum-bytes}") long maximumBytes,
+                              @Value("${idempotent.completed-key-filter.false-positive-rate}") double falsePositiveRate) {
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maximumBytes = maximumBytes;
+        this.falsePositiveRate = falsePositiveRate;
+        // Whole words of bits, the optimal number of hash functions for the rate, and the ids that fit at that rate
+        this.bitCount = Math.max(maximumBytes / Long.BYTES, 1) * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round(-Math.log(falsePositiveRate) / Math.log(2)));
+        this.capacity = (long) (bitCount * Math.log(2) * Math.log(2) / -Math.log(falsePositiveRate));
+    }
+
+    // Registered once constructed, the gauges hold a reference to this filter
+    @PostConstruct
+    private void registerMeters() {
+        FunctionCounter.builder("idempotency.completed.key.filter.skipped.reads", skippedReadCount, LongAdder::sum)
+                .description("Result reads skipped because the key was definitely not completed")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.completed.key.filter.ids", this, CompletedKeyFilter::getIdCount)
+                .description("Stored result ids added to the completed-key filter since its last rebuild")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.completed.key.filter.false.positive.rate", this, CompletedKeyFilter::getEstimatedFalsePositiveRate)
+                .description("Estimated share of new keys whose result is still read")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.completed.key.filter.size", this, filter -> filter.current != null ? filter.bitCount / Byte.SIZE : 0)
+                .description("Heap held by the completed-key filter, twice this while it is rebuilt")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // True only when neither id can be in the collection, fallbackHashedKey is null when fallback lookup is disabled
+    public boolean isDefinitelyNotCompleted(String hashedKey, String fallbackHashedKey) {
+        Bits bits = current;
+        if (!enabled || !trusted || bits == null) {
+            return false;
+        }
+        if (bits.mightContain(hashedKey) || (fallbackHashedKey != null && bits.mightContain(fallbackHashedKey))) {
+            return false;
+        }
+        skippedReadCount.increment();
+        return true;
+    }
+
+    // Called before the result is inserted, an id that ends up not stored only costs a read
+    public void add(String hashedKey) {
+        if (!enabled) {
+            return;
+        }
+        // building is read first, it is only cleared after current was swapped to it
+        Bits next = building;
+        Bits bits = current;
+        if (bits != null) {
+            bits.add(hashedKey);
+        }
+        if (next != null && next != bits) {
+            next.add(hashedKey);
+        }
+    }
+
+    // The change stream is open, every insert from now on is seen, so a scan started now gives a complete filter
+    public void streamOpened() {
+        if (!enabled) {
+            return;
+        }
+        stateLock.lock();
+        try {
+            streamGeneration++;
+            following = true;
+        } finally {
+            stateLock.unlock();
+        }
+        requestRebuild();
+    }
+
+    // Inserts may be missed until the stream is reopened and the filter rebuilt
+    public void streamLost() {
+        if (!enabled) {
+            return;
+        }
+        stateLock.lock();
+        try {
+            streamGeneration++;
+            following = false;
+            trusted = false;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    // Results removed by the TTL index keep matching until the next rebuild
+    @Scheduled(fixedDelayString = "${idempotent.completed-key-filter.rebuild-interval}", initialDelayString = "${idempotent.completed-key-filter.rebuild-interval}")
+    public void scheduledRebuild() {
+        if (enabled && following) {
+            requestRebuild();
+        }
+    }
+
+    public CompletedKeyFilterStats getStats() {
+        CompletedKeyFilterStats stats = new CompletedKeyFilterStats();
+        stats.setEnabled(enabled);
+        stats.setTrusted(enabled && trusted);
+        stats.setMaximumBytes(maximumBytes);
+        stats.setHashFunctions(hashFunctions);
+        stats.setCapacity(capacity);
+        stats.setIdCount(getIdCount());
+        stats.setFalsePositiveRate(falsePositiveRate);
+        stats.setEstimatedFalsePositiveRate(getEstimatedFalsePositiveRate());
+        stats.setSkippedReadCount(skippedReadCount.sum());
+        stats.setLastRebuildAt(lastRebuildAt);
+        return stats;
+    }
+
+    public long getIdCount() {
+        Bits bits = current;
+        return bits != null ? bits.count.sum() : 0;
+    }
+
+    // (1 - e^(-kn/m))^k for the ids added so far, 1 while no filter is built
+    public double getEstimatedFalsePositiveRate() {
+        if (current == null) {
+            return 1.0;
+        }
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * getIdCount() / bitCount), hashFunctions);
+    }
+
+    private void requestRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(this::rebuild);
+        } catch (RejectedExecutionException e) {
+            rebuildPending.set(false);
+        }
+    }
+
+    private void rebuild() {
+        rebuildPending.set(false);
+        long generation;
+        stateLock.lock();
+        try {
+            if (!following) {
+                return;
+            }
+            generation = streamGeneration;
+        } finally {
+            stateLock.unlock();
+        }
+        long startedAt = System.nanoTime();
+        Bits next = new Bits(bitCount, hashFunctions);
+        building = next;
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(StoredIdempotentOperationResult.class))
+                .find()
+                .projection(Projections.include("_id"))
+                .batchSize(SCAN_BATCH_SIZE)
+                .cursor()) {
+            while (cursor.hasNext()) {
+                if (cursor.next().get("_id") instanceof String id) {
+                    next.add(id);
+                }
+            }
+        } catch (Exception e) {
+            building = null;
+            log.error("Failed to rebuild the completed-key filter, keeping the current one", e);
+            return;
+        }
+        stateLock.lock();
+        try {
+            if (generation != streamGeneration) {
+                // The stream was lost or reopened during the scan, the reopen already queued another rebuild
+                building = null;
+                return;
+            }
+            current = next;
+            building = null;
+            trusted = true;
+            lastRebuildAt = Instant.now();
+        } finally {
+            stateLock.unlock();
+        }
+        long idCount = next.count.sum();
+        log.info("Rebuilt the completed-key filter with {} ids in {} ms, estimated false-positive rate {}",
+                idCount, (System.nanoTime() - startedAt) / 1_000_000, getEstimatedFalsePositiveRate());
+        if (idCount > capacity) {
+            log.warn("Completed-key filter holds {} ids, more than the {} that fit in {} bytes at a false-positive rate of {}",
+                    idCount, capacity, maximumBytes, falsePositiveRate);
+        }
+    }
+
+    /**
+     * Bit array with lock-free adds. Bit positions are derived from two 64-bit
+     * hashes of the id by double hashing.
+     */
+    private static final class Bits {
+
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashFunctions;
+        private final LongAdder count = new LongAdder();
+
+        Bits(long bitCount, int hashFunctions) {
+            this.words = new AtomicLongArray((int) Math.min(bitCount / Long.SIZE, Integer.MAX_VALUE));
+            this.bitCount = (long) words.length() * Long.SIZE;
+            this.hashFunctions = hashFunctions;
+        }
+
+        void add(String id) {
+            long h1 = hash(id);
+            long h2 = fmix64(h1 ^ 0xc2b2ae3d27d4eb4fL) | 1;
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                if ((words.get(word) & mask) == 0) {
+                    words.getAndAccumulate(word, mask, (value, m) -> value | m);
+                }
+            }
+            count.increment();
+        }
+
+        boolean mightContain(String id) {
+            long h1 = hash(id);
+            long h2 = fmix64(h1 ^ 0xc2b2ae3d27d4eb4fL) | 1;
+            for (int i = 0; i < hashFunctions; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // FNV-1a over the chars, then mixed, ids are already hash digests so the spread only needs to survive the encoding
+        private static long hash(String id) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < id.length(); i++) {
+                hash ^= id.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return fmix64(hash);
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+}
@@ -1,20 +1,37 @@
 package microservices.helper.idempotency.cache;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import microservices.helper.idempotency.entity.IdempotentOperationConfig;
-import microservices.helper.idempotency.repository.IdempotentOperationConfigRepository;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+import microservices.helper.idempotency.store.IdempotencyStore;
 
+/**
+ * Node-local view of the idempotent_operation_config collection. Reads go to an
+ * immutable snapshot map that is swapped atomically, so the request path never
+ * touches MongoDB. Unknown operations are registered in the background and the
+ * snapshot is re-synced with the collection on a fixed delay.
+ */
 @Component
 @Slf4j
 public class IdempotentOperationConfigCache {
@@ -22,62 +39,197 @@ public class IdempotentOperationConfigCache {
     @Value("${idempotent.lock-duration}")
     private Duration lockDuration;
 
-    private final List<IdempotentOperationConfig> operationConfigList = new CopyOnWriteArrayList<>();
-    private final IdempotentOperationConfigRepository idempotentOperationConfigRepository;
+    @Value("${idempotent.lock-duration-learning.apply}")
+    private boolean applyLearnedLockDuration;
+
+    @Value("${idempotent.result-cache.expire-after-write}")
+    private Duration resultCacheDuration;
+
+    @Value("${idempotent.retention.default-duration}")
+    private Duration retentionDuration;
+
+    @Value("${idempotent.result-compression.threshold-bytes}")
+    private int resultCompressionThreshold;
+
+    @Value("${idempotent.consistency.default-profile}")
+    private ConsistencyProfile consistencyProfile;
+
+    private final AtomicReference<Map<OperationKey, IdempotentOperationConfig>> snapshot = new AtomicReference<>(Map.of());
+    private final Set<OperationKey> pendingRegistrations = ConcurrentHashMap.newKeySet();
+    private final ExecutorService registrationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "operation-config-registration");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final IdempotencyStore idempotencyStore;
 
-    public IdempotentOperationConfigCache(IdempotentOperationConfigRepository idempotentOperationConfigRepository) {
-        this.idempotentOperationConfigRepository = idempotentOperationConfigRepository;
+    public IdempotentOperationConfigCache(IdempotencyStore idempotencyStore) {
+        this.idempotencyStore = idempotencyStore;
     }
 
     @PostConstruct
     private void loadCache() {
-        operationConfigList.addAll(idempotentOperationConfigRepository.findAll());
+        snapshot.set(toSnapshot(idempotencyStore.findConfigs()));
+        log.info("Loaded {} idempotent operation configs", snapshot.get().size());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        registrationExecutor.shutdown();
     }
 
     public Duration getLockDuration(String service, String operation) {
-        IdempotentOperationConfig operationConfig = findInCurrentList(service, operation);
-        if (operationConfig != null) {
+        OperationKey key = new OperationKey(service, operation);
+        IdempotentOperationConfig operationConfig = snapshot.get().get(key);
+        if (operationConfig == null) {
+            registerAsync(key);
+        } else if (applyLearnedLockDuration && operationConfig.getLearnedLockDuration() != null) {
+            return operationConfig.getLearnedLockDuration();
+        } else if (operationConfig.getLockDuration() != null) {
             return operationConfig.getLockDuration();
         }
-        IdempotentOperationConfig operationConfigInDB = findInDB(service, operation);
-        if (operationConfigInDB != null) {
-            return operationConfigInDB.getLockDuration();
-        }
-        saveNewOperationConfig(service, operation);
         return lockDuration; // Default value
     }
-    
-    private IdempotentOperationConfig findInCurrentList(String service, String operation) {
-        for (IdempotentOperationConfig operationConfig : operationConfigList) {
-            if (operationConfig.getService().equals(service) && operationConfig.getOperation().equals(operation)) {
-                return operationConfig;
-            }
+
+    // Never registers the operation, this is called on every result cache write
+    public Duration getResultCacheDuration(String service, String operation) {
+        IdempotentOperationConfig operationConfig = snapshot.get().get(new OperationKey(service, operation));
+        if (operationConfig != null && operationConfig.getResultCacheDuration() != null) {
+            return operationConfig.getResultCacheDuration();
+        }
+        return resultCacheDuration; // Default value
+    }
+
+    // Never registers the operation, a zero or negative retention keeps the documents of the operation forever
+    public Duration getRetentionDuration(String service, String operation) {
+        IdempotentOperationConfig operationConfig = snapshot.get().get(new OperationKey(service, operation));
+        if (operationConfig != null && operationConfig.getRetentionDuration() != null) {
+            return operationConfig.getRetentionDuration();
+        }
+        return retentionDuration; // Default value
+    }
+
+    // Never registers the operation, results of at least this many UTF-8 bytes are stored compressed
+    public int getResultCompressionThreshold(String service, String operation) {
+        IdempotentOperationConfig operationConfig = snapshot.get().get(new OperationKey(service, operation));
+        if (operationConfig != null && operationConfig.getResultCompressionThreshold() != null) {
+            return operationConfig.getResultCompressionThreshold();
+        }
+        return resultCompressionThreshold; // Default value
+    }
+
+    // Never registers the operation, the profile its result lookups, lock inserts and completion writes use
+    public ConsistencyProfile getConsistencyProfile(String service, String operation) {
+        IdempotentOperationConfig operationConfig = snapshot.get().get(new OperationKey(service, operation));
+        if (operationConfig != null && operationConfig.getConsistencyProfile() != null) {
+            return operationConfig.getConsistencyProfile();
         }
-        return null;
+        return consistencyProfile; // Default value
     }
 
-    private IdempotentOperationConfig findInDB(String service, String operation) {
-        Optional<IdempotentOperationConfig> operationConfigOpt = idempotentOperationConfigRepository.findByServiceAndOperation(service, operation);
-        if (operationConfigOpt.isPresent()) {
-            operationConfigList.add(operationConfigOpt.get());
-            return operationConfigOpt.get();
-        } else {
+    // The expireAt stamped on a document written at writtenAt, null when its operation keeps documents forever
+    public Instant getExpireAt(String service, String operation, Instant writtenAt) {
+        Duration retention = getRetentionDuration(service, operation);
+        if (retention == null || retention.isZero() || retention.isNegative()) {
             return null;
         }
+        return writtenAt.plus(retention);
+    }
+
+    // Picks up lockDuration edits made by operators, registrations and learned lock durations written by other nodes
+    @Scheduled(fixedDelayString = "${idempotent.config-cache.refresh-interval}", initialDelayString = "${idempotent.config-cache.refresh-interval}")
+    public void refresh() {
+        Map<OperationKey, IdempotentOperationConfig> read = snapshot.get();
+        Map<OperationKey, IdempotentOperationConfig> latest;
+        try {
+            latest = toSnapshot(idempotencyStore.findConfigs());
+        } catch (Exception e) {
+            log.error("Failed to refresh idempotent operation configs, keeping the current snapshot", e);
+            return;
+        }
+        Map<OperationKey, IdempotentOperationConfig> refreshed = snapshot.updateAndGet(current -> keepRegistrations(read, current, latest));
+        if (!read.equals(refreshed)) {
+            long changed = refreshed.entrySet().stream().filter(entry -> !entry.getValue().equals(read.get(entry.getKey()))).count();
+            long removed = read.keySet().stream().filter(key -> !refreshed.containsKey(key)).count();
+            log.info("Refreshed idempotent operation configs: {} added or changed, {} removed", changed, removed);
+        }
+    }
+
+    // A registration published while the configs were read may be missing from them, its entry is kept until the next refresh
+    private static Map<OperationKey, IdempotentOperationConfig> keepRegistrations(Map<OperationKey, IdempotentOperationConfig> read,
+                                                                                 Map<OperationKey, IdempotentOperationConfig> current,
+                                                                                 Map<OperationKey, IdempotentOperationConfig> latest) {
+        Map<OperationKey, IdempotentOperationConfig> next = null;
+        for (Map.Entry<OperationKey, IdempotentOperationConfig> entry : current.entrySet()) {
+            // Entries are never modified in place, a different instance means it was published after the read
+            if (!latest.containsKey(entry.getKey()) && read.get(entry.getKey()) != entry.getValue()) {
+                if (next == null) {
+                    next = new HashMap<>(latest);
+                }
+                next.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return next == null ? latest : Map.copyOf(next);
+    }
+
+    // At most one registration per (service, operation) is in flight on this node
+    private void registerAsync(OperationKey key) {
+        if (!pendingRegistrations.add(key)) {
+            return;
+        }
+        try {
+            registrationExecutor.execute(() -> register(key));
+        } catch (RejectedExecutionException e) {
+            pendingRegistrations.remove(key);
+            log.warn("Skipped registration of idempotent operation config for service: {}, operation: {}", key.service(), key.operation());
+        }
+    }
+
+    private void register(OperationKey key) {
+        try {
+            // A caller that missed the snapshot just before the previous registration was published queues it again
+            if (snapshot.get().containsKey(key)) {
+                return;
+            }
+            Optional<IdempotentOperationConfig> operationConfigInDB = idempotencyStore.findConfig(key.service(), key.operation());
+            IdempotentOperationConfig operationConfig = operationConfigInDB.isPresent() ? operationConfigInDB.get() : saveNewOperationConfig(key);
+            if (operationConfig != null) {
+                snapshot.updateAndGet(current -> {
+                    Map<OperationKey, IdempotentOperationConfig> next = new HashMap<>(current);
+                    next.put(key, operationConfig);
+                    return Map.copyOf(next);
+                });
+            }
+        } catch (Exception e) {
+            log.error("Failed to register idempotent operation config for service: {}, operation: {}", key.service(), key.operation(), e);
+        } finally {
+            pendingRegistrations.remove(key);
+        }
     }
 
-    private void saveNewOperationConfig(String service, String operation) {
+    private IdempotentOperationConfig saveNewOperationConfig(OperationKey key) {
         IdempotentOperationConfig newOperationConfig = new IdempotentOperationConfig();
         newOperationConfig.setId(UUID.randomUUID().toString());
-        newOperationConfig.setService(service);
-        newOperationConfig.setOperation(operation);
+        newOperationConfig.setService(key.service());
+        newOperationConfig.setOperation(key.operation());
         newOperationConfig.setLockDuration(lockDuration);
         try {
-            idempotentOperationConfigRepository.save(newOperationConfig);
-            operationConfigList.add(newOperationConfig);
-        } catch (Exception e) {
-            log.error("failed to save idempotent operation config");
+            return idempotencyStore.insertConfig(newOperationConfig);
+        } catch (DuplicateKeyException e) {
+            // Another node registered the same operation first
+            return idempotencyStore.findConfig(key.service(), key.operation()).orElse(null);
+        }
+    }
+
+    private static Map<OperationKey, IdempotentOperationConfig> toSnapshot(List<IdempotentOperationConfig> operationConfigs) {
+        Map<OperationKey, IdempotentOperationConfig> operationConfigMap = new HashMap<>();
+        for (IdempotentOperationConfig operationConfig : operationConfigs) {
+            operationConfigMap.put(new OperationKey(operationConfig.getService(), operationConfig.getOperation()), operationConfig);
         }
+        return Map.copyOf(operationConfigMap);
+    }
+
+    private record OperationKey(String service, String operation) {
     }
 
 }
@@ -0,0 +1,55 @@
+package microservices.helper.idempotency.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+
+/**
+ * A SUCCESS replay served from the off-heap result cache. Its
+ * idempotentOperationResult is never materialized, the serialized response is
+ * written with writeTo instead. The slab holding the response cannot be reused
+ * until this result is closed.
+ */
+public class OffHeapCachedResult extends IdempotentOperationResult implements AutoCloseable {
+
+    private final OffHeapResultCache.Slab slab;
+    private final ByteBuffer response;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    OffHeapCachedResult(OffHeapResultCache.Slab slab, ByteBuffer response, String service, String operation, String idempotencyKey) {
+        this.slab = slab;
+        this.response = response;
+        setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        setService(service);
+        setOperation(operation);
+        setIdempotencyKey(idempotencyKey);
+    }
+
+    // Size of the JSON response in bytes
+    public int getContentLength() {
+        return response.remaining();
+    }
+
+    // Copies the response in chunks of at most 8 KB, the stream is left open
+    public void writeTo(OutputStream outputStream) throws IOException {
+        ByteBuffer remaining = response.duplicate();
+        WritableByteChannel channel = Channels.newChannel(outputStream);
+        while (remaining.hasRemaining()) {
+            channel.write(remaining);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            slab.unpin();
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package microservices.helper.idempotency.cache;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.model.OffHeapResultCacheStats;
+
+/**
+ * Off-heap tier for replays of large results, keyed by the hashed key. The
+ * complete JSON response of a SUCCESS replay is serialized once and kept in
+ * direct ByteBuffer slabs, so cached results add nothing to the heap G1 has to
+ * mark and copy, and a hit is copied from its slab to the HTTP response without
+ * building the result String again. Entries are appended to the current slab;
+ * once maximum-bytes is allocated the oldest slab no response is being written
+ * from is emptied and reused, which evicts its entries. Only responses of at
+ * least minimum-entry-bytes are kept, smaller ones stay in the on-heap cache.
+ */
+@Component
+@Slf4j
+public class OffHeapResultCache {
+
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int slabBytes;
+    private final int minimumEntryBytes;
+    private final Slab[] slabs;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder recycledSlabCount = new LongAdder();
+
+    // Slabs are allocated and recycled in ring order under the lock of this cache
+    private int currentSlab = -1;
+
+    public OffHeapResultCache(IdempotentOperationConfigCache idempotentOperationConfigCache,
+                              ObjectMapper objectMapper,
+                              @Value("${idempotent.result-cache.off-heap.enabled}") boolean enabled,
+                              @Value("${idempotent.result-cache.off-heap.maximum-bytes}") long maximumBytes,
+                              @Value("${idempotent.result-cache.off-heap.slab-bytes}") int slabBytes,
+                              @Value("${idempotent.result-cache.off-heap.minimum-entry-bytes}") int minimumEntryBytes) {
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.slabBytes = slabBytes;
+        this.minimumEntryBytes = minimumEntryBytes;
+        this.slabs = new Slab[enabled ? (int) Math.max(1, Math.min(Integer.MAX_VALUE, maximumBytes / slabBytes)) : 0];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The returned result pins its slab until it is closed, it must be closed once its response is written
+    public Optional<OffHeapCachedResult> get(String hashedKey) {
+        if (!enabled || hashedKey == null) {
+            return Optional.empty();
+        }
+        Entry entry = entries.get(hashedKey);
+        if (entry != null && entry.isExpired()) {
+            entries.remove(hashedKey, entry);
+            entry = null;
+        }
+        if (entry == null || !entry.slab().pin(entry.generation())) {
+            missCount.increment();
+            return Optional.empty();
+        }
+        hitCount.increment();
+        return Optional.of(new OffHeapCachedResult(entry.slab(), entry.slab().buffer.slice(entry.offset(), entry.length()),
+                entry.service(), entry.operation(), entry.idempotencyKey()));
+    }
+
+    // Takes the response built by getCachedResult, so the bytes are exactly what the controller would have written
+    public void put(String hashedKey, IdempotentOperationResult result) {
+        if (!enabled || hashedKey == null || result.getIdempotentOperationResult() == null) {
+            return;
+        }
+        // A char encodes to at most three UTF-8 bytes, so shorter results are below the minimum without serializing them
+        if (result.getIdempotentOperationResult().length() < minimumEntryBytes / 3 || isCached(hashedKey)) {
+            return;
+        }
+        Duration ttl = idempotentOperationConfigCache.getResultCacheDuration(result.getService(), result.getOperation());
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        byte[] response;
+        try {
+            response = objectMapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize result for service: {}, operation: {}", result.getService(), result.getOperation(), e);
+            return;
+        }
+        if (response.length < minimumEntryBytes) {
+            return;
+        }
+        if (response.length > slabBytes) {
+            log.debug("Result for service: {}, operation: {} is too large to cache off heap ({} bytes)", result.getService(), result.getOperation(), response.length);
+            return;
+        }
+        append(hashedKey, result, response, System.nanoTime() + ttl.toNanos());
+    }
+
+    public OffHeapResultCacheStats getStats() {
+        OffHeapResultCacheStats output = new OffHeapResultCacheStats();
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        output.setEnabled(enabled);
+        output.setHitCount(hits);
+        output.setMissCount(misses);
+        output.setHitRate(hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        output.setEvictionCount(evictionCount.sum());
+        output.setRecycledSlabCount(recycledSlabCount.sum());
+        output.setEntryCount(entries.size());
+        output.setMaximumBytes((long) slabs.length * slabBytes);
+        synchronized (this) {
+            for (Slab slab : slabs) {
+                if (slab != null) {
+                    output.setAllocatedBytes(output.getAllocatedBytes() + slabBytes);
+                    output.setUsedBytes(output.getUsedBytes() + slab.position);
+                }
+            }
+        }
+        return output;
+    }
+
+    private boolean isCached(String hashedKey) {
+        Entry entry = entries.get(hashedKey);
+        return entry != null && !entry.isExpired() && entry.generation() == entry.slab().generation;
+    }
+
+    private synchronized void append(String hashedKey, IdempotentOperationResult result, byte[] response, long expiresAtNanos) {
+        Slab slab = currentSlab >= 0 ? slabs[currentSlab] : null;
+        if (slab == null || slabBytes - slab.position < response.length) {
+            slab = nextSlab();
+            if (slab == null) {
+                log.debug("Every off-heap slab is being read from, result for service: {}, operation: {} is not cached", result.getService(), result.getOperation());
+                return;
+            }
+        }
+        int offset = slab.position;
+        slab.buffer.put(offset, response);
+        slab.position += response.length;
+        slab.keys.add(hashedKey);
+        // Publishing the entry through the map makes the bytes written above visible to readers
+        entries.put(hashedKey, new Entry(slab, slab.generation, offset, response.length, expiresAtNanos,
+                result.getService(), result.getOperation(), result.getIdempotencyKey()));
+    }
+
+    // The next slab in ring order, allocated on first use, otherwise the oldest one that is not pinned, emptied
+    private Slab nextSlab() {
+        for (int i = 1; i <= slabs.length; i++) {
+            int index = Math.floorMod(currentSlab + i, slabs.length);
+            if (slabs[index] == null) {
+                slabs[index] = new Slab(ByteBuffer.allocateDirect(slabBytes));
+                currentSlab = index;
+                return slabs[index];
+            }
+            if (slabs[index].tryRecycle()) {
+                evict(slabs[index]);
+                currentSlab = index;
+                return slabs[index];
+            }
+        }
+        return null;
+    }
+
+    private void evict(Slab slab) {
+        for (String hashedKey : slab.keys) {
+            // The key may have been cached again in a newer slab meanwhile
+            if (entries.computeIfPresent(hashedKey, (key, entry) -> entry.slab() == slab ? null : entry) == null) {
+                evictionCount.increment();
+            }
+        }
+        slab.keys.clear();
+        recycledSlabCount.increment();
+    }
+
+    private record Entry(Slab slab, int generation, int offset, int length, long expiresAtNanos,
+                         String service, String operation, String idempotencyKey) {
+
+        private boolean isExpired() {
+            return expiresAtNanos - System.nanoTime() <= 0;
+        }
+    }
+
+    static final class Slab {
+
+        private final ByteBuffer buffer;
+        // Responses being written from this slab, or -1 while it is emptied
+        private final AtomicInteger pins = new AtomicInteger();
+        private final List<String> keys = new ArrayList<>();
+        private volatile int generation;
+        private int position;
+
+        private Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // Fails once the slab was emptied after the entry was written, a pinned slab is not emptied
+        private boolean pin(int entryGeneration) {
+            int current;
+            do {
+                current = pins.get();
+                if (current < 0 || generation != entryGeneration) {
+                    return false;
+                }
+            } while (!pins.compareAndSet(current, current + 1));
+            if (generation != entryGeneration) {
+                unpin();
+                return false;
+            }
+            return true;
+        }
+
+        void unpin() {
+            pins.decrementAndGet();
+        }
+
+        private boolean tryRecycle() {
+            if (!pins.compareAndSet(0, -1)) {
+                return false;
+            }
+            generation++;
+            position = 0;
+            pins.set(0);
+            return true;
+        }
+    }
+
+}
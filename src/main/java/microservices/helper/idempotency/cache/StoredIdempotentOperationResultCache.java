@@ -0,0 +1,129 @@
+package microservices.helper.idempotency.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.model.ResultCacheStats;
+
+/**
+ * Node-local near-cache in front of the stored_idempotent_operation_result
+ * collection, keyed by the hashed key. Stored results are never updated once
+ * written, so entries only leave the cache by expiry or eviction.
+ */
+@Component
+@Slf4j
+public class StoredIdempotentOperationResultCache {
+
+    // Rough per-entry cost of the entry, the entity and its four String headers
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final boolean enabled;
+    private final long maximumEntryBytes;
+    private final Cache<String, CachedResult> cache;
+
+    public StoredIdempotentOperationResultCache(IdempotentOperationConfigCache idempotentOperationConfigCache,
+                                                @Value("${idempotent.result-cache.enabled}") boolean enabled,
+                                                @Value("${idempotent.result-cache.maximum-bytes}") long maximumBytes,
+                                                @Value("${idempotent.result-cache.maximum-entry-bytes}") long maximumEntryBytes) {
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.enabled = enabled;
+        this.maximumEntryBytes = maximumEntryBytes;
+        // Caffeine evicts with W-TinyLFU, so a burst of one-off keys cannot flush the hot retried keys
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, CachedResult value) -> value.weight())
+                .expireAfter(new CachedResultExpiry())
+                .recordStats()
+                .build();
+    }
+
+    public Optional<StoredIdempotentOperationResult> get(String hashedKey) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        CachedResult cachedResult = cache.getIfPresent(hashedKey);
+        return cachedResult != null ? Optional.of(cachedResult.storedResult()) : Optional.empty();
+    }
+
+    public void put(StoredIdempotentOperationResult storedResult) {
+        put(storedResult.getId(), storedResult);
+    }
+
+    // A result found under its legacy id is cached under the current id, so later lookups skip both reads
+    public void put(String hashedKey, StoredIdempotentOperationResult storedResult) {
+        if (!enabled || hashedKey == null) {
+            return;
+        }
+        int weight = weigh(storedResult);
+        if (weight > maximumEntryBytes) {
+            log.debug("Result for service: {}, operation: {} is too large to cache ({} bytes)", storedResult.getService(), storedResult.getOperation(), weight);
+            return;
+        }
+        Duration ttl = idempotentOperationConfigCache.getResultCacheDuration(storedResult.getService(), storedResult.getOperation());
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        cache.put(hashedKey, new CachedResult(storedResult, weight, ttl.toNanos()));
+    }
+
+    public ResultCacheStats getStats() {
+        CacheStats stats = cache.stats();
+        ResultCacheStats output = new ResultCacheStats();
+        output.setEnabled(enabled);
+        output.setHitCount(stats.hitCount());
+        output.setMissCount(stats.missCount());
+        output.setHitRate(stats.hitRate());
+        output.setEvictionCount(stats.evictionCount());
+        output.setEvictionWeight(stats.evictionWeight());
+        output.setEstimatedSize(cache.estimatedSize());
+        output.setWeightedSize(cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L));
+        return output;
+    }
+
+    // Strings are counted at two bytes per char, which is the worst case for compact strings
+    private int weigh(StoredIdempotentOperationResult storedResult) {
+        long chars = length(storedResult.getId()) + length(storedResult.getService()) + length(storedResult.getOperation())
+                + length(storedResult.getIdempotencyKey()) + length(storedResult.getIdempotentOperationResult());
+        return (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD_BYTES + 2 * chars);
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private record CachedResult(StoredIdempotentOperationResult storedResult, int weight, long ttlNanos) {
+    }
+
+    // Per-entry TTL, resolved from the operation config when the entry is written
+    private static final class CachedResultExpiry implements Expiry<String, CachedResult> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedResult value, long currentTime) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedResult value, long currentTime, long currentDuration) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedResult value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package microservices.helper.idempotency.completion;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.cache.CompletedKeyFilter;
+import microservices.helper.idempotency.concurrency.InFlightKeyTable;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+/**
+ * Wakes the waiters of this node when another node completes an operation,
+ * frees the key if this node still answers its lock locally, and adds stored
+ * results to the completed-key filter.
+ * One change stream on the database follows the inserts into
+ * stored_idempotent_operation_result, whose _id is the hashed key, and into
+ * failed_idempotent_operation_result, whose _id is the idempotencyId, and only
+ * their document keys are sent. Change streams need a replica set, on a
+ * standalone server waiters on other nodes are woken by the lock expiry or
+ * their deadline.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.mode", havingValue = "collections", matchIfMissing = true)
+@ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "mongo", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class CompletionChangeStreamListener {
+
+    private final MongoTemplate mongoTemplate;
+    private final CompletionWaiterRegistry completionWaiterRegistry;
+    private final InFlightKeyTable inFlightKeyTable;
+    private final CompletedKeyFilter completedKeyFilter;
+    private final boolean enabled;
+    private final Duration retryInterval;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public CompletionChangeStreamListener(MongoTemplate mongoTemplate,
+                                          CompletionWaiterRegistry completionWaiterRegistry,
+                                          InFlightKeyTable inFlightKeyTable,
+                                          CompletedKeyFilter completedKeyFilter,
+                                          @Value("${idempotent.wait.change-stream.enabled}") boolean enabled,
+                                          @Value("${idempotent.wait.change-stream.retry-interval}") Duration retryInterval) {
+        this.mongoTemplate = mongoTemplate;
+        this.completionWaiterRegistry = completionWaiterRegistry;
+        this.inFlightKeyTable = inFlightKeyTable;
+        this.completedKeyFilter = completedKeyFilter;
+        this.enabled = enabled;
+        this.retryInterval = retryInterval;
+    }
+
+    @PostConstruct
+    private void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listenLoop, "completion-change-stream");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    private void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        listener.join(retryInterval.toMillis());
+    }
+
+    private void listenLoop() {
+        String storedResultCollection = mongoTemplate.getCollectionName(StoredIdempotentOperationResult.class);
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.and(
+                        Filters.eq("operationType", "insert"),
+                        Filters.in("ns.coll", storedResultCollection,
+                                mongoTemplate.getCollectionName(FailedIdempotentOperationResult.class)))),
+                // Inserts carry the full document, a stored result can be megabytes
+                Aggregates.project(Projections.include("operationType", "ns", "documentKey")));
+        while (running) {
+            // tryNext returns after maxAwaitTime without events, so a stop is noticed within a second
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = mongoTemplate.getDb().watch(pipeline)
+                    .maxAwaitTime(1, TimeUnit.SECONDS)
+                    .cursor()) {
+                log.info("Following completions on the change stream");
+                completedKeyFilter.streamOpened();
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) {
+                        signal(change.getDocumentKey(), change.getNamespace() != null
+                                && storedResultCollection.equals(change.getNamespace().getCollectionName()));
+                    }
+                }
+            } catch (Exception e) {
+                completedKeyFilter.streamLost();
+                // The driver already resumed transient errors, completions missed until the restart wake waiters by their timers
+                if (!running) {
+                    return;
+                }
+                log.warn("Completion change stream failed, retrying in {}", retryInterval, e);
+                sleep();
+            }
+        }
+    }
+
+    private void signal(BsonDocument documentKey, boolean storedResult) {
+        BsonValue id = documentKey != null ? documentKey.get("_id") : null;
+        if (id != null && id.isString()) {
+            if (storedResult) {
+                completedKeyFilter.add(id.asString().getValue());
+            }
+            inFlightKeyTable.release(id.asString().getValue());
+            completionWaiterRegistry.signal(id.asString().getValue());
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(retryInterval.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package microservices.helper.idempotency.completion;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Node-local registry of requests waiting for an operation to complete. A
+ * waiter is a signal registered under the hashed key of the operation and the
+ * idempotencyId of the lock it waits for, completing either key completes the
+ * signal. At most max-waiters signals are registered at a time, and a signal
+ * leaves the registry as soon as it completes or is cancelled, so the memory
+ * held does not depend on how long callers wait.
+ */
+@Component
+public class CompletionWaiterRegistry {
+
+    private final int maxWaiters;
+    private final Map<String, Set<CompletableFuture<Void>>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+
+    public CompletionWaiterRegistry(MeterRegistry meterRegistry,
+                                    @Value("${idempotent.wait.max-waiters}") int maxWaiters) {
+        this.maxWaiters = maxWaiters;
+        Gauge.builder("idempotency.wait.waiters", waiterCount, AtomicInteger::get)
+                .description("Requests waiting on this node for an operation to complete")
+                .register(meterRegistry);
+    }
+
+    // Null when max-waiters requests are already waiting
+    public CompletableFuture<Void> register(String... keys) {
+        if (waiterCount.incrementAndGet() > maxWaiters) {
+            waiterCount.decrementAndGet();
+            return null;
+        }
+        CompletableFuture<Void> signal = new CompletableFuture<>();
+        for (String key : keys) {
+            if (key != null) {
+                // Added inside compute, so a concurrent removal of the last waiter of the key cannot drop it
+                waiters.compute(key, (k, signals) -> {
+                    Set<CompletableFuture<Void>> keySignals = signals != null ? signals : ConcurrentHashMap.newKeySet();
+                    keySignals.add(signal);
+                    return keySignals;
+                });
+            }
+        }
+        signal.whenComplete((ignored, cancelled) -> {
+            for (String key : keys) {
+                if (key != null) {
+                    waiters.computeIfPresent(key, (k, signals) -> {
+                        signals.remove(signal);
+                        return signals.isEmpty() ? null : signals;
+                    });
+                }
+            }
+            waiterCount.decrementAndGet();
+        });
+        return signal;
+    }
+
+    // Called for every completion, on this node or seen on the change stream, and cheap when nobody waits
+    public void signal(String key) {
+        Set<CompletableFuture<Void>> signals = waiters.remove(key);
+        if (signals != null) {
+            signals.forEach(signal -> signal.complete(null));
+        }
+    }
+
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+
+}
@@ -0,0 +1,139 @@
+package microservices.helper.idempotency.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.ResultCodec;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+
+/**
+ * Stores large idempotentOperationResult payloads of
+ * stored_idempotent_operation_result as zlib-deflated BSON binary, marked with
+ * resultCodec. The mapped document is rewritten right before it is written and
+ * right after it is loaded, so entities, the near-cache and the API only ever
+ * see the plain string, and a result is inflated once per read from MongoDB.
+ * Documents without resultCodec, including every document written before
+ * compression existed, are read as they are. Servlet inserts, bulk inserts and
+ * the reactive template all publish these mapping events.
+ */
+@Component
+public class StoredResultCompressionListener extends AbstractMongoEventListener<StoredIdempotentOperationResult> {
+
+    static final String RESULT = "idempotentOperationResult";
+    static final String RESULT_CODEC = "resultCodec";
+
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final IdempotencyMetrics idempotencyMetrics;
+    private final boolean enabled;
+    private final int level;
+
+    public StoredResultCompressionListener(IdempotentOperationConfigCache idempotentOperationConfigCache,
+                                           IdempotencyMetrics idempotencyMetrics,
+                                           @Value("${idempotent.result-compression.enabled}") boolean enabled,
+                                           @Value("${idempotent.result-compression.level}") int level) {
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.idempotencyMetrics = idempotencyMetrics;
+        this.enabled = enabled;
+        this.level = level;
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<StoredIdempotentOperationResult> event) {
+        Document document = event.getDocument();
+        if (!enabled || document == null || !(document.get(RESULT) instanceof String result)) {
+            return;
+        }
+        String service = document.getString("service");
+        String operation = document.getString("operation");
+        // A char encodes to at most three UTF-8 bytes, so shorter strings are below the threshold without encoding them
+        int threshold = idempotentOperationConfigCache.getResultCompressionThreshold(service, operation);
+        if (threshold <= 0 || result.length() < threshold / 3) {
+            return;
+        }
+        byte[] utf8 = result.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length < threshold) {
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] compressed = deflate(utf8);
+        long nanos = System.nanoTime() - start;
+        if (compressed.length >= utf8.length) {
+            return; // Incompressible, stored as it is
+        }
+        document.put(RESULT, new Binary(compressed));
+        document.put(RESULT_CODEC, ResultCodec.DEFLATE.getValue());
+        idempotencyMetrics.recordCompression(service, operation, utf8.length, compressed.length, nanos);
+    }
+
+    // Runs even when compression is disabled, so results stored compressed before stay readable
+    @Override
+    public void onAfterLoad(AfterLoadEvent<StoredIdempotentOperationResult> event) {
+        Document document = event.getDocument();
+        if (document == null || document.get(RESULT_CODEC) == null) {
+            return;
+        }
+        Object codec = document.remove(RESULT_CODEC);
+        if (!ResultCodec.DEFLATE.getValue().equals(codec) || !(document.get(RESULT) instanceof Binary compressed)) {
+            throw new IdempotencyException("Unsupported stored result codec: " + codec, ExecutionResult.OPERATION_FAILED);
+        }
+        long start = System.nanoTime();
+        String result = new String(inflate(compressed.getData()), StandardCharsets.UTF_8);
+        idempotencyMetrics.recordDecompression(document.getString("service"), document.getString("operation"), System.nanoTime() - start);
+        document.put(RESULT, result);
+    }
+
+    private byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            // Results that do not shrink are stored plain, so the buffer never grows and such input is returned as it is
+            byte[] buffer = new byte[input.length];
+            int length = 0;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return deflater.finished() ? Arrays.copyOf(buffer, length) : input;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated deflate stream");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IdempotencyException("Failed to decompress stored result", e, ExecutionResult.OPERATION_FAILED);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
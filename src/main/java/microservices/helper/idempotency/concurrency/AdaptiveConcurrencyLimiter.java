@@ -0,0 +1,248 @@
+package microservices.helper.idempotency.concurrency;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.enums.AdmissionPriority;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+import microservices.helper.idempotency.model.AdaptiveConcurrencyStats;
+
+/**
+ * Adaptive bound on the acquire and save requests this node works on at once.
+ * The limit follows the gradient between the long-term and the recent
+ * round-trip time of the MongoDB commands, as measured by the driver: while
+ * commands take as long as usual it grows by about its square root per
+ * update, and once they start queueing in the driver or on the server it
+ * shrinks in proportion, down to min-limit. Requests over the limit are
+ * rejected right away with 503 and a Retry-After instead of queueing behind
+ * the slow ones. Lock acquisitions may only use acquisition-share of the
+ * limit, so that result replays and completions, which finish work that is
+ * already done or started, keep the headroom above it. Only the mongo engine
+ * has round trips to measure, the limiter stays off for the embedded ones.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter implements CommandListener {
+
+    // getMore on a change stream waits up to maxAwaitTime for events, which says nothing about load
+    private static final Set<String> IGNORED_COMMANDS = Set.of("getMore", "killCursors");
+    // The long-term RTT is averaged over about this many updates
+    private static final int LONG_TERM_WINDOW = 100;
+    // A single update shrinks the limit by at most half
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final double acquisitionShare;
+    private final long updateIntervalNanos;
+    private final Duration retryAfter;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder rttNanosSum = new LongAdder();
+    private final LongAdder rttSamples = new LongAdder();
+    private final AtomicLong nextUpdateNanos = new AtomicLong();
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final Map<AdmissionPriority, LongAdder> rejectedCounts = new EnumMap<>(AdmissionPriority.class);
+    private volatile double limit;
+    private volatile double recentRttNanos;
+    private volatile double longTermRttNanos;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      @Value("${idempotent.adaptive-concurrency.enabled}") boolean enabled,
+                                      @Value("${idempotent.storage.engine}") String engine,
+                                      @Value("${idempotent.adaptive-concurrency.initial-limit}") int initialLimit,
+                                      @Value("${idempotent.adaptive-concurrency.min-limit}") int minLimit,
+                                      @Value("${idempotent.adaptive-concurrency.max-limit}") int maxLimit,
+                                      @Value("${idempotent.adaptive-concurrency.rtt-tolerance}") double rttTolerance,
+                                      @Value("${idempotent.adaptive-concurrency.smoothing}") double smoothing,
+                                      @Value("${idempotent.adaptive-concurrency.acquisition-share}") double acquisitionShare,
+                                      @Value("${idempotent.adaptive-concurrency.update-interval}") Duration updateInterval,
+                                      @Value("${idempotent.adaptive-concurrency.retry-after}") Duration retryAfter) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled && "mongo".equals(engine);
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.acquisitionShare = acquisitionShare;
+        this.updateIntervalNanos = updateInterval.toNanos();
+        this.nextUpdateNanos.set(System.nanoTime() + updateIntervalNanos);
+        this.retryAfter = retryAfter;
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        for (AdmissionPriority priority : AdmissionPriority.values()) {
+            rejectedCounts.put(priority, new LongAdder());
+        }
+        if (enabled && !this.enabled) {
+            log.warn("Adaptive concurrency limit needs the mongo storage engine, it is disabled for engine {}", engine);
+        }
+    }
+
+    // Registered once constructed, the limit gauge holds a reference to this limiter
+    @PostConstruct
+    private void registerMeters() {
+        rejectedCounts.forEach((priority, rejectedCount) -> FunctionCounter.builder("idempotency.concurrency.rejected", rejectedCount, LongAdder::sum)
+                .description("Requests shed because the adaptive concurrency limit was reached")
+                .tag("priority", priority.getValue())
+                .register(meterRegistry));
+        Gauge.builder("idempotency.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of acquire and save requests in flight")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.concurrency.in.flight", inFlight, AtomicInteger::get)
+                .description("Acquire and save requests in flight under the adaptive limit")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admits a request, which must call {@link #release()} once it is done.
+     *
+     * @throws ServiceOverloadedException if the limit for its priority is reached
+     */
+    public void acquire(AdmissionPriority priority) {
+        if (!enabled) {
+            return;
+        }
+        int bound = priority == AdmissionPriority.LOCK_ACQUISITION ? getLockAcquisitionLimit() : getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= bound) {
+                throw reject(priority);
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                return;
+            }
+        }
+    }
+
+    // A request admitted as a result read that found no result, checked again before it inserts a lock
+    public void admitLockAcquisition() {
+        if (enabled && inFlight.get() > getLockAcquisitionLimit()) {
+            throw reject(AdmissionPriority.LOCK_ACQUISITION);
+        }
+    }
+
+    public void release() {
+        if (enabled) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        recordRoundTrip(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    // A command that timed out or failed under load took its time too
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        recordRoundTrip(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    void recordRoundTrip(String commandName, long rttNanos) {
+        if (!enabled || IGNORED_COMMANDS.contains(commandName)) {
+            return;
+        }
+        rttNanosSum.add(rttNanos);
+        rttSamples.increment();
+        long next = nextUpdateNanos.get();
+        long now = System.nanoTime();
+        if (now - next >= 0 && nextUpdateNanos.compareAndSet(next, now + updateIntervalNanos)) {
+            update();
+        }
+    }
+
+    // One step of the gradient, over the round trips measured since the previous one
+    void update() {
+        updateLock.lock();
+        try {
+            long samples = rttSamples.sumThenReset();
+            long sum = rttNanosSum.sumThenReset();
+            int peak = peakInFlight.getAndSet(inFlight.get());
+            if (samples == 0) {
+                return;
+            }
+            double recentRtt = (double) sum / samples;
+            double longTermRtt = longTermRttNanos == 0 ? recentRtt : longTermRttNanos + (recentRtt - longTermRttNanos) / LONG_TERM_WINDOW;
+            // After a long overload the baseline is pulled back faster, so the limit does not keep growing on a stale one
+            if (longTermRtt > recentRtt * 2) {
+                longTermRtt *= 0.95;
+            }
+            recentRttNanos = recentRtt;
+            longTermRttNanos = longTermRtt;
+            // Far below the limit the round trips say nothing about it
+            double current = limit;
+            if (peak < current / 2) {
+                return;
+            }
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, rttTolerance * longTermRtt / recentRtt));
+            double target = current * gradient + Math.sqrt(current);
+            double next = current * (1 - smoothing) + target * smoothing;
+            limit = Math.min(Math.max(next, minLimit), maxLimit);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getLockAcquisitionLimit() {
+        return Math.max((int) (limit * acquisitionShare), 1);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount(AdmissionPriority priority) {
+        return rejectedCounts.get(priority).sum();
+    }
+
+    public AdaptiveConcurrencyStats getStats() {
+        AdaptiveConcurrencyStats stats = new AdaptiveConcurrencyStats();
+        stats.setEnabled(enabled);
+        stats.setLimit(getLimit());
+        stats.setLockAcquisitionLimit(getLockAcquisitionLimit());
+        stats.setInFlight(getInFlight());
+        stats.setRecentRttMillis(recentRttNanos / 1_000_000.0);
+        stats.setLongTermRttMillis(longTermRttNanos / 1_000_000.0);
+        stats.setRejectedResultReads(getRejectedCount(AdmissionPriority.RESULT_READ));
+        stats.setRejectedCompletions(getRejectedCount(AdmissionPriority.COMPLETION));
+        stats.setRejectedLockAcquisitions(getRejectedCount(AdmissionPriority.LOCK_ACQUISITION));
+        return stats;
+    }
+
+    private ServiceOverloadedException reject(AdmissionPriority priority) {
+        rejectedCounts.get(priority).increment();
+        return new ServiceOverloadedException("Concurrency limit reached for " + priority.getValue() + ", retry later", retryAfter);
+    }
+
+}
@@ -0,0 +1,224 @@
+package microservices.helper.idempotency.concurrency;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+/**
+ * Node-local table of the hashed keys that are being worked on, so that a
+ * burst of duplicates arriving on the same node is absorbed before MongoDB.
+ * Concurrent result lookups for the same key share the read of the first
+ * one, and while this node holds the temp lock of a key its duplicates are
+ * answered OPERATION_ALREADY_LOCKED without a result read or a lock insert.
+ * MongoDB stays the source of truth: a lock is only answered locally until
+ * it is released on this node or seen completed on the change stream, and for
+ * at most max-lock-hold, which bounds how long a result saved through another
+ * node can be missed.
+ */
+@Component
+public class InFlightKeyTable {
+
+    private final boolean enabled;
+    private final Duration maxLockHold;
+    private final Stripe[] stripes;
+    // Failed results are published under the idempotencyId, not the hashed key
+    private final Map<String, String> hashedKeysByIdempotencyId = new ConcurrentHashMap<>();
+    private final LongAdder sharedLookupCount = new LongAdder();
+    private final LongAdder localLockHitCount = new LongAdder();
+
+    public InFlightKeyTable(MeterRegistry meterRegistry,
+                            @Value("${idempotent.in-flight.enabled}") boolean enabled,
+                            @Value("${idempotent.in-flight.stripes}") int stripes,
+                            @Value("${idempotent.in-flight.max-lock-hold}") Duration maxLockHold) {
+        this.enabled = enabled;
+        this.maxLockHold = maxLockHold;
+        // A power of two, so the stripe is picked with a mask
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(stripes, 1) * 2 - 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        FunctionCounter.builder("idempotency.in.flight.absorbed", sharedLookupCount, LongAdder::sum)
+                .description("Duplicate requests answered by the in-flight key table instead of MongoDB")
+                .tag("kind", "result_lookup")
+                .register(meterRegistry);
+        FunctionCounter.builder("idempotency.in.flight.absorbed", localLockHitCount, LongAdder::sum)
+                .description("Duplicate requests answered by the in-flight key table instead of MongoDB")
+                .tag("kind", "lock")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // The first caller runs the lookup, callers arriving while it is in flight wait for its outcome
+    public Optional<StoredIdempotentOperationResult> lookupResult(String hashedKey, Supplier<Optional<StoredIdempotentOperationResult>> lookup) {
+        if (!enabled) {
+            return lookup.get();
+        }
+        Stripe stripe = stripe(hashedKey);
+        CompletableFuture<Optional<StoredIdempotentOperationResult>> inFlight;
+        CompletableFuture<Optional<StoredIdempotentOperationResult>> own = new CompletableFuture<>();
+        stripe.lock.lock();
+        try {
+            inFlight = stripe.lookups.putIfAbsent(hashedKey, own);
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (inFlight != null) {
+            sharedLookupCount.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Optional<StoredIdempotentOperationResult> result = lookup.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            stripe.lock.lock();
+            try {
+                stripe.lookups.remove(hashedKey, own);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    public void holdLock(String hashedKey, IdempotentOperationLockTemp tempLock) {
+        if (!enabled) {
+            return;
+        }
+        Instant maxHoldUntil = Instant.now().plus(maxLockHold);
+        LocalLock localLock = new LocalLock(hashedKey, tempLock, tempLock.getExpiredAt().isBefore(maxHoldUntil) ? tempLock.getExpiredAt() : maxHoldUntil);
+        Stripe stripe = stripe(hashedKey);
+        stripe.lock.lock();
+        try {
+            purgeEnded(stripe, Instant.now());
+            LocalLock previous = stripe.locks.put(hashedKey, localLock);
+            if (previous != null) {
+                hashedKeysByIdempotencyId.remove(previous.tempLock().getIdempotencyId(), hashedKey);
+            }
+            stripe.holdOrder.addLast(localLock);
+            hashedKeysByIdempotencyId.put(tempLock.getIdempotencyId(), hashedKey);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // The temp lock this node holds for the key, null when the key is not held here or its hold has ended
+    public IdempotentOperationLockTemp getLocalLock(String hashedKey) {
+        if (!enabled) {
+            return null;
+        }
+        Stripe stripe = stripe(hashedKey);
+        stripe.lock.lock();
+        try {
+            LocalLock localLock = stripe.locks.get(hashedKey);
+            if (localLock == null || !Instant.now().isBefore(localLock.holdUntil())) {
+                return null;
+            }
+            localLockHitCount.increment();
+            return localLock.tempLock();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Key is the hashed key of a saved result or the idempotencyId of a saved failure
+    public void release(String key) {
+        if (!enabled) {
+            return;
+        }
+        String idempotencyHashedKey = hashedKeysByIdempotencyId.get(key);
+        releaseHashedKey(idempotencyHashedKey != null ? idempotencyHashedKey : key);
+    }
+
+    public int getLocalLockCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                count += stripe.locks.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    public long getSharedLookupCount() {
+        return sharedLookupCount.sum();
+    }
+
+    public long getLocalLockHitCount() {
+        return localLockHitCount.sum();
+    }
+
+    private void releaseHashedKey(String hashedKey) {
+        Stripe stripe = stripe(hashedKey);
+        stripe.lock.lock();
+        try {
+            LocalLock localLock = stripe.locks.remove(hashedKey);
+            if (localLock != null) {
+                hashedKeysByIdempotencyId.remove(localLock.tempLock().getIdempotencyId(), hashedKey);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Holds end in about insertion order, since nearly all of them end at max-lock-hold, so only the head is checked
+    private void purgeEnded(Stripe stripe, Instant now) {
+        LocalLock head;
+        while ((head = stripe.holdOrder.peekFirst()) != null && !now.isBefore(head.holdUntil())) {
+            stripe.holdOrder.pollFirst();
+            if (stripe.locks.remove(head.hashedKey(), head)) {
+                hashedKeysByIdempotencyId.remove(head.tempLock().getIdempotencyId(), head.hashedKey());
+            }
+        }
+        // Released locks are still queued, drop them once they outnumber the held ones
+        if (stripe.holdOrder.size() > 2 * stripe.locks.size() + 16) {
+            stripe.holdOrder.removeIf(localLock -> stripe.locks.get(localLock.hashedKey()) != localLock);
+        }
+    }
+
+    private Stripe stripe(String hashedKey) {
+        int hash = hashedKey.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    // ReentrantLock rather than synchronized, which pins virtual threads on Java 21
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, CompletableFuture<Optional<StoredIdempotentOperationResult>>> lookups = new HashMap<>();
+        private final Map<String, LocalLock> locks = new HashMap<>();
+        private final ArrayDeque<LocalLock> holdOrder = new ArrayDeque<>();
+    }
+
+    private record LocalLock(String hashedKey, IdempotentOperationLockTemp tempLock, Instant holdUntil) {
+    }
+
+}
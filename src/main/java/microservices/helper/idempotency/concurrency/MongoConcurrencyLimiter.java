@@ -0,0 +1,130 @@
+package microservices.helper.idempotency.concurrency;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+
+/**
+ * Bounds the number of repository calls in flight on this node. Platform
+ * threads are already bounded by the Tomcat pool, but virtual threads are not,
+ * and without this every request would queue inside the MongoDB driver for a
+ * pooled connection. Callers wait for a permit up to the acquire timeout and
+ * are then rejected with 503 instead.
+ * <p>
+ * A thread takes at most one permit at a time: the service calls take it
+ * before their first MongoDB call, so a sequence of writes is either rejected
+ * up front or runs to its end, and the repository calls made under it reuse it.
+ */
+@Component
+@Slf4j
+public class MongoConcurrencyLimiter implements MethodInterceptor {
+
+    private final boolean enabled;
+    private final int maxConcurrentOperations;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final ThreadLocal<Boolean> permitHeld = ThreadLocal.withInitial(() -> false);
+
+    public MongoConcurrencyLimiter(@Value("${spring.threads.virtual.enabled}") boolean virtualThreads,
+                                   @Value("${idempotent.virtual-threads.max-concurrent-mongo-operations}") int maxConcurrentOperations,
+                                   @Value("${idempotent.virtual-threads.mongo-acquire-timeout}") Duration acquireTimeout) {
+        this.enabled = virtualThreads && maxConcurrentOperations > 0;
+        this.maxConcurrentOperations = maxConcurrentOperations;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.permits = new Semaphore(Math.max(maxConcurrentOperations, 1), true);
+        if (enabled) {
+            log.info("Limiting concurrent MongoDB repository operations to {}", maxConcurrentOperations);
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!enabled || permitHeld.get()) {
+            return invocation.proceed();
+        }
+        if (!tryAcquire()) {
+            throw reject(invocation.getMethod().getDeclaringClass().getSimpleName() + "." + invocation.getMethod().getName());
+        }
+        boolean streaming = false;
+        permitHeld.set(true);
+        try {
+            Object result = invocation.proceed();
+            if (result instanceof Stream<?> stream) {
+                // The cursor is read after the call returned, the permit is held until the stream is closed
+                streaming = true;
+                return stream.onClose(permits::release);
+            }
+            return result;
+        } finally {
+            permitHeld.remove();
+            if (!streaming) {
+                permits.release();
+            }
+        }
+    }
+
+    // For the MongoDB calls made through a MongoTemplate instead of a repository
+    public <T> T execute(String operation, Supplier<T> call) {
+        if (!enabled || permitHeld.get()) {
+            return call.get();
+        }
+        if (!tryAcquire()) {
+            throw reject(operation);
+        }
+        permitHeld.set(true);
+        try {
+            return call.get();
+        } finally {
+            permitHeld.remove();
+            permits.release();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxConcurrentOperations() {
+        return maxConcurrentOperations;
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private boolean tryAcquire() {
+        try {
+            return permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private ServiceOverloadedException reject(String operation) {
+        rejectedCount.incrementAndGet();
+        log.warn("No MongoDB permit available for {}", operation);
+        return new ServiceOverloadedException("Too many concurrent MongoDB operations, retry later");
+    }
+
+}
@@ -0,0 +1,80 @@
+package microservices.helper.idempotency.concurrency;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams the JDK's jdk.VirtualThreadPinned events while virtual threads are
+ * enabled and logs where a virtual thread blocked while pinned to its carrier,
+ * typically inside a synchronized block or a native frame. Each pinned wait
+ * takes a carrier out of the shared pool for its whole duration.
+ */
+@Component
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(@Value("${spring.threads.virtual.enabled}") boolean virtualThreads,
+                                       @Value("${idempotent.virtual-threads.pinning-monitor.enabled}") boolean enabled,
+                                       @Value("${idempotent.virtual-threads.pinning-monitor.threshold}") Duration threshold) {
+        this.enabled = virtualThreads && enabled;
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    private void start() {
+        if (!enabled) {
+            return;
+        }
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Reporting virtual threads pinned for longer than {}", threshold);
+    }
+
+    @PreDestroy
+    private void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.incrementAndGet();
+        StringBuilder frames = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            for (RecordedFrame frame : event.getStackTrace().getFrames().stream().limit(LOGGED_FRAMES).toList()) {
+                frames.append(System.lineSeparator()).append("\tat ").append(frame.getMethod().getType().getName())
+                        .append('.').append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+            }
+        }
+        log.warn("Virtual thread pinned to its carrier for {} ms{}", event.getDuration().toMillis(), frames);
+    }
+
+}
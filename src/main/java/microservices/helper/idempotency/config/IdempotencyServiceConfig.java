@@ -6,9 +6,19 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.mongodb.client.MongoClient;
 
 import lombok.NonNull;
+import microservices.helper.idempotency.concurrency.AdaptiveConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.MongoConcurrencyLimiter;
+import microservices.helper.idempotency.service.IdempotencyService;
+import microservices.helper.idempotency.store.InMemoryLockProvider;
 import net.javacrumbs.shedlock.core.LockProvider;
 import net.javacrumbs.shedlock.provider.mongo.MongoLockProvider;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.MongoDatabaseFactory;
@@ -17,6 +27,7 @@ import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
 import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
 import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
 
 @Configuration
 public class IdempotencyServiceConfig {
@@ -46,8 +57,58 @@ public class IdempotencyServiceConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "mongo", matchIfMissing = true)
     public LockProvider lockProvider(MongoClient mongoClient) {
         return new MongoLockProvider(mongoClient.getDatabase(databaseName));
     }
 
+    // Scheduled tasks only need to exclude each other on this node when the documents are not shared
+    @Bean
+    @ConditionalOnExpression("'${idempotent.storage.engine:mongo}' != 'mongo'")
+    public LockProvider inMemoryLockProvider() {
+        return new InMemoryLockProvider();
+    }
+
+    // The adaptive limit is driven by the round-trip times the driver measures for every command
+    @Bean
+    public MongoClientSettingsBuilderCustomizer adaptiveConcurrencyLimiterCustomizer(AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter) {
+        return builder -> {
+            if (adaptiveConcurrencyLimiter.isEnabled()) {
+                builder.addCommandListener(adaptiveConcurrencyLimiter);
+            }
+        };
+    }
+
+    // Routes every blocking repository call, including the custom fragments, through the MongoDB permit limiter.
+    // The blocking services take the permit once per call, so their repository calls are never rejected halfway.
+    // They are proxied by class, so their @EventListener and @Scheduled methods outside the interface stay visible.
+    @Bean
+    public static BeanPostProcessor mongoConcurrencyLimiterPostProcessor(ObjectProvider<MongoConcurrencyLimiter> mongoConcurrencyLimiter) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactoryBean) {
+                    repositoryFactoryBean.addRepositoryFactoryCustomizer(repositoryFactory -> repositoryFactory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, repositoryInformation) -> {
+                                if (!repositoryInformation.isReactiveRepository()) {
+                                    proxyFactory.addAdvice(mongoConcurrencyLimiter.getObject());
+                                }
+                            }));
+                }
+                return bean;
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof IdempotencyService && mongoConcurrencyLimiter.getObject().isEnabled()) {
+                    ProxyFactory proxyFactory = new ProxyFactory(bean);
+                    proxyFactory.setProxyTargetClass(true);
+                    proxyFactory.addAdvice(mongoConcurrencyLimiter.getObject());
+                    return proxyFactory.getProxy();
+                }
+                return bean;
+            }
+        };
+    }
+
 }
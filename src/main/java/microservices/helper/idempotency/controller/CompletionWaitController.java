@@ -0,0 +1,67 @@
+package microservices.helper.idempotency.controller;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.service.CompletionWaitService;
+
+@RestController
+@ConditionalOnProperty(name = "idempotent.storage.mode", havingValue = "collections", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class CompletionWaitController {
+
+    // The request itself times out a little after the wait, which always ends first
+    private static final Duration ASYNC_TIMEOUT_MARGIN = Duration.ofSeconds(5);
+
+    private final CompletionWaitService completionWaitService;
+
+    public CompletionWaitController(CompletionWaitService completionWaitService) {
+        this.completionWaitService = completionWaitService;
+    }
+
+    @PostMapping("/idempotent-operation/wait")
+    public DeferredResult<ResponseEntity<IdempotentOperationResult>> waitForCompletion(@Valid @RequestBody IdempotentOperationResult idempotentOperation,
+                                                                                       @RequestParam(name = "timeoutMs", required = false) Long timeoutMs) {
+        log.info("Received wait request for idempotent operation: service={}, operation={}", idempotentOperation.getService(), idempotentOperation.getOperation());
+
+        Duration timeout = completionWaitService.getTimeout(timeoutMs != null ? Duration.ofMillis(timeoutMs) : null);
+        DeferredResult<ResponseEntity<IdempotentOperationResult>> response = new DeferredResult<>(timeout.plus(ASYNC_TIMEOUT_MARGIN).toMillis());
+        completionWaitService.waitForCompletion(idempotentOperation, timeout).whenComplete((result, error) -> {
+            if (error != null) {
+                response.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+            } else {
+                response.setResult(toResponse(result));
+            }
+        });
+        return response;
+    }
+
+    // Same statuses as the GlobalExceptionHandler gives these outcomes, a wait that timed out is still ALREADY_LOCKED
+    private static ResponseEntity<IdempotentOperationResult> toResponse(IdempotentOperationResult result) {
+        HttpStatus status = switch (ExecutionResult.valueOf(result.getExecutionResult())) {
+            case SUCCESS -> HttpStatus.OK;
+            case OPERATION_NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case OPERATION_EXPIRED -> HttpStatus.GONE;
+            case OPERATION_FAILED -> HttpStatus.INTERNAL_SERVER_ERROR;
+            default -> HttpStatus.CONFLICT;
+        };
+        return ResponseEntity.status(status).body(result);
+    }
+
+}
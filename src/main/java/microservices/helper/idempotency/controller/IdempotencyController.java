@@ -1,19 +1,33 @@
 package microservices.helper.idempotency.controller;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
+import microservices.helper.idempotency.cache.OffHeapCachedResult;
 import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationBatchRequest;
+import microservices.helper.idempotency.model.IdempotentOperationBatchResponse;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionBatchResponse;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseBatchResponse;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseResult;
 import microservices.helper.idempotency.model.IdempotentOperationResult;
 import microservices.helper.idempotency.service.IdempotencyService;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Slf4j
 public class IdempotencyController {
 
@@ -24,12 +38,22 @@ public class IdempotencyController {
     }
 
     @PostMapping("/idempotent-operation")
-    public ResponseEntity<IdempotentOperationResult> getStoredExecutionResultOrLockOperation(@Valid @RequestBody IdempotentOperationResult idempotentOperation) {
+    public ResponseEntity<IdempotentOperationResult> getStoredExecutionResultOrLockOperation(@Valid @RequestBody IdempotentOperationResult idempotentOperation,
+                                                                                             HttpServletResponse response) throws IOException {
         log.info("Received request for idempotent operation: service={}, operation={}", idempotentOperation.getService(), idempotentOperation.getOperation());
 
         IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(idempotentOperation);
 
-        if (ExecutionResult.SUCCESS.getValue().equals(result.getExecutionResult())) {
+        if (result instanceof OffHeapCachedResult offHeapResult) {
+            // Already serialized, copied from direct memory to the response without building the result String
+            try (offHeapResult) {
+                response.setStatus(HttpStatus.OK.value());
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                response.setContentLength(offHeapResult.getContentLength());
+                offHeapResult.writeTo(response.getOutputStream());
+            }
+            return null;
+        } else if (ExecutionResult.SUCCESS.getValue().equals(result.getExecutionResult())) {
             return ResponseEntity.ok(result);
         } else if (ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue().equals(result.getExecutionResult())) {
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
@@ -38,6 +62,24 @@ public class IdempotencyController {
         }
     }
 
+    @PostMapping("/idempotent-operation/batch")
+    public ResponseEntity<IdempotentOperationBatchResponse> getStoredExecutionResultsOrLockOperations(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received batch request for {} idempotent operations", batchRequest.getOperations().size());
+
+        List<IdempotentOperationResult> results = idempotencyService.getStoredExecutionResultsOrLockOperations(batchRequest.getOperations());
+
+        return ResponseEntity.ok(new IdempotentOperationBatchResponse(results));
+    }
+
+    @PostMapping("/idempotent-operation/batch/status")
+    public ResponseEntity<IdempotentOperationBatchResponse> getExecutionStatuses(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received status request for {} idempotent operations", batchRequest.getOperations().size());
+
+        List<IdempotentOperationResult> results = idempotencyService.getExecutionStatuses(batchRequest.getOperations());
+
+        return ResponseEntity.ok(new IdempotentOperationBatchResponse(results));
+    }
+
     @PostMapping("/idempotent-operation/result")
     public ResponseEntity<?> saveIdempotentOperationResult(@Valid @RequestBody IdempotentOperationResult idempotentOperation) {
         log.info("Received request to save operation result for lockId: {}", idempotentOperation.getLockId());
@@ -47,4 +89,23 @@ public class IdempotencyController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/idempotent-operation/result/batch")
+    public ResponseEntity<IdempotentOperationCompletionBatchResponse> saveIdempotentOperationResults(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received request to save {} operation results", batchRequest.getOperations().size());
+
+        List<IdempotentOperationCompletionResult> results = idempotencyService.saveIdempotentOperationResults(batchRequest.getOperations());
+
+        return ResponseEntity.ok(new IdempotentOperationCompletionBatchResponse(results));
+    }
+
+    // Heartbeat of the lock holders, each lock gets a full lock duration from now
+    @PostMapping("/idempotent-operation/lease")
+    public ResponseEntity<IdempotentOperationLeaseBatchResponse> renewLeases(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received request to renew {} lock leases", batchRequest.getOperations().size());
+
+        List<IdempotentOperationLeaseResult> results = idempotencyService.renewLeases(batchRequest.getOperations());
+
+        return ResponseEntity.ok(new IdempotentOperationLeaseBatchResponse(results));
+    }
+
 }
@@ -0,0 +1,106 @@
+package microservices.helper.idempotency.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import microservices.helper.idempotency.audit.IdempotentOperationAuditWriter;
+import microservices.helper.idempotency.cache.CompletedKeyFilter;
+import microservices.helper.idempotency.cache.OffHeapResultCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.concurrency.AdaptiveConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.MongoConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.VirtualThreadPinningMonitor;
+import microservices.helper.idempotency.model.AdaptiveConcurrencyStats;
+import microservices.helper.idempotency.model.AuditQueueStats;
+import microservices.helper.idempotency.model.CompletedKeyFilterStats;
+import microservices.helper.idempotency.model.LockDurationLearningStats;
+import microservices.helper.idempotency.model.OffHeapResultCacheStats;
+import microservices.helper.idempotency.model.ResultCacheStats;
+import microservices.helper.idempotency.model.VirtualThreadStats;
+import microservices.helper.idempotency.service.LockExpiryScheduler;
+import microservices.helper.idempotency.tuning.LockDurationLearner;
+
+@RestController
+public class IdempotencyStatsController {
+
+    private final StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+    private final OffHeapResultCache offHeapResultCache;
+    private final CompletedKeyFilter completedKeyFilter;
+    private final IdempotentOperationAuditWriter idempotentOperationAuditWriter;
+    private final MongoConcurrencyLimiter mongoConcurrencyLimiter;
+    private final VirtualThreadPinningMonitor virtualThreadPinningMonitor;
+    private final LockExpiryScheduler lockExpiryScheduler;
+    private final LockDurationLearner lockDurationLearner;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final boolean virtualThreads;
+
+    public IdempotencyStatsController(StoredIdempotentOperationResultCache storedIdempotentOperationResultCache,
+                                      OffHeapResultCache offHeapResultCache,
+                                      CompletedKeyFilter completedKeyFilter,
+                                      IdempotentOperationAuditWriter idempotentOperationAuditWriter,
+                                      MongoConcurrencyLimiter mongoConcurrencyLimiter,
+                                      VirtualThreadPinningMonitor virtualThreadPinningMonitor,
+                                      LockExpiryScheduler lockExpiryScheduler,
+                                      LockDurationLearner lockDurationLearner,
+                                      AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+                                      @Value("${spring.threads.virtual.enabled}") boolean virtualThreads) {
+        this.storedIdempotentOperationResultCache = storedIdempotentOperationResultCache;
+        this.offHeapResultCache = offHeapResultCache;
+        this.completedKeyFilter = completedKeyFilter;
+        this.idempotentOperationAuditWriter = idempotentOperationAuditWriter;
+        this.mongoConcurrencyLimiter = mongoConcurrencyLimiter;
+        this.virtualThreadPinningMonitor = virtualThreadPinningMonitor;
+        this.lockExpiryScheduler = lockExpiryScheduler;
+        this.lockDurationLearner = lockDurationLearner;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @GetMapping("/idempotent-operation/stats/result-cache")
+    public ResponseEntity<ResultCacheStats> getResultCacheStats() {
+        return ResponseEntity.ok(storedIdempotentOperationResultCache.getStats());
+    }
+
+    @GetMapping("/idempotent-operation/stats/off-heap-result-cache")
+    public ResponseEntity<OffHeapResultCacheStats> getOffHeapResultCacheStats() {
+        return ResponseEntity.ok(offHeapResultCache.getStats());
+    }
+
+    @GetMapping("/idempotent-operation/stats/completed-key-filter")
+    public ResponseEntity<CompletedKeyFilterStats> getCompletedKeyFilterStats() {
+        return ResponseEntity.ok(completedKeyFilter.getStats());
+    }
+
+    @GetMapping("/idempotent-operation/stats/audit-queue")
+    public ResponseEntity<AuditQueueStats> getAuditQueueStats() {
+        return ResponseEntity.ok(idempotentOperationAuditWriter.getStats());
+    }
+
+    @GetMapping("/idempotent-operation/stats/lock-durations")
+    public ResponseEntity<LockDurationLearningStats> getLockDurationStats() {
+        return ResponseEntity.ok(lockDurationLearner.getStats());
+    }
+
+    @GetMapping("/idempotent-operation/stats/adaptive-concurrency")
+    public ResponseEntity<AdaptiveConcurrencyStats> getAdaptiveConcurrencyStats() {
+        return ResponseEntity.ok(adaptiveConcurrencyLimiter.getStats());
+    }
+
+    @GetMapping("/idempotent-operation/stats/virtual-threads")
+    public ResponseEntity<VirtualThreadStats> getVirtualThreadStats() {
+        VirtualThreadStats stats = new VirtualThreadStats();
+        stats.setVirtualThreads(virtualThreads);
+        stats.setMongoLimiterEnabled(mongoConcurrencyLimiter.isEnabled());
+        stats.setMaxConcurrentMongoOperations(mongoConcurrencyLimiter.getMaxConcurrentOperations());
+        stats.setAvailableMongoPermits(mongoConcurrencyLimiter.getAvailablePermits());
+        stats.setQueuedMongoOperations(mongoConcurrencyLimiter.getQueueLength());
+        stats.setRejectedMongoOperations(mongoConcurrencyLimiter.getRejectedCount());
+        stats.setPinningMonitorEnabled(virtualThreadPinningMonitor.isEnabled());
+        stats.setPinnedEventCount(virtualThreadPinningMonitor.getPinnedCount());
+        stats.setPendingLockExpiryTasks(lockExpiryScheduler.getPendingCount());
+        return ResponseEntity.ok(stats);
+    }
+
+}
@@ -0,0 +1,80 @@
+package microservices.helper.idempotency.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationBatchRequest;
+import microservices.helper.idempotency.model.IdempotentOperationBatchResponse;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionBatchResponse;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.service.ReactiveIdempotencyService;
+import reactor.core.publisher.Mono;
+
+// Same endpoints and status codes as IdempotencyController, served by WebFlux when the reactive profile is active
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveIdempotencyController {
+
+    private final ReactiveIdempotencyService idempotencyService;
+
+    public ReactiveIdempotencyController(ReactiveIdempotencyService idempotencyService) {
+        this.idempotencyService = idempotencyService;
+    }
+
+    @PostMapping("/idempotent-operation")
+    public Mono<ResponseEntity<IdempotentOperationResult>> getStoredExecutionResultOrLockOperation(@Valid @RequestBody IdempotentOperationResult idempotentOperation) {
+        log.info("Received request for idempotent operation: service={}, operation={}", idempotentOperation.getService(), idempotentOperation.getOperation());
+
+        return idempotencyService.getStoredExecutionResultOrLockOperation(idempotentOperation).map(result -> {
+            if (ExecutionResult.SUCCESS.getValue().equals(result.getExecutionResult())) {
+                return ResponseEntity.ok(result);
+            } else if (ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue().equals(result.getExecutionResult())) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+            } else {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+            }
+        });
+    }
+
+    @PostMapping("/idempotent-operation/batch")
+    public Mono<ResponseEntity<IdempotentOperationBatchResponse>> getStoredExecutionResultsOrLockOperations(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received batch request for {} idempotent operations", batchRequest.getOperations().size());
+
+        return idempotencyService.getStoredExecutionResultsOrLockOperations(batchRequest.getOperations())
+                .map(results -> ResponseEntity.ok(new IdempotentOperationBatchResponse(results)));
+    }
+
+    @PostMapping("/idempotent-operation/batch/status")
+    public Mono<ResponseEntity<IdempotentOperationBatchResponse>> getExecutionStatuses(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received status request for {} idempotent operations", batchRequest.getOperations().size());
+
+        return idempotencyService.getExecutionStatuses(batchRequest.getOperations())
+                .map(results -> ResponseEntity.ok(new IdempotentOperationBatchResponse(results)));
+    }
+
+    @PostMapping("/idempotent-operation/result")
+    public Mono<ResponseEntity<Void>> saveIdempotentOperationResult(@Valid @RequestBody IdempotentOperationResult idempotentOperation) {
+        log.info("Received request to save operation result for lockId: {}", idempotentOperation.getLockId());
+
+        return idempotencyService.saveIdempotentOperationResult(idempotentOperation)
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()));
+    }
+
+    @PostMapping("/idempotent-operation/result/batch")
+    public Mono<ResponseEntity<IdempotentOperationCompletionBatchResponse>> saveIdempotentOperationResults(@Valid @RequestBody IdempotentOperationBatchRequest batchRequest) {
+        log.info("Received request to save {} operation results", batchRequest.getOperations().size());
+
+        return idempotencyService.saveIdempotentOperationResults(batchRequest.getOperations())
+                .map(results -> ResponseEntity.ok(new IdempotentOperationCompletionBatchResponse(results)));
+    }
+
+}
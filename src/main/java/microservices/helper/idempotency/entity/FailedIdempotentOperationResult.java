@@ -1,5 +1,7 @@
 package microservices.helper.idempotency.entity;
 
+import java.time.Instant;
+
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -19,4 +21,6 @@ public class FailedIdempotentOperationResult {
 
 	private String errorMessage;
 
+	private Instant expireAt;// Removed by the TTL index from then on, null keeps the record
+
 }
@@ -25,4 +25,6 @@ public class IdempotentOperation {
 
     private Instant createdAt;
 
+    private Instant expireAt;// Removed by the TTL index from then on, null keeps the record
+
 }
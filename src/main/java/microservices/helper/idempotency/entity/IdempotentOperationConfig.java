@@ -1,11 +1,13 @@
 package microservices.helper.idempotency.entity;
 
 import lombok.Data;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
 
 import java.time.Duration;
+import java.time.Instant;
 
 /**
  * Entity representing operation configuration. Maps to the
@@ -25,4 +27,16 @@ public class IdempotentOperationConfig {
 
     private Duration lockDuration;
 
+    private Duration resultCacheDuration;// Optional, falls back to idempotent.result-cache.expire-after-write
+
+    private Duration retentionDuration;// Optional, falls back to idempotent.retention.default-duration
+
+    private Integer resultCompressionThreshold;// Optional in UTF-8 bytes, falls back to idempotent.result-compression.threshold-bytes
+
+    private ConsistencyProfile consistencyProfile;// Optional, falls back to idempotent.consistency.default-profile
+
+    private Duration learnedLockDuration;// Written by the lock duration learning, replaces lockDuration when idempotent.lock-duration-learning.apply is set
+
+    private Instant learnedAt;
+
 }
@@ -22,4 +22,6 @@ public class IdempotentOperationLock {
 
 	private Instant createdAt;
 
+	private Instant expireAt;// Removed by the TTL index from then on, null keeps the record
+
 }
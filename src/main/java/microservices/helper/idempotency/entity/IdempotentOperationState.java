@@ -0,0 +1,48 @@
+package microservices.helper.idempotency.entity;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+import microservices.helper.idempotency.enums.OperationState;
+
+/**
+ * Entity holding the whole lifecycle of one (service, operation,
+ * idempotencyKey) in a single document. Maps to the
+ * idempotent_operation_state collection, used when
+ * idempotent.storage.mode is single-document.
+ */
+@Document(collection = "idempotent_operation_state")
+@CompoundIndex(def = "{'state': 1, 'expiredAt': 1}")
+@Data
+public class IdempotentOperationState {
+
+    @Id
+    private String id;// Hashed key of service, operation and idempotencyKey
+
+    private String service;
+
+    private String operation;
+
+    private String idempotencyKey;
+
+    private OperationState state;
+
+    private String idempotencyId;// In UUIDv4 format, of the latest attempt
+
+    private String lockId;// In UUIDv4 format, of the latest attempt
+
+    private Instant lockedAt;
+
+    private Instant expiredAt;
+
+    private String idempotentOperationResult;// Set when SUCCEEDED
+
+    private String errorMessage;// Set when FAILED or EXPIRED
+
+    private Instant updatedAt;
+
+}
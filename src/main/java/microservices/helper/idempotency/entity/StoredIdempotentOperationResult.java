@@ -1,5 +1,7 @@
 package microservices.helper.idempotency.entity;
 
+import java.time.Instant;
+
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -22,4 +24,6 @@ public class StoredIdempotentOperationResult {
 
     private String idempotentOperationResult;
 
+    private Instant expireAt;// Removed by the TTL index from then on, null keeps the result
+
 }
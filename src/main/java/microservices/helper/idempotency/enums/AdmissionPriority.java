@@ -0,0 +1,17 @@
+package microservices.helper.idempotency.enums;
+
+public enum AdmissionPriority {
+    RESULT_READ("result_read"),
+    COMPLETION("completion"),
+    LOCK_ACQUISITION("lock_acquisition");
+
+    private final String value;
+
+    AdmissionPriority(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
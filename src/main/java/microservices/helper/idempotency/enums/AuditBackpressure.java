@@ -0,0 +1,8 @@
+package microservices.helper.idempotency.enums;
+
+// What the write-behind audit queue does with a record when it is full
+public enum AuditBackpressure {
+    BLOCK,// Wait for room in the queue
+    DROP,// Discard the record and count it
+    SYNC// Insert the record on the request thread
+}
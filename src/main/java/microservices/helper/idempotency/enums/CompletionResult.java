@@ -0,0 +1,17 @@
+package microservices.helper.idempotency.enums;
+
+public enum CompletionResult {
+    SAVED("SAVED"),
+    EXPIRED("EXPIRED"),
+    DUPLICATE("DUPLICATE");
+
+    private final String value;
+
+    CompletionResult(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.enums;
+
+// Declared from the weakest to the strongest
+public enum ConsistencyProfile {
+    RELAXED("RELAXED"),
+    DEFAULT("DEFAULT"),
+    DURABLE("DURABLE");
+
+    private final String value;
+
+    ConsistencyProfile(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
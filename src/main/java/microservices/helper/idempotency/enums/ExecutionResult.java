@@ -5,7 +5,8 @@ public enum ExecutionResult {
     OPERATION_LOCKED_SUCCESSFULLY("OPERATION_LOCKED_SUCCESSFULLY"),
     OPERATION_ALREADY_LOCKED("OPERATION_ALREADY_LOCKED"),
     OPERATION_EXPIRED("OPERATION_EXPIRED"),
-    OPERATION_FAILED("OPERATION_FAILED");
+    OPERATION_FAILED("OPERATION_FAILED"),
+    OPERATION_NOT_FOUND("OPERATION_NOT_FOUND");
 
     private final String value;
 
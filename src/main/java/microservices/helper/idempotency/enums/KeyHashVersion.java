@@ -0,0 +1,7 @@
+package microservices.helper.idempotency.enums;
+
+// Format of the hashed key used as _id of stored results and operation states
+public enum KeyHashVersion {
+    MD5,// Base64 MD5 of "service-operation-idempotencyKey", the original unversioned format
+    V2// "v2:" + unpadded Base64url MurmurHash3 x64 128 of the length-prefixed UTF-8 parts
+}
@@ -0,0 +1,16 @@
+package microservices.helper.idempotency.enums;
+
+public enum LeaseResult {
+    RENEWED("RENEWED"),
+    EXPIRED("EXPIRED");
+
+    private final String value;
+
+    LeaseResult(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
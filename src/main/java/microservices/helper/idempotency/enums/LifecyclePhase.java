@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.enums;
+
+public enum LifecyclePhase {
+    AUDIT_INSERT("audit_insert"),
+    RESULT_LOOKUP("result_lookup"),
+    LOCK_INSERT("lock_insert"),
+    RESULT_SAVE("result_save");
+
+    private final String value;
+
+    LifecyclePhase(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
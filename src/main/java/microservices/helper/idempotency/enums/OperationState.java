@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.enums;
+
+public enum OperationState {
+    LOCKED("LOCKED"),
+    SUCCEEDED("SUCCEEDED"),
+    FAILED("FAILED"),
+    EXPIRED("EXPIRED");
+
+    private final String value;
+
+    OperationState(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
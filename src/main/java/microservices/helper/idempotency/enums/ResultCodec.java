@@ -0,0 +1,16 @@
+package microservices.helper.idempotency.enums;
+
+// Marker of a stored result whose idempotentOperationResult is compressed BSON binary, absent for plain strings
+public enum ResultCodec {
+    DEFLATE("deflate");// zlib format, like HTTP Content-Encoding: deflate
+
+    private final String value;
+
+    ResultCodec(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -1,12 +1,15 @@
 package microservices.helper.idempotency.exception;
 
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -51,23 +54,33 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
     }
 
-    @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex) {
-        Map<String, String> errors = new HashMap<>();
-        ex.getBindingResult().getAllErrors().forEach((error) -> {
-            String fieldName = ((FieldError) error).getField();
-            String errorMessage = error.getDefaultMessage();
-            errors.put(fieldName, errorMessage);
-        });
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleServiceOverloadedException(ServiceOverloadedException ex) {
+        log.warn("Request rejected: {}", ex.getMessage());
 
         ErrorResponse errorResponse = ErrorResponse.builder()
                 .timestamp(Instant.now())
-                .message("Validation failed")
-                .executionResult("VALIDATION_ERROR")
-                .validationErrors(errors)
+                .message(ex.getMessage())
+                .executionResult("SERVICE_OVERLOADED")
                 .build();
 
-        return ResponseEntity.badRequest().body(errorResponse);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (ex.getRetryAfter() != null) {
+            // Retry-After takes whole seconds
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max((ex.getRetryAfter().toMillis() + 999) / 1000, 1)));
+        }
+        return response.body(errorResponse);
+    }
+
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex) {
+        return validationErrorResponse(ex.getBindingResult());
+    }
+
+    // WebFlux reports @Valid failures with its own exception type
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ErrorResponse> handleWebExchangeBindException(WebExchangeBindException ex) {
+        return validationErrorResponse(ex.getBindingResult());
     }
 
     @ExceptionHandler(Exception.class)
@@ -82,4 +95,22 @@ public class GlobalExceptionHandler {
 
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
     }
+
+    private ResponseEntity<ErrorResponse> validationErrorResponse(BindingResult bindingResult) {
+        Map<String, String> errors = new HashMap<>();
+        bindingResult.getAllErrors().forEach((error) -> {
+            String fieldName = ((FieldError) error).getField();
+            String errorMessage = error.getDefaultMessage();
+            errors.put(fieldName, errorMessage);
+        });
+
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .timestamp(Instant.now())
+                .message("Validation failed")
+                .executionResult("VALIDATION_ERROR")
+                .validationErrors(errors)
+                .build();
+
+        return ResponseEntity.badRequest().body(errorResponse);
+    }
 }
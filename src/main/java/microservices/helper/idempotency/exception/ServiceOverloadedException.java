@@ -0,0 +1,22 @@
+package microservices.helper.idempotency.exception;
+
+import java.time.Duration;
+
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ServiceOverloadedException(String message) {
+        this(message, null);
+    }
+
+    public ServiceOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    // Null when the client is not told when to retry
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,11 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("microservices.helper.idempotency.AuditInsert")
+@Label("Audit Insert")
+@Description("idempotent_operation record written, or queued when write-behind is enabled")
+public class AuditInsertEvent extends IdempotencyEvent {
+}
@@ -0,0 +1,11 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("microservices.helper.idempotency.Completion")
+@Label("Completion")
+@Description("Result save of a locked operation, with its completion result")
+public class CompletionEvent extends IdempotencyEvent {
+}
@@ -0,0 +1,51 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event of one idempotency key, timed from begin() to
+ * commit(). The events are off unless a recording enables them, e.g.
+ * with the bundled jfr/idempotency.jfc, and events shorter than their
+ * threshold are dropped before any field is filled, so a request pays two
+ * timestamps for each of them and nothing more.
+ */
+@Category("Idempotency")
+@Enabled(false)
+@StackTrace(false)
+public abstract class IdempotencyEvent extends Event {
+
+    @Label("Service")
+    protected String service;
+
+    @Label("Operation")
+    protected String operation;
+
+    @Label("Hashed Key")
+    protected String hashedKey;
+
+    @Label("Outcome")
+    protected String outcome;
+
+    // Ends the event, the threshold is applied to the time since begin()
+    public void commit(String service, String operation, String hashedKey, String outcome) {
+        end();
+        record(service, operation, hashedKey, outcome);
+    }
+
+    // Commits an event already ended, so work done after end() is not timed
+    public void record(String service, String operation, String hashedKey, String outcome) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.service = service;
+        this.operation = operation;
+        this.hashedKey = hashedKey;
+        this.outcome = outcome;
+        commit();
+    }
+
+}
@@ -0,0 +1,11 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("microservices.helper.idempotency.LockAcquire")
+@Label("Lock Acquire")
+@Description("Temp lock insert, with the execution result it led to")
+public class LockAcquireEvent extends IdempotencyEvent {
+}
@@ -0,0 +1,11 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("microservices.helper.idempotency.LockExpiry")
+@Label("Lock Expiry")
+@Description("Scheduled expiry task of a temp lock held by this node")
+public class LockExpiryEvent extends IdempotencyEvent {
+}
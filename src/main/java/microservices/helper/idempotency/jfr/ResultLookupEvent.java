@@ -0,0 +1,11 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("microservices.helper.idempotency.ResultLookup")
+@Label("Result Lookup")
+@Description("Lookup of the stored result through the result caches and the store")
+public class ResultLookupEvent extends IdempotencyEvent {
+}
@@ -0,0 +1,39 @@
+package microservices.helper.idempotency.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One page of the expired-lock sweep. The page spans many operations, so it
+ * carries the number of locks it settled instead of a key.
+ */
+@Name("microservices.helper.idempotency.SweepBatch")
+@Label("Expired Lock Sweep Batch")
+@Description("Page of expired temp locks read and settled by the scheduled sweep")
+@Category("Idempotency")
+@Enabled(false)
+@StackTrace(false)
+public class SweepBatchEvent extends Event {
+
+    @Label("Locks")
+    private int lockCount;
+
+    @Label("Outcome")
+    private String outcome;
+
+    public void commit(int lockCount, String outcome) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.lockCount = lockCount;
+        this.outcome = outcome;
+        commit();
+    }
+
+}
@@ -0,0 +1,218 @@
+package microservices.helper.idempotency.metrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.LeaseResult;
+import microservices.helper.idempotency.enums.LifecyclePhase;
+import microservices.helper.idempotency.enums.OperationState;
+import microservices.helper.idempotency.repository.IdempotentOperationStateRepository;
+import microservices.helper.idempotency.service.LockExpiryScheduler;
+import microservices.helper.idempotency.store.IdempotencyStore;
+
+/**
+ * Micrometer meters of the idempotency lifecycle, tagged by service and
+ * operation. Only the first max-tagged-operations distinct (service, operation)
+ * pairs seen by this node get their own tags, every later pair is recorded
+ * under "other", so callers inventing operation names cannot grow the registry
+ * without bound. Meters of a pair are registered once and reused.
+ */
+@Component
+@Slf4j
+public class IdempotencyMetrics {
+
+    public static final String OTHER = "other";
+    private static final String FAILED = "FAILED";
+
+    private final MeterRegistry meterRegistry;
+    private final IdempotencyStore idempotencyStore;
+    private final IdempotentOperationStateRepository idempotentOperationStateRepository;
+    private final boolean singleDocument;
+    private final int maxTaggedOperations;
+    private final Duration nearExpiryWindow;
+    private final Map<String, Map<String, OperationMeters>> operationMeters = new ConcurrentHashMap<>();
+    private final AtomicInteger taggedOperations = new AtomicInteger();
+    private final OperationMeters otherMeters;
+    private final AtomicLong nearExpiryLocks = new AtomicLong();
+    private final AtomicLong sweepLagMillis = new AtomicLong();
+    private final Counter sweptLocks;
+
+    public IdempotencyMetrics(MeterRegistry meterRegistry,
+                              LockExpiryScheduler lockExpiryScheduler,
+                              IdempotencyStore idempotencyStore,
+                              IdempotentOperationStateRepository idempotentOperationStateRepository,
+                              @Value("${idempotent.storage.mode}") String storageMode,
+                              @Value("${idempotent.metrics.max-tagged-operations}") int maxTaggedOperations,
+                              @Value("${idempotent.metrics.near-expiry-window}") Duration nearExpiryWindow) {
+        this.meterRegistry = meterRegistry;
+        this.idempotencyStore = idempotencyStore;
+        this.idempotentOperationStateRepository = idempotentOperationStateRepository;
+        this.singleDocument = "single-document".equals(storageMode);
+        this.maxTaggedOperations = maxTaggedOperations;
+        this.nearExpiryWindow = nearExpiryWindow;
+        this.otherMeters = new OperationMeters(OTHER, OTHER);
+
+        Gauge.builder("idempotency.lock.expiry.pending", lockExpiryScheduler, LockExpiryScheduler::getPendingCount)
+                .description("Lock-expiry tasks scheduled on this node")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.lock.near.expiry", nearExpiryLocks, AtomicLong::get)
+                .description("Locks expiring within the near-expiry window, including overdue ones")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.lock.sweep.lag", sweepLagMillis, lag -> lag.get() / 1000.0)
+                .description("Age of the oldest expired lock left after the last sweep, 0 when the sweep caught up")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        sweptLocks = Counter.builder("idempotency.lock.swept")
+                .description("Expired temp locks moved to the lock history by the sweeper")
+                .register(meterRegistry);
+    }
+
+    // Records the time since start and returns the current time, so consecutive phases can be chained
+    public long recordPhase(LifecyclePhase phase, String service, String operation, long startNanos) {
+        long now = System.nanoTime();
+        meters(service, operation).phases.get(phase).record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void recordAcquire(String service, String operation, ExecutionResult executionResult) {
+        meters(service, operation).acquireOutcomes.get(executionResult).increment();
+    }
+
+    public void recordCompletion(String service, String operation, CompletionResult completionResult) {
+        meters(service, operation).completionOutcomes.get(completionResult).increment();
+    }
+
+    public void recordLease(String service, String operation, LeaseResult leaseResult) {
+        meters(service, operation).leaseOutcomes.get(leaseResult).increment();
+    }
+
+    public void recordCompletionFailure(String service, String operation) {
+        meters(service, operation).completionFailures.increment();
+    }
+
+    // Ratio of the UTF-8 size of a result to its stored size, and the CPU time spent compressing it
+    public void recordCompression(String service, String operation, int originalBytes, int storedBytes, long nanos) {
+        OperationMeters meters = meters(service, operation);
+        meters.compressionRatio.record((double) originalBytes / storedBytes);
+        meters.compression.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDecompression(String service, String operation, long nanos) {
+        meters(service, operation).decompression.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSweptLocks(int count) {
+        sweptLocks.increment(count);
+    }
+
+    public void recordSweepLag(Duration lag) {
+        sweepLagMillis.set(Math.max(0, lag.toMillis()));
+    }
+
+    // Counted on every node, the expiredAt index keeps this a range scan over the locks in the window
+    @Scheduled(fixedDelayString = "${idempotent.metrics.near-expiry-refresh-interval}")
+    public void refreshNearExpiryLocks() {
+        Instant nearExpiry = Instant.now().plus(nearExpiryWindow);
+        try {
+            nearExpiryLocks.set(singleDocument
+                    ? idempotentOperationStateRepository.countByStateAndExpiredAtBefore(OperationState.LOCKED, nearExpiry)
+                    : idempotencyStore.countTempLocksExpiringBefore(nearExpiry));
+        } catch (Exception e) {
+            log.warn("Failed to count locks near expiry", e);
+        }
+    }
+
+    private OperationMeters meters(String service, String operation) {
+        if (service == null || operation == null) {
+            return otherMeters;
+        }
+        Map<String, OperationMeters> metersByOperation = operationMeters.get(service);
+        OperationMeters meters = metersByOperation != null ? metersByOperation.get(operation) : null;
+        if (meters != null) {
+            return meters;
+        }
+        // Concurrent first requests may overshoot the limit by a few pairs, which still bounds the registry
+        if (taggedOperations.get() >= maxTaggedOperations) {
+            return otherMeters;
+        }
+        return operationMeters.computeIfAbsent(service, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(operation, key -> {
+                    taggedOperations.incrementAndGet();
+                    return new OperationMeters(service, operation);
+                });
+    }
+
+    private final class OperationMeters {
+
+        private final Map<LifecyclePhase, Timer> phases = new EnumMap<>(LifecyclePhase.class);
+        private final Map<ExecutionResult, Counter> acquireOutcomes = new EnumMap<>(ExecutionResult.class);
+        private final Map<CompletionResult, Counter> completionOutcomes = new EnumMap<>(CompletionResult.class);
+        private final Counter completionFailures;
+        private final Map<LeaseResult, Counter> leaseOutcomes = new EnumMap<>(LeaseResult.class);
+        private final DistributionSummary compressionRatio;
+        private final Timer compression;
+        private final Timer decompression;
+
+        private OperationMeters(String service, String operation) {
+            for (LifecyclePhase phase : LifecyclePhase.values()) {
+                phases.put(phase, Timer.builder("idempotency.phase")
+                        .description("Time spent in one phase of acquiring or completing an operation")
+                        .tags("service", service, "operation", operation, "phase", phase.getValue())
+                        .register(meterRegistry));
+            }
+            for (ExecutionResult executionResult : ExecutionResult.values()) {
+                acquireOutcomes.put(executionResult, Counter.builder("idempotency.acquire")
+                        .description("Lock requests by outcome")
+                        .tags("service", service, "operation", operation, "outcome", executionResult.getValue())
+                        .register(meterRegistry));
+            }
+            for (CompletionResult completionResult : CompletionResult.values()) {
+                completionOutcomes.put(completionResult, Counter.builder("idempotency.completion")
+                        .description("Result saves by outcome")
+                        .tags("service", service, "operation", operation, "outcome", completionResult.getValue())
+                        .register(meterRegistry));
+            }
+            completionFailures = Counter.builder("idempotency.completion")
+                    .description("Result saves by outcome")
+                    .tags("service", service, "operation", operation, "outcome", FAILED)
+                    .register(meterRegistry);
+            for (LeaseResult leaseResult : LeaseResult.values()) {
+                leaseOutcomes.put(leaseResult, Counter.builder("idempotency.lease")
+                        .description("Lock lease renewals by outcome")
+                        .tags("service", service, "operation", operation, "outcome", leaseResult.getValue())
+                        .register(meterRegistry));
+            }
+            compressionRatio = DistributionSummary.builder("idempotency.result.compression.ratio")
+                    .description("UTF-8 size of a compressed result divided by its stored size")
+                    .tags("service", service, "operation", operation)
+                    .register(meterRegistry);
+            compression = Timer.builder("idempotency.result.codec")
+                    .description("CPU time spent compressing or decompressing stored results")
+                    .tags("service", service, "operation", operation, "direction", "compress")
+                    .register(meterRegistry);
+            decompression = Timer.builder("idempotency.result.codec")
+                    .description("CPU time spent compressing or decompressing stored results")
+                    .tags("service", service, "operation", operation, "direction", "decompress")
+                    .register(meterRegistry);
+        }
+    }
+
+}
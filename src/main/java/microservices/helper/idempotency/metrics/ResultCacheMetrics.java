@@ -0,0 +1,51 @@
+package microservices.helper.idempotency.metrics;
+
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import microservices.helper.idempotency.cache.OffHeapResultCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+
+/**
+ * Lookups and size of the on-heap and off-heap result caches, tagged by tier,
+ * so their hit rates can be compared next to the jvm.gc.* meters. The values
+ * are read from the caches' own statistics when the registry is scraped.
+ */
+@Component
+public class ResultCacheMetrics {
+
+    public ResultCacheMetrics(MeterRegistry meterRegistry,
+                              StoredIdempotentOperationResultCache storedIdempotentOperationResultCache,
+                              OffHeapResultCache offHeapResultCache) {
+        register(meterRegistry, "heap", storedIdempotentOperationResultCache,
+                cache -> cache.getStats().getHitCount(),
+                cache -> cache.getStats().getMissCount(),
+                cache -> cache.getStats().getWeightedSize());
+        register(meterRegistry, "off-heap", offHeapResultCache,
+                cache -> cache.getStats().getHitCount(),
+                cache -> cache.getStats().getMissCount(),
+                cache -> cache.getStats().getUsedBytes());
+    }
+
+    private static <T> void register(MeterRegistry meterRegistry, String tier, T cache,
+                                     ToDoubleFunction<T> hitCount, ToDoubleFunction<T> missCount, ToDoubleFunction<T> sizeBytes) {
+        FunctionCounter.builder("idempotency.result.cache.lookups", cache, hitCount)
+                .description("Result cache lookups by tier and outcome")
+                .tags("tier", tier, "outcome", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("idempotency.result.cache.lookups", cache, missCount)
+                .description("Result cache lookups by tier and outcome")
+                .tags("tier", tier, "outcome", "miss")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.result.cache.size", cache, sizeBytes)
+                .description("Bytes held by a result cache tier, estimated on heap")
+                .tags("tier", tier)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+}
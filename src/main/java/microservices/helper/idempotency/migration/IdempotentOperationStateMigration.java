@@ -0,0 +1,113 @@
+package microservices.helper.idempotency.migration;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.mongodb.bulk.BulkWriteResult;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.OperationState;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+/**
+ * Copies stored results and in-flight temp locks of the collections storage
+ * mode into idempotent_operation_state. Every write is a $setOnInsert upsert,
+ * so the migration can be re-run and never overwrites newer state documents.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.migrate-from-collections", havingValue = "true")
+@Slf4j
+public class IdempotentOperationStateMigration {
+
+    private final MongoTemplate mongoTemplate;
+    private final IdempotencyKeyHasher idempotencyKeyHasher;
+    private final int batchSize;
+
+    public IdempotentOperationStateMigration(MongoTemplate mongoTemplate, IdempotencyKeyHasher idempotencyKeyHasher,
+                                             @Value("${idempotent.storage.migration-batch-size}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.idempotencyKeyHasher = idempotencyKeyHasher;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        log.info("Migrating stored results and temp locks into idempotent_operation_state");
+        long results = migrateStoredResults();
+        long locks = migrateTempLocks();
+        log.info("Migration completed: {} results and {} locks copied, the others were already migrated", results, locks);
+    }
+
+    private long migrateStoredResults() {
+        try (Stream<StoredIdempotentOperationResult> storedResults = mongoTemplate.stream(new Query(), StoredIdempotentOperationResult.class)) {
+            return upsertInBatches(storedResults.map(storedResult -> Pair.of(
+                    // Re-keyed in the current key format, results may still be stored under a legacy id
+                    Query.query(where("_id").is(idempotencyKeyHasher.hash(storedResult.getService(), storedResult.getOperation(), storedResult.getIdempotencyKey()))),
+                    new Update()
+                            .setOnInsert("service", storedResult.getService())
+                            .setOnInsert("operation", storedResult.getOperation())
+                            .setOnInsert("idempotencyKey", storedResult.getIdempotencyKey())
+                            .setOnInsert("state", OperationState.SUCCEEDED)
+                            .setOnInsert("idempotentOperationResult", storedResult.getIdempotentOperationResult())
+                            .setOnInsert("updatedAt", Instant.now()))));
+        }
+    }
+
+    private long migrateTempLocks() {
+        try (Stream<IdempotentOperationLockTemp> tempLocks = mongoTemplate.stream(new Query(), IdempotentOperationLockTemp.class)) {
+            return upsertInBatches(tempLocks.map(tempLock -> Pair.of(
+                    Query.query(where("_id").is(idempotencyKeyHasher.hash(tempLock.getService(), tempLock.getOperation(), tempLock.getIdempotencyKey()))),
+                    new Update()
+                            .setOnInsert("service", tempLock.getService())
+                            .setOnInsert("operation", tempLock.getOperation())
+                            .setOnInsert("idempotencyKey", tempLock.getIdempotencyKey())
+                            .setOnInsert("state", OperationState.LOCKED)
+                            .setOnInsert("idempotencyId", tempLock.getIdempotencyId())
+                            .setOnInsert("lockId", tempLock.getId())
+                            .setOnInsert("lockedAt", tempLock.getLockedAt())
+                            .setOnInsert("expiredAt", tempLock.getExpiredAt())
+                            .setOnInsert("updatedAt", Instant.now()))));
+        }
+    }
+
+    private long upsertInBatches(Stream<Pair<Query, Update>> upserts) {
+        long count = 0;
+        List<Pair<Query, Update>> batch = new ArrayList<>(batchSize);
+        for (Pair<Query, Update> upsert : (Iterable<Pair<Query, Update>>) upserts::iterator) {
+            batch.add(upsert);
+            if (batch.size() == batchSize) {
+                count += flush(batch);
+            }
+        }
+        return count + flush(batch);
+    }
+
+    // Counts only the documents the batch inserted, keys already in idempotent_operation_state match without a write
+    private int flush(List<Pair<Query, Update>> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        BulkWriteResult result = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, IdempotentOperationState.class).upsert(batch).execute();
+        batch.clear();
+        return result.getUpserts().size();
+    }
+
+}
@@ -0,0 +1,65 @@
+package microservices.helper.idempotency.migration;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+/**
+ * Creates the TTL indexes that remove documents of the growth collections once
+ * their expireAt has passed. expireAt is stamped at write time from the
+ * retention of the document's operation, so one index with expireAfterSeconds
+ * 0 per collection serves every retention. The names and options match
+ * schema/idempotency-service-collections.js, creating an index that already
+ * exists is a no-op.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.retention.create-ttl-indexes", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "mongo", matchIfMissing = true)
+@Slf4j
+public class RetentionIndexInitializer {
+
+    public static final String EXPIRE_AT = "expireAt";
+
+    public static final Map<Class<?>, String> TTL_INDEXES = Map.of(
+            IdempotentOperation.class, "operation_expire_at_ttl_idx",
+            IdempotentOperationLock.class, "lock_expire_at_ttl_idx",
+            FailedIdempotentOperationResult.class, "failed_result_expire_at_ttl_idx",
+            StoredIdempotentOperationResult.class, "stored_result_expire_at_ttl_idx");
+
+    private final MongoTemplate mongoTemplate;
+
+    public RetentionIndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createTtlIndexes() {
+        TTL_INDEXES.forEach((entityClass, indexName) -> {
+            String collectionName = mongoTemplate.getCollectionName(entityClass);
+            try {
+                mongoTemplate.indexOps(entityClass).createIndex(new Index()
+                        .on(EXPIRE_AT, Sort.Direction.ASC)
+                        .expire(Duration.ZERO)
+                        .named(indexName));
+                log.info("Ensured TTL index {} on {}", indexName, collectionName);
+            } catch (Exception e) {
+                // e.g. an index on expireAt with other options, documents are then kept until it is fixed by hand
+                log.error("Failed to create TTL index {} on {}", indexName, collectionName, e);
+            }
+        });
+    }
+
+}
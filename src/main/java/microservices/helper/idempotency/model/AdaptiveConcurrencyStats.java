@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class AdaptiveConcurrencyStats {
+
+    private boolean enabled;
+    private int limit;
+    private int lockAcquisitionLimit;
+    private int inFlight;
+    private double recentRttMillis;
+    private double longTermRttMillis;
+    private long rejectedResultReads;
+    private long rejectedCompletions;
+    private long rejectedLockAcquisitions;
+}
@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class AuditQueueStats {
+
+    private boolean writeBehind;
+    private String backpressure;
+    private int queueSize;
+    private int queueCapacity;
+    private long flushedCount;
+    private long flushCount;
+    private long droppedCount;
+    private long synchronousFallbackCount;
+    private long failedCount;
+}
@@ -0,0 +1,21 @@
+package microservices.helper.idempotency.model;
+
+import java.time.Instant;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class CompletedKeyFilterStats {
+
+    private boolean enabled;
+    private boolean trusted;// False until the filter was built while the change stream is followed
+    private long maximumBytes;
+    private int hashFunctions;
+    private long capacity;// Ids that fit at the configured false-positive rate
+    private long idCount;
+    private double falsePositiveRate;
+    private double estimatedFalsePositiveRate;
+    private long skippedReadCount;
+    private Instant lastRebuildAt;
+}
@@ -0,0 +1,19 @@
+package microservices.helper.idempotency.model;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class IdempotentOperationBatchRequest {
+
+    public static final int MAX_BATCH_SIZE = 5000;
+
+    @NotEmpty(message = "Operations are required")
+    @Size(max = MAX_BATCH_SIZE, message = "At most " + MAX_BATCH_SIZE + " operations are allowed per batch")
+    private List<@Valid IdempotentOperationResult> operations;
+}
@@ -0,0 +1,16 @@
+package microservices.helper.idempotency.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter @Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotentOperationCompletionBatchResponse {
+
+    private List<IdempotentOperationCompletionResult> results;// Same order as the submitted operations
+}
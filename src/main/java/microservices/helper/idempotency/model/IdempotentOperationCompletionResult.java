@@ -0,0 +1,15 @@
+package microservices.helper.idempotency.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class IdempotentOperationCompletionResult {
+
+    private String idempotencyId;// In UUIDv4 format
+    private String service;
+    private String operation;
+    private String idempotencyKey;
+    private String lockId;// In UUIDv4 format
+    private String completionResult;
+}
@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.model;
+
+import java.time.Instant;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class IdempotentOperationLeaseResult {
+
+    private String idempotencyId;// In UUIDv4 format
+    private String service;
+    private String operation;
+    private String idempotencyKey;
+    private String lockId;// In UUIDv4 format
+    private String leaseResult;
+    private Instant expiredAt;// The renewed expiry, absent once the lock has expired
+}
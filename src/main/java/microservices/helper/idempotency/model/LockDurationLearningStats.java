@@ -0,0 +1,16 @@
+package microservices.helper.idempotency.model;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class LockDurationLearningStats {
+
+    private boolean enabled;
+    private boolean applied;
+    private double quantile;
+    private double safetyFactor;
+    private List<LockDurationStats> operations;
+}
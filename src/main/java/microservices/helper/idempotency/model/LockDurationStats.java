@@ -0,0 +1,19 @@
+package microservices.helper.idempotency.model;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class LockDurationStats {
+
+    private String service;
+    private String operation;
+    private long samples;
+    private Duration observedQuantile;
+    private Duration learnedLockDuration;
+    private Instant learnedAt;
+    private Duration lockDuration;
+}
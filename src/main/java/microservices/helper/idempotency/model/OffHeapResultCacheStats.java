@@ -0,0 +1,19 @@
+package microservices.helper.idempotency.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class OffHeapResultCacheStats {
+
+    private boolean enabled;
+    private long hitCount;
+    private long missCount;
+    private double hitRate;
+    private long evictionCount;
+    private long recycledSlabCount;
+    private long entryCount;
+    private long usedBytes;// Responses written to the slabs, including expired and replaced ones
+    private long allocatedBytes;// Direct memory of the slabs allocated so far
+    private long maximumBytes;
+}
@@ -0,0 +1,17 @@
+package microservices.helper.idempotency.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class ResultCacheStats {
+
+    private boolean enabled;
+    private long hitCount;
+    private long missCount;
+    private double hitRate;
+    private long evictionCount;
+    private long evictionWeight;
+    private long estimatedSize;
+    private long weightedSize;// In bytes, estimated
+}
@@ -0,0 +1,18 @@
+package microservices.helper.idempotency.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter @Setter
+public class VirtualThreadStats {
+
+    private boolean virtualThreads;
+    private boolean mongoLimiterEnabled;
+    private int maxConcurrentMongoOperations;
+    private int availableMongoPermits;
+    private int queuedMongoOperations;
+    private long rejectedMongoOperations;
+    private boolean pinningMonitorEnabled;
+    private long pinnedEventCount;
+    private int pendingLockExpiryTasks;
+}
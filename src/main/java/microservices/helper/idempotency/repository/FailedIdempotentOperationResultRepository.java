@@ -6,5 +6,5 @@ import org.springframework.stereotype.Repository;
 import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
 
 @Repository
-public interface FailedIdempotentOperationResultRepository extends MongoRepository<FailedIdempotentOperationResult, String> {
+public interface FailedIdempotentOperationResultRepository extends MongoRepository<FailedIdempotentOperationResult, String>, UnorderedInsertRepository<FailedIdempotentOperationResult> {
 }
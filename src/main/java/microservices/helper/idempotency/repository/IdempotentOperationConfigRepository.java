@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import microservices.helper.idempotency.entity.IdempotentOperationConfig;
 
 @Repository
-public interface IdempotentOperationConfigRepository extends MongoRepository<IdempotentOperationConfig, String> {
+public interface IdempotentOperationConfigRepository extends MongoRepository<IdempotentOperationConfig, String>, IdempotentOperationConfigRepositoryCustom {
 
     Optional<IdempotentOperationConfig> findByServiceAndOperation(String service, String operation);
 
@@ -0,0 +1,19 @@
+package microservices.helper.idempotency.repository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Partial updates of idempotent_operation_config documents.
+ */
+public interface IdempotentOperationConfigRepositoryCustom {
+
+    /**
+     * Sets learnedLockDuration and learnedAt with one updateOne, so edits made
+     * to the other fields meanwhile are kept.
+     *
+     * @return false if no config of the (service, operation) exists
+     */
+    boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt);
+
+}
@@ -0,0 +1,30 @@
+package microservices.helper.idempotency.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+
+public class IdempotentOperationConfigRepositoryCustomImpl implements IdempotentOperationConfigRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public IdempotentOperationConfigRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt) {
+        return mongoTemplate.updateFirst(
+                Query.query(where("service").is(service).and("operation").is(operation)),
+                new Update().set("learnedLockDuration", learnedLockDuration).set("learnedAt", learnedAt),
+                IdempotentOperationConfig.class).getMatchedCount() > 0;
+    }
+
+}
@@ -6,5 +6,5 @@ import org.springframework.stereotype.Repository;
 import microservices.helper.idempotency.entity.IdempotentOperationLock;
 
 @Repository
-public interface IdempotentOperationLockRepository extends MongoRepository<IdempotentOperationLock, String> {
+public interface IdempotentOperationLockRepository extends MongoRepository<IdempotentOperationLock, String>, UnorderedInsertRepository<IdempotentOperationLock> {
 }
@@ -1,14 +1,24 @@
 package microservices.helper.idempotency.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface IdempotentOperationLockTempRepository extends MongoRepository<IdempotentOperationLockTemp, String> {
-    List<IdempotentOperationLockTemp> findByExpiredAtIsAfter(Instant now);
+public interface IdempotentOperationLockTempRepository extends MongoRepository<IdempotentOperationLockTemp, String>, UnorderedInsertRepository<IdempotentOperationLockTemp>, IdempotentOperationLockTempRepositoryCustom {
+    // One bounded page of expired locks, oldest first, read through the expiredAt index
+    List<IdempotentOperationLockTemp> findByExpiredAtBefore(Instant expiredAt, Pageable pageable);
+
+    Optional<IdempotentOperationLockTemp> findFirstByExpiredAtBeforeOrderByExpiredAtAsc(Instant expiredAt);
+
+    long countByExpiredAtBefore(Instant expiredAt);
+
+    List<IdempotentOperationLockTemp> findByServiceAndOperationAndIdempotencyKeyIn(String service, String operation, Collection<String> idempotencyKeys);
 }
@@ -0,0 +1,21 @@
+package microservices.helper.idempotency.repository;
+
+import java.util.List;
+import java.util.Set;
+
+import microservices.helper.idempotency.store.TempLockRenewal;
+
+/**
+ * Conditional updates of idempotent_operation_lock_temp documents.
+ */
+public interface IdempotentOperationLockTempRepositoryCustom {
+
+    /**
+     * Moves the expiredAt of every lock that still has the expected one, with
+     * one unordered bulk of updateOne.
+     *
+     * @return positions in {@code renewals} that were not renewed
+     */
+    Set<Integer> renewAll(List<TempLockRenewal> renewals);
+
+}
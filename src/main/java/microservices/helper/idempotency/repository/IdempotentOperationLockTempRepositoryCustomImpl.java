@@ -0,0 +1,59 @@
+package microservices.helper.idempotency.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.store.TempLockRenewal;
+
+public class IdempotentOperationLockTempRepositoryCustomImpl implements IdempotentOperationLockTempRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public IdempotentOperationLockTempRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Set<Integer> renewAll(List<TempLockRenewal> renewals) {
+        if (renewals.isEmpty()) {
+            return Set.of();
+        }
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, IdempotentOperationLockTemp.class);
+        List<String> lockIds = new ArrayList<>(renewals.size());
+        for (TempLockRenewal renewal : renewals) {
+            bulkOperations.updateOne(
+                    Query.query(where("_id").is(renewal.lockId()).and("expiredAt").is(renewal.expiredAt())),
+                    new Update().set("expiredAt", renewal.renewedExpiredAt()));
+            lockIds.add(renewal.lockId());
+        }
+        if (bulkOperations.execute().getModifiedCount() == renewals.size()) {
+            return Set.of();
+        }
+        // The bulk result only counts the updates, the locks that missed are told apart by reading them back
+        Map<String, Instant> expiredAts = new HashMap<>();
+        for (IdempotentOperationLockTemp tempLock : mongoTemplate.find(Query.query(where("_id").in(lockIds)), IdempotentOperationLockTemp.class)) {
+            expiredAts.put(tempLock.getId(), tempLock.getExpiredAt());
+        }
+        Set<Integer> notRenewed = new HashSet<>();
+        for (int i = 0; i < renewals.size(); i++) {
+            if (!renewals.get(i).renewedExpiredAt().equals(expiredAts.get(renewals.get(i).lockId()))) {
+                notRenewed.add(i);
+            }
+        }
+        return notRenewed;
+    }
+
+}
@@ -6,5 +6,5 @@ import org.springframework.stereotype.Repository;
 import microservices.helper.idempotency.entity.IdempotentOperation;
 
 @Repository
-public interface IdempotentOperationRepository extends MongoRepository<IdempotentOperation, String> {
+public interface IdempotentOperationRepository extends MongoRepository<IdempotentOperation, String>, UnorderedInsertRepository<IdempotentOperation> {
 }
@@ -0,0 +1,14 @@
+package microservices.helper.idempotency.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.enums.OperationState;
+
+@Repository
+public interface IdempotentOperationStateRepository extends MongoRepository<IdempotentOperationState, String>, IdempotentOperationStateRepositoryCustom {
+    long countByStateAndExpiredAtBefore(OperationState state, Instant expiredAt);
+}
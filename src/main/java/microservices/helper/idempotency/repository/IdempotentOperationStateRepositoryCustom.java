@@ -0,0 +1,45 @@
+package microservices.helper.idempotency.repository;
+
+import java.time.Instant;
+
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.enums.OperationState;
+
+/**
+ * Atomic state transitions of idempotent_operation_state documents, each one a
+ * single round trip to MongoDB.
+ */
+public interface IdempotentOperationStateRepositoryCustom {
+
+    /**
+     * Takes the lock described by {@code candidate} unless the document is
+     * SUCCEEDED or LOCKED and not yet expired, with one findOneAndUpdate upsert.
+     *
+     * @return the document after the update, it holds the candidate lockId only
+     * if the lock was acquired
+     */
+    IdempotentOperationState acquire(IdempotentOperationState candidate);
+
+    /**
+     * Moves a LOCKED document to {@code state} if it is still held by {@code lockId}.
+     *
+     * @return false if the lock expired or was already completed
+     */
+    boolean complete(String id, String lockId, OperationState state, String idempotentOperationResult, String errorMessage);
+
+    // LOCKED -> EXPIRED for one lock, if it is still held by lockId and its expiredAt has passed
+    boolean expire(String id, String lockId);
+
+    /**
+     * Moves the expiredAt of a LOCKED document still held by {@code lockId}
+     * and not yet expired at {@code now} to {@code renewedExpiredAt}, never
+     * earlier than it already is.
+     *
+     * @return the document after the update, null if the lock expired or was completed
+     */
+    IdempotentOperationState renew(String id, String lockId, Instant now, Instant renewedExpiredAt);
+
+    // LOCKED -> EXPIRED for every lock whose expiredAt is before now, returns the number of expired locks
+    long expireAll(Instant now);
+
+}
@@ -0,0 +1,121 @@
+package microservices.helper.idempotency.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.OperationState;
+
+public class IdempotentOperationStateRepositoryCustomImpl implements IdempotentOperationStateRepositoryCustom {
+
+    private static final String ACQUIRABLE = "_acquirable";
+
+    private final MongoTemplate mongoTemplate;
+
+    public IdempotentOperationStateRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public IdempotentOperationState acquire(IdempotentOperationState candidate) {
+        Date now = Date.from(candidate.getLockedAt());
+        // A missing document, a FAILED or EXPIRED attempt, or a LOCKED one past its expiry can be locked again
+        Document acquirable = new Document("$or", List.of(
+                new Document("$eq", List.of(new Document("$type", "$state"), "missing")),
+                new Document("$in", List.of("$state", List.of(OperationState.FAILED.getValue(), OperationState.EXPIRED.getValue()))),
+                new Document("$and", List.of(
+                        new Document("$eq", List.of("$state", OperationState.LOCKED.getValue())),
+                        new Document("$lte", List.of("$expiredAt", now))))));
+
+        Document lockFields = new Document()
+                .append("service", literal(candidate.getService()))
+                .append("operation", literal(candidate.getOperation()))
+                .append("idempotencyKey", literal(candidate.getIdempotencyKey()))
+                .append("state", whenAcquirable(OperationState.LOCKED.getValue(), "$state"))
+                .append("idempotencyId", whenAcquirable(candidate.getIdempotencyId(), "$idempotencyId"))
+                .append("lockId", whenAcquirable(candidate.getLockId(), "$lockId"))
+                .append("lockedAt", whenAcquirable(now, "$lockedAt"))
+                .append("expiredAt", whenAcquirable(Date.from(candidate.getExpiredAt()), "$expiredAt"))
+                .append("errorMessage", whenAcquirable("$$REMOVE", "$errorMessage"))
+                .append("updatedAt", whenAcquirable(now, "$updatedAt"));
+
+        List<Bson> pipeline = List.of(
+                new Document("$set", new Document(ACQUIRABLE, acquirable)),
+                new Document("$set", lockFields),
+                new Document("$unset", ACQUIRABLE));
+
+        Document document = mongoTemplate.getCollection(mongoTemplate.getCollectionName(IdempotentOperationState.class))
+                .findOneAndUpdate(new Document("_id", candidate.getId()), pipeline,
+                        new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+        return mongoTemplate.getConverter().read(IdempotentOperationState.class, document);
+    }
+
+    @Override
+    public boolean complete(String id, String lockId, OperationState state, String idempotentOperationResult, String errorMessage) {
+        Query query = Query.query(where("_id").is(id).and("lockId").is(lockId).and("state").is(OperationState.LOCKED));
+        Update update = new Update()
+                .set("state", state)
+                .set("updatedAt", Instant.now());
+        if (idempotentOperationResult != null) {
+            update.set("idempotentOperationResult", idempotentOperationResult);
+        }
+        if (errorMessage != null) {
+            update.set("errorMessage", errorMessage);
+        }
+        return mongoTemplate.updateFirst(query, update, IdempotentOperationState.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public boolean expire(String id, String lockId) {
+        Query query = Query.query(where("_id").is(id).and("lockId").is(lockId).and("state").is(OperationState.LOCKED)
+                .and("expiredAt").lte(Instant.now()));
+        return mongoTemplate.updateFirst(query, expiredUpdate(), IdempotentOperationState.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public IdempotentOperationState renew(String id, String lockId, Instant now, Instant renewedExpiredAt) {
+        Query query = Query.query(where("_id").is(id).and("lockId").is(lockId).and("state").is(OperationState.LOCKED)
+                .and("expiredAt").gt(now));
+        Update update = new Update()
+                .max("expiredAt", renewedExpiredAt)
+                .set("updatedAt", now);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), IdempotentOperationState.class);
+    }
+
+    @Override
+    public long expireAll(Instant now) {
+        Query query = Query.query(where("state").is(OperationState.LOCKED).and("expiredAt").lt(now));
+        return mongoTemplate.updateMulti(query, expiredUpdate(), IdempotentOperationState.class).getModifiedCount();
+    }
+
+    private static Update expiredUpdate() {
+        return new Update()
+                .set("state", OperationState.EXPIRED)
+                .set("errorMessage", ExecutionResult.OPERATION_EXPIRED.getValue())
+                .set("updatedAt", Instant.now());
+    }
+
+    private static Document whenAcquirable(Object then, Object otherwise) {
+        return new Document("$cond", List.of("$" + ACQUIRABLE, then, otherwise));
+    }
+
+    // Client supplied names are never interpreted as field paths or operators
+    private static Document literal(String value) {
+        return new Document("$literal", value);
+    }
+
+}
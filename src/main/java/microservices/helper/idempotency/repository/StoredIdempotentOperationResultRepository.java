@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
 
 @Repository
-public interface StoredIdempotentOperationResultRepository extends MongoRepository<StoredIdempotentOperationResult, String>{
+public interface StoredIdempotentOperationResultRepository extends MongoRepository<StoredIdempotentOperationResult, String>, UnorderedInsertRepository<StoredIdempotentOperationResult> {
 
     Optional<StoredIdempotentOperationResult> findByServiceAndOperationAndIdempotencyKey(String service, String operation, String idempotencyKey);
 
@@ -0,0 +1,19 @@
+package microservices.helper.idempotency.repository;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Repository fragment for bulk inserts that must not stop at the first
+ * duplicate key, e.g. when many locks are acquired in one batch.
+ */
+public interface UnorderedInsertRepository<T> {
+
+    /**
+     * Inserts all entities with one unordered insertMany.
+     *
+     * @return positions in {@code entities} rejected because of a duplicate key
+     */
+    Set<Integer> insertAllUnordered(List<T> entities);
+
+}
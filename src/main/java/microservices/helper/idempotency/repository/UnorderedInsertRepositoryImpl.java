@@ -0,0 +1,44 @@
+package microservices.helper.idempotency.repository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+
+public class UnorderedInsertRepositoryImpl<T> implements UnorderedInsertRepository<T> {
+
+    private final MongoTemplate mongoTemplate;
+
+    public UnorderedInsertRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Set<Integer> insertAllUnordered(List<T> entities) {
+        if (entities.isEmpty()) {
+            return Set.of();
+        }
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, entities.get(0).getClass())
+                    .insert(entities)
+                    .execute();
+            return Set.of();
+        } catch (BulkOperationException e) {
+            Set<Integer> duplicateIndexes = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                duplicateIndexes.add(error.getIndex());
+            }
+            return duplicateIndexes;
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package microservices.helper.idempotency.repository.reactive;
+
+import java.time.Instant;
+import java.util.Collection;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface ReactiveIdempotentOperationLockTempRepository extends ReactiveMongoRepository<IdempotentOperationLockTemp, String> {
+    Flux<IdempotentOperationLockTemp> findByExpiredAtBefore(Instant now);
+
+    Flux<IdempotentOperationLockTemp> findByServiceAndOperationAndIdempotencyKeyIn(String service, String operation, Collection<String> idempotencyKeys);
+}
@@ -0,0 +1,10 @@
+package microservices.helper.idempotency.repository.reactive;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+@Repository
+public interface ReactiveStoredIdempotentOperationResultRepository extends ReactiveMongoRepository<StoredIdempotentOperationResult, String> {
+}
@@ -0,0 +1,168 @@
+package microservices.helper.idempotency.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.completion.CompletionWaiterRegistry;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+/**
+ * Parks a duplicate request until the lock it ran into is released, instead of
+ * letting the client retry POST /idempotent-operation in a loop. No thread is
+ * held while waiting: the waiter wakes up when the operation completes on this
+ * node or on the change stream, at the lock's expiredAt or at the deadline,
+ * and then reads the status once. The result is the stored result, the saved
+ * failure or OPERATION_EXPIRED once the lock is released, or
+ * OPERATION_ALREADY_LOCKED when the deadline passes first.
+ */
+@Service
+@ConditionalOnProperty(name = "idempotent.storage.mode", havingValue = "collections", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class CompletionWaitService {
+
+    private final IdempotencyService idempotencyService;
+    private final IdempotencyStore idempotencyStore;
+    private final CompletionWaiterRegistry completionWaiterRegistry;
+    private final IdempotencyKeyHasher idempotencyKeyHasher;
+    private final Duration defaultTimeout;
+    private final Duration maxTimeout;
+    // Status reads after a wake-up block on MongoDB, and are still bounded by the MongoDB permit limiter
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("completion-wait-", 0).factory());
+
+    public CompletionWaitService(IdempotencyService idempotencyService,
+                                 IdempotencyStore idempotencyStore,
+                                 CompletionWaiterRegistry completionWaiterRegistry,
+                                 IdempotencyKeyHasher idempotencyKeyHasher,
+                                 @Value("${idempotent.wait.default-timeout}") Duration defaultTimeout,
+                                 @Value("${idempotent.wait.max-timeout}") Duration maxTimeout) {
+        this.idempotencyService = idempotencyService;
+        this.idempotencyStore = idempotencyStore;
+        this.completionWaiterRegistry = completionWaiterRegistry;
+        this.idempotencyKeyHasher = idempotencyKeyHasher;
+        this.defaultTimeout = defaultTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    public Duration getTimeout(Duration requestedTimeout) {
+        if (requestedTimeout == null || requestedTimeout.isNegative()) {
+            return defaultTimeout;
+        }
+        return requestedTimeout.compareTo(maxTimeout) > 0 ? maxTimeout : requestedTimeout;
+    }
+
+    public CompletableFuture<IdempotentOperationResult> waitForCompletion(IdempotentOperationResult input, Duration timeout) {
+        long deadline = System.nanoTime() + getTimeout(timeout).toNanos();
+        IdempotentOperationResult status = getStatus(input);
+        if (!isLocked(status)) {
+            return CompletableFuture.completedFuture(status);
+        }
+        String hashedKey = idempotencyKeyHasher.hash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        CompletableFuture<Void> signal = completionWaiterRegistry.register(hashedKey, status.getIdempotencyId());
+        if (signal == null) {
+            throw new ServiceOverloadedException("Too many requests waiting for completion, retry later");
+        }
+        log.info("Waiting for completion of service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+        return awaitRelease(input, hashedKey, status, signal, deadline);
+    }
+
+    // The signal is registered before the status is read, so a completion in between still wakes the waiter
+    private CompletableFuture<IdempotentOperationResult> awaitRelease(IdempotentOperationResult input, String hashedKey, IdempotentOperationResult lock,
+                                                                      CompletableFuture<Void> signal, long deadline) {
+        IdempotentOperationResult outcome;
+        try {
+            outcome = resolve(input, lock, deadline);
+        } catch (RuntimeException e) {
+            signal.cancel(false);
+            return CompletableFuture.failedFuture(e);
+        }
+        if (outcome != null) {
+            signal.cancel(false);
+            return CompletableFuture.completedFuture(outcome);
+        }
+        long wakeUpNanos = Math.min(deadline - System.nanoTime(), Duration.between(Instant.now(), lock.getExpiredAt()).toNanos());
+        return signal.completeOnTimeout(null, Math.max(0, wakeUpNanos), TimeUnit.NANOSECONDS)
+                .thenComposeAsync(ignored -> {
+                    CompletableFuture<Void> nextSignal = completionWaiterRegistry.register(hashedKey, lock.getIdempotencyId());
+                    if (nextSignal == null) {
+                        return CompletableFuture.completedFuture(lock);
+                    }
+                    return awaitRelease(input, hashedKey, lock, nextSignal, deadline);
+                }, executor);
+    }
+
+    // Null while the awaited lock is held and neither its expiredAt nor the deadline has passed
+    private IdempotentOperationResult resolve(IdempotentOperationResult input, IdempotentOperationResult lock, long deadline) {
+        IdempotentOperationResult status = getStatus(input);
+        boolean deadlinePassed = deadline - System.nanoTime() <= 0;
+        if (ExecutionResult.SUCCESS.getValue().equals(status.getExecutionResult())) {
+            return status;
+        }
+        if (isLocked(status) && lock.getIdempotencyId().equals(status.getIdempotencyId())) {
+            // A renewed lease moves the next wake-up to the new expiredAt
+            lock.setExpiredAt(status.getExpiredAt());
+            if (!Instant.now().isBefore(lock.getExpiredAt())) {
+                return createReleasedResponse(lock, ExecutionResult.OPERATION_EXPIRED, null);
+            }
+            return deadlinePassed ? status : null;
+        }
+        // Released without a stored result, or already locked again by a later attempt
+        Optional<FailedIdempotentOperationResult> failedResult = idempotencyStore.findFailedResult(lock.getIdempotencyId());
+        if (failedResult.isPresent()) {
+            String errorMessage = failedResult.get().getErrorMessage();
+            return ExecutionResult.OPERATION_EXPIRED.getValue().equals(errorMessage)
+                    ? createReleasedResponse(lock, ExecutionResult.OPERATION_EXPIRED, null)
+                    : createReleasedResponse(lock, ExecutionResult.OPERATION_FAILED, errorMessage);
+        }
+        // A completion deletes the temp lock before it writes the result, and signals again once it is written
+        if (Instant.now().isBefore(lock.getExpiredAt()) && !deadlinePassed) {
+            return null;
+        }
+        return createReleasedResponse(lock, ExecutionResult.OPERATION_EXPIRED, null);
+    }
+
+    private IdempotentOperationResult getStatus(IdempotentOperationResult input) {
+        return idempotencyService.getExecutionStatuses(List.of(input)).get(0);
+    }
+
+    private static boolean isLocked(IdempotentOperationResult status) {
+        return ExecutionResult.OPERATION_ALREADY_LOCKED.getValue().equals(status.getExecutionResult());
+    }
+
+    private static IdempotentOperationResult createReleasedResponse(IdempotentOperationResult lock, ExecutionResult executionResult, String errorMessage) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setIdempotencyId(lock.getIdempotencyId());
+        output.setService(lock.getService());
+        output.setOperation(lock.getOperation());
+        output.setIdempotencyKey(lock.getIdempotencyKey());
+        output.setLockedAt(lock.getLockedAt());
+        output.setExpiredAt(lock.getExpiredAt());
+        output.setExecutionResult(executionResult.getValue());
+        output.setIdempotentOperationResult(errorMessage);
+        return output;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,150 @@
+package microservices.helper.idempotency.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.jfr.SweepBatchEvent;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+
+/**
+ * Expires the temp locks whose node-local expiry task never ran, e.g. because
+ * the node holding them was restarted. Expired locks are read oldest first in
+ * pages of page-size through the expiredAt index, and every page is settled
+ * with one insertMany into the lock history, one insertMany of failed results
+ * and one deleteMany. A page is written before its temp locks are deleted and
+ * duplicates are ignored, so a run stopped by its time budget, an error or a
+ * crash leaves only unswept locks behind, and the next run on any node resumes
+ * with the oldest of them.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.mode", havingValue = "collections", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class ExpiredLockSweeper {
+
+    private final IdempotencyStore idempotencyStore;
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final IdempotencyMetrics idempotencyMetrics;
+    private final int pageSize;
+    private final Duration timeBudget;
+
+    public ExpiredLockSweeper(IdempotencyStore idempotencyStore,
+                              IdempotentOperationConfigCache idempotentOperationConfigCache,
+                              IdempotencyMetrics idempotencyMetrics,
+                              @Value("${idempotent.scheduling.expired-lock-sweep-page-size}") int pageSize,
+                              @Value("${idempotent.scheduling.expired-lock-sweep-time-budget}") Duration timeBudget) {
+        this.idempotencyStore = idempotencyStore;
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.idempotencyMetrics = idempotencyMetrics;
+        this.pageSize = pageSize;
+        this.timeBudget = timeBudget;
+    }
+
+    // The time budget must stay below lockAtMostFor, otherwise a second node may start sweeping the same pages
+    @Scheduled(cron = "${idempotent.scheduling.expired-lock-removal-rate}")
+    @SchedulerLock(name = "cleanTempLock", lockAtLeastFor = "PT30S", lockAtMostFor = "PT1M")
+    public void cleanLockedOperations() {
+        // Locks expiring during the run are left to their expiry task or the next run, so the run always ends
+        Instant expiredBefore = Instant.now();
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+        long swept = 0;
+        boolean caughtUp = false;
+        try {
+            while (System.nanoTime() - deadline < 0) {
+                SweepBatchEvent batchEvent = new SweepBatchEvent();
+                batchEvent.begin();
+                // Swept locks are deleted, so the first page always holds the oldest locks not swept yet
+                List<IdempotentOperationLockTemp> tempLocks = idempotencyStore.findExpiredTempLocks(expiredBefore, pageSize);
+                if (!tempLocks.isEmpty()) {
+                    try {
+                        sweep(tempLocks);
+                    } catch (RuntimeException e) {
+                        batchEvent.commit(tempLocks.size(), "FAILED");
+                        throw e;
+                    }
+                    swept += tempLocks.size();
+                    idempotencyMetrics.recordSweptLocks(tempLocks.size());
+                    batchEvent.commit(tempLocks.size(), "SWEPT");
+                }
+                if (tempLocks.size() < pageSize) {
+                    caughtUp = true;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to sweep expired temp locks, the next run resumes with the remaining ones", e);
+        }
+        if (!caughtUp) {
+            log.warn("Expired lock sweep stopped after {} locks, the next run resumes with the remaining ones", swept);
+        } else if (swept > 0) {
+            log.info("Expired {} temp locks", swept);
+        }
+        recordLag();
+    }
+
+    private void sweep(List<IdempotentOperationLockTemp> tempLocks) {
+        List<IdempotentOperationLock> lockRecords = new ArrayList<>(tempLocks.size());
+        List<FailedIdempotentOperationResult> failedResults = new ArrayList<>(tempLocks.size());
+        Set<String> lockIds = new HashSet<>();
+        for (IdempotentOperationLockTemp tempLock : tempLocks) {
+            lockRecords.add(newLockRecord(tempLock));
+            failedResults.add(newFailedResult(tempLock));
+            lockIds.add(tempLock.getId());
+        }
+        // A duplicate means the lock was completed or expired by its node meanwhile, or by an interrupted run
+        idempotencyStore.insertLockRecords(lockRecords);
+        idempotencyStore.insertFailedResults(failedResults);
+        idempotencyStore.deleteTempLocks(lockIds);
+    }
+
+    private void recordLag() {
+        try {
+            Instant now = Instant.now();
+            Duration lag = idempotencyStore.findOldestExpiredTempLock(now)
+                    .map(tempLock -> Duration.between(tempLock.getExpiredAt(), now))
+                    .orElse(Duration.ZERO);
+            idempotencyMetrics.recordSweepLag(lag);
+        } catch (Exception e) {
+            log.warn("Failed to measure expired lock sweep lag", e);
+        }
+    }
+
+    private IdempotentOperationLock newLockRecord(IdempotentOperationLockTemp tempLock) {
+        IdempotentOperationLock lock = new IdempotentOperationLock();
+        lock.setId(tempLock.getId());
+        lock.setIdempotencyId(tempLock.getIdempotencyId());
+        lock.setLockedAt(tempLock.getLockedAt());
+        lock.setExpiredAt(tempLock.getExpiredAt());
+        lock.setCreatedAt(Instant.now());
+        lock.setExpireAt(idempotentOperationConfigCache.getExpireAt(tempLock.getService(), tempLock.getOperation(), lock.getCreatedAt()));
+        return lock;
+    }
+
+    private FailedIdempotentOperationResult newFailedResult(IdempotentOperationLockTemp tempLock) {
+        FailedIdempotentOperationResult failedResult = new FailedIdempotentOperationResult();
+        failedResult.setId(tempLock.getIdempotencyId());
+        failedResult.setLockId(tempLock.getId());
+        failedResult.setErrorMessage(ExecutionResult.OPERATION_EXPIRED.getValue());
+        failedResult.setExpireAt(idempotentOperationConfigCache.getExpireAt(tempLock.getService(), tempLock.getOperation(), Instant.now()));
+        return failedResult;
+    }
+
+}
@@ -1,11 +1,28 @@
 package microservices.helper.idempotency.service;
 
+import java.util.List;
+
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseResult;
 import microservices.helper.idempotency.model.IdempotentOperationResult;
 
 public interface IdempotencyService {
 
+    // A result served from the off-heap result cache is an OffHeapCachedResult, which must be closed once written
     IdempotentOperationResult getStoredExecutionResultOrLockOperation(IdempotentOperationResult input);
 
+    // One outcome per input, in input order: SUCCESS, OPERATION_LOCKED_SUCCESSFULLY or OPERATION_ALREADY_LOCKED
+    List<IdempotentOperationResult> getStoredExecutionResultsOrLockOperations(List<IdempotentOperationResult> inputs);
+
+    // Read-only, never takes a lock: SUCCESS, OPERATION_ALREADY_LOCKED or OPERATION_NOT_FOUND
+    List<IdempotentOperationResult> getExecutionStatuses(List<IdempotentOperationResult> inputs);
+
     void saveIdempotentOperationResult(IdempotentOperationResult input);
 
+    // One outcome per input, in input order: SAVED, EXPIRED or DUPLICATE
+    List<IdempotentOperationCompletionResult> saveIdempotentOperationResults(List<IdempotentOperationResult> inputs);
+
+    // One outcome per input, in input order: RENEWED with the new expiredAt, or EXPIRED once the lock is gone or past its expiry
+    List<IdempotentOperationLeaseResult> renewLeases(List<IdempotentOperationResult> inputs);
+
 }
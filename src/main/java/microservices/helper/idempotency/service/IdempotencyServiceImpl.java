@@ -1,102 +1,490 @@
 package microservices.helper.idempotency.service;
 
 import java.time.Instant;
-import java.util.Base64;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import microservices.helper.idempotency.entity.*;
-import microservices.helper.idempotency.repository.*;
-import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.enums.AdmissionPriority;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
 import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.LeaseResult;
+import microservices.helper.idempotency.enums.LifecyclePhase;
 import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseResult;
 import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.audit.IdempotentOperationAuditWriter;
+import microservices.helper.idempotency.cache.CompletedKeyFilter;
 import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
-import org.springframework.util.DigestUtils;
+import microservices.helper.idempotency.cache.OffHeapCachedResult;
+import microservices.helper.idempotency.cache.OffHeapResultCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.completion.CompletionWaiterRegistry;
+import microservices.helper.idempotency.concurrency.AdaptiveConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.InFlightKeyTable;
+import microservices.helper.idempotency.jfr.AuditInsertEvent;
+import microservices.helper.idempotency.jfr.CompletionEvent;
+import microservices.helper.idempotency.jfr.IdempotencyEvent;
+import microservices.helper.idempotency.jfr.LockAcquireEvent;
+import microservices.helper.idempotency.jfr.LockExpiryEvent;
+import microservices.helper.idempotency.jfr.ResultLookupEvent;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import microservices.helper.idempotency.store.TempLockRenewal;
+import microservices.helper.idempotency.tuning.LockDurationLearner;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
 
 @Service
+@ConditionalOnProperty(name = "idempotent.storage.mode", havingValue = "collections", matchIfMissing = true)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @AllArgsConstructor
 @Slf4j
 public class IdempotencyServiceImpl implements IdempotencyService {
 
-    private final IdempotentOperationRepository idempotentOperationRepository;
-    private final IdempotentOperationLockRepository idempotentOperationLockRepository;
-    private final StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository;
-    private final IdempotentOperationLockTempRepository idempotentOperationLockTempRepository;
-    private final FailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository;
+    private final IdempotencyStore idempotencyStore;
     private final IdempotentOperationConfigCache idempotentOperationConfigCache;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+    private final OffHeapResultCache offHeapResultCache;
+    private final CompletionWaiterRegistry completionWaiterRegistry;
+    private final InFlightKeyTable inFlightKeyTable;
+    private final CompletedKeyFilter completedKeyFilter;
+    private final IdempotentOperationAuditWriter idempotentOperationAuditWriter;
+    private final LockExpiryScheduler lockExpiryScheduler;
+    private final IdempotencyKeyHasher idempotencyKeyHasher;
+    private final IdempotencyMetrics idempotencyMetrics;
+    private final LockDurationLearner lockDurationLearner;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
 
     @Override
     public IdempotentOperationResult getStoredExecutionResultOrLockOperation(IdempotentOperationResult input) {
         log.info("Processing idempotent operation for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
 
+        // Admitted as a result read, the request is held to the lock acquisition share only if it goes on to take a lock
+        adaptiveConcurrencyLimiter.acquire(AdmissionPriority.RESULT_READ);
+        try {
+            IdempotentOperationResult output = getStoredExecutionResultOrLock(input);
+            idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), ExecutionResult.valueOf(output.getExecutionResult()));
+            return output;
+        } catch (IdempotencyException e) {
+            idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), e.getExecutionResult());
+            throw e;
+        } catch (ServiceOverloadedException e) {
+            // Shed requests are counted by the limiter, the operation itself did not fail
+            throw e;
+        } catch (RuntimeException e) {
+            idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), ExecutionResult.OPERATION_FAILED);
+            throw e;
+        } finally {
+            adaptiveConcurrencyLimiter.release();
+        }
+    }
+
+    private IdempotentOperationResult getStoredExecutionResultOrLock(IdempotentOperationResult input) {
         // STEP 1: ALWAYS create IdempotentOperation record for ALL incoming requests
-        IdempotentOperation idempotentOperation = createIdempotentOperation(input);
+        long phaseStart = System.nanoTime();
+        AuditInsertEvent auditEvent = new AuditInsertEvent();
+        auditEvent.begin();
+        IdempotentOperation idempotentOperation;
+        try {
+            idempotentOperation = createIdempotentOperation(input);
+        } catch (RuntimeException e) {
+            commitEvent(auditEvent, input.getService(), input.getOperation(), input.getIdempotencyKey(), "FAILED");
+            throw e;
+        }
+        auditEvent.end();
+        phaseStart = idempotencyMetrics.recordPhase(LifecyclePhase.AUDIT_INSERT, input.getService(), input.getOperation(), phaseStart);
 
         // STEP 2: Check if a result already exists (fast path)
+        // The key is hashed once the record is written, so a request missing part of it is still audited
         String hashedKey = getHashedKey(input.getService(), input.getOperation(), input.getIdempotencyKey());
-        Optional<StoredIdempotentOperationResult> existingResult = hashedKey != null ? 
-            storedIdempotentOperationResultRepository.findById(hashedKey) : Optional.empty();
+        auditEvent.record(input.getService(), input.getOperation(), hashedKey, idempotentOperationAuditWriter.isWriteBehind() ? "QUEUED" : "INSERTED");
+        ResultLookupEvent lookupEvent = new ResultLookupEvent();
+        lookupEvent.begin();
+        Optional<StoredIdempotentOperationResult> existingResult;
+        try {
+            Optional<OffHeapCachedResult> offHeapResult = offHeapResultCache.get(hashedKey);
+            if (offHeapResult.isPresent()) {
+                idempotencyMetrics.recordPhase(LifecyclePhase.RESULT_LOOKUP, input.getService(), input.getOperation(), phaseStart);
+                lookupEvent.commit(input.getService(), input.getOperation(), hashedKey, "OFF_HEAP");
+                log.info("Found existing result off heap, returning cached response");
+                return offHeapResult.get();
+            }
+            // While this node holds the lock, no result can have been saved through it, and the lock is not read again
+            if (hashedKey != null && inFlightKeyTable.getLocalLock(hashedKey) != null) {
+                idempotencyMetrics.recordPhase(LifecyclePhase.RESULT_LOOKUP, input.getService(), input.getOperation(), phaseStart);
+                lookupEvent.commit(input.getService(), input.getOperation(), hashedKey, "LOCKED_BY_THIS_NODE");
+                log.warn("LOCK HELD BY THIS NODE for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+                throw new IdempotencyException("Operation is already locked by another process", ExecutionResult.OPERATION_ALREADY_LOCKED);
+            }
+            // Concurrent duplicates on this node share one lookup
+            existingResult = hashedKey != null ?
+                inFlightKeyTable.lookupResult(hashedKey, () -> findStoredResult(hashedKey, input)) : Optional.empty();
+        } catch (IdempotencyException e) {
+            // Recorded as LOCKED_BY_THIS_NODE above
+            throw e;
+        } catch (RuntimeException e) {
+            lookupEvent.commit(input.getService(), input.getOperation(), hashedKey, "FAILED");
+            throw e;
+        }
+        phaseStart = idempotencyMetrics.recordPhase(LifecyclePhase.RESULT_LOOKUP, input.getService(), input.getOperation(), phaseStart);
+        lookupEvent.commit(input.getService(), input.getOperation(), hashedKey, existingResult.isPresent() ? "FOUND" : "NOT_FOUND");
         if (existingResult.isPresent()) {
             log.info("Found existing result, returning cached response");
-            return getCachedResult(existingResult.get());
+            IdempotentOperationResult output = getCachedResult(existingResult.get());
+            // Large results are replayed from the off-heap tier from now on
+            offHeapResultCache.put(hashedKey, output);
+            return output;
         }
 
         // STEP 3: ATOMIC LOCK ACQUISITION - Only ONE can succeed for the same(service, operation, idempotencyKey)
-        // This uses MongoDB's unique constraint to ensure atomicity
-        IdempotentOperationLockTemp tempLock = acquireLock(input, idempotentOperation);
+        // This uses the store's unique (service, operation, idempotencyKey) constraint to ensure atomicity
+        adaptiveConcurrencyLimiter.admitLockAcquisition();
+        IdempotentOperationLockTemp tempLock = acquireLock(input, idempotentOperation, hashedKey);
+        idempotencyMetrics.recordPhase(LifecyclePhase.LOCK_INSERT, input.getService(), input.getOperation(), phaseStart);
+        inFlightKeyTable.holdLock(hashedKey, tempLock);
 
         // Schedule to clean up lock and operation
-        scheduler.schedule(() -> {
-            String lockId = tempLock.getId();
-            if (lockId != null && idempotentOperationLockTempRepository.existsById(lockId)) { // That means the operation is not completed
-                deleteTempLock(lockId);
-                insertLockRecord(lockId, tempLock.getIdempotencyId(), tempLock.getLockedAt(), tempLock.getExpiredAt());
-                saveFailedResult(tempLock.getIdempotencyId(), tempLock.getId(), ExecutionResult.OPERATION_EXPIRED.getValue());
-            }
-        }, tempLock.getExpiredAt().toEpochMilli() - Instant.now().toEpochMilli(), TimeUnit.MILLISECONDS);
+        scheduleLockExpiry(tempLock);
 
         return createLockAcquiredResponse(tempLock);
     }
 
-    // Get hashed key as a base64 string
-    private String getHashedKey(@NonNull String service,@NonNull String operation,@NonNull String idempotencyKey) {
-        String combinedKey = service + "-" + operation + "-" + idempotencyKey;
-        byte[] keyBytes = combinedKey.getBytes();
-        if (keyBytes == null) {
-            throw new IllegalArgumentException("Failed to convert key to bytes");
+    @Override
+    public List<IdempotentOperationResult> getStoredExecutionResultsOrLockOperations(List<IdempotentOperationResult> inputs) {
+        log.info("Processing batch of {} idempotent operations", inputs.size());
+
+        adaptiveConcurrencyLimiter.acquire(AdmissionPriority.RESULT_READ);
+        try {
+            return getStoredExecutionResultsOrLock(inputs);
+        } finally {
+            adaptiveConcurrencyLimiter.release();
         }
-        return Base64.getEncoder().encodeToString(DigestUtils.md5Digest(keyBytes));
     }
 
-    private IdempotentOperation createIdempotentOperation(IdempotentOperationResult input) {
+    private List<IdempotentOperationResult> getStoredExecutionResultsOrLock(List<IdempotentOperationResult> inputs) {
+        // STEP 1: ALWAYS create IdempotentOperation records for ALL incoming items, with one unordered insertMany
+        List<IdempotentOperation> idempotentOperations = createIdempotentOperations(inputs);
+
+        // STEP 2: Check which results already exist, with one $in lookup for the near-cache misses
+        IdempotencyStore consistentStore = consistentStore(inputs);
+        List<String> hashedKeys = getHashedKeys(inputs);
+        Map<String, StoredIdempotentOperationResult> existingResults = findStoredResults(consistentStore, hashedKeys, inputs);
+
+        // STEP 3: ATOMIC LOCK ACQUISITION with one unordered insertMany, a duplicate key means the item is already locked
+        IdempotentOperationResult[] outputs = new IdempotentOperationResult[inputs.size()];
+        Set<String> lockedHashedKeys = new HashSet<>();
+        List<IdempotentOperationLockTemp> tempLocks = new ArrayList<>();
+        List<Integer> tempLockPositions = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            StoredIdempotentOperationResult existingResult = existingResults.get(hashedKeys.get(i));
+            if (existingResult != null) {
+                outputs[i] = getCachedResult(existingResult);
+            } else if (inFlightKeyTable.getLocalLock(hashedKeys.get(i)) != null) {
+                outputs[i] = createAlreadyLockedResponse(inputs.get(i));
+            } else if (lockedHashedKeys.add(hashedKeys.get(i))) {
+                tempLocks.add(newTempLock(inputs.get(i), idempotentOperations.get(i).getId()));
+                tempLockPositions.add(i);
+            } else {
+                // The same key is repeated in this batch, only its first occurrence may take the lock
+                outputs[i] = createAlreadyLockedResponse(inputs.get(i));
+            }
+        }
+        if (!tempLocks.isEmpty()) {
+            adaptiveConcurrencyLimiter.admitLockAcquisition();
+        }
+        Set<Integer> duplicateTempLocks = insertTempLocks(consistentStore, tempLocks);
+        for (int j = 0; j < tempLocks.size(); j++) {
+            int i = tempLockPositions.get(j);
+            if (duplicateTempLocks.contains(j)) {
+                outputs[i] = createAlreadyLockedResponse(inputs.get(i));
+            } else {
+                scheduleLockExpiry(tempLocks.get(j));
+                inFlightKeyTable.holdLock(hashedKeys.get(i), tempLocks.get(j));
+                outputs[i] = createLockAcquiredResponse(tempLocks.get(j));
+            }
+        }
+        log.info("Processed batch of {} idempotent operations, {} locks acquired", inputs.size(), tempLocks.size() - duplicateTempLocks.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            idempotencyMetrics.recordAcquire(inputs.get(i).getService(), inputs.get(i).getOperation(), ExecutionResult.valueOf(outputs[i].getExecutionResult()));
+        }
+        return Arrays.asList(outputs);
+    }
+
+    @Override
+    public List<IdempotentOperationResult> getExecutionStatuses(List<IdempotentOperationResult> inputs) {
+        log.info("Looking up status of {} idempotent operations", inputs.size());
+
+        List<String> hashedKeys = getHashedKeys(inputs);
+        Map<String, StoredIdempotentOperationResult> existingResults = findStoredResults(consistentStore(inputs), hashedKeys, inputs);
+        List<IdempotentOperationResult> pendingInputs = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (!existingResults.containsKey(hashedKeys.get(i))) {
+                pendingInputs.add(inputs.get(i));
+            }
+        }
+        Map<String, IdempotentOperationLockTemp> tempLocks = findTempLocks(pendingInputs);
+
+        List<IdempotentOperationResult> outputs = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            StoredIdempotentOperationResult existingResult = existingResults.get(hashedKeys.get(i));
+            IdempotentOperationLockTemp tempLock = tempLocks.get(hashedKeys.get(i));
+            if (existingResult != null) {
+                outputs.add(getCachedResult(existingResult));
+            } else if (tempLock != null) {
+                outputs.add(createLockedStatusResponse(tempLock));
+            } else {
+                outputs.add(createNotFoundResponse(inputs.get(i)));
+            }
+        }
+        return outputs;
+    }
+
+    // Locks recovered by an embedded store get their expiry back, the ones already due run right away
+    @EventListener(ApplicationReadyEvent.class)
+    public void rescheduleRecoveredLocks() {
+        List<IdempotentOperationLockTemp> recoveredTempLocks = idempotencyStore.findRecoveredTempLocks();
+        for (IdempotentOperationLockTemp tempLock : recoveredTempLocks) {
+            scheduleLockExpiry(tempLock);
+        }
+        if (!recoveredTempLocks.isEmpty()) {
+            log.info("Rescheduled the expiry of {} recovered temp locks", recoveredTempLocks.size());
+        }
+    }
+
+    // Expire the temp lock on this node if the operation has not completed in time
+    private void scheduleLockExpiry(IdempotentOperationLockTemp tempLock) {
+        scheduleLockExpiry(tempLock.getId(), tempLock.getExpiredAt());
+    }
+
+    // Replaces the timer this node already keeps for the lock
+    private void scheduleLockExpiry(String lockId, Instant expiredAt) {
+        lockExpiryScheduler.schedule(lockId, () -> expireLock(lockId), expiredAt);
+    }
+
+    // The lock is read again when its timer fires, a lease renewed meanwhile on any node moves the timer to the new expiredAt
+    private void expireLock(String lockId) {
+        LockExpiryEvent expiryEvent = new LockExpiryEvent();
+        expiryEvent.begin();
+        Optional<IdempotentOperationLockTemp> tempLock = idempotencyStore.findTempLock(lockId);
+        if (tempLock.isEmpty()) { // That means the operation is completed
+            commitEvent(expiryEvent, null, null, null, "COMPLETED");
+            return;
+        }
+        if (tempLock.get().getExpiredAt().isAfter(Instant.now())) {
+            scheduleLockExpiry(tempLock.get());
+            commitEvent(expiryEvent, tempLock.get().getService(), tempLock.get().getOperation(), tempLock.get().getIdempotencyKey(), "RENEWED");
+            return;
+        }
+        deleteTempLock(tempLock.get());
+        insertLockRecord(tempLock.get());
+        saveFailedResult(tempLock.get().getService(), tempLock.get().getOperation(), tempLock.get().getIdempotencyId(), lockId, ExecutionResult.OPERATION_EXPIRED.getValue());
+        // The execution ran at least as long as it held the lock
+        lockDurationLearner.recordExecution(tempLock.get().getService(), tempLock.get().getOperation(), tempLock.get().getLockedAt(), tempLock.get().getExpiredAt());
+        signalCompletion(tempLock.get());
+        commitEvent(expiryEvent, tempLock.get().getService(), tempLock.get().getOperation(), tempLock.get().getIdempotencyKey(),
+                ExecutionResult.OPERATION_EXPIRED.getValue());
+    }
+
+    // The key is only hashed for events that are recorded, and not at all when a part of it is missing
+    private void commitEvent(IdempotencyEvent event, String service, String operation, String idempotencyKey, String outcome) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        String hashedKey = service != null && operation != null && idempotencyKey != null ? getHashedKey(service, operation, idempotencyKey) : null;
+        event.record(service, operation, hashedKey, outcome);
+    }
+
+    private IdempotencyStore consistentStore(String service, String operation) {
+        return idempotencyStore.withConsistency(idempotentOperationConfigCache.getConsistencyProfile(service, operation));
+    }
+
+    // A batch goes through the strongest profile among its operations, so no item gets less than it asked for
+    private IdempotencyStore consistentStore(List<IdempotentOperationResult> inputs) {
+        ConsistencyProfile strongestProfile = null;
+        for (IdempotentOperationResult input : inputs) {
+            ConsistencyProfile consistencyProfile = idempotentOperationConfigCache.getConsistencyProfile(input.getService(), input.getOperation());
+            if (consistencyProfile != null && (strongestProfile == null || consistencyProfile.compareTo(strongestProfile) > 0)) {
+                strongestProfile = consistencyProfile;
+            }
+        }
+        return idempotencyStore.withConsistency(strongestProfile != null ? strongestProfile : ConsistencyProfile.DEFAULT);
+    }
+
+    private String getHashedKey(@NonNull String service, @NonNull String operation, @NonNull String idempotencyKey) {
+        return idempotencyKeyHasher.hash(service, operation, idempotencyKey);
+    }
+
+    private List<String> getHashedKeys(List<IdempotentOperationResult> inputs) {
+        List<String> hashedKeys = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            hashedKeys.add(getHashedKey(input.getService(), input.getOperation(), input.getIdempotencyKey()));
+        }
+        return hashedKeys;
+    }
+
+    private IdempotentOperation newIdempotentOperation(IdempotentOperationResult input) {
         IdempotentOperation idempotentOperation = new IdempotentOperation();
         idempotentOperation.setId(UUID.randomUUID().toString());
         idempotentOperation.setService(input.getService());
         idempotentOperation.setOperation(input.getOperation());
         idempotentOperation.setIdempotencyKey(input.getIdempotencyKey());
         idempotentOperation.setCreatedAt(Instant.now());
+        idempotentOperation.setExpireAt(idempotentOperationConfigCache.getExpireAt(input.getService(), input.getOperation(), idempotentOperation.getCreatedAt()));
+        return idempotentOperation;
+    }
+
+    private List<IdempotentOperation> createIdempotentOperations(List<IdempotentOperationResult> inputs) {
+        List<IdempotentOperation> idempotentOperations = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            idempotentOperations.add(newIdempotentOperation(input));
+        }
         try {
-            return idempotentOperationRepository.insert(idempotentOperation);
+            if (idempotentOperationAuditWriter.isWriteBehind()) {
+                idempotentOperationAuditWriter.writeAll(idempotentOperations);
+            } else {
+                idempotencyStore.insertOperations(idempotentOperations);
+            }
+            return idempotentOperations;
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to create idempotent operations", e);
+            throw new IdempotencyException("Failed to create idempotent operations", e, ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    private IdempotentOperation createIdempotentOperation(IdempotentOperationResult input) {
+        IdempotentOperation idempotentOperation = newIdempotentOperation(input);
+        try {
+            if (idempotentOperationAuditWriter.isWriteBehind()) {
+                // The id is generated above, so the response does not wait for the record to be written
+                idempotentOperationAuditWriter.write(idempotentOperation);
+                return idempotentOperation;
+            }
+            return idempotencyStore.insertOperation(idempotentOperation);
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to create idempotent operation", e);
             throw new IdempotencyException("Failed to create idempotent operation", e, ExecutionResult.OPERATION_FAILED);
         }
     }
 
+    // Stored results never change once written, so the near-cache is checked before the store
+    private Optional<StoredIdempotentOperationResult> findStoredResult(@NonNull String hashedKey, IdempotentOperationResult input) {
+        Optional<StoredIdempotentOperationResult> cachedResult = storedIdempotentOperationResultCache.get(hashedKey);
+        if (cachedResult.isPresent()) {
+            return cachedResult;
+        }
+        // While the key format is being switched, results may be stored under the id of the other format
+        String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        if (completedKeyFilter.isDefinitelyNotCompleted(hashedKey, fallbackHashedKey)) {
+            return Optional.empty();
+        }
+        IdempotencyStore consistentStore = consistentStore(input.getService(), input.getOperation());
+        Optional<StoredIdempotentOperationResult> storedResult = consistentStore.findResult(hashedKey);
+        if (storedResult.isPresent()) {
+            storedIdempotentOperationResultCache.put(storedResult.get());
+            return storedResult;
+        }
+        if (fallbackHashedKey == null) {
+            return storedResult;
+        }
+        Optional<StoredIdempotentOperationResult> fallbackResult = consistentStore.findResult(fallbackHashedKey);
+        fallbackResult.ifPresent(result -> storedIdempotentOperationResultCache.put(hashedKey, result));
+        return fallbackResult;
+    }
+
+    // hashedKeys are positional with inputs, the result map is keyed by the current hashed key even for fallback hits
+    private Map<String, StoredIdempotentOperationResult> findStoredResults(IdempotencyStore consistentStore, List<String> hashedKeys, List<IdempotentOperationResult> inputs) {
+        Map<String, StoredIdempotentOperationResult> storedResults = new HashMap<>();
+        Set<String> missingKeys = new HashSet<>();
+        for (int i = 0; i < hashedKeys.size(); i++) {
+            String hashedKey = hashedKeys.get(i);
+            Optional<StoredIdempotentOperationResult> cachedResult = storedIdempotentOperationResultCache.get(hashedKey);
+            if (cachedResult.isPresent()) {
+                storedResults.put(hashedKey, cachedResult.get());
+            } else if (!isDefinitelyNotCompleted(hashedKey, inputs.get(i))) {
+                missingKeys.add(hashedKey);
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            for (StoredIdempotentOperationResult storedResult : consistentStore.findResults(missingKeys)) {
+                storedResults.put(storedResult.getId(), storedResult);
+                storedIdempotentOperationResultCache.put(storedResult);
+            }
+            findFallbackStoredResults(consistentStore, hashedKeys, inputs, storedResults, missingKeys);
+        }
+        return storedResults;
+    }
+
+    private boolean isDefinitelyNotCompleted(String hashedKey, IdempotentOperationResult input) {
+        return completedKeyFilter.isDefinitelyNotCompleted(hashedKey,
+                idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey()));
+    }
+
+    // One more $in lookup under the fallback ids, only for the keys that were looked up and are still missing
+    private void findFallbackStoredResults(IdempotencyStore consistentStore, List<String> hashedKeys, List<IdempotentOperationResult> inputs, Map<String, StoredIdempotentOperationResult> storedResults, Set<String> missingKeys) {
+        Map<String, String> hashedKeysByFallbackKey = new HashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (!storedResults.containsKey(hashedKeys.get(i)) && missingKeys.contains(hashedKeys.get(i))) {
+                IdempotentOperationResult input = inputs.get(i);
+                String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+                if (fallbackHashedKey != null) {
+                    hashedKeysByFallbackKey.put(fallbackHashedKey, hashedKeys.get(i));
+                }
+            }
+        }
+        if (hashedKeysByFallbackKey.isEmpty()) {
+            return;
+        }
+        for (StoredIdempotentOperationResult storedResult : consistentStore.findResults(hashedKeysByFallbackKey.keySet())) {
+            String hashedKey = hashedKeysByFallbackKey.get(storedResult.getId());
+            storedResults.put(hashedKey, storedResult);
+            storedIdempotentOperationResultCache.put(hashedKey, storedResult);
+        }
+    }
+
+    // Temp locks are looked up by their unique (service, operation, idempotencyKey) index, one query per (service, operation)
+    private Map<String, IdempotentOperationLockTemp> findTempLocks(List<IdempotentOperationResult> inputs) {
+        Map<String, Map<String, Set<String>>> idempotencyKeysByOperation = new HashMap<>();
+        for (IdempotentOperationResult input : inputs) {
+            idempotencyKeysByOperation.computeIfAbsent(input.getService(), service -> new HashMap<>())
+                    .computeIfAbsent(input.getOperation(), operation -> new HashSet<>())
+                    .add(input.getIdempotencyKey());
+        }
+        Map<String, IdempotentOperationLockTemp> tempLocks = new HashMap<>();
+        idempotencyKeysByOperation.forEach((service, operations) -> operations.forEach((operation, idempotencyKeys) -> {
+            for (IdempotentOperationLockTemp tempLock : idempotencyStore.findTempLocks(service, operation, idempotencyKeys)) {
+                tempLocks.put(getHashedKey(tempLock.getService(), tempLock.getOperation(), tempLock.getIdempotencyKey()), tempLock);
+            }
+        }));
+        return tempLocks;
+    }
+
     private IdempotentOperationResult getCachedResult(StoredIdempotentOperationResult storedResult) {
         log.info("Found existing result for operation");
         IdempotentOperationResult output = new IdempotentOperationResult();
@@ -108,25 +496,37 @@ public class IdempotencyServiceImpl implements IdempotencyService {
         return output;
     }
 
-    private IdempotentOperationLockTemp acquireLock(IdempotentOperationResult input, IdempotentOperation idempotentOperation) {
+    private IdempotentOperationLockTemp newTempLock(IdempotentOperationResult input, String idempotencyId) {
         IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
         tempLock.setId(UUID.randomUUID().toString());
-        tempLock.setIdempotencyId(idempotentOperation.getId());
+        tempLock.setIdempotencyId(idempotencyId);
         tempLock.setService(input.getService());
         tempLock.setOperation(input.getOperation());
         tempLock.setIdempotencyKey(input.getIdempotencyKey());
         tempLock.setLockedAt(Instant.now());
         tempLock.setExpiredAt(tempLock.getLockedAt().plus(idempotentOperationConfigCache.getLockDuration(input.getService(), input.getOperation())));
+        return tempLock;
+    }
+
+    private IdempotentOperationLockTemp acquireLock(IdempotentOperationResult input, IdempotentOperation idempotentOperation, String hashedKey) {
+        LockAcquireEvent lockEvent = new LockAcquireEvent();
+        lockEvent.begin();
+        IdempotentOperationLockTemp tempLock = newTempLock(input, idempotentOperation.getId());
         try {
-            idempotentOperationLockTempRepository.insert(tempLock);
+            consistentStore(input.getService(), input.getOperation()).insertTempLock(tempLock);
+            lockEvent.commit(input.getService(), input.getOperation(), hashedKey, ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue());
             log.info("ATOMIC LOCK ACQUIRED for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
             return tempLock;
         } catch (DuplicateKeyException e) {
             // Another thread already has the lock for this (service, operation, idempotencyKey)
+            lockEvent.commit(input.getService(), input.getOperation(), hashedKey, ExecutionResult.OPERATION_ALREADY_LOCKED.getValue());
             log.warn("LOCK ALREADY EXISTS for service: {}, operation: {}, key: {} - checking for completed result", input.getService(), input.getOperation(), input.getIdempotencyKey());
             // Lock exists but no result yet - operation is still in progress by another thread
             throw new IdempotencyException("Operation is already locked by another process", e, ExecutionResult.OPERATION_ALREADY_LOCKED);
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
+            lockEvent.commit(input.getService(), input.getOperation(), hashedKey, ExecutionResult.OPERATION_FAILED.getValue());
             log.error("Failed to acquire lock for operation", e);
             throw new IdempotencyException("Failed to acquire lock for operation", e, ExecutionResult.OPERATION_FAILED);
         }
@@ -146,103 +546,442 @@ public class IdempotencyServiceImpl implements IdempotencyService {
         return output;
     }
 
+    private Set<Integer> insertTempLocks(IdempotencyStore consistentStore, List<IdempotentOperationLockTemp> tempLocks) {
+        try {
+            return consistentStore.insertTempLocks(tempLocks);
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to acquire locks for operations", e);
+            releaseFailedTempLocks(consistentStore, tempLocks);
+            throw new IdempotencyException("Failed to acquire locks for operations", e, ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    // An unordered insert that failed may still have written some of the locks, whose lockIds the caller never gets
+    private void releaseFailedTempLocks(IdempotencyStore consistentStore, List<IdempotentOperationLockTemp> tempLocks) {
+        Set<String> lockIds = new HashSet<>();
+        tempLocks.forEach(tempLock -> lockIds.add(tempLock.getId()));
+        try {
+            // The lockIds are new, so locks held by others under the same keys are never deleted
+            consistentStore.deleteTempLocks(lockIds);
+        } catch (Exception e) {
+            log.error("Failed to release the locks of a failed batch, they expire on their own", e);
+            tempLocks.forEach(this::scheduleLockExpiry);
+        }
+    }
+
+    private IdempotentOperationResult createAlreadyLockedResponse(IdempotentOperationResult input) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setExecutionResult(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue());
+        return output;
+    }
+
+    // The lockId is not returned, only the holder of the lock may save the result
+    private IdempotentOperationResult createLockedStatusResponse(IdempotentOperationLockTemp tempLock) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setIdempotencyId(tempLock.getIdempotencyId());
+        output.setService(tempLock.getService());
+        output.setOperation(tempLock.getOperation());
+        output.setIdempotencyKey(tempLock.getIdempotencyKey());
+        output.setLockedAt(tempLock.getLockedAt());
+        output.setExpiredAt(tempLock.getExpiredAt());
+        output.setExecutionResult(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue());
+        return output;
+    }
+
+    private IdempotentOperationResult createNotFoundResponse(IdempotentOperationResult input) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setExecutionResult(ExecutionResult.OPERATION_NOT_FOUND.getValue());
+        return output;
+    }
+
     @Override
     public void saveIdempotentOperationResult(IdempotentOperationResult input) {
         log.info("Saving idempotent operation result for lockId: {}, result: {}", input.getLockId(), input.getExecutionResult());
 
         validateInput(input);
 
-        // Check the temp lock is existing or not
-        String lockId = input.getLockId();
-        IdempotentOperationLockTemp tempLock = lockId != null ? idempotentOperationLockTempRepository.findById(lockId).orElse(null) : null;
-        if (Objects.nonNull(tempLock)) { // Operation is not expired
-            deleteTempLock(tempLock.getId());
-            insertLockRecord(tempLock.getId(), tempLock.getIdempotencyId(), tempLock.getLockedAt(), tempLock.getExpiredAt());
-            saveOperationResult(input);
+        adaptiveConcurrencyLimiter.acquire(AdmissionPriority.COMPLETION);
+        long phaseStart = System.nanoTime();
+        CompletionEvent completionEvent = new CompletionEvent();
+        completionEvent.begin();
+        try {
+            // Check the temp lock is existing or not
+            String lockId = input.getLockId();
+            IdempotentOperationLockTemp tempLock = lockId != null ? idempotencyStore.findTempLock(lockId).orElse(null) : null;
+            CompletionResult completionResult = CompletionResult.EXPIRED;
+            if (Objects.nonNull(tempLock)) { // Operation is not expired
+                deleteTempLock(tempLock);
+                insertLockRecord(tempLock);
+                completionResult = saveOperationResult(input);
+                lockDurationLearner.recordExecution(tempLock.getService(), tempLock.getOperation(), tempLock.getLockedAt(), Instant.now());
+                signalCompletion(tempLock);
+            }
+            idempotencyMetrics.recordPhase(LifecyclePhase.RESULT_SAVE, input.getService(), input.getOperation(), phaseStart);
+            idempotencyMetrics.recordCompletion(input.getService(), input.getOperation(), completionResult);
+            commitEvent(completionEvent, input.getService(), input.getOperation(), input.getIdempotencyKey(), completionResult.getValue());
+        } catch (RuntimeException e) {
+            idempotencyMetrics.recordCompletionFailure(input.getService(), input.getOperation());
+            commitEvent(completionEvent, input.getService(), input.getOperation(), input.getIdempotencyKey(), "FAILED");
+            throw e;
+        } finally {
+            adaptiveConcurrencyLimiter.release();
         }
     }
 
-    private void validateInput(IdempotentOperationResult input) {
-        if (Objects.isNull(input.getLockId())) {
-            throw new IdempotencyException("Lock Id is required", ExecutionResult.OPERATION_FAILED);
+    @Override
+    public List<IdempotentOperationCompletionResult> saveIdempotentOperationResults(List<IdempotentOperationResult> inputs) {
+        log.info("Saving batch of {} idempotent operation results", inputs.size());
+
+        inputs.forEach(this::validateInput);
+
+        adaptiveConcurrencyLimiter.acquire(AdmissionPriority.COMPLETION);
+        try {
+            return saveOperationResults(inputs);
+        } finally {
+            adaptiveConcurrencyLimiter.release();
+        }
+    }
+
+    private List<IdempotentOperationCompletionResult> saveOperationResults(List<IdempotentOperationResult> inputs) {
+        // STEP 1: Resolve all temp locks with one $in query, a missing lock means the operation is expired
+        Set<String> lockIds = new HashSet<>();
+        inputs.forEach(input -> lockIds.add(input.getLockId()));
+        Map<String, IdempotentOperationLockTemp> tempLocks = new HashMap<>();
+        for (IdempotentOperationLockTemp tempLock : idempotencyStore.findTempLocks(lockIds)) {
+            tempLocks.put(tempLock.getId(), tempLock);
+        }
+
+        CompletionResult[] completionResults = new CompletionResult[inputs.size()];
+        List<IdempotentOperationLock> lockRecords = new ArrayList<>();
+        List<StoredIdempotentOperationResult> storedResults = new ArrayList<>();
+        List<Integer> storedResultPositions = new ArrayList<>();
+        List<FailedIdempotentOperationResult> failedResults = new ArrayList<>();
+        Set<String> completedLockIds = new HashSet<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            IdempotentOperationResult input = inputs.get(i);
+            IdempotentOperationLockTemp tempLock = tempLocks.get(input.getLockId());
+            if (tempLock == null) {
+                completionResults[i] = CompletionResult.EXPIRED;
+            } else if (!completedLockIds.add(tempLock.getId())) {
+                // The same lock is completed twice in this batch, only its first occurrence is saved
+                completionResults[i] = CompletionResult.DUPLICATE;
+            } else {
+                completionResults[i] = CompletionResult.SAVED;
+                lockRecords.add(newLockRecord(tempLock));
+                if (ExecutionResult.SUCCESS.getValue().equalsIgnoreCase(input.getExecutionResult())) {
+                    storedResults.add(newStoredResult(input));
+                    storedResultPositions.add(i);
+                } else {
+                    failedResults.add(newFailedResult(input.getService(), input.getOperation(), input.getIdempotencyId(), input.getLockId(), input.getIdempotentOperationResult()));
+                }
+            }
+        }
+
+        // STEP 2: Release all resolved temp locks with one deleteMany
+        IdempotencyStore consistentStore = consistentStore(inputs);
+        deleteTempLocks(consistentStore, completedLockIds);
+
+        // STEP 3: Lock history, successful and failed results, each with one unordered insertMany
+        insertLockRecords(consistentStore, lockRecords);
+        Set<Integer> duplicateStoredResults = saveSuccessfulResults(consistentStore, storedResults);
+        for (int j = 0; j < storedResults.size(); j++) {
+            if (duplicateStoredResults.contains(j)) {
+                completionResults[storedResultPositions.get(j)] = CompletionResult.DUPLICATE;
+            }
+        }
+        saveFailedResults(consistentStore, failedResults);
+        Instant completedAt = Instant.now();
+        for (String lockId : completedLockIds) {
+            IdempotentOperationLockTemp tempLock = tempLocks.get(lockId);
+            lockDurationLearner.recordExecution(tempLock.getService(), tempLock.getOperation(), tempLock.getLockedAt(), completedAt);
+            signalCompletion(tempLock);
+        }
+
+        List<IdempotentOperationCompletionResult> outputs = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            idempotencyMetrics.recordCompletion(inputs.get(i).getService(), inputs.get(i).getOperation(), completionResults[i]);
+            outputs.add(createCompletionResponse(inputs.get(i), completionResults[i]));
+        }
+        return outputs;
+    }
+
+    @Override
+    public List<IdempotentOperationLeaseResult> renewLeases(List<IdempotentOperationResult> inputs) {
+        log.info("Renewing leases of {} locks", inputs.size());
+
+        inputs.forEach(this::validateLockId);
+
+        // STEP 1: Resolve all temp locks with one $in query, a missing lock or one past its expiry cannot be renewed
+        Set<String> lockIds = new HashSet<>();
+        inputs.forEach(input -> lockIds.add(input.getLockId()));
+        Map<String, IdempotentOperationLockTemp> tempLocks = new HashMap<>();
+        for (IdempotentOperationLockTemp tempLock : idempotencyStore.findTempLocks(lockIds)) {
+            tempLocks.put(tempLock.getId(), tempLock);
+        }
+
+        // STEP 2: Every live lock gets a full lock duration from now, with one conditional update per lock on its current expiredAt
+        Instant now = Instant.now();
+        Map<String, Instant> expiredAts = new HashMap<>();
+        List<TempLockRenewal> renewals = new ArrayList<>();
+        for (IdempotentOperationLockTemp tempLock : tempLocks.values()) {
+            if (!tempLock.getExpiredAt().isAfter(now)) {
+                continue;
+            }
+            // MongoDB keeps dates to the millisecond, the renewed expiredAt is compared with the stored one
+            Instant renewedExpiredAt = now.plus(idempotentOperationConfigCache.getLockDuration(tempLock.getService(), tempLock.getOperation()))
+                    .truncatedTo(ChronoUnit.MILLIS);
+            if (renewedExpiredAt.isAfter(tempLock.getExpiredAt())) {
+                renewals.add(new TempLockRenewal(tempLock.getId(), tempLock.getExpiredAt(), renewedExpiredAt));
+            } else {
+                // Renewed again within the same millisecond, or the lock duration was shortened, the lease already lasts long enough
+                expiredAts.put(tempLock.getId(), tempLock.getExpiredAt());
+            }
+        }
+        Set<Integer> notRenewed = renewTempLocks(renewals);
+        List<String> contendedLockIds = new ArrayList<>();
+        for (int j = 0; j < renewals.size(); j++) {
+            if (notRenewed.contains(j)) {
+                contendedLockIds.add(renewals.get(j).lockId());
+            } else {
+                expiredAts.put(renewals.get(j).lockId(), renewals.get(j).renewedExpiredAt());
+                scheduleLockExpiry(renewals.get(j).lockId(), renewals.get(j).renewedExpiredAt());
+            }
         }
+
+        // STEP 3: A lock that missed its conditional update was either released or renewed by a concurrent heartbeat
+        if (!contendedLockIds.isEmpty()) {
+            for (IdempotentOperationLockTemp tempLock : idempotencyStore.findTempLocks(contendedLockIds)) {
+                if (tempLock.getExpiredAt().isAfter(now)) {
+                    expiredAts.put(tempLock.getId(), tempLock.getExpiredAt());
+                }
+            }
+        }
+
+        List<IdempotentOperationLeaseResult> outputs = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            Instant expiredAt = expiredAts.get(input.getLockId());
+            LeaseResult leaseResult = expiredAt != null ? LeaseResult.RENEWED : LeaseResult.EXPIRED;
+            idempotencyMetrics.recordLease(input.getService(), input.getOperation(), leaseResult);
+            outputs.add(createLeaseResponse(input, tempLocks.get(input.getLockId()), leaseResult, expiredAt));
+        }
+        return outputs;
+    }
+
+    private Set<Integer> renewTempLocks(List<TempLockRenewal> renewals) {
+        if (renewals.isEmpty()) {
+            return Set.of();
+        }
+        try {
+            return idempotencyStore.renewTempLocks(renewals);
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to renew lock leases", e);
+            throw new IdempotencyException("Failed to renew lock leases", e, ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    // Frees the key on this node and wakes requests waiting for the released lock, other nodes see the insert on the change stream
+    private void signalCompletion(IdempotentOperationLockTemp tempLock) {
+        lockExpiryScheduler.cancel(tempLock.getId());
+        String hashedKey = getHashedKey(tempLock.getService(), tempLock.getOperation(), tempLock.getIdempotencyKey());
+        inFlightKeyTable.release(hashedKey);
+        completionWaiterRegistry.signal(hashedKey);
+    }
+
+    private void validateInput(IdempotentOperationResult input) {
+        validateLockId(input);
         if (Objects.isNull(input.getIdempotencyId())) {
             throw new IdempotencyException("Idempotency Id is required", ExecutionResult.OPERATION_FAILED);
         }
     }
 
-    private void saveOperationResult(IdempotentOperationResult input) {
+    private void validateLockId(IdempotentOperationResult input) {
+        if (Objects.isNull(input.getLockId())) {
+            throw new IdempotencyException("Lock Id is required", ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    private CompletionResult saveOperationResult(IdempotentOperationResult input) {
         if (ExecutionResult.SUCCESS.getValue().equalsIgnoreCase(input.getExecutionResult())) {
-            saveSuccessfulResult(input);
-        } else {
-            saveFailedResult(input.getIdempotencyId(), input.getLockId(), input.getIdempotentOperationResult());
+            return saveSuccessfulResult(input) ? CompletionResult.SAVED : CompletionResult.DUPLICATE;
         }
+        saveFailedResult(input.getService(), input.getOperation(), input.getIdempotencyId(), input.getLockId(), input.getIdempotentOperationResult());
+        return CompletionResult.SAVED;
     }
 
-    private void saveSuccessfulResult(IdempotentOperationResult input) {
+    private StoredIdempotentOperationResult newStoredResult(IdempotentOperationResult input) {
         StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
         storedResult.setId(getHashedKey(input.getService(), input.getOperation(), input.getIdempotencyKey()));
         storedResult.setService(input.getService());
         storedResult.setOperation(input.getOperation());
         storedResult.setIdempotencyKey(input.getIdempotencyKey());
         storedResult.setIdempotentOperationResult(input.getIdempotentOperationResult());
+        storedResult.setExpireAt(idempotentOperationConfigCache.getExpireAt(input.getService(), input.getOperation(), Instant.now()));
+        return storedResult;
+    }
+
+    // False when a result already exists, i.e. a concurrent completion
+    private boolean saveSuccessfulResult(IdempotentOperationResult input) {
+        StoredIdempotentOperationResult storedResult = newStoredResult(input);
+        // Added before the insert, so a retry that arrives right after it is never told the key is new
+        completedKeyFilter.add(storedResult.getId());
         try {
-            storedIdempotentOperationResultRepository.insert(storedResult);
+            consistentStore(input.getService(), input.getOperation()).insertResult(storedResult);
+            storedIdempotentOperationResultCache.put(storedResult);
             log.info("Successfully saved operation result atomically");
+            return true;
         } catch (DuplicateKeyException e) {
             log.warn("Result already exists for this operation - concurrent completion detected");
+            return false;
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to save successful operation result", e);
             throw new IdempotencyException("Failed to save operation result", e, ExecutionResult.OPERATION_FAILED);
         }
     }
 
-    private void saveFailedResult(String idempotencyId, String lockId, String errorMessage) {
+    // Positions in storedResults that already had a result, i.e. concurrent completions
+    private Set<Integer> saveSuccessfulResults(IdempotencyStore consistentStore, List<StoredIdempotentOperationResult> storedResults) {
+        storedResults.forEach(storedResult -> completedKeyFilter.add(storedResult.getId()));
+        try {
+            Set<Integer> duplicateStoredResults = consistentStore.insertResults(storedResults);
+            for (int j = 0; j < storedResults.size(); j++) {
+                if (!duplicateStoredResults.contains(j)) {
+                    storedIdempotentOperationResultCache.put(storedResults.get(j));
+                }
+            }
+            log.info("Successfully saved {} operation results", storedResults.size() - duplicateStoredResults.size());
+            return duplicateStoredResults;
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to save successful operation results", e);
+            throw new IdempotencyException("Failed to save operation results", e, ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    private FailedIdempotentOperationResult newFailedResult(String service, String operation, String idempotencyId, String lockId, String errorMessage) {
         FailedIdempotentOperationResult failedResult = new FailedIdempotentOperationResult();
         failedResult.setId(idempotencyId);
         failedResult.setLockId(lockId);
         failedResult.setErrorMessage(errorMessage);
+        failedResult.setExpireAt(idempotentOperationConfigCache.getExpireAt(service, operation, Instant.now()));
+        return failedResult;
+    }
+
+    private void saveFailedResults(IdempotencyStore consistentStore, List<FailedIdempotentOperationResult> failedResults) {
         try {
-            failedIdempotentOperationResultRepository.insert(failedResult);
+            consistentStore.insertFailedResults(failedResults);
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to save failed operation results", e);
+        }
+    }
+
+    private void saveFailedResult(String service, String operation, String idempotencyId, String lockId, String errorMessage) {
+        FailedIdempotentOperationResult failedResult = newFailedResult(service, operation, idempotencyId, lockId, errorMessage);
+        try {
+            consistentStore(service, operation).insertFailedResult(failedResult);
             log.info("Saved failed operation result with error: {}", errorMessage);
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to save failed operation result", e);
         }
     }
 
-    private void insertLockRecord(String lockId, String idempotencyId, Instant lockedAt, Instant expiredAt) {
+    private IdempotentOperationLock newLockRecord(IdempotentOperationLockTemp tempLock) {
         IdempotentOperationLock lock = new IdempotentOperationLock();
-        lock.setId(lockId);
-        lock.setIdempotencyId(idempotencyId);
-        lock.setLockedAt(lockedAt);
-        lock.setExpiredAt(expiredAt);
+        lock.setId(tempLock.getId());
+        lock.setIdempotencyId(tempLock.getIdempotencyId());
+        lock.setLockedAt(tempLock.getLockedAt());
+        lock.setExpiredAt(tempLock.getExpiredAt());
         lock.setCreatedAt(Instant.now());
+        lock.setExpireAt(idempotentOperationConfigCache.getExpireAt(tempLock.getService(), tempLock.getOperation(), lock.getCreatedAt()));
+        return lock;
+    }
+
+    private void insertLockRecords(IdempotencyStore consistentStore, List<IdempotentOperationLock> lockRecords) {
+        try {
+            consistentStore.insertLockRecords(lockRecords);
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to insert locks", e);
+        }
+    }
+
+    private void insertLockRecord(IdempotentOperationLockTemp tempLock) {
+        IdempotentOperationLock lock = newLockRecord(tempLock);
         try {
-            idempotentOperationLockRepository.insert(lock);
+            consistentStore(tempLock.getService(), tempLock.getOperation()).insertLockRecord(lock);
             log.info("Successfully inserted lock");
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to insert lock", e);
         }
     }
 
-    private void deleteTempLock(@NonNull String lockId) {
+    private void deleteTempLock(@NonNull IdempotentOperationLockTemp tempLock) {
         try {
-            idempotentOperationLockTempRepository.deleteById(lockId);
+            consistentStore(tempLock.getService(), tempLock.getOperation()).deleteTempLock(tempLock.getId());
             log.info("Successfully cleaned up temporary lock");
+        } catch (ServiceOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             // Don't throw exception here as the main operation is complete
             log.error("Failed to cleanup temporary lock, but operation completed successfully", e);
         }
     }
 
-    @Scheduled(cron = "${idempotent.scheduling.expired-lock-removal-rate}")
-    @SchedulerLock(name = "cleanTempLock", lockAtLeastFor = "PT30S", lockAtMostFor = "PT1M")
-    public void cleanLockedOperations() {
-        List<IdempotentOperationLockTemp> tempLocks = idempotentOperationLockTempRepository.findByExpiredAtIsAfter(Instant.now());
-        for  (IdempotentOperationLockTemp tempLock : tempLocks) {
-            deleteTempLock(tempLock.getId());
-            saveFailedResult(tempLock.getIdempotencyId(), tempLock.getId(), ExecutionResult.OPERATION_EXPIRED.getValue());
+    private void deleteTempLocks(IdempotencyStore consistentStore, Set<String> lockIds) {
+        if (lockIds.isEmpty()) {
+            return;
+        }
+        try {
+            consistentStore.deleteTempLocks(lockIds);
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            // Don't throw exception here, the results are still saved and the locks expire on their own
+            log.error("Failed to cleanup temporary locks", e);
         }
     }
 
+    private IdempotentOperationCompletionResult createCompletionResponse(IdempotentOperationResult input, CompletionResult completionResult) {
+        IdempotentOperationCompletionResult output = new IdempotentOperationCompletionResult();
+        output.setIdempotencyId(input.getIdempotencyId());
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setLockId(input.getLockId());
+        output.setCompletionResult(completionResult.getValue());
+        return output;
+    }
+
+    // The lock is described as stored, it is only absent once expired
+    private IdempotentOperationLeaseResult createLeaseResponse(IdempotentOperationResult input, IdempotentOperationLockTemp tempLock, LeaseResult leaseResult, Instant expiredAt) {
+        IdempotentOperationLeaseResult output = new IdempotentOperationLeaseResult();
+        output.setIdempotencyId(tempLock != null ? tempLock.getIdempotencyId() : input.getIdempotencyId());
+        output.setService(tempLock != null ? tempLock.getService() : input.getService());
+        output.setOperation(tempLock != null ? tempLock.getOperation() : input.getOperation());
+        output.setIdempotencyKey(tempLock != null ? tempLock.getIdempotencyKey() : input.getIdempotencyKey());
+        output.setLockId(input.getLockId());
+        output.setLeaseResult(leaseResult.getValue());
+        output.setExpiredAt(expiredAt);
+        return output;
+    }
+
 }
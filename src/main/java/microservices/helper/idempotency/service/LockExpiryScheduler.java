@@ -0,0 +1,104 @@
+package microservices.helper.idempotency.service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Fires the node-local lock-expiry tasks of both storage modes. A single
+ * platform thread keeps the timers; with virtual threads enabled every due task
+ * is handed to its own virtual thread, so a slow MongoDB cannot make expiries
+ * queue up behind each other on the timer thread. Tasks scheduled by lockId
+ * replace the pending one of the same lock, so a renewed lock keeps a single
+ * timer, and are removed from the queue as soon as they are cancelled.
+ */
+@Component
+public class LockExpiryScheduler {
+
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "lock-expiry-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService virtualThreadExecutor;
+    private final Map<String, LockExpiryTask> pending = new ConcurrentHashMap<>();
+
+    public LockExpiryScheduler(@Value("${spring.threads.virtual.enabled}") boolean virtualThreads) {
+        this.virtualThreadExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lock-expiry-", 0).factory())
+                : null;
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, Instant expiredAt) {
+        Runnable expiryTask = virtualThreadExecutor != null ? () -> virtualThreadExecutor.execute(task) : task;
+        return scheduler.schedule(expiryTask, expiredAt.toEpochMilli() - Instant.now().toEpochMilli(), TimeUnit.MILLISECONDS);
+    }
+
+    public void schedule(String lockId, Runnable task, Instant expiredAt) {
+        LockExpiryTask lockExpiryTask = new LockExpiryTask(lockId, task);
+        LockExpiryTask previous = pending.put(lockId, lockExpiryTask);
+        if (previous != null) {
+            previous.cancel();
+        }
+        lockExpiryTask.future = schedule(lockExpiryTask, expiredAt);
+    }
+
+    // The lock was completed, its expiry task no longer waits in the queue
+    public void cancel(String lockId) {
+        LockExpiryTask lockExpiryTask = pending.remove(lockId);
+        if (lockExpiryTask != null) {
+            lockExpiryTask.cancel();
+        }
+    }
+
+    public int getPendingCount() {
+        return scheduler.getQueue().size();
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        scheduler.shutdownNow();
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    // Runs only while it is still the pending task of its lock, one replaced before its cancel arrived does nothing
+    private final class LockExpiryTask implements Runnable {
+
+        private final String lockId;
+        private final Runnable task;
+        private volatile ScheduledFuture<?> future;
+
+        private LockExpiryTask(String lockId, Runnable task) {
+            this.lockId = lockId;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (pending.remove(lockId, this)) {
+                task.run();
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package microservices.helper.idempotency.service;
+
+import java.util.List;
+
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import reactor.core.publisher.Mono;
+
+// Non-blocking counterpart of IdempotencyService, with the same outcomes per operation
+public interface ReactiveIdempotencyService {
+
+    Mono<IdempotentOperationResult> getStoredExecutionResultOrLockOperation(IdempotentOperationResult input);
+
+    // One outcome per input, in input order: SUCCESS, OPERATION_LOCKED_SUCCESSFULLY or OPERATION_ALREADY_LOCKED
+    Mono<List<IdempotentOperationResult>> getStoredExecutionResultsOrLockOperations(List<IdempotentOperationResult> inputs);
+
+    // Read-only, never takes a lock: SUCCESS, OPERATION_ALREADY_LOCKED or OPERATION_NOT_FOUND
+    Mono<List<IdempotentOperationResult>> getExecutionStatuses(List<IdempotentOperationResult> inputs);
+
+    Mono<Void> saveIdempotentOperationResult(IdempotentOperationResult input);
+
+    // One outcome per input, in input order: SAVED, EXPIRED or DUPLICATE
+    Mono<List<IdempotentOperationCompletionResult>> saveIdempotentOperationResults(List<IdempotentOperationResult> inputs);
+
+}
@@ -0,0 +1,575 @@
+package microservices.helper.idempotency.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.reactive.ReactiveFailedIdempotentOperationResultRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveIdempotentOperationLockRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveIdempotentOperationLockTempRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveIdempotentOperationRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveStoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking implementation of the collections storage layout for the
+ * WebFlux stack. It reads and writes the same documents as
+ * IdempotencyServiceImpl, but every MongoDB call goes through the reactive
+ * driver and node-local lock expiry runs on Reactor timers instead of a
+ * scheduler thread.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveIdempotencyServiceImpl implements ReactiveIdempotencyService {
+
+    private final ReactiveIdempotentOperationRepository idempotentOperationRepository;
+    private final ReactiveIdempotentOperationLockRepository idempotentOperationLockRepository;
+    private final ReactiveStoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository;
+    private final ReactiveIdempotentOperationLockTempRepository idempotentOperationLockTempRepository;
+    private final ReactiveFailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository;
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+    private final int batchConcurrency;
+    private final IdempotencyKeyHasher idempotencyKeyHasher;
+    private final IdempotencyMetrics idempotencyMetrics;
+
+    public ReactiveIdempotencyServiceImpl(ReactiveIdempotentOperationRepository idempotentOperationRepository,
+                                          ReactiveIdempotentOperationLockRepository idempotentOperationLockRepository,
+                                          ReactiveStoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository,
+                                          ReactiveIdempotentOperationLockTempRepository idempotentOperationLockTempRepository,
+                                          ReactiveFailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository,
+                                          IdempotentOperationConfigCache idempotentOperationConfigCache,
+                                          StoredIdempotentOperationResultCache storedIdempotentOperationResultCache,
+                                          @Value("${idempotent.reactive.batch-concurrency}") int batchConcurrency,
+                                          IdempotencyKeyHasher idempotencyKeyHasher,
+                                          IdempotencyMetrics idempotencyMetrics) {
+        this.idempotentOperationRepository = idempotentOperationRepository;
+        this.idempotentOperationLockRepository = idempotentOperationLockRepository;
+        this.storedIdempotentOperationResultRepository = storedIdempotentOperationResultRepository;
+        this.idempotentOperationLockTempRepository = idempotentOperationLockTempRepository;
+        this.failedIdempotentOperationResultRepository = failedIdempotentOperationResultRepository;
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.storedIdempotentOperationResultCache = storedIdempotentOperationResultCache;
+        this.batchConcurrency = batchConcurrency;
+        this.idempotencyKeyHasher = idempotencyKeyHasher;
+        this.idempotencyMetrics = idempotencyMetrics;
+    }
+
+    @Override
+    public Mono<IdempotentOperationResult> getStoredExecutionResultOrLockOperation(IdempotentOperationResult input) {
+        log.info("Processing idempotent operation for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+
+        String hashedKey = getHashedKey(input.getService(), input.getOperation(), input.getIdempotencyKey());
+
+        // STEP 1: ALWAYS create IdempotentOperation record for ALL incoming requests
+        return createIdempotentOperation(input)
+                // STEP 2: Check if a result already exists (fast path)
+                .flatMap(idempotentOperation -> findStoredResult(hashedKey, input)
+                        .map(this::getCachedResult)
+                        // STEP 3: ATOMIC LOCK ACQUISITION - Only ONE can succeed for the same(service, operation, idempotencyKey)
+                        .switchIfEmpty(Mono.defer(() -> acquireLock(input, idempotentOperation.getId())
+                                .map(tempLock -> {
+                                    scheduleLockExpiry(tempLock);
+                                    return createLockAcquiredResponse(tempLock);
+                                }))))
+                .doOnNext(output -> idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), ExecutionResult.valueOf(output.getExecutionResult())))
+                .doOnError(e -> idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(),
+                        e instanceof IdempotencyException idempotencyException ? idempotencyException.getExecutionResult() : ExecutionResult.OPERATION_FAILED));
+    }
+
+    @Override
+    public Mono<List<IdempotentOperationResult>> getStoredExecutionResultsOrLockOperations(List<IdempotentOperationResult> inputs) {
+        log.info("Processing batch of {} idempotent operations", inputs.size());
+
+        List<String> hashedKeys = getHashedKeys(inputs);
+        List<IdempotentOperation> idempotentOperations = new ArrayList<>(inputs.size());
+        inputs.forEach(input -> idempotentOperations.add(newIdempotentOperation(input)));
+
+        // STEP 1: ALWAYS create IdempotentOperation records with one insertMany, STEP 2: one $in lookup for the near-cache misses
+        return createIdempotentOperations(idempotentOperations)
+                .then(Mono.defer(() -> findStoredResults(hashedKeys, inputs)))
+                .flatMap(existingResults -> {
+                    // STEP 3: One lock insert per item, at most batchConcurrency in flight, outputs keep the input order
+                    Set<String> lockedHashedKeys = new HashSet<>();
+                    List<Mono<IdempotentOperationResult>> outputs = new ArrayList<>(inputs.size());
+                    for (int i = 0; i < inputs.size(); i++) {
+                        IdempotentOperationResult input = inputs.get(i);
+                        StoredIdempotentOperationResult existingResult = existingResults.get(hashedKeys.get(i));
+                        if (existingResult != null) {
+                            outputs.add(Mono.just(getCachedResult(existingResult)));
+                        } else if (lockedHashedKeys.add(hashedKeys.get(i))) {
+                            String idempotencyId = idempotentOperations.get(i).getId();
+                            outputs.add(Mono.defer(() -> lockBatchItem(input, idempotencyId)));
+                        } else {
+                            // The same key is repeated in this batch, only its first occurrence may take the lock
+                            outputs.add(Mono.just(createAlreadyLockedResponse(input)));
+                        }
+                    }
+                    return Flux.fromIterable(outputs).flatMapSequential(output -> output, batchConcurrency).collectList();
+                })
+                .doOnNext(outputs -> {
+                    for (int i = 0; i < inputs.size(); i++) {
+                        idempotencyMetrics.recordAcquire(inputs.get(i).getService(), inputs.get(i).getOperation(), ExecutionResult.valueOf(outputs.get(i).getExecutionResult()));
+                    }
+                });
+    }
+
+    @Override
+    public Mono<List<IdempotentOperationResult>> getExecutionStatuses(List<IdempotentOperationResult> inputs) {
+        log.info("Looking up status of {} idempotent operations", inputs.size());
+
+        List<String> hashedKeys = getHashedKeys(inputs);
+        return findStoredResults(hashedKeys, inputs).flatMap(existingResults -> {
+            List<IdempotentOperationResult> pendingInputs = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                if (!existingResults.containsKey(hashedKeys.get(i))) {
+                    pendingInputs.add(inputs.get(i));
+                }
+            }
+            return findTempLocks(pendingInputs).map(tempLocks -> {
+                List<IdempotentOperationResult> outputs = new ArrayList<>(inputs.size());
+                for (int i = 0; i < inputs.size(); i++) {
+                    StoredIdempotentOperationResult existingResult = existingResults.get(hashedKeys.get(i));
+                    IdempotentOperationLockTemp tempLock = tempLocks.get(hashedKeys.get(i));
+                    if (existingResult != null) {
+                        outputs.add(getCachedResult(existingResult));
+                    } else if (tempLock != null) {
+                        outputs.add(createLockedStatusResponse(tempLock));
+                    } else {
+                        outputs.add(createNotFoundResponse(inputs.get(i)));
+                    }
+                }
+                return outputs;
+            });
+        });
+    }
+
+    @Override
+    public Mono<Void> saveIdempotentOperationResult(IdempotentOperationResult input) {
+        log.info("Saving idempotent operation result for lockId: {}, result: {}", input.getLockId(), input.getExecutionResult());
+
+        return Mono.defer(() -> {
+            validateInput(input);
+            // A missing temp lock means the operation is expired
+            return idempotentOperationLockTempRepository.findById(input.getLockId())
+                    .flatMap(tempLock -> deleteTempLock(tempLock.getId()).then(completeOperation(input, tempLock)))
+                    .defaultIfEmpty(CompletionResult.EXPIRED)
+                    .doOnNext(completionResult -> idempotencyMetrics.recordCompletion(input.getService(), input.getOperation(), completionResult))
+                    .doOnError(e -> idempotencyMetrics.recordCompletionFailure(input.getService(), input.getOperation()))
+                    .then();
+        });
+    }
+
+    @Override
+    public Mono<List<IdempotentOperationCompletionResult>> saveIdempotentOperationResults(List<IdempotentOperationResult> inputs) {
+        log.info("Saving batch of {} idempotent operation results", inputs.size());
+
+        return Mono.defer(() -> {
+            inputs.forEach(this::validateInput);
+            Set<String> lockIds = new HashSet<>();
+            inputs.forEach(input -> lockIds.add(input.getLockId()));
+
+            // STEP 1: Resolve all temp locks with one $in query, a missing lock means the operation is expired
+            return idempotentOperationLockTempRepository.findAllById(lockIds)
+                    .collectMap(IdempotentOperationLockTemp::getId)
+                    .flatMap(tempLocks -> {
+                        Set<String> completedLockIds = new HashSet<>();
+                        List<Mono<IdempotentOperationCompletionResult>> outputs = new ArrayList<>(inputs.size());
+                        for (IdempotentOperationResult input : inputs) {
+                            IdempotentOperationLockTemp tempLock = tempLocks.get(input.getLockId());
+                            if (tempLock == null) {
+                                outputs.add(Mono.just(createCompletionResponse(input, CompletionResult.EXPIRED)));
+                            } else if (!completedLockIds.add(tempLock.getId())) {
+                                // The same lock is completed twice in this batch, only its first occurrence is saved
+                                outputs.add(Mono.just(createCompletionResponse(input, CompletionResult.DUPLICATE)));
+                            } else {
+                                outputs.add(Mono.defer(() -> completeOperation(input, tempLock))
+                                        .map(completionResult -> createCompletionResponse(input, completionResult)));
+                            }
+                        }
+                        // STEP 2: Release all resolved temp locks with one deleteMany, STEP 3: lock history and results
+                        return deleteTempLocks(completedLockIds)
+                                .then(Flux.fromIterable(outputs).flatMapSequential(output -> output, batchConcurrency).collectList())
+                                .doOnNext(completionResults -> completionResults.forEach(completionResult -> idempotencyMetrics.recordCompletion(
+                                        completionResult.getService(), completionResult.getOperation(), CompletionResult.valueOf(completionResult.getCompletionResult()))));
+                    });
+        });
+    }
+
+    @Scheduled(cron = "${idempotent.scheduling.expired-lock-removal-rate}")
+    @SchedulerLock(name = "cleanTempLock", lockAtLeastFor = "PT30S", lockAtMostFor = "PT1M")
+    public void cleanLockedOperations() {
+        // ShedLock only holds the lock while this method runs, so the sweep is awaited on the scheduler thread
+        Long expiredCount = idempotentOperationLockTempRepository.findByExpiredAtBefore(Instant.now())
+                .flatMap(tempLock -> expireTempLock(tempLock).thenReturn(tempLock), batchConcurrency)
+                .count()
+                .block(Duration.ofMinutes(1));
+        log.info("Expired {} temp locks", expiredCount);
+    }
+
+    // Expire the temp lock on this node if the operation has not completed in time
+    private void scheduleLockExpiry(IdempotentOperationLockTemp tempLock) {
+        Duration delay = Duration.between(Instant.now(), tempLock.getExpiredAt());
+        Mono.delay(delay.isNegative() ? Duration.ZERO : delay)
+                .then(Mono.defer(() -> expireTempLock(tempLock)))
+                .subscribe(null, e -> log.error("Failed to expire lock: {}", tempLock.getId(), e));
+    }
+
+    private Mono<Void> expireTempLock(IdempotentOperationLockTemp tempLock) {
+        return idempotentOperationLockTempRepository.existsById(tempLock.getId())
+                .filter(Boolean::booleanValue) // That means the operation is not completed
+                .flatMap(exists -> deleteTempLock(tempLock.getId())
+                        .then(insertLockRecord(tempLock))
+                        .then(saveFailedResult(tempLock.getService(), tempLock.getOperation(), tempLock.getIdempotencyId(), tempLock.getId(), ExecutionResult.OPERATION_EXPIRED.getValue())))
+                .then();
+    }
+
+    private String getHashedKey(@NonNull String service, @NonNull String operation, @NonNull String idempotencyKey) {
+        return idempotencyKeyHasher.hash(service, operation, idempotencyKey);
+    }
+
+    private List<String> getHashedKeys(List<IdempotentOperationResult> inputs) {
+        List<String> hashedKeys = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            hashedKeys.add(getHashedKey(input.getService(), input.getOperation(), input.getIdempotencyKey()));
+        }
+        return hashedKeys;
+    }
+
+    private IdempotentOperation newIdempotentOperation(IdempotentOperationResult input) {
+        IdempotentOperation idempotentOperation = new IdempotentOperation();
+        idempotentOperation.setId(UUID.randomUUID().toString());
+        idempotentOperation.setService(input.getService());
+        idempotentOperation.setOperation(input.getOperation());
+        idempotentOperation.setIdempotencyKey(input.getIdempotencyKey());
+        idempotentOperation.setCreatedAt(Instant.now());
+        idempotentOperation.setExpireAt(idempotentOperationConfigCache.getExpireAt(input.getService(), input.getOperation(), idempotentOperation.getCreatedAt()));
+        return idempotentOperation;
+    }
+
+    private Mono<IdempotentOperation> createIdempotentOperation(IdempotentOperationResult input) {
+        return idempotentOperationRepository.insert(newIdempotentOperation(input))
+                .doOnError(e -> log.error("Failed to create idempotent operation", e))
+                .onErrorMap(e -> new IdempotencyException("Failed to create idempotent operation", e, ExecutionResult.OPERATION_FAILED));
+    }
+
+    private Mono<Void> createIdempotentOperations(List<IdempotentOperation> idempotentOperations) {
+        return idempotentOperationRepository.insert(idempotentOperations)
+                .then()
+                .doOnError(e -> log.error("Failed to create idempotent operations", e))
+                .onErrorMap(e -> new IdempotencyException("Failed to create idempotent operations", e, ExecutionResult.OPERATION_FAILED));
+    }
+
+    // Stored results never change once written, so the near-cache is checked before MongoDB
+    private Mono<StoredIdempotentOperationResult> findStoredResult(@NonNull String hashedKey, IdempotentOperationResult input) {
+        Optional<StoredIdempotentOperationResult> cachedResult = storedIdempotentOperationResultCache.get(hashedKey);
+        if (cachedResult.isPresent()) {
+            return Mono.just(cachedResult.get());
+        }
+        // While the key format is being switched, results may be stored under the id of the other format
+        String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        Mono<StoredIdempotentOperationResult> storedResult = storedIdempotentOperationResultRepository.findById(hashedKey)
+                .doOnNext(storedIdempotentOperationResultCache::put);
+        if (fallbackHashedKey == null) {
+            return storedResult;
+        }
+        return storedResult.switchIfEmpty(Mono.defer(() -> storedIdempotentOperationResultRepository.findById(fallbackHashedKey)
+                .doOnNext(result -> storedIdempotentOperationResultCache.put(hashedKey, result))));
+    }
+
+    // hashedKeys are positional with inputs, the result map is keyed by the current hashed key even for fallback hits
+    private Mono<Map<String, StoredIdempotentOperationResult>> findStoredResults(List<String> hashedKeys, List<IdempotentOperationResult> inputs) {
+        Map<String, StoredIdempotentOperationResult> storedResults = new HashMap<>();
+        Set<String> missingKeys = new HashSet<>();
+        for (String hashedKey : hashedKeys) {
+            Optional<StoredIdempotentOperationResult> cachedResult = storedIdempotentOperationResultCache.get(hashedKey);
+            if (cachedResult.isPresent()) {
+                storedResults.put(hashedKey, cachedResult.get());
+            } else {
+                missingKeys.add(hashedKey);
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return Mono.just(storedResults);
+        }
+        return storedIdempotentOperationResultRepository.findAllById(missingKeys)
+                .doOnNext(storedIdempotentOperationResultCache::put)
+                .collect(() -> storedResults, (results, storedResult) -> results.put(storedResult.getId(), storedResult))
+                .flatMap(results -> findFallbackStoredResults(hashedKeys, inputs, results));
+    }
+
+    // One more $in lookup under the fallback ids, only for the keys that are still missing
+    private Mono<Map<String, StoredIdempotentOperationResult>> findFallbackStoredResults(List<String> hashedKeys, List<IdempotentOperationResult> inputs,
+                                                                                      Map<String, StoredIdempotentOperationResult> storedResults) {
+        Map<String, String> hashedKeysByFallbackKey = new HashMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            if (!storedResults.containsKey(hashedKeys.get(i))) {
+                IdempotentOperationResult input = inputs.get(i);
+                String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+                if (fallbackHashedKey != null) {
+                    hashedKeysByFallbackKey.put(fallbackHashedKey, hashedKeys.get(i));
+                }
+            }
+        }
+        if (hashedKeysByFallbackKey.isEmpty()) {
+            return Mono.just(storedResults);
+        }
+        return storedIdempotentOperationResultRepository.findAllById(hashedKeysByFallbackKey.keySet())
+                .collect(() -> storedResults, (results, storedResult) -> {
+                    String hashedKey = hashedKeysByFallbackKey.get(storedResult.getId());
+                    results.put(hashedKey, storedResult);
+                    storedIdempotentOperationResultCache.put(hashedKey, storedResult);
+                });
+    }
+
+    // Temp locks are looked up by their unique (service, operation, idempotencyKey) index, one query per (service, operation)
+    private Mono<Map<String, IdempotentOperationLockTemp>> findTempLocks(List<IdempotentOperationResult> inputs) {
+        Map<String, Map<String, Set<String>>> idempotencyKeysByOperation = new HashMap<>();
+        for (IdempotentOperationResult input : inputs) {
+            idempotencyKeysByOperation.computeIfAbsent(input.getService(), service -> new HashMap<>())
+                    .computeIfAbsent(input.getOperation(), operation -> new HashSet<>())
+                    .add(input.getIdempotencyKey());
+        }
+        return Flux.fromIterable(idempotencyKeysByOperation.entrySet())
+                .flatMap(byService -> Flux.fromIterable(byService.getValue().entrySet())
+                        .flatMap(byOperation -> idempotentOperationLockTempRepository.findByServiceAndOperationAndIdempotencyKeyIn(
+                                byService.getKey(), byOperation.getKey(), byOperation.getValue())))
+                .collectMap(tempLock -> getHashedKey(tempLock.getService(), tempLock.getOperation(), tempLock.getIdempotencyKey()));
+    }
+
+    private IdempotentOperationResult getCachedResult(StoredIdempotentOperationResult storedResult) {
+        log.info("Found existing result for operation");
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        output.setIdempotentOperationResult(storedResult.getIdempotentOperationResult());
+        output.setService(storedResult.getService());
+        output.setOperation(storedResult.getOperation());
+        output.setIdempotencyKey(storedResult.getIdempotencyKey());
+        return output;
+    }
+
+    private IdempotentOperationLockTemp newTempLock(IdempotentOperationResult input, String idempotencyId) {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(idempotencyId);
+        tempLock.setService(input.getService());
+        tempLock.setOperation(input.getOperation());
+        tempLock.setIdempotencyKey(input.getIdempotencyKey());
+        tempLock.setLockedAt(Instant.now());
+        tempLock.setExpiredAt(tempLock.getLockedAt().plus(idempotentOperationConfigCache.getLockDuration(input.getService(), input.getOperation())));
+        return tempLock;
+    }
+
+    private Mono<IdempotentOperationLockTemp> acquireLock(IdempotentOperationResult input, String idempotencyId) {
+        return idempotentOperationLockTempRepository.insert(newTempLock(input, idempotencyId))
+                .doOnNext(tempLock -> log.info("ATOMIC LOCK ACQUIRED for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey()))
+                .onErrorMap(DuplicateKeyException.class, e -> {
+                    // Another request already has the lock for this (service, operation, idempotencyKey)
+                    log.warn("LOCK ALREADY EXISTS for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+                    return new IdempotencyException("Operation is already locked by another process", e, ExecutionResult.OPERATION_ALREADY_LOCKED);
+                })
+                .onErrorMap(e -> !(e instanceof IdempotencyException), e -> {
+                    log.error("Failed to acquire lock for operation", e);
+                    return new IdempotencyException("Failed to acquire lock for operation", e, ExecutionResult.OPERATION_FAILED);
+                });
+    }
+
+    // A duplicate key is an outcome of the item, not a failure of the batch
+    private Mono<IdempotentOperationResult> lockBatchItem(IdempotentOperationResult input, String idempotencyId) {
+        return acquireLock(input, idempotencyId)
+                .map(tempLock -> {
+                    scheduleLockExpiry(tempLock);
+                    return createLockAcquiredResponse(tempLock);
+                })
+                .onErrorResume(e -> e instanceof IdempotencyException idempotencyException
+                                && idempotencyException.getExecutionResult() == ExecutionResult.OPERATION_ALREADY_LOCKED,
+                        e -> Mono.just(createAlreadyLockedResponse(input)));
+    }
+
+    private IdempotentOperationResult createLockAcquiredResponse(IdempotentOperationLockTemp tempLock) {
+        log.info("Successfully acquired lock for operation");
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setIdempotencyId(tempLock.getIdempotencyId());
+        output.setService(tempLock.getService());
+        output.setOperation(tempLock.getOperation());
+        output.setIdempotencyKey(tempLock.getIdempotencyKey());
+        output.setLockId(tempLock.getId());
+        output.setLockedAt(tempLock.getLockedAt());
+        output.setExpiredAt(tempLock.getExpiredAt());
+        output.setExecutionResult(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue());
+        return output;
+    }
+
+    private IdempotentOperationResult createAlreadyLockedResponse(IdempotentOperationResult input) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setExecutionResult(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue());
+        return output;
+    }
+
+    // The lockId is not returned, only the holder of the lock may save the result
+    private IdempotentOperationResult createLockedStatusResponse(IdempotentOperationLockTemp tempLock) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setIdempotencyId(tempLock.getIdempotencyId());
+        output.setService(tempLock.getService());
+        output.setOperation(tempLock.getOperation());
+        output.setIdempotencyKey(tempLock.getIdempotencyKey());
+        output.setLockedAt(tempLock.getLockedAt());
+        output.setExpiredAt(tempLock.getExpiredAt());
+        output.setExecutionResult(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue());
+        return output;
+    }
+
+    private IdempotentOperationResult createNotFoundResponse(IdempotentOperationResult input) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setExecutionResult(ExecutionResult.OPERATION_NOT_FOUND.getValue());
+        return output;
+    }
+
+    private void validateInput(IdempotentOperationResult input) {
+        if (Objects.isNull(input.getLockId())) {
+            throw new IdempotencyException("Lock Id is required", ExecutionResult.OPERATION_FAILED);
+        }
+        if (Objects.isNull(input.getIdempotencyId())) {
+            throw new IdempotencyException("Idempotency Id is required", ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    // The temp lock is already released, this records the lock history and the result
+    private Mono<CompletionResult> completeOperation(IdempotentOperationResult input, IdempotentOperationLockTemp tempLock) {
+        Mono<CompletionResult> saveResult = ExecutionResult.SUCCESS.getValue().equalsIgnoreCase(input.getExecutionResult())
+                ? saveSuccessfulResult(input)
+                : saveFailedResult(input.getService(), input.getOperation(), input.getIdempotencyId(), input.getLockId(), input.getIdempotentOperationResult()).thenReturn(CompletionResult.SAVED);
+        return insertLockRecord(tempLock).then(saveResult);
+    }
+
+    private StoredIdempotentOperationResult newStoredResult(IdempotentOperationResult input) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(getHashedKey(input.getService(), input.getOperation(), input.getIdempotencyKey()));
+        storedResult.setService(input.getService());
+        storedResult.setOperation(input.getOperation());
+        storedResult.setIdempotencyKey(input.getIdempotencyKey());
+        storedResult.setIdempotentOperationResult(input.getIdempotentOperationResult());
+        storedResult.setExpireAt(idempotentOperationConfigCache.getExpireAt(input.getService(), input.getOperation(), Instant.now()));
+        return storedResult;
+    }
+
+    private Mono<CompletionResult> saveSuccessfulResult(IdempotentOperationResult input) {
+        return storedIdempotentOperationResultRepository.insert(newStoredResult(input))
+                .map(storedResult -> {
+                    storedIdempotentOperationResultCache.put(storedResult);
+                    log.info("Successfully saved operation result atomically");
+                    return CompletionResult.SAVED;
+                })
+                .onErrorResume(DuplicateKeyException.class, e -> {
+                    log.warn("Result already exists for this operation - concurrent completion detected");
+                    return Mono.just(CompletionResult.DUPLICATE);
+                })
+                .onErrorMap(e -> !(e instanceof IdempotencyException), e -> {
+                    log.error("Failed to save successful operation result", e);
+                    return new IdempotencyException("Failed to save operation result", e, ExecutionResult.OPERATION_FAILED);
+                });
+    }
+
+    private Mono<Void> saveFailedResult(String service, String operation, String idempotencyId, String lockId, String errorMessage) {
+        FailedIdempotentOperationResult failedResult = new FailedIdempotentOperationResult();
+        failedResult.setId(idempotencyId);
+        failedResult.setLockId(lockId);
+        failedResult.setErrorMessage(errorMessage);
+        failedResult.setExpireAt(idempotentOperationConfigCache.getExpireAt(service, operation, Instant.now()));
+        return failedIdempotentOperationResultRepository.insert(failedResult)
+                .doOnNext(saved -> log.info("Saved failed operation result with error: {}", errorMessage))
+                .onErrorResume(e -> {
+                    log.error("Failed to save failed operation result", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> insertLockRecord(IdempotentOperationLockTemp tempLock) {
+        IdempotentOperationLock lock = new IdempotentOperationLock();
+        lock.setId(tempLock.getId());
+        lock.setIdempotencyId(tempLock.getIdempotencyId());
+        lock.setLockedAt(tempLock.getLockedAt());
+        lock.setExpiredAt(tempLock.getExpiredAt());
+        lock.setCreatedAt(Instant.now());
+        lock.setExpireAt(idempotentOperationConfigCache.getExpireAt(tempLock.getService(), tempLock.getOperation(), lock.getCreatedAt()));
+        return idempotentOperationLockRepository.insert(lock)
+                .onErrorResume(e -> {
+                    log.error("Failed to insert lock", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private Mono<Void> deleteTempLock(@NonNull String lockId) {
+        return idempotentOperationLockTempRepository.deleteById(lockId)
+                .onErrorResume(e -> {
+                    // Don't fail here as the main operation is complete
+                    log.error("Failed to cleanup temporary lock, but operation completed successfully", e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> deleteTempLocks(Set<String> lockIds) {
+        if (lockIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return idempotentOperationLockTempRepository.deleteAllById(lockIds)
+                .onErrorResume(e -> {
+                    // Don't fail here, the results are still saved and the locks expire on their own
+                    log.error("Failed to cleanup temporary locks", e);
+                    return Mono.empty();
+                });
+    }
+
+    private IdempotentOperationCompletionResult createCompletionResponse(IdempotentOperationResult input, CompletionResult completionResult) {
+        IdempotentOperationCompletionResult output = new IdempotentOperationCompletionResult();
+        output.setIdempotencyId(input.getIdempotencyId());
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setLockId(input.getLockId());
+        output.setCompletionResult(completionResult.getValue());
+        return output;
+    }
+
+}
@@ -0,0 +1,476 @@
+package microservices.helper.idempotency.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.LeaseResult;
+import microservices.helper.idempotency.enums.LifecyclePhase;
+import microservices.helper.idempotency.enums.OperationState;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.IdempotentOperationStateRepository;
+import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+
+/**
+ * IdempotencyService keeping each (service, operation, idempotencyKey) in one
+ * idempotent_operation_state document. Acquire is a single findOneAndUpdate
+ * upsert and completion a single update conditional on the lockId, so a crash
+ * can never separate releasing the lock from saving the result.
+ */
+@Service
+@ConditionalOnProperty(name = "idempotent.storage.mode", havingValue = "single-document")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@Slf4j
+public class SingleDocumentIdempotencyServiceImpl implements IdempotencyService {
+
+    private final IdempotentOperationStateRepository idempotentOperationStateRepository;
+    private final StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository;
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+    private final LockExpiryScheduler lockExpiryScheduler;
+    private final IdempotencyKeyHasher idempotencyKeyHasher;
+    private final IdempotencyMetrics idempotencyMetrics;
+    private final boolean legacyResultFallback;
+
+    public SingleDocumentIdempotencyServiceImpl(IdempotentOperationStateRepository idempotentOperationStateRepository,
+                                                StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository,
+                                                IdempotentOperationConfigCache idempotentOperationConfigCache,
+                                                StoredIdempotentOperationResultCache storedIdempotentOperationResultCache,
+                                                LockExpiryScheduler lockExpiryScheduler,
+                                                IdempotencyKeyHasher idempotencyKeyHasher,
+                                                IdempotencyMetrics idempotencyMetrics,
+                                                @Value("${idempotent.storage.legacy-result-fallback}") boolean legacyResultFallback) {
+        this.idempotentOperationStateRepository = idempotentOperationStateRepository;
+        this.storedIdempotentOperationResultRepository = storedIdempotentOperationResultRepository;
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.storedIdempotentOperationResultCache = storedIdempotentOperationResultCache;
+        this.lockExpiryScheduler = lockExpiryScheduler;
+        this.idempotencyKeyHasher = idempotencyKeyHasher;
+        this.idempotencyMetrics = idempotencyMetrics;
+        this.legacyResultFallback = legacyResultFallback;
+    }
+
+    @Override
+    public IdempotentOperationResult getStoredExecutionResultOrLockOperation(IdempotentOperationResult input) {
+        log.info("Processing idempotent operation for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+
+        try {
+            IdempotentOperationResult output = getStoredExecutionResultOrLock(input);
+            idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), ExecutionResult.valueOf(output.getExecutionResult()));
+            return output;
+        } catch (IdempotencyException e) {
+            idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), e.getExecutionResult());
+            throw e;
+        } catch (RuntimeException e) {
+            idempotencyMetrics.recordAcquire(input.getService(), input.getOperation(), ExecutionResult.OPERATION_FAILED);
+            throw e;
+        }
+    }
+
+    private IdempotentOperationResult getStoredExecutionResultOrLock(IdempotentOperationResult input) {
+        long phaseStart = System.nanoTime();
+        String hashedKey = idempotencyKeyHasher.hash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        Optional<StoredIdempotentOperationResult> cachedResult = findLegacyOrCachedResult(hashedKey, fallbackHashedKey);
+        if (cachedResult.isEmpty() && fallbackHashedKey != null) {
+            cachedResult = findFallbackStateResult(input, hashedKey, fallbackHashedKey);
+        }
+        phaseStart = idempotencyMetrics.recordPhase(LifecyclePhase.RESULT_LOOKUP, input.getService(), input.getOperation(), phaseStart);
+        if (cachedResult.isPresent()) {
+            log.info("Found existing result, returning cached response");
+            return getCachedResult(cachedResult.get());
+        }
+
+        // ATOMIC LOCK ACQUISITION - one findOneAndUpdate returns either the completed result or our fresh lock
+        IdempotentOperationState candidate = newLockCandidate(input, hashedKey);
+        IdempotentOperationState state;
+        try {
+            state = idempotentOperationStateRepository.acquire(candidate);
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to acquire lock for operation", e);
+            throw new IdempotencyException("Failed to acquire lock for operation", e, ExecutionResult.OPERATION_FAILED);
+        }
+        idempotencyMetrics.recordPhase(LifecyclePhase.LOCK_INSERT, input.getService(), input.getOperation(), phaseStart);
+
+        if (candidate.getLockId().equals(state.getLockId())) {
+            log.info("ATOMIC LOCK ACQUIRED for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+            scheduleLockExpiry(state);
+            return createLockAcquiredResponse(state);
+        }
+        if (state.getState() == OperationState.SUCCEEDED) {
+            StoredIdempotentOperationResult storedResult = toStoredResult(state);
+            storedIdempotentOperationResultCache.put(storedResult);
+            return getCachedResult(storedResult);
+        }
+        log.warn("LOCK ALREADY EXISTS for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+        throw new IdempotencyException("Operation is already locked by another process", ExecutionResult.OPERATION_ALREADY_LOCKED);
+    }
+
+    // Each item is one findOneAndUpdate, there is no cheaper bulk form of the conditional upsert.
+    // A failed item is reported as OPERATION_FAILED, so the locks taken for the other items still reach the caller.
+    @Override
+    public List<IdempotentOperationResult> getStoredExecutionResultsOrLockOperations(List<IdempotentOperationResult> inputs) {
+        List<IdempotentOperationResult> outputs = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            try {
+                outputs.add(getStoredExecutionResultOrLockOperation(input));
+            } catch (IdempotencyException e) {
+                outputs.add(createStatusResponse(input, e.getExecutionResult() == ExecutionResult.OPERATION_ALREADY_LOCKED
+                        ? ExecutionResult.OPERATION_ALREADY_LOCKED : ExecutionResult.OPERATION_FAILED));
+            } catch (RuntimeException e) {
+                log.error("Failed to process batch item for service: {}, operation: {}", input.getService(), input.getOperation(), e);
+                outputs.add(createStatusResponse(input, ExecutionResult.OPERATION_FAILED));
+            }
+        }
+        return outputs;
+    }
+
+    @Override
+    public List<IdempotentOperationResult> getExecutionStatuses(List<IdempotentOperationResult> inputs) {
+        List<String> hashedKeys = new ArrayList<>(inputs.size());
+        List<String> fallbackHashedKeys = new ArrayList<>(inputs.size());
+        List<String> stateIds = new ArrayList<>(inputs.size() * 2);
+        for (IdempotentOperationResult input : inputs) {
+            String hashedKey = idempotencyKeyHasher.hash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+            String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+            hashedKeys.add(hashedKey);
+            fallbackHashedKeys.add(fallbackHashedKey);
+            stateIds.add(hashedKey);
+            if (fallbackHashedKey != null) {
+                stateIds.add(fallbackHashedKey);
+            }
+        }
+        Map<String, IdempotentOperationState> states = new HashMap<>();
+        for (IdempotentOperationState state : idempotentOperationStateRepository.findAllById(stateIds)) {
+            states.put(state.getId(), state);
+        }
+
+        Instant now = Instant.now();
+        List<IdempotentOperationResult> outputs = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            IdempotentOperationState state = states.get(hashedKeys.get(i));
+            if (state == null && fallbackHashedKeys.get(i) != null) {
+                state = states.get(fallbackHashedKeys.get(i));
+            }
+            if (state != null && state.getState() == OperationState.SUCCEEDED) {
+                outputs.add(getCachedResult(toStoredResult(state)));
+            } else if (state != null && state.getState() == OperationState.LOCKED && state.getExpiredAt().isAfter(now)) {
+                IdempotentOperationResult output = createStatusResponse(inputs.get(i), ExecutionResult.OPERATION_ALREADY_LOCKED);
+                output.setIdempotencyId(state.getIdempotencyId());
+                output.setLockedAt(state.getLockedAt());
+                output.setExpiredAt(state.getExpiredAt());
+                outputs.add(output);
+            } else {
+                outputs.add(createStatusResponse(inputs.get(i), ExecutionResult.OPERATION_NOT_FOUND));
+            }
+        }
+        return outputs;
+    }
+
+    @Override
+    public void saveIdempotentOperationResult(IdempotentOperationResult input) {
+        log.info("Saving idempotent operation result for lockId: {}, result: {}", input.getLockId(), input.getExecutionResult());
+
+        validateInput(input);
+        completeOperation(input);
+    }
+
+    @Override
+    public List<IdempotentOperationCompletionResult> saveIdempotentOperationResults(List<IdempotentOperationResult> inputs) {
+        inputs.forEach(this::validateInput);
+        List<IdempotentOperationCompletionResult> outputs = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            outputs.add(createCompletionResponse(input, completeOperation(input)));
+        }
+        return outputs;
+    }
+
+    private CompletionResult completeOperation(IdempotentOperationResult input) {
+        long phaseStart = System.nanoTime();
+        try {
+            CompletionResult completionResult = completeOperationState(input);
+            idempotencyMetrics.recordPhase(LifecyclePhase.RESULT_SAVE, input.getService(), input.getOperation(), phaseStart);
+            idempotencyMetrics.recordCompletion(input.getService(), input.getOperation(), completionResult);
+            return completionResult;
+        } catch (RuntimeException e) {
+            idempotencyMetrics.recordCompletionFailure(input.getService(), input.getOperation());
+            throw e;
+        }
+    }
+
+    private CompletionResult completeOperationState(IdempotentOperationResult input) {
+        String hashedKey = idempotencyKeyHasher.hash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        boolean succeeded = ExecutionResult.SUCCESS.getValue().equalsIgnoreCase(input.getExecutionResult());
+        boolean completed;
+        try {
+            completed = complete(hashedKey, input, succeeded);
+            if (!completed && fallbackHashedKey != null) {
+                // The lock was taken before the key format changed, lockIds are unique so only the holder can match
+                completed = complete(fallbackHashedKey, input, succeeded);
+            }
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to save operation result", e);
+            throw new IdempotencyException("Failed to save operation result", e, ExecutionResult.OPERATION_FAILED);
+        }
+        if (!completed) {
+            // Either expired (and possibly re-locked by another attempt) or already completed with this lock
+            IdempotentOperationState state = findStateByLockId(hashedKey, input.getLockId());
+            if (state == null && fallbackHashedKey != null) {
+                state = findStateByLockId(fallbackHashedKey, input.getLockId());
+            }
+            boolean alreadyCompleted = state != null && state.getState() != OperationState.EXPIRED;
+            log.warn("Operation result not saved for lockId: {}, the lock is {}", input.getLockId(), alreadyCompleted ? "already completed" : "expired");
+            return alreadyCompleted ? CompletionResult.DUPLICATE : CompletionResult.EXPIRED;
+        }
+        lockExpiryScheduler.cancel(input.getLockId());
+        if (succeeded) {
+            storedIdempotentOperationResultCache.put(newStoredResult(input, hashedKey));
+        }
+        log.info("Successfully saved operation result atomically");
+        return CompletionResult.SAVED;
+    }
+
+    // Each item is one findAndModify conditional on the lockId, under the fallback key only if the current one misses
+    @Override
+    public List<IdempotentOperationLeaseResult> renewLeases(List<IdempotentOperationResult> inputs) {
+        inputs.forEach(this::validateLockId);
+        List<IdempotentOperationLeaseResult> outputs = new ArrayList<>(inputs.size());
+        for (IdempotentOperationResult input : inputs) {
+            IdempotentOperationState state = renew(input);
+            LeaseResult leaseResult = state != null ? LeaseResult.RENEWED : LeaseResult.EXPIRED;
+            if (state != null) {
+                scheduleLockExpiry(state);
+            }
+            idempotencyMetrics.recordLease(input.getService(), input.getOperation(), leaseResult);
+            outputs.add(createLeaseResponse(input, state, leaseResult));
+        }
+        return outputs;
+    }
+
+    private IdempotentOperationState renew(IdempotentOperationResult input) {
+        String hashedKey = idempotencyKeyHasher.hash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        String fallbackHashedKey = idempotencyKeyHasher.fallbackHash(input.getService(), input.getOperation(), input.getIdempotencyKey());
+        Instant now = Instant.now();
+        Instant renewedExpiredAt = now.plus(idempotentOperationConfigCache.getLockDuration(input.getService(), input.getOperation())).truncatedTo(ChronoUnit.MILLIS);
+        try {
+            IdempotentOperationState state = idempotentOperationStateRepository.renew(hashedKey, input.getLockId(), now, renewedExpiredAt);
+            if (state == null && fallbackHashedKey != null) {
+                state = idempotentOperationStateRepository.renew(fallbackHashedKey, input.getLockId(), now, renewedExpiredAt);
+            }
+            return state;
+        } catch (ServiceOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to renew lock lease", e);
+            throw new IdempotencyException("Failed to renew lock lease", e, ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    private boolean complete(String hashedKey, IdempotentOperationResult input, boolean succeeded) {
+        return succeeded
+                ? idempotentOperationStateRepository.complete(hashedKey, input.getLockId(), OperationState.SUCCEEDED, input.getIdempotentOperationResult(), null)
+                : idempotentOperationStateRepository.complete(hashedKey, input.getLockId(), OperationState.FAILED, null, input.getIdempotentOperationResult());
+    }
+
+    private IdempotentOperationState findStateByLockId(String hashedKey, String lockId) {
+        return idempotentOperationStateRepository.findById(hashedKey)
+                .filter(state -> lockId.equals(state.getLockId()))
+                .orElse(null);
+    }
+
+    // A state document written before the key format changed still owns the key until it is completed or expired
+    private Optional<StoredIdempotentOperationResult> findFallbackStateResult(IdempotentOperationResult input, String hashedKey, String fallbackHashedKey) {
+        IdempotentOperationState fallbackState = idempotentOperationStateRepository.findById(fallbackHashedKey).orElse(null);
+        if (fallbackState != null && fallbackState.getState() == OperationState.SUCCEEDED) {
+            StoredIdempotentOperationResult storedResult = toStoredResult(fallbackState);
+            storedIdempotentOperationResultCache.put(hashedKey, storedResult);
+            return Optional.of(storedResult);
+        }
+        if (fallbackState != null && fallbackState.getState() == OperationState.LOCKED && fallbackState.getExpiredAt().isAfter(Instant.now())) {
+            log.warn("LOCK ALREADY EXISTS under the fallback key for service: {}, operation: {}, key: {}", input.getService(), input.getOperation(), input.getIdempotencyKey());
+            throw new IdempotencyException("Operation is already locked by another process", ExecutionResult.OPERATION_ALREADY_LOCKED);
+        }
+        return Optional.empty();
+    }
+
+    private void validateInput(IdempotentOperationResult input) {
+        validateLockId(input);
+        if (Objects.isNull(input.getIdempotencyId())) {
+            throw new IdempotencyException("Idempotency Id is required", ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    private void validateLockId(IdempotentOperationResult input) {
+        if (Objects.isNull(input.getLockId())) {
+            throw new IdempotencyException("Lock Id is required", ExecutionResult.OPERATION_FAILED);
+        }
+    }
+
+    // While migrating, results written by the collections mode are still honoured, under either key format
+    private Optional<StoredIdempotentOperationResult> findLegacyOrCachedResult(@NonNull String hashedKey, String fallbackHashedKey) {
+        Optional<StoredIdempotentOperationResult> cachedResult = storedIdempotentOperationResultCache.get(hashedKey);
+        if (cachedResult.isPresent() || !legacyResultFallback) {
+            return cachedResult;
+        }
+        Optional<StoredIdempotentOperationResult> legacyResult = storedIdempotentOperationResultRepository.findById(hashedKey);
+        if (legacyResult.isPresent() || fallbackHashedKey == null) {
+            legacyResult.ifPresent(storedIdempotentOperationResultCache::put);
+            return legacyResult;
+        }
+        legacyResult = storedIdempotentOperationResultRepository.findById(fallbackHashedKey);
+        legacyResult.ifPresent(result -> storedIdempotentOperationResultCache.put(hashedKey, result));
+        return legacyResult;
+    }
+
+    private IdempotentOperationState newLockCandidate(IdempotentOperationResult input, String hashedKey) {
+        IdempotentOperationState candidate = new IdempotentOperationState();
+        candidate.setId(hashedKey);
+        candidate.setService(input.getService());
+        candidate.setOperation(input.getOperation());
+        candidate.setIdempotencyKey(input.getIdempotencyKey());
+        candidate.setState(OperationState.LOCKED);
+        candidate.setIdempotencyId(UUID.randomUUID().toString());
+        candidate.setLockId(UUID.randomUUID().toString());
+        candidate.setLockedAt(Instant.now());
+        candidate.setExpiredAt(candidate.getLockedAt().plus(idempotentOperationConfigCache.getLockDuration(input.getService(), input.getOperation())));
+        return candidate;
+    }
+
+    // Replaces the timer this node already keeps for the lock
+    private void scheduleLockExpiry(IdempotentOperationState state) {
+        lockExpiryScheduler.schedule(state.getLockId(), () -> expireLock(state.getId(), state.getLockId()), state.getExpiredAt());
+    }
+
+    // A lease renewed meanwhile on another node moves the timer to the new expiredAt
+    private void expireLock(String id, String lockId) {
+        try {
+            if (idempotentOperationStateRepository.expire(id, lockId)) {
+                log.info("Expired lock: {}", lockId);
+                return;
+            }
+            idempotentOperationStateRepository.findById(id)
+                    .filter(state -> lockId.equals(state.getLockId()) && state.getState() == OperationState.LOCKED)
+                    .ifPresent(this::scheduleLockExpiry);
+        } catch (Exception e) {
+            log.error("Failed to expire lock: {}", lockId, e);
+        }
+    }
+
+    private StoredIdempotentOperationResult toStoredResult(IdempotentOperationState state) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(state.getId());
+        storedResult.setService(state.getService());
+        storedResult.setOperation(state.getOperation());
+        storedResult.setIdempotencyKey(state.getIdempotencyKey());
+        storedResult.setIdempotentOperationResult(state.getIdempotentOperationResult());
+        return storedResult;
+    }
+
+    private StoredIdempotentOperationResult newStoredResult(IdempotentOperationResult input, String hashedKey) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(hashedKey);
+        storedResult.setService(input.getService());
+        storedResult.setOperation(input.getOperation());
+        storedResult.setIdempotencyKey(input.getIdempotencyKey());
+        storedResult.setIdempotentOperationResult(input.getIdempotentOperationResult());
+        return storedResult;
+    }
+
+    private IdempotentOperationResult getCachedResult(StoredIdempotentOperationResult storedResult) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        output.setIdempotentOperationResult(storedResult.getIdempotentOperationResult());
+        output.setService(storedResult.getService());
+        output.setOperation(storedResult.getOperation());
+        output.setIdempotencyKey(storedResult.getIdempotencyKey());
+        return output;
+    }
+
+    private IdempotentOperationResult createLockAcquiredResponse(IdempotentOperationState state) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setIdempotencyId(state.getIdempotencyId());
+        output.setService(state.getService());
+        output.setOperation(state.getOperation());
+        output.setIdempotencyKey(state.getIdempotencyKey());
+        output.setLockId(state.getLockId());
+        output.setLockedAt(state.getLockedAt());
+        output.setExpiredAt(state.getExpiredAt());
+        output.setExecutionResult(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue());
+        return output;
+    }
+
+    private IdempotentOperationResult createStatusResponse(IdempotentOperationResult input, ExecutionResult executionResult) {
+        IdempotentOperationResult output = new IdempotentOperationResult();
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setExecutionResult(executionResult.getValue());
+        return output;
+    }
+
+    private IdempotentOperationCompletionResult createCompletionResponse(IdempotentOperationResult input, CompletionResult completionResult) {
+        IdempotentOperationCompletionResult output = new IdempotentOperationCompletionResult();
+        output.setIdempotencyId(input.getIdempotencyId());
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setLockId(input.getLockId());
+        output.setCompletionResult(completionResult.getValue());
+        return output;
+    }
+
+    private IdempotentOperationLeaseResult createLeaseResponse(IdempotentOperationResult input, IdempotentOperationState state, LeaseResult leaseResult) {
+        IdempotentOperationLeaseResult output = new IdempotentOperationLeaseResult();
+        output.setIdempotencyId(state != null ? state.getIdempotencyId() : input.getIdempotencyId());
+        output.setService(input.getService());
+        output.setOperation(input.getOperation());
+        output.setIdempotencyKey(input.getIdempotencyKey());
+        output.setLockId(input.getLockId());
+        output.setLeaseResult(leaseResult.getValue());
+        output.setExpiredAt(state != null ? state.getExpiredAt() : null);
+        return output;
+    }
+
+    // Catches the locks whose node-local expiry task was lost, e.g. on a restart
+    @Scheduled(cron = "${idempotent.scheduling.expired-lock-removal-rate}")
+    @SchedulerLock(name = "expireStateLocks", lockAtLeastFor = "PT30S", lockAtMostFor = "PT1M")
+    public void expireLockedOperations() {
+        long expired = idempotentOperationStateRepository.expireAll(Instant.now());
+        if (expired > 0) {
+            log.info("Expired {} locked operations", expired);
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package microservices.helper.idempotency.store;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+import microservices.helper.idempotency.repository.UnorderedInsertRepositoryImpl;
+
+/**
+ * The MongoDB engine seen through one consistency profile: result lookups
+ * with its read preference and read concern, lock inserts and completion
+ * writes with its write concern, everything else through the default engine.
+ * A result a lookup did not find on a secondary is looked up again on the
+ * primary with the local read concern, which sees every acknowledged insert,
+ * so that a lagging secondary never lets a completed operation be locked
+ * again. DURABLE already reads the primary that way and reads once.
+ */
+class ConsistentMongoIdempotencyStore implements IdempotencyStore {
+
+    private final IdempotencyStore defaults;
+    private final MongoConsistencyProfiles mongoConsistencyProfiles;
+    private final ConsistencyProfile consistencyProfile;
+
+    ConsistentMongoIdempotencyStore(IdempotencyStore defaults, MongoConsistencyProfiles mongoConsistencyProfiles, ConsistencyProfile consistencyProfile) {
+        this.defaults = defaults;
+        this.mongoConsistencyProfiles = mongoConsistencyProfiles;
+        this.consistencyProfile = consistencyProfile;
+    }
+
+    @Override
+    public IdempotencyStore withConsistency(ConsistencyProfile consistencyProfile) {
+        return defaults.withConsistency(consistencyProfile);
+    }
+
+    private MongoTemplate mongoTemplate() {
+        return mongoConsistencyProfiles.getMongoTemplate(consistencyProfile);
+    }
+
+    private Query profileQuery(Query query) {
+        return query.withReadPreference(MongoConsistencyProfiles.getReadPreference(consistencyProfile))
+                .withReadConcern(MongoConsistencyProfiles.getReadConcern(consistencyProfile));
+    }
+
+    private static Query primaryQuery(Query query) {
+        return query.withReadPreference(ReadPreference.primary()).withReadConcern(ReadConcern.LOCAL);
+    }
+
+    // Whether a miss of the profile's read may be stale and has to be confirmed on the primary
+    private boolean confirmsMissOnPrimary() {
+        return !ReadPreference.primary().equals(MongoConsistencyProfiles.getReadPreference(consistencyProfile))
+                || !ReadConcern.LOCAL.equals(MongoConsistencyProfiles.getReadConcern(consistencyProfile));
+    }
+
+    // Audit records
+
+    @Override
+    public IdempotentOperation insertOperation(IdempotentOperation idempotentOperation) {
+        return defaults.insertOperation(idempotentOperation);
+    }
+
+    @Override
+    public Set<Integer> insertOperations(List<IdempotentOperation> idempotentOperations) {
+        return defaults.insertOperations(idempotentOperations);
+    }
+
+    // Result lookup
+
+    @Override
+    public Optional<StoredIdempotentOperationResult> findResult(String id) {
+        StoredIdempotentOperationResult storedResult = mongoConsistencyProfiles.execute("findResult",
+                () -> mongoTemplate().findOne(profileQuery(Query.query(where("_id").is(id))), StoredIdempotentOperationResult.class));
+        if (storedResult == null && confirmsMissOnPrimary()) {
+            storedResult = mongoConsistencyProfiles.execute("findResult",
+                    () -> mongoTemplate().findOne(primaryQuery(Query.query(where("_id").is(id))), StoredIdempotentOperationResult.class));
+        }
+        return Optional.ofNullable(storedResult);
+    }
+
+    @Override
+    public List<StoredIdempotentOperationResult> findResults(Collection<String> ids) {
+        List<StoredIdempotentOperationResult> storedResults = new ArrayList<>(mongoConsistencyProfiles.execute("findResults",
+                () -> mongoTemplate().find(profileQuery(Query.query(where("_id").in(ids))), StoredIdempotentOperationResult.class)));
+        if (!confirmsMissOnPrimary()) {
+            return storedResults;
+        }
+        Set<String> missingIds = new HashSet<>(ids);
+        storedResults.forEach(storedResult -> missingIds.remove(storedResult.getId()));
+        if (!missingIds.isEmpty()) {
+            // One $in read on the primary for every miss of the batch
+            storedResults.addAll(mongoConsistencyProfiles.execute("findResults",
+                    () -> mongoTemplate().find(primaryQuery(Query.query(where("_id").in(missingIds))), StoredIdempotentOperationResult.class)));
+        }
+        return storedResults;
+    }
+
+    @Override
+    public Optional<FailedIdempotentOperationResult> findFailedResult(String idempotencyId) {
+        return defaults.findFailedResult(idempotencyId);
+    }
+
+    // Lock acquisition
+
+    @Override
+    public void insertTempLock(IdempotentOperationLockTemp tempLock) {
+        mongoConsistencyProfiles.execute("insertTempLock", () -> mongoTemplate().insert(tempLock));
+    }
+
+    @Override
+    public Set<Integer> insertTempLocks(List<IdempotentOperationLockTemp> tempLocks) {
+        return mongoConsistencyProfiles.execute("insertTempLocks",
+                () -> new UnorderedInsertRepositoryImpl<IdempotentOperationLockTemp>(mongoTemplate()).insertAllUnordered(tempLocks));
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findTempLock(String lockId) {
+        return defaults.findTempLock(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(Collection<String> lockIds) {
+        return defaults.findTempLocks(lockIds);
+    }
+
+    @Override
+    public boolean existsTempLock(String lockId) {
+        return defaults.existsTempLock(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(String service, String operation, Collection<String> idempotencyKeys) {
+        return defaults.findTempLocks(service, operation, idempotencyKeys);
+    }
+
+    // Lease renewal
+
+    @Override
+    public Set<Integer> renewTempLocks(List<TempLockRenewal> renewals) {
+        return defaults.renewTempLocks(renewals);
+    }
+
+    // Completion
+
+    @Override
+    public void deleteTempLock(String lockId) {
+        mongoConsistencyProfiles.execute("deleteTempLock",
+                () -> mongoTemplate().remove(Query.query(where("_id").is(lockId)), IdempotentOperationLockTemp.class));
+    }
+
+    @Override
+    public void deleteTempLocks(Collection<String> lockIds) {
+        mongoConsistencyProfiles.execute("deleteTempLocks",
+                () -> mongoTemplate().remove(Query.query(where("_id").in(lockIds)), IdempotentOperationLockTemp.class));
+    }
+
+    @Override
+    public void insertLockRecord(IdempotentOperationLock lock) {
+        mongoConsistencyProfiles.execute("insertLockRecord", () -> mongoTemplate().insert(lock));
+    }
+
+    @Override
+    public Set<Integer> insertLockRecords(List<IdempotentOperationLock> locks) {
+        return mongoConsistencyProfiles.execute("insertLockRecords",
+                () -> new UnorderedInsertRepositoryImpl<IdempotentOperationLock>(mongoTemplate()).insertAllUnordered(locks));
+    }
+
+    @Override
+    public void insertResult(StoredIdempotentOperationResult storedResult) {
+        mongoConsistencyProfiles.execute("insertResult", () -> mongoTemplate().insert(storedResult));
+    }
+
+    @Override
+    public Set<Integer> insertResults(List<StoredIdempotentOperationResult> storedResults) {
+        return mongoConsistencyProfiles.execute("insertResults",
+                () -> new UnorderedInsertRepositoryImpl<StoredIdempotentOperationResult>(mongoTemplate()).insertAllUnordered(storedResults));
+    }
+
+    @Override
+    public void insertFailedResult(FailedIdempotentOperationResult failedResult) {
+        mongoConsistencyProfiles.execute("insertFailedResult", () -> mongoTemplate().insert(failedResult));
+    }
+
+    @Override
+    public Set<Integer> insertFailedResults(List<FailedIdempotentOperationResult> failedResults) {
+        return mongoConsistencyProfiles.execute("insertFailedResults",
+                () -> new UnorderedInsertRepositoryImpl<FailedIdempotentOperationResult>(mongoTemplate()).insertAllUnordered(failedResults));
+    }
+
+    // Expiry scan
+
+    @Override
+    public List<IdempotentOperationLockTemp> findExpiredTempLocks(Instant expiredBefore, int limit) {
+        return defaults.findExpiredTempLocks(expiredBefore, limit);
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findOldestExpiredTempLock(Instant expiredBefore) {
+        return defaults.findOldestExpiredTempLock(expiredBefore);
+    }
+
+    @Override
+    public long countTempLocksExpiringBefore(Instant expiredBefore) {
+        return defaults.countTempLocksExpiringBefore(expiredBefore);
+    }
+
+    // Operation configs
+
+    @Override
+    public List<IdempotentOperationConfig> findConfigs() {
+        return defaults.findConfigs();
+    }
+
+    @Override
+    public Optional<IdempotentOperationConfig> findConfig(String service, String operation) {
+        return defaults.findConfig(service, operation);
+    }
+
+    @Override
+    public IdempotentOperationConfig insertConfig(IdempotentOperationConfig operationConfig) {
+        return defaults.insertConfig(operationConfig);
+    }
+
+    @Override
+    public boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt) {
+        return defaults.updateLearnedLockDuration(service, operation, learnedLockDuration, learnedAt);
+    }
+
+}
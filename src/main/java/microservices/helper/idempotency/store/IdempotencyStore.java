@@ -0,0 +1,151 @@
+package microservices.helper.idempotency.store;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.dao.DuplicateKeyException;
+
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+
+/**
+ * Storage SPI of the collections storage mode, selected with
+ * idempotent.storage.engine. Every engine keeps the guarantees the service
+ * relies on: _ids are unique in every collection, at most one temp lock exists
+ * per (service, operation, idempotencyKey), and a rejected insert is reported
+ * as a {@link DuplicateKeyException}, or as its position by the bulk inserts,
+ * which never stop at the first duplicate. Documents with an expireAt are
+ * removed some time after it has passed.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * The store the result lookups, lock inserts and completion writes of an
+     * operation go through, with the write concern, read preference and read
+     * concern of its consistency profile. A result lookup of any profile
+     * confirms a miss on the primary, so that a stale read never hands out a
+     * second lock for a completed operation. Engines without replicas have a
+     * single consistency level and return themselves.
+     */
+    default IdempotencyStore withConsistency(ConsistencyProfile consistencyProfile) {
+        return this;
+    }
+
+    // Audit records
+
+    IdempotentOperation insertOperation(IdempotentOperation idempotentOperation);
+
+    /**
+     * @return positions in {@code idempotentOperations} rejected because of a duplicate key
+     */
+    Set<Integer> insertOperations(List<IdempotentOperation> idempotentOperations);
+
+    // Result lookup
+
+    Optional<StoredIdempotentOperationResult> findResult(String id);
+
+    List<StoredIdempotentOperationResult> findResults(Collection<String> ids);
+
+    Optional<FailedIdempotentOperationResult> findFailedResult(String idempotencyId);
+
+    // Lock acquisition
+
+    /**
+     * Takes the lock, the atomic step of POST /idempotent-operation.
+     *
+     * @throws DuplicateKeyException if a temp lock of the same (service, operation, idempotencyKey) exists
+     */
+    void insertTempLock(IdempotentOperationLockTemp tempLock);
+
+    /**
+     * @return positions in {@code tempLocks} that were already locked
+     */
+    Set<Integer> insertTempLocks(List<IdempotentOperationLockTemp> tempLocks);
+
+    Optional<IdempotentOperationLockTemp> findTempLock(String lockId);
+
+    List<IdempotentOperationLockTemp> findTempLocks(Collection<String> lockIds);
+
+    boolean existsTempLock(String lockId);
+
+    List<IdempotentOperationLockTemp> findTempLocks(String service, String operation, Collection<String> idempotencyKeys);
+
+    // Lease renewal
+
+    /**
+     * Extends each temp lock whose expiredAt is still the one in its renewal,
+     * a conditional update so that a lock completed, expired or renewed by
+     * someone else meanwhile is left as it is.
+     *
+     * @return positions in {@code renewals} that were not renewed
+     */
+    Set<Integer> renewTempLocks(List<TempLockRenewal> renewals);
+
+    // Completion
+
+    void deleteTempLock(String lockId);
+
+    void deleteTempLocks(Collection<String> lockIds);
+
+    void insertLockRecord(IdempotentOperationLock lock);
+
+    Set<Integer> insertLockRecords(List<IdempotentOperationLock> locks);
+
+    /**
+     * @throws DuplicateKeyException if a result is already stored under the same _id
+     */
+    void insertResult(StoredIdempotentOperationResult storedResult);
+
+    Set<Integer> insertResults(List<StoredIdempotentOperationResult> storedResults);
+
+    void insertFailedResult(FailedIdempotentOperationResult failedResult);
+
+    Set<Integer> insertFailedResults(List<FailedIdempotentOperationResult> failedResults);
+
+    // Expiry scan
+
+    // At most limit temp locks expired before expiredBefore, oldest first
+    List<IdempotentOperationLockTemp> findExpiredTempLocks(Instant expiredBefore, int limit);
+
+    Optional<IdempotentOperationLockTemp> findOldestExpiredTempLock(Instant expiredBefore);
+
+    long countTempLocksExpiringBefore(Instant expiredBefore);
+
+    /**
+     * Temp locks found in flight when the store was opened, whose node-local
+     * expiry died with the previous process. Empty for a store shared between
+     * nodes, where the expired lock sweeper covers them.
+     */
+    default List<IdempotentOperationLockTemp> findRecoveredTempLocks() {
+        return List.of();
+    }
+
+    // Operation configs
+
+    List<IdempotentOperationConfig> findConfigs();
+
+    Optional<IdempotentOperationConfig> findConfig(String service, String operation);
+
+    /**
+     * @throws DuplicateKeyException if the (service, operation) is already registered
+     */
+    IdempotentOperationConfig insertConfig(IdempotentOperationConfig operationConfig);
+
+    /**
+     * Sets the learnedLockDuration and learnedAt of the operation's config,
+     * leaving the fields operators edit as they are.
+     *
+     * @return false if the (service, operation) is not registered
+     */
+    boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt);
+
+}
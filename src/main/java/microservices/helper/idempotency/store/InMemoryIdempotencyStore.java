@@ -0,0 +1,462 @@
+package microservices.helper.idempotency.store;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+/**
+ * Node-local engine for single-node deployments, tests and benchmarks. Every
+ * collection is a concurrent hash map by _id, with a second one per unique
+ * index whose putIfAbsent is the atomic point of the insert, as the unique
+ * index is in MongoDB. Temp locks are also kept in a skip list ordered by
+ * expiredAt for the expiry scan, and documents with an expireAt in a retention
+ * timeline purged on a fixed delay, like the TTL monitor. The audit records
+ * are never read back, only the latest maxAuditRecords of them are kept so
+ * the heap stays bounded without a retention. Nothing survives a restart,
+ * documents are kept by reference and must not be modified after they were
+ * inserted.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "in-memory")
+@Slf4j
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final Table<IdempotentOperation> operations = new Table<>("idempotent_operation",
+            IdempotentOperation::getId, null);
+    private final Table<IdempotentOperationLock> locks = new Table<>("idempotent_operation_lock",
+            IdempotentOperationLock::getId, null);
+    private final Table<IdempotentOperationLockTemp> tempLocks = new Table<>("idempotent_operation_lock_temp",
+            IdempotentOperationLockTemp::getId, tempLock -> new UniqueKey(tempLock.getService(), tempLock.getOperation(), tempLock.getIdempotencyKey()));
+    private final Table<StoredIdempotentOperationResult> results = new Table<>("stored_idempotent_operation_result",
+            StoredIdempotentOperationResult::getId, result -> new UniqueKey(result.getService(), result.getOperation(), result.getIdempotencyKey()));
+    private final Table<FailedIdempotentOperationResult> failedResults = new Table<>("failed_idempotent_operation_result",
+            FailedIdempotentOperationResult::getId, null);
+    private final Table<IdempotentOperationConfig> configs = new Table<>("idempotent_operation_config",
+            IdempotentOperationConfig::getId, config -> new UniqueKey(config.getService(), config.getOperation(), null));
+
+    private final ConcurrentSkipListSet<Expiry> tempLockExpiries = new ConcurrentSkipListSet<>(
+            Comparator.comparing(Expiry::expiredAt).thenComparing(Expiry::id));
+    private final ConcurrentSkipListSet<Retention<?>> retentionTimeline = new ConcurrentSkipListSet<>(
+            Comparator.<Retention<?>, Instant>comparing(Retention::expireAt).thenComparingLong(Retention::sequence));
+    private final AtomicLong retentionSequence = new AtomicLong();
+    // Operations and lock records in insertion order, the oldest are evicted past maxAuditRecords
+    private final ConcurrentLinkedQueue<Retention<?>> auditRecords = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger auditRecordCount = new AtomicInteger();
+    private final int maxAuditRecords;
+
+    public InMemoryIdempotencyStore(@Value("${idempotent.storage.in-memory.max-audit-records}") int maxAuditRecords) {
+        this.maxAuditRecords = maxAuditRecords;
+    }
+
+    @Override
+    public IdempotentOperation insertOperation(IdempotentOperation idempotentOperation) {
+        if (maxAuditRecords <= 0) {
+            return idempotentOperation;
+        }
+        operations.insertOrThrow(idempotentOperation);
+        retainAuditRecord(operations, idempotentOperation, idempotentOperation.getId(), idempotentOperation.getExpireAt());
+        return idempotentOperation;
+    }
+
+    @Override
+    public Set<Integer> insertOperations(List<IdempotentOperation> idempotentOperations) {
+        return insertAll(idempotentOperations, this::insertOperation);
+    }
+
+    @Override
+    public Optional<StoredIdempotentOperationResult> findResult(String id) {
+        return Optional.ofNullable(results.byId.get(id));
+    }
+
+    @Override
+    public List<StoredIdempotentOperationResult> findResults(Collection<String> ids) {
+        return results.findAll(ids);
+    }
+
+    @Override
+    public Optional<FailedIdempotentOperationResult> findFailedResult(String idempotencyId) {
+        return Optional.ofNullable(failedResults.byId.get(idempotencyId));
+    }
+
+    @Override
+    public void insertTempLock(IdempotentOperationLockTemp tempLock) {
+        tempLocks.insertOrThrow(tempLock);
+        tempLockExpiries.add(new Expiry(tempLock.getExpiredAt(), tempLock.getId()));
+    }
+
+    @Override
+    public Set<Integer> insertTempLocks(List<IdempotentOperationLockTemp> tempLocks) {
+        return insertAll(tempLocks, this::insertTempLock);
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findTempLock(String lockId) {
+        return Optional.ofNullable(tempLocks.byId.get(lockId));
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(Collection<String> lockIds) {
+        return tempLocks.findAll(lockIds);
+    }
+
+    @Override
+    public boolean existsTempLock(String lockId) {
+        return tempLocks.byId.containsKey(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(String service, String operation, Collection<String> idempotencyKeys) {
+        List<IdempotentOperationLockTemp> found = new ArrayList<>(idempotencyKeys.size());
+        for (String idempotencyKey : new HashSet<>(idempotencyKeys)) {
+            IdempotentOperationLockTemp tempLock = tempLocks.byKey.get(new UniqueKey(service, operation, idempotencyKey));
+            if (tempLock != null) {
+                found.add(tempLock);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Set<Integer> renewTempLocks(List<TempLockRenewal> renewals) {
+        Set<Integer> notRenewed = new HashSet<>();
+        for (int i = 0; i < renewals.size(); i++) {
+            if (!renewTempLock(renewals.get(i))) {
+                notRenewed.add(i);
+            }
+        }
+        return notRenewed;
+    }
+
+    // The new expiry is listed before the lock moves to it, so the expiry scan never loses sight of the lock
+    private boolean renewTempLock(TempLockRenewal renewal) {
+        IdempotentOperationLockTemp tempLock = tempLocks.byId.get(renewal.lockId());
+        if (tempLock == null || !tempLock.getExpiredAt().equals(renewal.expiredAt())) {
+            return false;
+        }
+        IdempotentOperationLockTemp renewedTempLock = new IdempotentOperationLockTemp();
+        renewedTempLock.setId(tempLock.getId());
+        renewedTempLock.setIdempotencyId(tempLock.getIdempotencyId());
+        renewedTempLock.setService(tempLock.getService());
+        renewedTempLock.setOperation(tempLock.getOperation());
+        renewedTempLock.setIdempotencyKey(tempLock.getIdempotencyKey());
+        renewedTempLock.setLockedAt(tempLock.getLockedAt());
+        renewedTempLock.setExpiredAt(renewal.renewedExpiredAt());
+        Expiry renewedExpiry = new Expiry(renewal.renewedExpiredAt(), renewal.lockId());
+        tempLockExpiries.add(renewedExpiry);
+        if (!tempLocks.replace(tempLock, renewedTempLock)) {
+            tempLockExpiries.remove(renewedExpiry);
+            return false;
+        }
+        tempLockExpiries.remove(new Expiry(tempLock.getExpiredAt(), renewal.lockId()));
+        return true;
+    }
+
+    @Override
+    public void deleteTempLock(String lockId) {
+        IdempotentOperationLockTemp tempLock = tempLocks.remove(lockId);
+        if (tempLock != null) {
+            tempLockExpiries.remove(new Expiry(tempLock.getExpiredAt(), lockId));
+        }
+    }
+
+    @Override
+    public void deleteTempLocks(Collection<String> lockIds) {
+        lockIds.forEach(this::deleteTempLock);
+    }
+
+    @Override
+    public void insertLockRecord(IdempotentOperationLock lock) {
+        if (maxAuditRecords <= 0) {
+            return;
+        }
+        locks.insertOrThrow(lock);
+        retainAuditRecord(locks, lock, lock.getId(), lock.getExpireAt());
+    }
+
+    @Override
+    public Set<Integer> insertLockRecords(List<IdempotentOperationLock> locks) {
+        return insertAll(locks, this::insertLockRecord);
+    }
+
+    @Override
+    public void insertResult(StoredIdempotentOperationResult storedResult) {
+        results.insertOrThrow(storedResult);
+        retain(results, storedResult, storedResult.getId(), storedResult.getExpireAt());
+    }
+
+    @Override
+    public Set<Integer> insertResults(List<StoredIdempotentOperationResult> storedResults) {
+        return insertAll(storedResults, this::insertResult);
+    }
+
+    @Override
+    public void insertFailedResult(FailedIdempotentOperationResult failedResult) {
+        failedResults.insertOrThrow(failedResult);
+        retain(failedResults, failedResult, failedResult.getId(), failedResult.getExpireAt());
+    }
+
+    @Override
+    public Set<Integer> insertFailedResults(List<FailedIdempotentOperationResult> failedResults) {
+        return insertAll(failedResults, this::insertFailedResult);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findExpiredTempLocks(Instant expiredBefore, int limit) {
+        List<IdempotentOperationLockTemp> expired = new ArrayList<>(Math.min(limit, 1024));
+        for (Expiry expiry : tempLockExpiries) {
+            if (expired.size() >= limit || !expiry.expiredAt().isBefore(expiredBefore)) {
+                break;
+            }
+            IdempotentOperationLockTemp tempLock = tempLocks.byId.get(expiry.id());
+            // A lock being renewed is listed under both expiries for a moment, only its current one counts
+            if (tempLock != null && tempLock.getExpiredAt().equals(expiry.expiredAt())) {
+                expired.add(tempLock);
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findOldestExpiredTempLock(Instant expiredBefore) {
+        return findExpiredTempLocks(expiredBefore, 1).stream().findFirst();
+    }
+
+    @Override
+    public long countTempLocksExpiringBefore(Instant expiredBefore) {
+        long count = 0;
+        for (Expiry expiry : tempLockExpiries) {
+            if (!expiry.expiredAt().isBefore(expiredBefore)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public List<IdempotentOperationConfig> findConfigs() {
+        return new ArrayList<>(configs.byId.values());
+    }
+
+    @Override
+    public Optional<IdempotentOperationConfig> findConfig(String service, String operation) {
+        return Optional.ofNullable(configs.byKey.get(new UniqueKey(service, operation, null)));
+    }
+
+    @Override
+    public IdempotentOperationConfig insertConfig(IdempotentOperationConfig operationConfig) {
+        configs.insertOrThrow(operationConfig);
+        return operationConfig;
+    }
+
+    // The config is replaced by an updated copy, readers keep the instance they were given
+    @Override
+    public boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt) {
+        while (true) {
+            IdempotentOperationConfig operationConfig = configs.byKey.get(new UniqueKey(service, operation, null));
+            if (operationConfig == null) {
+                return false;
+            }
+            IdempotentOperationConfig learnedOperationConfig = new IdempotentOperationConfig();
+            learnedOperationConfig.setId(operationConfig.getId());
+            learnedOperationConfig.setService(operationConfig.getService());
+            learnedOperationConfig.setOperation(operationConfig.getOperation());
+            learnedOperationConfig.setLockDuration(operationConfig.getLockDuration());
+            learnedOperationConfig.setResultCacheDuration(operationConfig.getResultCacheDuration());
+            learnedOperationConfig.setRetentionDuration(operationConfig.getRetentionDuration());
+            learnedOperationConfig.setResultCompressionThreshold(operationConfig.getResultCompressionThreshold());
+            learnedOperationConfig.setConsistencyProfile(operationConfig.getConsistencyProfile());
+            learnedOperationConfig.setLearnedLockDuration(learnedLockDuration);
+            learnedOperationConfig.setLearnedAt(learnedAt);
+            if (configs.replace(operationConfig, learnedOperationConfig)) {
+                return true;
+            }
+        }
+    }
+
+    // Removes the documents whose expireAt has passed, the TTL monitor of this engine
+    @Scheduled(fixedDelayString = "${idempotent.storage.in-memory.purge-interval}")
+    public void purgeExpired() {
+        int purged = purgeExpired(Instant.now());
+        if (purged > 0) {
+            log.debug("Purged {} documents past their expireAt", purged);
+        }
+    }
+
+    int purgeExpired(Instant now) {
+        int purged = 0;
+        Retention<?> retention;
+        while ((retention = retentionTimeline.pollFirst()) != null) {
+            if (retention.expireAt().isAfter(now)) {
+                // Not due yet, and neither is anything after it
+                retentionTimeline.add(retention);
+                break;
+            }
+            if (retention.purge()) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    private <T> void retain(Table<T> table, T document, String id, Instant expireAt) {
+        if (expireAt != null) {
+            retentionTimeline.add(new Retention<>(expireAt, retentionSequence.incrementAndGet(), table, id, document));
+        }
+    }
+
+    private <T> void retainAuditRecord(Table<T> table, T document, String id, Instant expireAt) {
+        retain(table, document, id, expireAt);
+        auditRecords.add(new Retention<>(expireAt, 0, table, id, document));
+        auditRecordCount.incrementAndGet();
+        Retention<?> oldest;
+        while (auditRecordCount.get() > maxAuditRecords && (oldest = auditRecords.poll()) != null) {
+            auditRecordCount.decrementAndGet();
+            // Already gone when its expireAt passed first
+            oldest.purge();
+        }
+    }
+
+    int getAuditRecordCount() {
+        return operations.byId.size() + locks.byId.size();
+    }
+
+    // Unordered bulk insert, every document is tried and the positions of the duplicates are reported
+    private static <T> Set<Integer> insertAll(List<T> documents, Consumer<T> insert) {
+        Set<Integer> duplicatePositions = new HashSet<>();
+        for (int i = 0; i < documents.size(); i++) {
+            try {
+                insert.accept(documents.get(i));
+            } catch (DuplicateKeyException e) {
+                duplicatePositions.add(i);
+            }
+        }
+        return duplicatePositions;
+    }
+
+    private record UniqueKey(String service, String operation, String idempotencyKey) {
+    }
+
+    private record Expiry(Instant expiredAt, String id) {
+    }
+
+    private record Retention<T>(Instant expireAt, long sequence, Table<T> table, String id, T document) {
+
+        // Only the document this entry was created for, a later one under the same _id has its own entry
+        boolean purge() {
+            return table.remove(id, document);
+        }
+    }
+
+    /**
+     * One collection, the _id map and the map of its unique index if it has one.
+     */
+    private static final class Table<T> {
+
+        private final String name;
+        private final Function<T, String> idOf;
+        private final Function<T, UniqueKey> uniqueKeyOf;
+        private final ConcurrentHashMap<String, T> byId = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<UniqueKey, T> byKey = new ConcurrentHashMap<>();
+
+        Table(String name, Function<T, String> idOf, Function<T, UniqueKey> uniqueKeyOf) {
+            this.name = name;
+            this.idOf = idOf;
+            this.uniqueKeyOf = uniqueKeyOf;
+        }
+
+        // The unique index is claimed first so that a document is never visible by _id while it loses the key
+        void insertOrThrow(T document) {
+            String id = Objects.requireNonNull(idOf.apply(document), "_id");
+            UniqueKey uniqueKey = uniqueKeyOf != null ? uniqueKeyOf.apply(document) : null;
+            if (uniqueKey != null && byKey.putIfAbsent(uniqueKey, document) != null) {
+                throw new DuplicateKeyException("E11000 duplicate key error collection: " + name + " index: " + uniqueKey);
+            }
+            if (byId.putIfAbsent(id, document) != null) {
+                if (uniqueKey != null) {
+                    byKey.remove(uniqueKey, document);
+                }
+                throw new DuplicateKeyException("E11000 duplicate key error collection: " + name + " index: _id_ dup key: " + id);
+            }
+        }
+
+        List<T> findAll(Collection<String> ids) {
+            List<T> found = new ArrayList<>(ids.size());
+            for (String id : new HashSet<>(ids)) {
+                T document = byId.get(id);
+                if (document != null) {
+                    found.add(document);
+                }
+            }
+            return found;
+        }
+
+        // The unique index entry goes with the _id entry, under the same bin lock as a concurrent replace
+        T remove(String id) {
+            List<T> removed = new ArrayList<>(1);
+            byId.computeIfPresent(id, (key, document) -> {
+                if (uniqueKeyOf != null) {
+                    byKey.remove(uniqueKeyOf.apply(document), document);
+                }
+                removed.add(document);
+                return null;
+            });
+            return removed.isEmpty() ? null : removed.get(0);
+        }
+
+        // Swaps current for a new version with the same _id and unique key, false if current is no longer stored
+        boolean replace(T current, T replacement) {
+            boolean[] replaced = new boolean[1];
+            byId.computeIfPresent(idOf.apply(current), (key, document) -> {
+                if (document != current) {
+                    return document;
+                }
+                if (uniqueKeyOf != null) {
+                    byKey.replace(uniqueKeyOf.apply(current), current, replacement);
+                }
+                replaced[0] = true;
+                return replacement;
+            });
+            return replaced[0];
+        }
+
+        boolean remove(String id, T document) {
+            if (!byId.remove(id, document)) {
+                return false;
+            }
+            if (uniqueKeyOf != null) {
+                byKey.remove(uniqueKeyOf.apply(document), document);
+            }
+            return true;
+        }
+    }
+
+}
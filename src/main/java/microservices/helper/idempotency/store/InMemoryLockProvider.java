@@ -0,0 +1,39 @@
+package microservices.helper.idempotency.store;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.javacrumbs.shedlock.core.LockConfiguration;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.SimpleLock;
+
+/**
+ * ShedLock provider of the in-memory engine. It only excludes the scheduled
+ * tasks of this node, which is all there is to exclude when the documents
+ * themselves are not shared.
+ */
+public class InMemoryLockProvider implements LockProvider {
+
+    private final ConcurrentHashMap<String, Instant> lockedUntil = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<SimpleLock> lock(LockConfiguration lockConfiguration) {
+        String name = lockConfiguration.getName();
+        Instant lockAtMostUntil = lockConfiguration.getLockAtMostUntil();
+        Instant now = Instant.now();
+        // Taken only if this call stored its own lockAtMostUntil instance
+        Instant held = lockedUntil.compute(name, (key, until) -> until != null && until.isAfter(now) ? until : lockAtMostUntil);
+        if (held != lockAtMostUntil) {
+            return Optional.empty();
+        }
+        return Optional.of(() -> lockedUntil.computeIfPresent(name, (key, until) -> {
+            if (until != lockAtMostUntil) {
+                return until;
+            }
+            Instant lockAtLeastUntil = lockConfiguration.getLockAtLeastUntil();
+            return lockAtLeastUntil.isAfter(Instant.now()) ? lockAtLeastUntil : null;
+        }));
+    }
+
+}
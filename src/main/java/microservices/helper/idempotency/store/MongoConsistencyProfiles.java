@@ -0,0 +1,84 @@
+package microservices.helper.idempotency.store;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+
+import microservices.helper.idempotency.concurrency.MongoConcurrencyLimiter;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+
+/**
+ * Write concern, read preference and read concern of each consistency
+ * profile. DEFAULT keeps the settings of the MongoDB client, DURABLE writes
+ * to a journaled majority and reads the primary with the local read concern,
+ * so a result still being majority-committed is not missed, RELAXED is
+ * acknowledged by the primary alone and reads from a secondary when one is
+ * available. Every profile gets a MongoTemplate whose
+ * writes use its write concern, sharing the client, the converter and the
+ * mapping events of the default one.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoConsistencyProfiles {
+
+    private final Map<ConsistencyProfile, MongoTemplate> mongoTemplates = new EnumMap<>(ConsistencyProfile.class);
+    private final MongoConcurrencyLimiter mongoConcurrencyLimiter;
+
+    public MongoConsistencyProfiles(MongoTemplate mongoTemplate, ApplicationContext applicationContext, MongoConcurrencyLimiter mongoConcurrencyLimiter) {
+        this.mongoConcurrencyLimiter = mongoConcurrencyLimiter;
+        for (ConsistencyProfile consistencyProfile : ConsistencyProfile.values()) {
+            if (consistencyProfile == ConsistencyProfile.DEFAULT) {
+                mongoTemplates.put(consistencyProfile, mongoTemplate);
+                continue;
+            }
+            MongoTemplate profileTemplate = new MongoTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter());
+            profileTemplate.setWriteConcern(getWriteConcern(consistencyProfile));
+            // Publishes the mapping events, so results are still compressed on insert and inflated on read
+            profileTemplate.setApplicationContext(applicationContext);
+            mongoTemplates.put(consistencyProfile, profileTemplate);
+        }
+    }
+
+    public MongoTemplate getMongoTemplate(ConsistencyProfile consistencyProfile) {
+        return mongoTemplates.get(consistencyProfile);
+    }
+
+    // The calls of the consistency views take a MongoDB permit like the repository calls do
+    public <T> T execute(String operation, Supplier<T> call) {
+        return mongoConcurrencyLimiter.execute(operation, call);
+    }
+
+    // Null where the client's setting applies
+    public static WriteConcern getWriteConcern(ConsistencyProfile consistencyProfile) {
+        return switch (consistencyProfile) {
+            case DURABLE -> WriteConcern.MAJORITY.withJournal(true);
+            case RELAXED -> WriteConcern.W1.withJournal(false);
+            case DEFAULT -> null;
+        };
+    }
+
+    public static ReadPreference getReadPreference(ConsistencyProfile consistencyProfile) {
+        return switch (consistencyProfile) {
+            case DURABLE -> ReadPreference.primary();
+            case RELAXED -> ReadPreference.secondaryPreferred();
+            case DEFAULT -> null;
+        };
+    }
+
+    public static ReadConcern getReadConcern(ConsistencyProfile consistencyProfile) {
+        return switch (consistencyProfile) {
+            case DURABLE, RELAXED -> ReadConcern.LOCAL;
+            case DEFAULT -> null;
+        };
+    }
+
+}
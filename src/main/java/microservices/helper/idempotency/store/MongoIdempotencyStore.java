@@ -0,0 +1,211 @@
+package microservices.helper.idempotency.store;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+import microservices.helper.idempotency.repository.FailedIdempotentOperationResultRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationConfigRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationLockRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationLockTempRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationRepository;
+import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+
+/**
+ * The default engine, one MongoDB collection per document type. Uniqueness
+ * comes from the _id and the unique (service, operation, idempotencyKey)
+ * indexes, retention from the expireAt TTL indexes.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "mongo", matchIfMissing = true)
+public class MongoIdempotencyStore implements IdempotencyStore {
+
+    private final IdempotentOperationRepository idempotentOperationRepository;
+    private final IdempotentOperationLockRepository idempotentOperationLockRepository;
+    private final StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository;
+    private final IdempotentOperationLockTempRepository idempotentOperationLockTempRepository;
+    private final FailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository;
+    private final IdempotentOperationConfigRepository idempotentOperationConfigRepository;
+    private final MongoConsistencyProfiles mongoConsistencyProfiles;
+    private final Map<ConsistencyProfile, IdempotencyStore> consistencyViews = new ConcurrentHashMap<>();
+
+    public MongoIdempotencyStore(IdempotentOperationRepository idempotentOperationRepository,
+                                 IdempotentOperationLockRepository idempotentOperationLockRepository,
+                                 StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository,
+                                 IdempotentOperationLockTempRepository idempotentOperationLockTempRepository,
+                                 FailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository,
+                                 IdempotentOperationConfigRepository idempotentOperationConfigRepository,
+                                 MongoConsistencyProfiles mongoConsistencyProfiles) {
+        this.idempotentOperationRepository = idempotentOperationRepository;
+        this.idempotentOperationLockRepository = idempotentOperationLockRepository;
+        this.storedIdempotentOperationResultRepository = storedIdempotentOperationResultRepository;
+        this.idempotentOperationLockTempRepository = idempotentOperationLockTempRepository;
+        this.failedIdempotentOperationResultRepository = failedIdempotentOperationResultRepository;
+        this.idempotentOperationConfigRepository = idempotentOperationConfigRepository;
+        // Without the profile templates every profile goes through the client's settings
+        this.mongoConsistencyProfiles = mongoConsistencyProfiles;
+    }
+
+    @Override
+    public IdempotencyStore withConsistency(ConsistencyProfile consistencyProfile) {
+        if (consistencyProfile == null || consistencyProfile == ConsistencyProfile.DEFAULT || mongoConsistencyProfiles == null) {
+            return this;
+        }
+        return consistencyViews.computeIfAbsent(consistencyProfile,
+                profile -> new ConsistentMongoIdempotencyStore(this, mongoConsistencyProfiles, profile));
+    }
+
+    @Override
+    public IdempotentOperation insertOperation(IdempotentOperation idempotentOperation) {
+        return idempotentOperationRepository.insert(idempotentOperation);
+    }
+
+    @Override
+    public Set<Integer> insertOperations(List<IdempotentOperation> idempotentOperations) {
+        return idempotentOperationRepository.insertAllUnordered(idempotentOperations);
+    }
+
+    @Override
+    public Optional<StoredIdempotentOperationResult> findResult(String id) {
+        return storedIdempotentOperationResultRepository.findById(id);
+    }
+
+    @Override
+    public List<StoredIdempotentOperationResult> findResults(Collection<String> ids) {
+        return storedIdempotentOperationResultRepository.findAllById(ids);
+    }
+
+    @Override
+    public Optional<FailedIdempotentOperationResult> findFailedResult(String idempotencyId) {
+        return failedIdempotentOperationResultRepository.findById(idempotencyId);
+    }
+
+    @Override
+    public void insertTempLock(IdempotentOperationLockTemp tempLock) {
+        idempotentOperationLockTempRepository.insert(tempLock);
+    }
+
+    @Override
+    public Set<Integer> insertTempLocks(List<IdempotentOperationLockTemp> tempLocks) {
+        return idempotentOperationLockTempRepository.insertAllUnordered(tempLocks);
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findTempLock(String lockId) {
+        return idempotentOperationLockTempRepository.findById(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(Collection<String> lockIds) {
+        return idempotentOperationLockTempRepository.findAllById(lockIds);
+    }
+
+    @Override
+    public boolean existsTempLock(String lockId) {
+        return idempotentOperationLockTempRepository.existsById(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(String service, String operation, Collection<String> idempotencyKeys) {
+        return idempotentOperationLockTempRepository.findByServiceAndOperationAndIdempotencyKeyIn(service, operation, idempotencyKeys);
+    }
+
+    @Override
+    public Set<Integer> renewTempLocks(List<TempLockRenewal> renewals) {
+        return idempotentOperationLockTempRepository.renewAll(renewals);
+    }
+
+    @Override
+    public void deleteTempLock(String lockId) {
+        idempotentOperationLockTempRepository.deleteById(lockId);
+    }
+
+    @Override
+    public void deleteTempLocks(Collection<String> lockIds) {
+        idempotentOperationLockTempRepository.deleteAllById(lockIds);
+    }
+
+    @Override
+    public void insertLockRecord(IdempotentOperationLock lock) {
+        idempotentOperationLockRepository.insert(lock);
+    }
+
+    @Override
+    public Set<Integer> insertLockRecords(List<IdempotentOperationLock> locks) {
+        return idempotentOperationLockRepository.insertAllUnordered(locks);
+    }
+
+    @Override
+    public void insertResult(StoredIdempotentOperationResult storedResult) {
+        storedIdempotentOperationResultRepository.insert(storedResult);
+    }
+
+    @Override
+    public Set<Integer> insertResults(List<StoredIdempotentOperationResult> storedResults) {
+        return storedIdempotentOperationResultRepository.insertAllUnordered(storedResults);
+    }
+
+    @Override
+    public void insertFailedResult(FailedIdempotentOperationResult failedResult) {
+        failedIdempotentOperationResultRepository.insert(failedResult);
+    }
+
+    @Override
+    public Set<Integer> insertFailedResults(List<FailedIdempotentOperationResult> failedResults) {
+        return failedIdempotentOperationResultRepository.insertAllUnordered(failedResults);
+    }
+
+    // One bounded page read through the expiredAt index
+    @Override
+    public List<IdempotentOperationLockTemp> findExpiredTempLocks(Instant expiredBefore, int limit) {
+        return idempotentOperationLockTempRepository.findByExpiredAtBefore(expiredBefore, PageRequest.of(0, limit, Sort.by("expiredAt")));
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findOldestExpiredTempLock(Instant expiredBefore) {
+        return idempotentOperationLockTempRepository.findFirstByExpiredAtBeforeOrderByExpiredAtAsc(expiredBefore);
+    }
+
+    @Override
+    public long countTempLocksExpiringBefore(Instant expiredBefore) {
+        return idempotentOperationLockTempRepository.countByExpiredAtBefore(expiredBefore);
+    }
+
+    @Override
+    public List<IdempotentOperationConfig> findConfigs() {
+        return idempotentOperationConfigRepository.findAll();
+    }
+
+    @Override
+    public Optional<IdempotentOperationConfig> findConfig(String service, String operation) {
+        return idempotentOperationConfigRepository.findByServiceAndOperation(service, operation);
+    }
+
+    @Override
+    public IdempotentOperationConfig insertConfig(IdempotentOperationConfig operationConfig) {
+        return idempotentOperationConfigRepository.insert(operationConfig);
+    }
+
+    @Override
+    public boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt) {
+        return idempotentOperationConfigRepository.updateLearnedLockDuration(service, operation, learnedLockDuration, learnedAt);
+    }
+
+}
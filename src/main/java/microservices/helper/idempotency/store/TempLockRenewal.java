@@ -0,0 +1,11 @@
+package microservices.helper.idempotency.store;
+
+import java.time.Instant;
+
+/**
+ * Moves the expiredAt of a temp lock from {@code expiredAt} to
+ * {@code renewedExpiredAt}, only if the lock still has the expiry it was read
+ * with.
+ */
+public record TempLockRenewal(String lockId, Instant expiredAt, Instant renewedExpiredAt) {
+}
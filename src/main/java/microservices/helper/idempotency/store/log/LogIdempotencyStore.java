@@ -0,0 +1,735 @@
+package microservices.helper.idempotency.store.log;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import microservices.helper.idempotency.store.InMemoryIdempotencyStore;
+import microservices.helper.idempotency.store.TempLockRenewal;
+
+/**
+ * Embedded persistent engine for nodes without MongoDB. Every write is a
+ * lifecycle record appended to a {@link SegmentedLog} and acknowledged once
+ * group commit has forced it to disk. Stored and failed results are found
+ * through a {@link MappedHashIndex} from the hash of their _id to their record.
+ * Temp locks and configs are few and live in memory, rebuilt from the LOCK,
+ * LOCK_RELEASED and CONFIG records at startup, a renewed lock by its latest
+ * LOCK record and an updated config by its latest CONFIG record; the recovered
+ * locks get their expiry tasks rescheduled by the service. Audit and lock history records are only appended, their UUID _ids
+ * are not checked for duplicates.
+ * Sealed segments are compacted in the background once enough of them is
+ * released locks, or everything in them is past its expireAt: the live records
+ * are appended again and the segment is deleted a compaction interval later.
+ */
+@Component
+@ConditionalOnProperty(name = "idempotent.storage.engine", havingValue = "log")
+@Slf4j
+public class LogIdempotencyStore implements IdempotencyStore {
+
+    private static final int LOCK_STRIPES = 64;
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final ObjectMapper objectMapper;
+    private final SegmentedLog segmentedLog;
+    private final MappedHashIndex index;
+    private final double compactionGarbageRatio;
+    // Temp locks and configs, rebuilt from the log at startup, it keeps no audit records
+    private final InMemoryIdempotencyStore workingSet = new InMemoryIdempotencyStore(0);
+    private final Map<String, Placement> tempLockPlacements = new ConcurrentHashMap<>();
+    private final Map<String, Placement> configPlacements = new ConcurrentHashMap<>();
+    private final Map<Integer, SegmentStats> segmentStats = new ConcurrentHashMap<>();
+    // Result and failed result keys between their uniqueness check and their index put
+    private final Set<String> insertingKeys = ConcurrentHashMap.newKeySet();
+    // Orders the LOCK_RELEASED of a lock after any copy compaction makes of its LOCK
+    private final ReentrantLock[] lockStripes = new ReentrantLock[LOCK_STRIPES];
+    // Orders config updates and the copies compaction makes of their CONFIG records
+    private final ReentrantLock configLock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final LongAdder compactedSegments = new LongAdder();
+    private final List<IdempotentOperationLockTemp> recoveredTempLocks = new ArrayList<>();
+
+    public LogIdempotencyStore(ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${idempotent.storage.log.directory}") String directory,
+                               @Value("${idempotent.storage.log.segment-bytes}") long segmentBytes,
+                               @Value("${idempotent.storage.log.index-initial-capacity}") int indexInitialCapacity,
+                               @Value("${idempotent.storage.log.compaction-garbage-ratio}") double compactionGarbageRatio) {
+        this.objectMapper = objectMapper;
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            lockStripes[i] = new ReentrantLock();
+        }
+        long startedAt = System.nanoTime();
+        try {
+            this.segmentedLog = SegmentedLog.open(Path.of(directory), segmentBytes);
+            this.index = MappedHashIndex.open(Path.of(directory, "index.bin"), indexInitialCapacity);
+            recover();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open the idempotency log in " + directory, e);
+        }
+        long recoveryMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        log.info("Opened the idempotency log in {} ms: {} segments, {} bytes, {} indexed results, {} locks in flight",
+                recoveryMillis, segmentedLog.getSegmentCount(), segmentedLog.getSizeBytes(), index.size(), recoveredTempLocks.size());
+        FunctionCounter.builder("idempotency.log.appends", segmentedLog, SegmentedLog::getAppendCount)
+                .description("Records appended to the idempotency log")
+                .register(meterRegistry);
+        FunctionCounter.builder("idempotency.log.commits", segmentedLog, SegmentedLog::getCommitCount)
+                .description("Forces of the idempotency log, appends per commit is the group commit size")
+                .register(meterRegistry);
+        FunctionCounter.builder("idempotency.log.compacted.segments", compactedSegments, LongAdder::sum)
+                .description("Idempotency log segments rewritten by compaction")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.log.size", segmentedLog, SegmentedLog::getSizeBytes)
+                .description("Bytes in the idempotency log segments")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.log.segments", segmentedLog, SegmentedLog::getSegmentCount)
+                .description("Idempotency log segment files, retired ones included")
+                .register(meterRegistry);
+        Gauge.builder("idempotency.log.index.entries", index, MappedHashIndex::size)
+                .description("Results and failed results in the idempotency log index")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            segmentedLog.close();
+            index.close();
+        } catch (IOException e) {
+            log.error("Failed to close the idempotency log, the index is rebuilt on the next start", e);
+        }
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findRecoveredTempLocks() {
+        return List.copyOf(recoveredTempLocks);
+    }
+
+    @Override
+    public IdempotentOperation insertOperation(IdempotentOperation idempotentOperation) {
+        append(LogRecordType.OPERATION, idempotentOperation.getId(), idempotentOperation.getExpireAt(), idempotentOperation);
+        commit();
+        return idempotentOperation;
+    }
+
+    @Override
+    public Set<Integer> insertOperations(List<IdempotentOperation> idempotentOperations) {
+        for (IdempotentOperation idempotentOperation : idempotentOperations) {
+            append(LogRecordType.OPERATION, idempotentOperation.getId(), idempotentOperation.getExpireAt(), idempotentOperation);
+        }
+        commit();
+        return Set.of();
+    }
+
+    @Override
+    public Optional<StoredIdempotentOperationResult> findResult(String id) {
+        return Optional.ofNullable(findIndexed(LogRecordType.RESULT, id)).map(record -> decode(record, StoredIdempotentOperationResult.class));
+    }
+
+    @Override
+    public List<StoredIdempotentOperationResult> findResults(Collection<String> ids) {
+        List<StoredIdempotentOperationResult> found = new ArrayList<>(ids.size());
+        for (String id : new HashSet<>(ids)) {
+            findResult(id).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    @Override
+    public Optional<FailedIdempotentOperationResult> findFailedResult(String idempotencyId) {
+        return Optional.ofNullable(findIndexed(LogRecordType.FAILED_RESULT, idempotencyId)).map(record -> decode(record, FailedIdempotentOperationResult.class));
+    }
+
+    @Override
+    public void insertTempLock(IdempotentOperationLockTemp tempLock) {
+        workingSet.insertTempLock(tempLock);
+        appendLock(tempLock);
+        commit();
+    }
+
+    @Override
+    public Set<Integer> insertTempLocks(List<IdempotentOperationLockTemp> tempLocks) {
+        Set<Integer> duplicatePositions = workingSet.insertTempLocks(tempLocks);
+        for (int i = 0; i < tempLocks.size(); i++) {
+            if (!duplicatePositions.contains(i)) {
+                appendLock(tempLocks.get(i));
+            }
+        }
+        commit();
+        return duplicatePositions;
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findTempLock(String lockId) {
+        return workingSet.findTempLock(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(Collection<String> lockIds) {
+        return workingSet.findTempLocks(lockIds);
+    }
+
+    @Override
+    public boolean existsTempLock(String lockId) {
+        return workingSet.existsTempLock(lockId);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findTempLocks(String service, String operation, Collection<String> idempotencyKeys) {
+        return workingSet.findTempLocks(service, operation, idempotencyKeys);
+    }
+
+    @Override
+    public Set<Integer> renewTempLocks(List<TempLockRenewal> renewals) {
+        Set<Integer> notRenewed = new HashSet<>();
+        boolean renewed = false;
+        for (int i = 0; i < renewals.size(); i++) {
+            if (appendRenewal(renewals.get(i))) {
+                renewed = true;
+            } else {
+                notRenewed.add(i);
+            }
+        }
+        if (renewed) {
+            commit();
+        }
+        return notRenewed;
+    }
+
+    @Override
+    public void deleteTempLock(String lockId) {
+        if (appendRelease(lockId)) {
+            commit();
+        }
+    }
+
+    @Override
+    public void deleteTempLocks(Collection<String> lockIds) {
+        boolean released = false;
+        for (String lockId : lockIds) {
+            released |= appendRelease(lockId);
+        }
+        if (released) {
+            commit();
+        }
+    }
+
+    @Override
+    public void insertLockRecord(IdempotentOperationLock lock) {
+        append(LogRecordType.LOCK_RECORD, lock.getId(), lock.getExpireAt(), lock);
+        commit();
+    }
+
+    @Override
+    public Set<Integer> insertLockRecords(List<IdempotentOperationLock> locks) {
+        for (IdempotentOperationLock lock : locks) {
+            append(LogRecordType.LOCK_RECORD, lock.getId(), lock.getExpireAt(), lock);
+        }
+        commit();
+        return Set.of();
+    }
+
+    @Override
+    public void insertResult(StoredIdempotentOperationResult storedResult) {
+        insertIndexed(LogRecordType.RESULT, List.of(storedResult), StoredIdempotentOperationResult::getId, StoredIdempotentOperationResult::getExpireAt, true);
+    }
+
+    @Override
+    public Set<Integer> insertResults(List<StoredIdempotentOperationResult> storedResults) {
+        return insertIndexed(LogRecordType.RESULT, storedResults, StoredIdempotentOperationResult::getId, StoredIdempotentOperationResult::getExpireAt, false);
+    }
+
+    @Override
+    public void insertFailedResult(FailedIdempotentOperationResult failedResult) {
+        insertIndexed(LogRecordType.FAILED_RESULT, List.of(failedResult), FailedIdempotentOperationResult::getId, FailedIdempotentOperationResult::getExpireAt, true);
+    }
+
+    @Override
+    public Set<Integer> insertFailedResults(List<FailedIdempotentOperationResult> failedResults) {
+        return insertIndexed(LogRecordType.FAILED_RESULT, failedResults, FailedIdempotentOperationResult::getId, FailedIdempotentOperationResult::getExpireAt, false);
+    }
+
+    @Override
+    public List<IdempotentOperationLockTemp> findExpiredTempLocks(Instant expiredBefore, int limit) {
+        return workingSet.findExpiredTempLocks(expiredBefore, limit);
+    }
+
+    @Override
+    public Optional<IdempotentOperationLockTemp> findOldestExpiredTempLock(Instant expiredBefore) {
+        return workingSet.findOldestExpiredTempLock(expiredBefore);
+    }
+
+    @Override
+    public long countTempLocksExpiringBefore(Instant expiredBefore) {
+        return workingSet.countTempLocksExpiringBefore(expiredBefore);
+    }
+
+    @Override
+    public List<IdempotentOperationConfig> findConfigs() {
+        return workingSet.findConfigs();
+    }
+
+    @Override
+    public Optional<IdempotentOperationConfig> findConfig(String service, String operation) {
+        return workingSet.findConfig(service, operation);
+    }
+
+    @Override
+    public IdempotentOperationConfig insertConfig(IdempotentOperationConfig operationConfig) {
+        configLock.lock();
+        try {
+            workingSet.insertConfig(operationConfig);
+            appendConfig(operationConfig);
+        } finally {
+            configLock.unlock();
+        }
+        commit();
+        return operationConfig;
+    }
+
+    // The updated config is appended as a CONFIG again, the later record replaces the earlier one in recovery and compaction
+    @Override
+    public boolean updateLearnedLockDuration(String service, String operation, Duration learnedLockDuration, Instant learnedAt) {
+        configLock.lock();
+        try {
+            if (!workingSet.updateLearnedLockDuration(service, operation, learnedLockDuration, learnedAt)) {
+                return false;
+            }
+            appendConfig(workingSet.findConfig(service, operation).orElseThrow());
+        } finally {
+            configLock.unlock();
+        }
+        commit();
+        return true;
+    }
+
+    // Rewrites the sealed segments worth it, and deletes the ones rewritten by the previous run
+    @Scheduled(fixedDelayString = "${idempotent.storage.log.compaction-interval}", initialDelayString = "${idempotent.storage.log.compaction-interval}")
+    public void compact() {
+        if (!compactionLock.tryLock()) {
+            return;
+        }
+        try {
+            int deleted = segmentedLog.deleteRetired();
+            segmentStats.keySet().retainAll(segmentedLog.getSegmentIds());
+            long now = System.currentTimeMillis();
+            int compacted = 0;
+            for (int segmentId : segmentedLog.getSegmentIds()) {
+                if (!segmentedLog.isActive(segmentId) && !segmentedLog.isRetired(segmentId) && isWorthCompacting(segmentId, now)) {
+                    compact(segmentId, now);
+                    compacted++;
+                }
+            }
+            if (compacted > 0 || deleted > 0) {
+                log.info("Compacted {} and deleted {} idempotency log segments, {} bytes left", compacted, deleted, segmentedLog.getSizeBytes());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to compact the idempotency log, the next run retries", e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private boolean isWorthCompacting(int segmentId, long now) {
+        long size = segmentedLog.getSegmentSize(segmentId);
+        SegmentStats stats = statsOfSegment(segmentId);
+        return size == 0 || stats.garbageBytes.sum() >= compactionGarbageRatio * size || stats.maxExpireAt.get() <= now;
+    }
+
+    private void compact(int segmentId, long now) throws IOException {
+        // Releases can only be dropped once no older segment may still hold the LOCK they end
+        boolean oldest = segmentedLog.isOldest(segmentId);
+        List<long[]> relocations = new ArrayList<>();
+        segmentedLog.scan(segmentId, record -> {
+            switch (record.type()) {
+                case OPERATION, LOCK_RECORD -> {
+                    if (!record.isExpired(now)) {
+                        copy(record);
+                    }
+                }
+                case CONFIG -> {
+                    configLock.lock();
+                    try {
+                        Placement placement = configPlacements.get(record.key());
+                        if (placement != null && placement.location() == record.location()) {
+                            LogRecord copy = copy(record);
+                            configPlacements.put(record.key(), new Placement(copy.location(), copy.size()));
+                        }
+                    } finally {
+                        configLock.unlock();
+                    }
+                }
+                case RESULT, FAILED_RESULT -> {
+                    long hash = hash(record.type(), record.key());
+                    if (!contains(index.get(hash), record.location())) {
+                        break;
+                    }
+                    if (record.isExpired(now)) {
+                        index.remove(hash, record.location());
+                    } else {
+                        relocations.add(new long[]{hash, record.location(), copy(record).location()});
+                    }
+                }
+                case LOCK -> {
+                    ReentrantLock stripe = stripe(record.key());
+                    stripe.lock();
+                    try {
+                        Placement placement = tempLockPlacements.get(record.key());
+                        if (placement != null && placement.location() == record.location()) {
+                            LogRecord copy = copy(record);
+                            tempLockPlacements.put(record.key(), new Placement(copy.location(), copy.size()));
+                        }
+                    } finally {
+                        stripe.unlock();
+                    }
+                }
+                case LOCK_RELEASED -> {
+                    if (!oldest) {
+                        statsOf(copy(record).location()).garbageBytes.add(record.size());
+                    }
+                }
+            }
+        });
+        segmentedLog.commit();
+        // The index moves only once the copies are on disk
+        for (long[] relocation : relocations) {
+            index.replace(relocation[0], relocation[1], relocation[2]);
+        }
+        segmentedLog.retire(segmentId);
+        compactedSegments.increment();
+    }
+
+    private LogRecord copy(LogRecord record) throws IOException {
+        LogRecord copy = segmentedLog.append(record.type(), record.expireAt(), record.key(), record.body());
+        statsOf(copy.location()).recordAppended(copy);
+        return copy;
+    }
+
+    private void recover() throws IOException {
+        boolean rebuildIndex = !index.isTrusted();
+        if (rebuildIndex && segmentedLog.getSizeBytes() > 0) {
+            log.warn("Idempotency log index was not closed cleanly, rebuilding it from the log");
+        }
+        long now = System.currentTimeMillis();
+        Map<String, LogRecord> inFlight = new LinkedHashMap<>();
+        Map<String, LogRecord> configs = new LinkedHashMap<>();
+        segmentedLog.recover(record -> {
+            SegmentStats stats = statsOf(record.location());
+            stats.recordAppended(record);
+            switch (record.type()) {
+                case LOCK -> {
+                    // A later copy made by compaction replaces the earlier one
+                    LogRecord previous = inFlight.put(record.key(), record);
+                    if (previous != null) {
+                        statsOf(previous.location()).garbageBytes.add(previous.size());
+                    }
+                }
+                case LOCK_RELEASED -> {
+                    LogRecord lock = inFlight.remove(record.key());
+                    if (lock != null) {
+                        statsOf(lock.location()).garbageBytes.add(lock.size());
+                    }
+                    stats.garbageBytes.add(record.size());
+                }
+                case CONFIG -> {
+                    // A later record of the config, its update or a copy made by compaction, replaces the earlier one
+                    LogRecord previous = configs.put(record.key(), record);
+                    if (previous != null) {
+                        statsOf(previous.location()).garbageBytes.add(previous.size());
+                    }
+                }
+                case RESULT, FAILED_RESULT -> {
+                    if (rebuildIndex && !record.isExpired(now)) {
+                        indexRecovered(record);
+                    }
+                }
+                default -> {
+                }
+            }
+        });
+        for (LogRecord record : configs.values()) {
+            try {
+                workingSet.insertConfig(decode(record, IdempotentOperationConfig.class));
+                configPlacements.put(record.key(), new Placement(record.location(), record.size()));
+            } catch (DuplicateKeyException e) {
+                statsOf(record.location()).garbageBytes.add(record.size());
+            }
+        }
+        for (LogRecord record : inFlight.values()) {
+            IdempotentOperationLockTemp tempLock = decode(record, IdempotentOperationLockTemp.class);
+            workingSet.insertTempLock(tempLock);
+            tempLockPlacements.put(tempLock.getId(), new Placement(record.location(), record.size()));
+            recoveredTempLocks.add(tempLock);
+        }
+    }
+
+    // A key met again is a copy made by compaction, and the later copy is the one kept
+    private void indexRecovered(LogRecord record) throws IOException {
+        long hash = hash(record.type(), record.key());
+        for (long location : index.get(hash)) {
+            LogRecord indexed = segmentedLog.read(location);
+            if (indexed.type() == record.type() && indexed.key().equals(record.key())) {
+                index.replace(hash, location, record.location());
+                statsOf(location).garbageBytes.add(indexed.size());
+                return;
+            }
+        }
+        index.put(hash, record.location());
+    }
+
+    private void appendConfig(IdempotentOperationConfig operationConfig) {
+        LogRecord record = append(LogRecordType.CONFIG, operationConfig.getId(), null, operationConfig);
+        Placement previous = configPlacements.put(operationConfig.getId(), new Placement(record.location(), record.size()));
+        if (previous != null) {
+            statsOf(previous.location()).garbageBytes.add(previous.size());
+        }
+    }
+
+    private void appendLock(IdempotentOperationLockTemp tempLock) {
+        ReentrantLock stripe = stripe(tempLock.getId());
+        stripe.lock();
+        try {
+            LogRecord record = append(LogRecordType.LOCK, tempLock.getId(), null, tempLock);
+            tempLockPlacements.put(tempLock.getId(), new Placement(record.location(), record.size()));
+        } catch (RuntimeException e) {
+            workingSet.deleteTempLock(tempLock.getId());
+            throw e;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // The renewed lock is appended as a LOCK again, the later record replaces the earlier one in recovery and compaction
+    private boolean appendRenewal(TempLockRenewal renewal) {
+        ReentrantLock stripe = stripe(renewal.lockId());
+        stripe.lock();
+        try {
+            Placement placement = tempLockPlacements.get(renewal.lockId());
+            if (placement == null || !workingSet.renewTempLocks(List.of(renewal)).isEmpty()) {
+                return false;
+            }
+            try {
+                LogRecord record = append(LogRecordType.LOCK, renewal.lockId(), null, workingSet.findTempLock(renewal.lockId()).orElseThrow());
+                tempLockPlacements.put(renewal.lockId(), new Placement(record.location(), record.size()));
+            } catch (RuntimeException e) {
+                workingSet.renewTempLocks(List.of(new TempLockRenewal(renewal.lockId(), renewal.renewedExpiredAt(), renewal.expiredAt())));
+                throw e;
+            }
+            statsOf(placement.location()).garbageBytes.add(placement.size());
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private boolean appendRelease(String lockId) {
+        ReentrantLock stripe = stripe(lockId);
+        stripe.lock();
+        try {
+            Placement placement = tempLockPlacements.remove(lockId);
+            if (placement == null) {
+                return false;
+            }
+            workingSet.deleteTempLock(lockId);
+            LogRecord released = appendBytes(LogRecordType.LOCK_RELEASED, lockId, 0, NO_BODY);
+            statsOf(placement.location()).garbageBytes.add(placement.size());
+            statsOf(released.location()).garbageBytes.add(released.size());
+            return true;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Appends the documents whose key is neither indexed nor being inserted,
+     * commits once and indexes them. A duplicate either throws or is reported
+     * by its position.
+     */
+    private <T> Set<Integer> insertIndexed(LogRecordType type, List<T> documents, Function<T, String> idOf, Function<T, Instant> expireAtOf,
+                                           boolean throwOnDuplicate) {
+        Set<Integer> duplicatePositions = new HashSet<>();
+        List<String> claimed = new ArrayList<>(documents.size());
+        List<LogRecord> appended = new ArrayList<>(documents.size());
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                T document = documents.get(i);
+                String claim = type.getCode() + idOf.apply(document);
+                if (!insertingKeys.add(claim)) {
+                    duplicatePositions.add(i);
+                    continue;
+                }
+                claimed.add(claim);
+                if (findIndexed(type, idOf.apply(document)) != null) {
+                    duplicatePositions.add(i);
+                    continue;
+                }
+                appended.add(append(type, idOf.apply(document), expireAtOf.apply(document), document));
+            }
+            if (throwOnDuplicate && !duplicatePositions.isEmpty()) {
+                throw new DuplicateKeyException("E11000 duplicate key error, " + type + " " + idOf.apply(documents.get(0)) + " is already stored");
+            }
+            commit();
+            for (LogRecord record : appended) {
+                index.put(hash(type, record.key()), record.location());
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Failed to index the idempotency log record", e);
+        } finally {
+            claimed.forEach(insertingKeys::remove);
+        }
+        return duplicatePositions;
+    }
+
+    // The live record of the key, an expired one is dropped from the index on the way
+    private LogRecord findIndexed(LogRecordType type, String key) {
+        long hash = hash(type, key);
+        long now = System.currentTimeMillis();
+        try {
+            for (long location : index.get(hash)) {
+                LogRecord record = segmentedLog.read(location);
+                if (record.type() == type && record.key().equals(key)) {
+                    if (record.isExpired(now)) {
+                        index.remove(hash, location);
+                        return null;
+                    }
+                    return record;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Failed to read the idempotency log", e);
+        }
+    }
+
+    private LogRecord append(LogRecordType type, String key, Instant expireAt, Object document) {
+        try {
+            return appendBytes(type, key, expireAt != null ? expireAt.toEpochMilli() : 0, objectMapper.writeValueAsBytes(document));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to serialize " + type + " " + key, e);
+        }
+    }
+
+    private LogRecord appendBytes(LogRecordType type, String key, long expireAt, byte[] body) {
+        try {
+            LogRecord record = segmentedLog.append(type, expireAt, key, body);
+            statsOf(record.location()).recordAppended(record);
+            return record;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Failed to append to the idempotency log", e);
+        }
+    }
+
+    private void commit() {
+        try {
+            segmentedLog.commit();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Failed to commit the idempotency log", e);
+        }
+    }
+
+    private <T> T decode(LogRecord record, Class<T> documentType) {
+        try {
+            return objectMapper.readValue(record.body(), documentType);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Failed to decode " + record.type() + " " + record.key(), e);
+        }
+    }
+
+    private SegmentStats statsOf(long location) {
+        return statsOfSegment(SegmentedLog.segmentId(location));
+    }
+
+    private SegmentStats statsOfSegment(int segmentId) {
+        return segmentStats.computeIfAbsent(segmentId, id -> new SegmentStats());
+    }
+
+    private ReentrantLock stripe(String lockId) {
+        return lockStripes[Math.floorMod(lockId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static boolean contains(long[] locations, long location) {
+        for (long candidate : locations) {
+            if (candidate == location) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // FNV-1a over the type and the key, then mixed, the index only keeps this hash
+    private static long hash(LogRecordType type, String key) {
+        long hash = 0xcbf29ce484222325L;
+        hash ^= type.getCode();
+        hash *= 0x100000001b3L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private record Placement(long location, int size) {
+    }
+
+    /**
+     * What compaction knows about a segment without reading it: the bytes of
+     * released locks and of their releases, and the latest expireAt, which is
+     * Long.MAX_VALUE once a record that is never removed was appended.
+     */
+    private static final class SegmentStats {
+
+        private final LongAdder garbageBytes = new LongAdder();
+        private final AtomicLong maxExpireAt = new AtomicLong();
+
+        void recordAppended(LogRecord record) {
+            long expireAt = switch (record.type()) {
+                case LOCK, LOCK_RELEASED -> 0;
+                default -> record.expireAt() != 0 ? record.expireAt() : Long.MAX_VALUE;
+            };
+            maxExpireAt.accumulateAndGet(expireAt, Math::max);
+        }
+    }
+
+}
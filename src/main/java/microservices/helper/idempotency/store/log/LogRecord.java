@@ -0,0 +1,17 @@
+package microservices.helper.idempotency.store.log;
+
+/**
+ * One record as read back from the log.
+ *
+ * @param location  segment id in the high and offset in the low 32 bits
+ * @param size      bytes of the whole frame
+ * @param expireAt  epoch millis from which the record may be dropped, 0 keeps it
+ * @param body      the JSON document, empty for LOCK_RELEASED
+ */
+record LogRecord(long location, int size, LogRecordType type, long expireAt, String key, byte[] body) {
+
+    boolean isExpired(long nowMillis) {
+        return expireAt != 0 && expireAt <= nowMillis;
+    }
+
+}
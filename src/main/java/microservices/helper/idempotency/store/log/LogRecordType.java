@@ -0,0 +1,40 @@
+package microservices.helper.idempotency.store.log;
+
+/**
+ * Lifecycle records of the log engine. The key of a record is the _id of its
+ * document, LOCK_RELEASED carries only the lockId of the LOCK it ends.
+ */
+enum LogRecordType {
+
+    OPERATION(1),
+    LOCK(2),
+    LOCK_RELEASED(3),
+    LOCK_RECORD(4),
+    RESULT(5),
+    FAILED_RESULT(6),
+    CONFIG(7);
+
+    private static final LogRecordType[] BY_CODE = new LogRecordType[8];
+
+    static {
+        for (LogRecordType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    LogRecordType(int code) {
+        this.code = (byte) code;
+    }
+
+    byte getCode() {
+        return code;
+    }
+
+    // Null for a code no record was written with, which only a damaged frame can carry
+    static LogRecordType fromCode(byte code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+}
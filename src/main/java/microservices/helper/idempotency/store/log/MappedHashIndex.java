@@ -0,0 +1,257 @@
+package microservices.helper.idempotency.store.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Open-addressing hash table from a 64-bit key hash to a log location, kept in
+ * a memory-mapped file so that it survives an orderly shutdown. Slots are the
+ * hash and the location, probed linearly; location 0 marks a free slot and -1
+ * a removed one. Only the hash is kept, so a caller confirms a hit against the
+ * key of the record it points to. The table doubles into a new file once used
+ * slots, removed ones included, pass three quarters of the capacity.
+ * The header carries a clean flag that is cleared while the file is open, a
+ * table found without it may miss the last puts and is rebuilt from the log.
+ */
+final class MappedHashIndex implements Closeable {
+
+    private static final long MAGIC = 0x49444d4849445831L;
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = Long.BYTES + Long.BYTES;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final long FREE = 0;
+    private static final long REMOVED = -1;
+
+    private final Path path;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int usedSlots;
+    private int size;
+    private final boolean trusted;
+
+    private MappedHashIndex(Path path, FileChannel channel, MappedByteBuffer buffer, int capacity, boolean trusted) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.trusted = trusted;
+    }
+
+    static MappedHashIndex open(Path path, int initialCapacity) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(initialCapacity, MAX_CAPACITY)) * 2 - 1);
+        if (Files.exists(path) && Files.size(path) >= HEADER_BYTES) {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            int storedCapacity = header.getInt(8);
+            boolean clean = header.getLong(0) == MAGIC && header.getInt(20) == 1
+                    && Integer.bitCount(storedCapacity) == 1 && Files.size(path) == fileBytes(storedCapacity);
+            if (clean) {
+                MappedHashIndex index = new MappedHashIndex(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(storedCapacity)),
+                        storedCapacity, true);
+                index.usedSlots = header.getInt(12);
+                index.size = header.getInt(16);
+                index.markOpen();
+                return index;
+            }
+            channel.close();
+        }
+        MappedHashIndex index = create(path, capacity, false);
+        index.markOpen();
+        return index;
+    }
+
+    private static MappedHashIndex create(Path path, int capacity, boolean trusted) throws IOException {
+        Files.deleteIfExists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(capacity));
+        MappedHashIndex index = new MappedHashIndex(path, channel, buffer, capacity, trusted);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, capacity);
+        return index;
+    }
+
+    // False when the table was created empty and must be filled from the log
+    boolean isTrusted() {
+        return trusted;
+    }
+
+    // Locations of the slots holding the hash, usually one
+    long[] get(long hash) {
+        lock.readLock().lock();
+        try {
+            long[] locations = new long[1];
+            int found = 0;
+            int mask = capacity - 1;
+            for (int slot = (int) hash & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+                long location = buffer.getLong(slotOffset(slot) + Long.BYTES);
+                if (location == FREE) {
+                    break;
+                }
+                if (location != REMOVED && buffer.getLong(slotOffset(slot)) == hash) {
+                    if (found == locations.length) {
+                        locations = Arrays.copyOf(locations, found * 2);
+                    }
+                    locations[found++] = location;
+                }
+            }
+            return found == locations.length ? locations : Arrays.copyOf(locations, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(long hash, long location) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if ((usedSlots + 1) * 4L > capacity * 3L) {
+                resize();
+            }
+            int mask = capacity - 1;
+            int slot = (int) hash & mask;
+            while (true) {
+                long existing = buffer.getLong(slotOffset(slot) + Long.BYTES);
+                if (existing == FREE || existing == REMOVED) {
+                    if (existing == FREE) {
+                        usedSlots++;
+                    }
+                    buffer.putLong(slotOffset(slot), hash);
+                    buffer.putLong(slotOffset(slot) + Long.BYTES, location);
+                    size++;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Moves the slot of hash at oldLocation, false if it is no longer there
+    boolean replace(long hash, long oldLocation, long newLocation) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(hash, oldLocation);
+            if (slot < 0) {
+                return false;
+            }
+            buffer.putLong(slotOffset(slot) + Long.BYTES, newLocation);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean remove(long hash, long location) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(hash, location);
+            if (slot < 0) {
+                return false;
+            }
+            buffer.putLong(slotOffset(slot) + Long.BYTES, REMOVED);
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // Flushes the table and marks it clean, it is trusted again on the next open
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.putInt(12, usedSlots);
+            buffer.putInt(16, size);
+            buffer.force();
+            buffer.putInt(20, 1);
+            buffer.force(0, HEADER_BYTES);
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markOpen() {
+        buffer.putInt(20, 0);
+        buffer.force(0, HEADER_BYTES);
+    }
+
+    private int find(long hash, long location) {
+        int mask = capacity - 1;
+        for (int slot = (int) hash & mask, probes = 0; probes < capacity; slot = (slot + 1) & mask, probes++) {
+            long existing = buffer.getLong(slotOffset(slot) + Long.BYTES);
+            if (existing == FREE) {
+                return -1;
+            }
+            if (existing == location && buffer.getLong(slotOffset(slot)) == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Rehashes the live slots into a table twice the size, or the same size when most used slots are removed ones
+    private void resize() throws IOException {
+        int newCapacity = size * 2L < capacity ? capacity : capacity * 2;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Idempotency log index is full at " + MAX_CAPACITY + " slots");
+        }
+        Path resized = path.resolveSibling(path.getFileName() + ".resize");
+        MappedHashIndex target = create(resized, newCapacity, true);
+        target.markOpen();
+        for (int slot = 0; slot < capacity; slot++) {
+            long location = buffer.getLong(slotOffset(slot) + Long.BYTES);
+            if (location != FREE && location != REMOVED) {
+                target.insertUnlocked(buffer.getLong(slotOffset(slot)), location);
+            }
+        }
+        target.buffer.force();
+        channel.close();
+        Files.move(resized, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = target.channel;
+        buffer = target.buffer;
+        capacity = target.capacity;
+        usedSlots = target.usedSlots;
+        size = target.size;
+    }
+
+    private void insertUnlocked(long hash, long location) {
+        int mask = capacity - 1;
+        int slot = (int) hash & mask;
+        while (buffer.getLong(slotOffset(slot) + Long.BYTES) != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        buffer.putLong(slotOffset(slot), hash);
+        buffer.putLong(slotOffset(slot) + Long.BYTES, location);
+        usedSlots++;
+        size++;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static long fileBytes(int capacity) {
+        return HEADER_BYTES + (long) capacity * SLOT_BYTES;
+    }
+
+}
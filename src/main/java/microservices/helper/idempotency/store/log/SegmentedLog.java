@@ -0,0 +1,428 @@
+package microservices.helper.idempotency.store.log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log split into numbered segment files. A frame is the length and
+ * CRC32C of the rest, then type, expireAt, key and body, and is addressed by its
+ * location, the segment id in the high and the offset in the low 32 bits.
+ * Appends go to the last segment, which is rolled once it reaches
+ * segmentBytes, and become durable by group commit: one committer thread
+ * forces the segment for every append that arrived while the previous force
+ * ran, and appenders wait in commit until their bytes are covered.
+ * Retired segments stay readable until deleteRetired, so a reader holding an
+ * old location can still finish.
+ */
+@Slf4j
+final class SegmentedLog implements Closeable {
+
+    private static final int PREFIX_BYTES = Integer.BYTES + Integer.BYTES;
+    private static final int FIXED_BYTES = Byte.BYTES + Long.BYTES + Short.BYTES;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+    private static final int SCAN_BUFFER_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition pending = commitLock.newCondition();
+    private final Condition committed = commitLock.newCondition();
+    private final LongAdder appendCount = new LongAdder();
+    private final LongAdder commitCount = new LongAdder();
+    private final Thread committer;
+    private volatile Segment active;
+    // Bytes appended and forced since the log was opened, guarded by commitLock
+    private long appendedBytes;
+    private long durableBytes;
+    private IOException commitFailure;
+    private boolean closed;
+
+    private SegmentedLog(Path directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.committer = new Thread(this::runCommitter, "idempotency-log-committer");
+        this.committer.setDaemon(true);
+    }
+
+    static SegmentedLog open(Path directory, long segmentBytes) throws IOException {
+        if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("segment-bytes must be between 1 and " + Integer.MAX_VALUE / 2 + ", was " + segmentBytes);
+        }
+        Files.createDirectories(directory);
+        SegmentedLog segmentedLog = new SegmentedLog(directory, segmentBytes);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".log")) {
+                    int id = Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+                    segmentedLog.segments.put(id, Segment.open(id, path));
+                }
+            }
+        }
+        if (segmentedLog.segments.isEmpty()) {
+            segmentedLog.segments.put(1, Segment.open(1, segmentedLog.pathOf(1)));
+        }
+        segmentedLog.active = segmentedLog.segments.lastEntry().getValue();
+        segmentedLog.committer.start();
+        return segmentedLog;
+    }
+
+    /**
+     * Reads every segment in append order and cuts a torn or damaged tail off
+     * where a frame is incomplete or fails its checksum. Must run before the
+     * first append.
+     */
+    void recover(RecordVisitor visitor) throws IOException {
+        for (Segment segment : segments.values()) {
+            long validBytes = scan(segment, visitor);
+            if (validBytes < segment.size) {
+                log.warn("Truncating idempotency log segment {} from {} to {} bytes after a damaged or incomplete record",
+                        segment.id, segment.size, validBytes);
+                segment.channel.truncate(validBytes);
+                segment.channel.force(true);
+                segment.size = validBytes;
+            }
+        }
+    }
+
+    LogRecord append(LogRecordType type, long expireAt, String key, byte[] body) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Record key is longer than " + MAX_KEY_BYTES + " bytes");
+        }
+        int length = FIXED_BYTES + keyBytes.length + body.length;
+        ByteBuffer frame = ByteBuffer.allocate(PREFIX_BYTES + length);
+        frame.position(PREFIX_BYTES);
+        frame.put(type.getCode()).putLong(expireAt).putShort((short) keyBytes.length).put(keyBytes).put(body);
+        CRC32C crc = new CRC32C();
+        crc.update(frame.array(), PREFIX_BYTES, length);
+        frame.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+        frame.flip();
+        long location;
+        appendLock.lock();
+        try {
+            Segment segment = active;
+            if (segment.size > 0 && segment.size + frame.remaining() > segmentBytes) {
+                segment = roll(segment);
+            }
+            long offset = segment.size;
+            while (frame.hasRemaining()) {
+                segment.channel.write(frame, offset + frame.position());
+            }
+            segment.size = offset + frame.limit();
+            location = location(segment.id, offset);
+            commitLock.lock();
+            try {
+                appendedBytes += frame.limit();
+                pending.signal();
+            } finally {
+                commitLock.unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        appendCount.increment();
+        return new LogRecord(location, frame.limit(), type, expireAt, key, body);
+    }
+
+    // Returns once everything appended before the call is on disk
+    void commit() throws IOException {
+        commitLock.lock();
+        try {
+            long target = appendedBytes;
+            while (durableBytes < target) {
+                if (commitFailure != null) {
+                    throw new IOException("Idempotency log could not be forced to disk", commitFailure);
+                }
+                if (closed) {
+                    throw new IOException("Idempotency log is closed");
+                }
+                committed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the idempotency log commit");
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    LogRecord read(long location) throws IOException {
+        Segment segment = segments.get(segmentId(location));
+        if (segment == null) {
+            throw new IOException("Idempotency log segment " + segmentId(location) + " was removed");
+        }
+        long offset = offset(location);
+        ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES);
+        readFully(segment.channel, prefix, offset);
+        int length = prefix.getInt(0);
+        ByteBuffer rest = ByteBuffer.allocate(length);
+        readFully(segment.channel, rest, offset + PREFIX_BYTES);
+        CRC32C crc = new CRC32C();
+        crc.update(rest.array(), 0, length);
+        if ((int) crc.getValue() != prefix.getInt(Integer.BYTES)) {
+            throw new IOException("Checksum mismatch in idempotency log segment " + segment.id + " at offset " + offset);
+        }
+        return decode(location, PREFIX_BYTES + length, rest.array());
+    }
+
+    long scan(int segmentId, RecordVisitor visitor) throws IOException {
+        Segment segment = segments.get(segmentId);
+        return segment != null ? scan(segment, visitor) : 0;
+    }
+
+    // Sequential read through a stream of its own, returns the bytes up to the end of the last valid frame
+    private long scan(Segment segment, RecordVisitor visitor) throws IOException {
+        long limit = segment.size;
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), SCAN_BUFFER_BYTES))) {
+            while (offset + PREFIX_BYTES <= limit) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < FIXED_BYTES || offset + PREFIX_BYTES + length > limit) {
+                    break;
+                }
+                byte[] rest = new byte[length];
+                in.readFully(rest);
+                CRC32C crc = new CRC32C();
+                crc.update(rest, 0, length);
+                if ((int) crc.getValue() != checksum || LogRecordType.fromCode(rest[0]) == null) {
+                    break;
+                }
+                visitor.accept(decode(location(segment.id, offset), PREFIX_BYTES + length, rest));
+                offset += PREFIX_BYTES + length;
+            }
+        } catch (EOFException e) {
+            // A frame cut off by a crash, the valid bytes end before it
+        }
+        return offset;
+    }
+
+    List<Integer> getSegmentIds() {
+        return new ArrayList<>(segments.keySet());
+    }
+
+    boolean isActive(int segmentId) {
+        return active.id == segmentId;
+    }
+
+    boolean isRetired(int segmentId) {
+        Segment segment = segments.get(segmentId);
+        return segment == null || segment.retired;
+    }
+
+    // True when no older segment file, retired or not, is left on disk
+    boolean isOldest(int segmentId) {
+        return segments.firstKey() == segmentId;
+    }
+
+    long getSegmentSize(int segmentId) {
+        Segment segment = segments.get(segmentId);
+        return segment != null ? segment.size : 0;
+    }
+
+    // Its live records must have been appended and committed elsewhere before
+    void retire(int segmentId) {
+        Segment segment = segments.get(segmentId);
+        if (segment != null && segment != active) {
+            segment.retired = true;
+        }
+    }
+
+    // Deletes the segments retired before, readers of their old locations have had a full compaction interval
+    int deleteRetired() throws IOException {
+        int deleted = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.retired) {
+                segments.remove(segment.id);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    long getSizeBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size).sum();
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getAppendCount() {
+        return appendCount.sum();
+    }
+
+    long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        commitLock.lock();
+        try {
+            closed = true;
+            pending.signalAll();
+            committed.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appendLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment == active) {
+                    segment.channel.force(false);
+                }
+                segment.channel.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static long offset(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    // Forces the full segment before the next one takes appends, so the committer only ever forces the active one
+    private Segment roll(Segment full) throws IOException {
+        full.channel.force(false);
+        int id = full.id + 1;
+        Segment next = Segment.open(id, pathOf(id));
+        segments.put(id, next);
+        active = next;
+        return next;
+    }
+
+    private void runCommitter() {
+        while (true) {
+            long target;
+            commitLock.lock();
+            try {
+                while (durableBytes == appendedBytes && !closed) {
+                    pending.awaitUninterruptibly();
+                }
+                if (durableBytes == appendedBytes) {
+                    return;
+                }
+                target = appendedBytes;
+            } finally {
+                commitLock.unlock();
+            }
+            // Read after the target, bytes of a segment rolled away meanwhile were forced by the roll
+            Segment segment = active;
+            IOException failure = null;
+            try {
+                segment.channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+            }
+            commitCount.increment();
+            commitLock.lock();
+            try {
+                if (failure != null) {
+                    // Appends since the last good force may not be on disk, every later commit fails until restart
+                    commitFailure = failure;
+                    log.error("Failed to force the idempotency log, commits fail until the service is restarted", failure);
+                    committed.signalAll();
+                    closed = true;
+                    return;
+                }
+                durableBytes = target;
+                committed.signalAll();
+            } finally {
+                commitLock.unlock();
+            }
+        }
+    }
+
+    private Path pathOf(int segmentId) {
+        return directory.resolve(String.format("segment-%010d.log", segmentId));
+    }
+
+    private static LogRecord decode(long location, int size, byte[] rest) {
+        ByteBuffer buffer = ByteBuffer.wrap(rest);
+        LogRecordType type = LogRecordType.fromCode(buffer.get());
+        long expireAt = buffer.getLong();
+        int keyLength = Short.toUnsignedInt(buffer.getShort());
+        String key = new String(rest, buffer.position(), keyLength, StandardCharsets.UTF_8);
+        int bodyOffset = buffer.position() + keyLength;
+        byte[] body = new byte[rest.length - bodyOffset];
+        System.arraycopy(rest, bodyOffset, body, 0, body.length);
+        return new LogRecord(location, size, type, expireAt, key, body);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Idempotency log record ends past the end of its segment");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+
+        void accept(LogRecord record) throws IOException;
+    }
+
+    private static final class Segment {
+
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        // Written under appendLock, read by scans of sealed segments and the size gauges
+        private volatile long size;
+        private volatile boolean retired;
+
+        private Segment(int id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        static Segment open(int id, Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, path, channel, channel.size());
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package microservices.helper.idempotency.tuning;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Streaming quantile sketch of execution times with a bounded relative error,
+ * after DDSketch. A time is counted in the bucket of its logarithm to the base
+ * gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy), so every quantile is
+ * answered within relativeAccuracy of the true value whatever the distribution.
+ * Times from 1 ms to a day fit in a fixed array of counters, recording is a
+ * single atomic increment, and {@link #decay()} halves every count so that
+ * older executions weigh less than recent ones without dropping the tail.
+ */
+public class ExecutionTimeSketch {
+
+    private static final long MAX_MILLIS = Duration.ofDays(1).toMillis();
+
+    private final double gamma;
+    private final double logGamma;
+    private final AtomicLongArray counts;
+
+    public ExecutionTimeSketch(double relativeAccuracy) {
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.counts = new AtomicLongArray(bucketOf(MAX_MILLIS) + 1);
+    }
+
+    // Shorter times count as 1 ms and longer ones as a day
+    public void record(Duration executionTime) {
+        counts.incrementAndGet(bucketOf(Math.min(Math.max(executionTime.toMillis(), 1), MAX_MILLIS)));
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    // The smallest recorded time that at least quantile of the executions did not exceed, null while nothing is recorded
+    public Duration quantile(double quantile) {
+        long count = getCount();
+        if (count == 0) {
+            return null;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Duration.ofMillis(Math.round(valueOf(i)));
+            }
+        }
+        // Executions recorded during the scan moved the rank past the counts already read
+        return Duration.ofMillis(Math.round(valueOf(counts.length() - 1)));
+    }
+
+    // Halves every count rounding up, so a rare slow execution in the tail is kept, one recorded concurrently may be halved too
+    public void decay() {
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) > 1) {
+                counts.getAndUpdate(i, count -> (count + 1) / 2);
+            }
+        }
+    }
+
+    private int bucketOf(long millis) {
+        return (int) Math.ceil(Math.log(millis) / logGamma);
+    }
+
+    // Bucket i holds (gamma^(i-1), gamma^i], this value is within the relative accuracy of all of them
+    private double valueOf(int bucket) {
+        return 2 * Math.pow(gamma, bucket) / (1 + gamma);
+    }
+
+}
@@ -0,0 +1,172 @@
+package microservices.helper.idempotency.tuning;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.model.LockDurationLearningStats;
+import microservices.helper.idempotency.model.LockDurationStats;
+import microservices.helper.idempotency.store.IdempotencyStore;
+
+/**
+ * Learns the lock duration of each (service, operation) from the execution
+ * times this node observes, from lockedAt to the result save, in an
+ * {@link ExecutionTimeSketch} per operation. Every update-interval, an
+ * operation with at least min-samples executions gets its quantile times
+ * safety-factor, rounded up to whole seconds and clamped to [min-duration,
+ * max-duration], stored as the learnedLockDuration of its config. The sketch
+ * is then decayed, so the estimate follows the operation when it slows down
+ * or speeds up. A lock that expires counts as an execution as long as the lock
+ * was held: a learned duration that turns out too short grows back instead of
+ * hiding the executions it cuts off. Each node learns from the operations it
+ * completes and writes its own estimate, the last one written reaches every
+ * node with the config refresh.
+ */
+@Component
+@Slf4j
+public class LockDurationLearner {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+
+    private final IdempotencyStore idempotencyStore;
+    private final IdempotentOperationConfigCache idempotentOperationConfigCache;
+    private final boolean enabled;
+    private final boolean applied;
+    private final double quantile;
+    private final double safetyFactor;
+    private final Duration minDuration;
+    private final Duration maxDuration;
+    private final long minSamples;
+    private final int maxOperations;
+    private final Map<OperationKey, OperationSketch> sketches = new ConcurrentHashMap<>();
+
+    public LockDurationLearner(IdempotencyStore idempotencyStore,
+                               IdempotentOperationConfigCache idempotentOperationConfigCache,
+                               @Value("${idempotent.lock-duration-learning.enabled}") boolean enabled,
+                               @Value("${idempotent.lock-duration-learning.apply}") boolean applied,
+                               @Value("${idempotent.lock-duration-learning.quantile}") double quantile,
+                               @Value("${idempotent.lock-duration-learning.safety-factor}") double safetyFactor,
+                               @Value("${idempotent.lock-duration-learning.min-duration}") Duration minDuration,
+                               @Value("${idempotent.lock-duration-learning.max-duration}") Duration maxDuration,
+                               @Value("${idempotent.lock-duration-learning.min-samples}") long minSamples,
+                               @Value("${idempotent.lock-duration-learning.max-operations}") int maxOperations) {
+        this.idempotencyStore = idempotencyStore;
+        this.idempotentOperationConfigCache = idempotentOperationConfigCache;
+        this.enabled = enabled;
+        this.applied = applied;
+        this.quantile = quantile;
+        this.safetyFactor = safetyFactor;
+        this.minDuration = minDuration;
+        this.maxDuration = maxDuration;
+        this.minSamples = minSamples;
+        this.maxOperations = maxOperations;
+    }
+
+    public void recordExecution(String service, String operation, Instant lockedAt, Instant completedAt) {
+        if (!enabled || service == null || operation == null || lockedAt == null) {
+            return;
+        }
+        OperationKey key = new OperationKey(service, operation);
+        OperationSketch operationSketch = sketches.get(key);
+        if (operationSketch == null) {
+            // Concurrent first executions may overshoot the limit by a few operations, which still bounds the sketches
+            if (sketches.size() >= maxOperations) {
+                return;
+            }
+            operationSketch = sketches.computeIfAbsent(key, ignored -> new OperationSketch());
+        }
+        operationSketch.sketch.record(Duration.between(lockedAt, completedAt));
+    }
+
+    @Scheduled(fixedDelayString = "${idempotent.lock-duration-learning.update-interval}", initialDelayString = "${idempotent.lock-duration-learning.update-interval}")
+    public void update() {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        int updated = 0;
+        for (Map.Entry<OperationKey, OperationSketch> entry : sketches.entrySet()) {
+            OperationKey key = entry.getKey();
+            OperationSketch operationSketch = entry.getValue();
+            // An operation too rare to reach min-samples in one interval keeps accumulating over the next ones
+            if (operationSketch.sketch.getCount() < minSamples) {
+                continue;
+            }
+            Duration observed = operationSketch.sketch.quantile(quantile);
+            Duration learned = learn(observed);
+            operationSketch.observedQuantile = observed;
+            operationSketch.sketch.decay();
+            if (learned.equals(operationSketch.learnedLockDuration)) {
+                continue;
+            }
+            try {
+                if (idempotencyStore.updateLearnedLockDuration(key.service(), key.operation(), learned, now)) {
+                    log.info("Learned lock duration {} for service: {}, operation: {}, p{} execution time {}",
+                            learned, key.service(), key.operation(), quantile * 100, observed);
+                    operationSketch.learnedLockDuration = learned;
+                    operationSketch.learnedAt = now;
+                    updated++;
+                }
+            } catch (Exception e) {
+                log.warn("Failed to store the learned lock duration for service: {}, operation: {}", key.service(), key.operation(), e);
+            }
+        }
+        if (updated > 0) {
+            // Applies the new durations on this node now instead of on the next scheduled refresh
+            idempotentOperationConfigCache.refresh();
+        }
+    }
+
+    public LockDurationLearningStats getStats() {
+        List<LockDurationStats> operations = new ArrayList<>(sketches.size());
+        for (Map.Entry<OperationKey, OperationSketch> entry : sketches.entrySet()) {
+            LockDurationStats stats = new LockDurationStats();
+            stats.setService(entry.getKey().service());
+            stats.setOperation(entry.getKey().operation());
+            stats.setSamples(entry.getValue().sketch.getCount());
+            stats.setObservedQuantile(entry.getValue().observedQuantile);
+            stats.setLearnedLockDuration(entry.getValue().learnedLockDuration);
+            stats.setLearnedAt(entry.getValue().learnedAt);
+            stats.setLockDuration(idempotentOperationConfigCache.getLockDuration(entry.getKey().service(), entry.getKey().operation()));
+            operations.add(stats);
+        }
+        LockDurationLearningStats stats = new LockDurationLearningStats();
+        stats.setEnabled(enabled);
+        stats.setApplied(applied);
+        stats.setQuantile(quantile);
+        stats.setSafetyFactor(safetyFactor);
+        stats.setOperations(operations);
+        return stats;
+    }
+
+    // Whole seconds keep the stored value from moving with every small change of the quantile
+    Duration learn(Duration observed) {
+        long millis = (long) Math.ceil(observed.toMillis() * safetyFactor);
+        Duration learned = Duration.ofSeconds((millis + 999) / 1000);
+        if (learned.compareTo(minDuration) < 0) {
+            return minDuration;
+        }
+        return learned.compareTo(maxDuration) > 0 ? maxDuration : learned;
+    }
+
+    private static final class OperationSketch {
+
+        private final ExecutionTimeSketch sketch = new ExecutionTimeSketch(RELATIVE_ACCURACY);
+        private volatile Duration observedQuantile;
+        private volatile Duration learnedLockDuration;
+        private volatile Instant learnedAt;
+    }
+
+    private record OperationKey(String service, String operation) {
+    }
+
+}
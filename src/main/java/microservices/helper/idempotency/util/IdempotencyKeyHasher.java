@@ -0,0 +1,225 @@
+package microservices.helper.idempotency.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import lombok.NonNull;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+
+/**
+ * Derives the _id of stored results and operation states from
+ * (service, operation, idempotencyKey). New ids are written in the configured
+ * version; while fallback lookup is enabled, callers also try the id of the
+ * other version, so documents keep resolving on every node while the format
+ * is switched.
+ */
+@Component
+public class IdempotencyKeyHasher {
+
+    public static final String V2_PREFIX = "v2:";
+
+    private static final byte[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final KeyHashVersion version;
+    private final boolean fallbackLookup;
+
+    public IdempotencyKeyHasher(@Value("${idempotent.key-hash.version}") KeyHashVersion version,
+                                @Value("${idempotent.key-hash.fallback-lookup}") boolean fallbackLookup) {
+        this.version = version;
+        this.fallbackLookup = fallbackLookup;
+    }
+
+    // The id new documents are written under
+    public String hash(@NonNull String service, @NonNull String operation, @NonNull String idempotencyKey) {
+        return version == KeyHashVersion.V2 ? hashV2(service, operation, idempotencyKey) : hashMd5(service, operation, idempotencyKey);
+    }
+
+    // The id of the other version a document may be stored under, or null when fallback lookup is disabled
+    public String fallbackHash(@NonNull String service, @NonNull String operation, @NonNull String idempotencyKey) {
+        if (!fallbackLookup) {
+            return null;
+        }
+        return version == KeyHashVersion.V2 ? hashMd5(service, operation, idempotencyKey) : hashV2(service, operation, idempotencyKey);
+    }
+
+    // Get hashed key as a base64 string, "a-b" + "c" and "a" + "b-c" share the same id
+    public static String hashMd5(@NonNull String service, @NonNull String operation, @NonNull String idempotencyKey) {
+        String combinedKey = service + "-" + operation + "-" + idempotencyKey;
+        return Base64.getEncoder().encodeToString(DigestUtils.md5Digest(combinedKey.getBytes()));
+    }
+
+    // Each part is fed to the hash as its UTF-8 byte length followed by its UTF-8 bytes, without an intermediate copy
+    public static String hashV2(@NonNull String service, @NonNull String operation, @NonNull String idempotencyKey) {
+        MurmurHash3 murmurHash3 = new MurmurHash3();
+        murmurHash3.putLengthPrefixedUtf8(service);
+        murmurHash3.putLengthPrefixedUtf8(operation);
+        murmurHash3.putLengthPrefixedUtf8(idempotencyKey);
+        murmurHash3.finish();
+        return encode(murmurHash3.h1, murmurHash3.h2);
+    }
+
+    // "v2:" and 22 unpadded Base64url characters for the 16 hash bytes, little-endian like the hash itself
+    private static String encode(long h1, long h2) {
+        byte[] id = new byte[V2_PREFIX.length() + 22];
+        int position = 0;
+        for (int i = 0; i < V2_PREFIX.length(); i++) {
+            id[position++] = (byte) V2_PREFIX.charAt(i);
+        }
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < 16; i++) {
+            long b = ((i < 8 ? h1 >>> (8 * i) : h2 >>> (8 * (i - 8)))) & 0xff;
+            bits = (bits << 8) | b;
+            bitCount += 8;
+            while (bitCount >= 6) {
+                bitCount -= 6;
+                id[position++] = BASE64_URL[(int) (bits >>> bitCount) & 0x3f];
+            }
+        }
+        id[position] = BASE64_URL[(int) (bits << (6 - bitCount)) & 0x3f];
+        return new String(id, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Streaming MurmurHash3 x64 128 with seed 0. Bytes are collected into the
+     * two 64-bit halves of the current 16-byte block, so nothing is buffered
+     * beyond this object.
+     */
+    private static final class MurmurHash3 {
+
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private long h1;
+        private long h2;
+        private long k1;
+        private long k2;
+        private int blockPosition;
+        private long length;
+
+        void putLengthPrefixedUtf8(String value) {
+            putInt(utf8Length(value));
+            int charCount = value.length();
+            for (int i = 0; i < charCount; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    putByte(c);
+                } else if (c < 0x800) {
+                    putByte(0xc0 | (c >>> 6));
+                    putByte(0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < charCount && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    putByte(0xf0 | (codePoint >>> 18));
+                    putByte(0x80 | ((codePoint >>> 12) & 0x3f));
+                    putByte(0x80 | ((codePoint >>> 6) & 0x3f));
+                    putByte(0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    putByte('?'); // Unpaired surrogate, replaced like String.getBytes(UTF_8) does
+                } else {
+                    putByte(0xe0 | (c >>> 12));
+                    putByte(0x80 | ((c >>> 6) & 0x3f));
+                    putByte(0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        private static int utf8Length(String value) {
+            int charCount = value.length();
+            int utf8Length = 0;
+            for (int i = 0; i < charCount; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    utf8Length += 1;
+                } else if (c < 0x800) {
+                    utf8Length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < charCount && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    utf8Length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    utf8Length += 1;
+                } else {
+                    utf8Length += 3;
+                }
+            }
+            return utf8Length;
+        }
+
+        private void putInt(int value) {
+            putByte(value);
+            putByte(value >>> 8);
+            putByte(value >>> 16);
+            putByte(value >>> 24);
+        }
+
+        private void putByte(int value) {
+            long b = value & 0xffL;
+            if (blockPosition < 8) {
+                k1 |= b << (8 * blockPosition);
+            } else {
+                k2 |= b << (8 * (blockPosition - 8));
+            }
+            length++;
+            if (++blockPosition == 16) {
+                mixBlock();
+                k1 = 0;
+                k2 = 0;
+                blockPosition = 0;
+            }
+        }
+
+        private void mixBlock() {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // Mixing an empty tail is a no-op, so the partial block is always folded in
+        void finish() {
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+}
@@ -1,12 +1,27 @@
 package microservices.helper.idempotency;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+import microservices.helper.idempotency.service.IdempotencyService;
+
+@SpringBootTest(properties = {"idempotent.storage.engine=in-memory", "management.health.mongo.enabled=false"})
 class IdempotentOperationServiceApplicationTests {
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @Test
     void contextLoads() {
     }
+
+    @Test
+    void idempotencyService_WhenMongoLimiterIsDisabled_ShouldNotBeProxied() {
+        // Assert
+        assertFalse(AopUtils.isAopProxy(idempotencyService));
+    }
 }
@@ -0,0 +1,67 @@
+package microservices.helper.idempotency.audit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.enums.AuditBackpressure;
+import microservices.helper.idempotency.store.IdempotencyStore;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotentOperationAuditWriterTest {
+
+    @Mock
+    private IdempotencyStore idempotencyStore;
+
+    private IdempotentOperationAuditWriter idempotentOperationAuditWriter;
+
+    @BeforeEach
+    void setUp() {
+        idempotentOperationAuditWriter = new IdempotentOperationAuditWriter(idempotencyStore, true, 10, 10,
+                Duration.ofSeconds(10), AuditBackpressure.BLOCK, Duration.ofSeconds(1));
+    }
+
+    @Test
+    void write_WhenWriterIsRunning_ShouldFlushRecordInBatch() {
+        // Arrange
+        ReflectionTestUtils.invokeMethod(idempotentOperationAuditWriter, "start");
+        IdempotentOperation idempotentOperation = new IdempotentOperation();
+
+        // Act
+        idempotentOperationAuditWriter.write(idempotentOperation);
+        ReflectionTestUtils.invokeMethod(idempotentOperationAuditWriter, "stop");
+
+        // Assert
+        verify(idempotencyStore).insertOperations(anyList());
+        verify(idempotencyStore, never()).insertOperation(any(IdempotentOperation.class));
+        assertEquals(1, idempotentOperationAuditWriter.getStats().getFlushedCount());
+        assertEquals(0, idempotentOperationAuditWriter.getStats().getSynchronousFallbackCount());
+    }
+
+    @Test
+    void write_WhenWriterIsStopped_ShouldInsertSynchronously() {
+        // Arrange
+        ReflectionTestUtils.invokeMethod(idempotentOperationAuditWriter, "start");
+        ReflectionTestUtils.invokeMethod(idempotentOperationAuditWriter, "stop");
+        IdempotentOperation idempotentOperation = new IdempotentOperation();
+
+        // Act
+        idempotentOperationAuditWriter.write(idempotentOperation);
+
+        // Assert
+        verify(idempotencyStore).insertOperation(idempotentOperation);
+        assertEquals(0, idempotentOperationAuditWriter.getStats().getQueueSize());
+        assertEquals(1, idempotentOperationAuditWriter.getStats().getSynchronousFallbackCount());
+    }
+
+}
@@ -0,0 +1,135 @@
+package microservices.helper.idempotency.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.model.CompletedKeyFilterStats;
+
+@ExtendWith(MockitoExtension.class)
+class CompletedKeyFilterTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    @Mock
+    private FindIterable<Document> findIterable;
+
+    private CompletedKeyFilter completedKeyFilter;
+
+    @BeforeEach
+    void setUp() {
+        completedKeyFilter = new CompletedKeyFilter(mongoTemplate, new SimpleMeterRegistry(), true, 1024, 0.01);
+    }
+
+    private void givenStoredIds(String... ids) {
+        Iterator<String> iterator = List.of(ids).iterator();
+        @SuppressWarnings("unchecked")
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenAnswer(call -> iterator.hasNext());
+        if (ids.length > 0) {
+            when(cursor.next()).thenAnswer(call -> new Document("_id", iterator.next()));
+        }
+        when(mongoTemplate.getCollectionName(StoredIdempotentOperationResult.class)).thenReturn("stored_idempotent_operation_result");
+        when(mongoTemplate.getCollection("stored_idempotent_operation_result")).thenReturn(collection);
+        when(collection.find()).thenReturn(findIterable);
+        when(findIterable.projection(any(Bson.class))).thenReturn(findIterable);
+        when(findIterable.batchSize(anyInt())).thenReturn(findIterable);
+        when(findIterable.cursor()).thenReturn(cursor);
+    }
+
+    private void awaitTrusted() throws InterruptedException {
+        for (int i = 0; i < 200 && !completedKeyFilter.getStats().isTrusted(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(completedKeyFilter.getStats().isTrusted());
+    }
+
+    @Test
+    void isDefinitelyNotCompleted_WhenStreamWasNeverOpened_ShouldNotSkipReads() {
+        // Act
+        completedKeyFilter.add("v2:stored");
+
+        // Assert
+        assertFalse(completedKeyFilter.isDefinitelyNotCompleted("v2:new", null));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void isDefinitelyNotCompleted_WhenBuiltFromScan_ShouldOnlySkipKeysThatAreNotStored() throws InterruptedException {
+        // Arrange
+        givenStoredIds("v2:stored", "legacy-md5");
+
+        // Act
+        completedKeyFilter.streamOpened();
+        awaitTrusted();
+
+        // Assert
+        assertFalse(completedKeyFilter.isDefinitelyNotCompleted("v2:stored", null));
+        assertFalse(completedKeyFilter.isDefinitelyNotCompleted("v2:other", "legacy-md5"));
+        assertTrue(completedKeyFilter.isDefinitelyNotCompleted("v2:new", null));
+        assertEquals(2, completedKeyFilter.getIdCount());
+        assertEquals(1, completedKeyFilter.getStats().getSkippedReadCount());
+    }
+
+    @Test
+    void isDefinitelyNotCompleted_WhenKeyIsAddedAfterBuild_ShouldNotSkipItsRead() throws InterruptedException {
+        // Arrange
+        givenStoredIds();
+        completedKeyFilter.streamOpened();
+        awaitTrusted();
+
+        // Act
+        completedKeyFilter.add("v2:saved");
+
+        // Assert
+        assertFalse(completedKeyFilter.isDefinitelyNotCompleted("v2:saved", null));
+    }
+
+    @Test
+    void isDefinitelyNotCompleted_WhenStreamIsLost_ShouldNotSkipReads() throws InterruptedException {
+        // Arrange
+        givenStoredIds();
+        completedKeyFilter.streamOpened();
+        awaitTrusted();
+
+        // Act
+        completedKeyFilter.streamLost();
+
+        // Assert
+        assertFalse(completedKeyFilter.isDefinitelyNotCompleted("v2:new", null));
+        assertFalse(completedKeyFilter.getStats().isTrusted());
+    }
+
+    @Test
+    void getStats_ShouldReportCapacityForTheMemoryBudget() {
+        // Act
+        CompletedKeyFilterStats stats = completedKeyFilter.getStats();
+
+        // Assert
+        assertEquals(7, stats.getHashFunctions());
+        assertEquals(854, stats.getCapacity());
+        assertEquals(1.0, stats.getEstimatedFalsePositiveRate());
+    }
+}
@@ -0,0 +1,226 @@
+package microservices.helper.idempotency.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+import microservices.helper.idempotency.repository.IdempotentOperationConfigRepository;
+import microservices.helper.idempotency.store.MongoIdempotencyStore;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotentOperationConfigCacheTest {
+
+    private static final Duration DEFAULT_LOCK_DURATION = Duration.ofMinutes(1);
+
+    @Mock
+    private IdempotentOperationConfigRepository idempotentOperationConfigRepository;
+
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    @BeforeEach
+    void setUp() {
+        idempotentOperationConfigCache = new IdempotentOperationConfigCache(new MongoIdempotencyStore(null, null, null, null, null, idempotentOperationConfigRepository, null));
+        ReflectionTestUtils.setField(idempotentOperationConfigCache, "lockDuration", DEFAULT_LOCK_DURATION);
+        ReflectionTestUtils.setField(idempotentOperationConfigCache, "resultCacheDuration", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(idempotentOperationConfigCache, "retentionDuration", Duration.ofDays(30));
+        ReflectionTestUtils.setField(idempotentOperationConfigCache, "consistencyProfile", ConsistencyProfile.DEFAULT);
+    }
+
+    private IdempotentOperationConfig operationConfig(String service, String operation, Duration lockDuration) {
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService(service);
+        operationConfig.setOperation(operation);
+        operationConfig.setLockDuration(lockDuration);
+        return operationConfig;
+    }
+
+    // Registrations are published by a background thread, an unknown operation is served the default until then
+    private Duration awaitLockDuration(String service, String operation, Duration expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        Duration lockDuration = idempotentOperationConfigCache.getLockDuration(service, operation);
+        while (!expected.equals(lockDuration) && System.nanoTime() - deadline < 0) {
+            Thread.onSpinWait();
+            lockDuration = idempotentOperationConfigCache.getLockDuration(service, operation);
+        }
+        return lockDuration;
+    }
+
+    @Test
+    void getLockDuration_WhenOperationIsLoaded_ShouldNotHitRepository() {
+        // Arrange
+        when(idempotentOperationConfigRepository.findAll())
+                .thenReturn(List.of(operationConfig("test-service", "test-operation", Duration.ofSeconds(5))));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        Duration lockDuration = idempotentOperationConfigCache.getLockDuration("test-service", "test-operation");
+
+        // Assert
+        assertEquals(Duration.ofSeconds(5), lockDuration);
+        verify(idempotentOperationConfigRepository, never()).findByServiceAndOperation(anyString(), anyString());
+    }
+
+    @Test
+    void getLockDuration_WhenLearnedDurationIsApplied_ShouldPreferItOverLockDuration() {
+        // Arrange
+        IdempotentOperationConfig learned = operationConfig("test-service", "test-operation", Duration.ofSeconds(5));
+        learned.setLearnedLockDuration(Duration.ofSeconds(20));
+        when(idempotentOperationConfigRepository.findAll())
+                .thenReturn(List.of(learned, operationConfig("test-service", "other-operation", Duration.ofSeconds(5))));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        Duration notApplied = idempotentOperationConfigCache.getLockDuration("test-service", "test-operation");
+        ReflectionTestUtils.setField(idempotentOperationConfigCache, "applyLearnedLockDuration", true);
+        Duration applied = idempotentOperationConfigCache.getLockDuration("test-service", "test-operation");
+        Duration notLearned = idempotentOperationConfigCache.getLockDuration("test-service", "other-operation");
+
+        // Assert
+        assertEquals(Duration.ofSeconds(5), notApplied);
+        assertEquals(Duration.ofSeconds(20), applied);
+        assertEquals(Duration.ofSeconds(5), notLearned);
+    }
+
+    @Test
+    void getLockDuration_WhenOperationIsUnknown_ShouldReturnDefaultAndRegisterInBackground() {
+        // Arrange
+        when(idempotentOperationConfigRepository.findAll()).thenReturn(List.of());
+        when(idempotentOperationConfigRepository.findByServiceAndOperation("test-service", "test-operation"))
+                .thenReturn(Optional.empty());
+        when(idempotentOperationConfigRepository.insert(any(IdempotentOperationConfig.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        Duration lockDuration = idempotentOperationConfigCache.getLockDuration("test-service", "test-operation");
+
+        // Assert
+        assertEquals(DEFAULT_LOCK_DURATION, lockDuration);
+        verify(idempotentOperationConfigRepository, timeout(1000)).insert(any(IdempotentOperationConfig.class));
+    }
+
+    @Test
+    void getLockDuration_WhenAnotherNodeRegisteredFirst_ShouldUseStoredConfig() {
+        // Arrange
+        when(idempotentOperationConfigRepository.findAll()).thenReturn(List.of());
+        when(idempotentOperationConfigRepository.findByServiceAndOperation("test-service", "test-operation"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(operationConfig("test-service", "test-operation", Duration.ofSeconds(7))));
+        when(idempotentOperationConfigRepository.insert(any(IdempotentOperationConfig.class)))
+                .thenThrow(new DuplicateKeyException("Config already exists"));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        idempotentOperationConfigCache.getLockDuration("test-service", "test-operation");
+
+        // Assert
+        assertEquals(Duration.ofSeconds(7), awaitLockDuration("test-service", "test-operation", Duration.ofSeconds(7)));
+        verify(idempotentOperationConfigRepository, timeout(1000).times(2)).findByServiceAndOperation("test-service", "test-operation");
+        verify(idempotentOperationConfigRepository, timeout(1000).atLeastOnce()).insert(any(IdempotentOperationConfig.class));
+    }
+
+    @Test
+    void refresh_WhenLockDurationChangedInDB_ShouldServeNewValue() {
+        // Arrange
+        when(idempotentOperationConfigRepository.findAll())
+                .thenReturn(List.of(operationConfig("test-service", "test-operation", Duration.ofSeconds(5))))
+                .thenReturn(List.of(operationConfig("test-service", "test-operation", Duration.ofSeconds(30))));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        idempotentOperationConfigCache.refresh();
+
+        // Assert
+        assertEquals(Duration.ofSeconds(30), idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"));
+    }
+
+    @Test
+    void refresh_WhenOperationIsRegisteredDuringRead_ShouldKeepRegisteredConfig() {
+        // Arrange
+        when(idempotentOperationConfigRepository.findByServiceAndOperation("test-service", "new-operation"))
+                .thenReturn(Optional.of(operationConfig("test-service", "new-operation", Duration.ofSeconds(9))));
+        when(idempotentOperationConfigRepository.findAll())
+                .thenReturn(List.of())
+                .thenAnswer(invocation -> {
+                    // The registration is published after the configs were read
+                    idempotentOperationConfigCache.getLockDuration("test-service", "new-operation");
+                    awaitLockDuration("test-service", "new-operation", Duration.ofSeconds(9));
+                    return List.of();
+                });
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        idempotentOperationConfigCache.refresh();
+
+        // Assert
+        assertEquals(Duration.ofSeconds(9), idempotentOperationConfigCache.getLockDuration("test-service", "new-operation"));
+        verify(idempotentOperationConfigRepository, times(1)).findByServiceAndOperation("test-service", "new-operation");
+    }
+
+    @Test
+    void refresh_WhenRepositoryFails_ShouldKeepCurrentSnapshot() {
+        // Arrange
+        when(idempotentOperationConfigRepository.findAll())
+                .thenReturn(List.of(operationConfig("test-service", "test-operation", Duration.ofSeconds(5))))
+                .thenThrow(new RuntimeException("Database error"));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act
+        assertDoesNotThrow(() -> idempotentOperationConfigCache.refresh());
+
+        // Assert
+        assertEquals(Duration.ofSeconds(5), idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"));
+    }
+
+    @Test
+    void getExpireAt_WhenOperationHasRetention_ShouldUseItAndFallBackToDefaultOtherwise() {
+        // Arrange
+        IdempotentOperationConfig payment = operationConfig("payment-service", "process-payment", Duration.ofSeconds(5));
+        payment.setRetentionDuration(Duration.ofHours(24));
+        IdempotentOperationConfig audit = operationConfig("audit-service", "record", Duration.ofSeconds(5));
+        audit.setRetentionDuration(Duration.ZERO);
+        when(idempotentOperationConfigRepository.findAll()).thenReturn(List.of(payment, audit));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+        Instant writtenAt = Instant.parse("2025-12-15T08:00:00Z");
+
+        // Act & Assert
+        assertEquals(Instant.parse("2025-12-16T08:00:00Z"), idempotentOperationConfigCache.getExpireAt("payment-service", "process-payment", writtenAt));
+        assertEquals(Instant.parse("2026-01-14T08:00:00Z"), idempotentOperationConfigCache.getExpireAt("order-service", "create-order", writtenAt));
+        assertNull(idempotentOperationConfigCache.getExpireAt("audit-service", "record", writtenAt));
+        verify(idempotentOperationConfigRepository, never()).findByServiceAndOperation(anyString(), anyString());
+    }
+
+    @Test
+    void getConsistencyProfile_WhenOperationHasProfile_ShouldUseItAndFallBackToDefaultOtherwise() {
+        // Arrange
+        IdempotentOperationConfig payment = operationConfig("payment-service", "process-payment", Duration.ofSeconds(5));
+        payment.setConsistencyProfile(ConsistencyProfile.DURABLE);
+        when(idempotentOperationConfigRepository.findAll())
+                .thenReturn(List.of(payment, operationConfig("order-service", "create-order", Duration.ofSeconds(5))));
+        ReflectionTestUtils.invokeMethod(idempotentOperationConfigCache, "loadCache");
+
+        // Act & Assert
+        assertEquals(ConsistencyProfile.DURABLE, idempotentOperationConfigCache.getConsistencyProfile("payment-service", "process-payment"));
+        assertEquals(ConsistencyProfile.DEFAULT, idempotentOperationConfigCache.getConsistencyProfile("order-service", "create-order"));
+        assertEquals(ConsistencyProfile.DEFAULT, idempotentOperationConfigCache.getConsistencyProfile("unknown-service", "unknown-operation"));
+        verify(idempotentOperationConfigRepository, never()).findByServiceAndOperation(anyString(), anyString());
+    }
+}
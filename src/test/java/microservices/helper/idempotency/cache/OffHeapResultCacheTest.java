@@ -0,0 +1,141 @@
+package microservices.helper.idempotency.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import microservices.helper.idempotency.config.IdempotencyServiceConfig;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.model.OffHeapResultCacheStats;
+
+@ExtendWith(MockitoExtension.class)
+class OffHeapResultCacheTest {
+
+    private static final int SLAB_BYTES = 16384;
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    private final ObjectMapper objectMapper = new IdempotencyServiceConfig().objectMapper();
+
+    private OffHeapResultCache offHeapResultCache;
+
+    @BeforeEach
+    void setUp() {
+        // Two slabs, each holding one of the results below
+        offHeapResultCache = new OffHeapResultCache(idempotentOperationConfigCache, objectMapper, true, 2 * SLAB_BYTES, SLAB_BYTES, 4096);
+    }
+
+    private static IdempotentOperationResult result(String idempotencyKey, int payloadSize) {
+        IdempotentOperationResult result = new IdempotentOperationResult();
+        result.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        result.setService("order-service");
+        result.setOperation("create-order");
+        result.setIdempotencyKey(idempotencyKey);
+        result.setIdempotentOperationResult("{\"note\":\"" + "Заказ €".repeat(payloadSize / 7) + "\"}");
+        return result;
+    }
+
+    private static byte[] replay(OffHeapResultCache offHeapResultCache, String hashedKey) throws Exception {
+        Optional<OffHeapCachedResult> cachedResult = offHeapResultCache.get(hashedKey);
+        assertTrue(cachedResult.isPresent(), "Missing " + hashedKey);
+        try (OffHeapCachedResult offHeapResult = cachedResult.get()) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            offHeapResult.writeTo(response);
+            assertEquals(offHeapResult.getContentLength(), response.size());
+            return response.toByteArray();
+        }
+    }
+
+    @Test
+    void put_WhenResponseIsLarge_ShouldReplayTheSerializedResponse() throws Exception {
+        // Arrange
+        IdempotentOperationResult result = result("key-1", 5000);
+        when(idempotentOperationConfigCache.getResultCacheDuration("order-service", "create-order")).thenReturn(Duration.ofMinutes(10));
+
+        // Act
+        offHeapResultCache.put("hashed-key-1", result);
+
+        // Assert
+        assertArrayEquals(objectMapper.writeValueAsBytes(result), replay(offHeapResultCache, "hashed-key-1"));
+        OffHeapCachedResult cachedResult = offHeapResultCache.get("hashed-key-1").orElseThrow();
+        cachedResult.close();
+        assertEquals(ExecutionResult.SUCCESS.getValue(), cachedResult.getExecutionResult());
+        assertEquals("key-1", cachedResult.getIdempotencyKey());
+        assertNull(cachedResult.getIdempotentOperationResult());
+    }
+
+    @Test
+    void put_WhenResponseIsBelowMinimum_ShouldLeaveItToTheHeapCache() {
+        // Act
+        offHeapResultCache.put("hashed-key-1", result("key-1", 700));
+
+        // Assert
+        assertTrue(offHeapResultCache.get("hashed-key-1").isEmpty());
+        verifyNoInteractions(idempotentOperationConfigCache);
+    }
+
+    @Test
+    void put_WhenBudgetIsUsedUp_ShouldEvictTheOldestSlab() throws Exception {
+        // Arrange
+        when(idempotentOperationConfigCache.getResultCacheDuration("order-service", "create-order")).thenReturn(Duration.ofMinutes(10));
+
+        // Act
+        offHeapResultCache.put("hashed-key-1", result("key-1", 5000));
+        offHeapResultCache.put("hashed-key-2", result("key-2", 5000));
+        offHeapResultCache.put("hashed-key-3", result("key-3", 5000));
+
+        // Assert
+        assertTrue(offHeapResultCache.get("hashed-key-1").isEmpty());
+        assertArrayEquals(objectMapper.writeValueAsBytes(result("key-2", 5000)), replay(offHeapResultCache, "hashed-key-2"));
+        assertArrayEquals(objectMapper.writeValueAsBytes(result("key-3", 5000)), replay(offHeapResultCache, "hashed-key-3"));
+        OffHeapResultCacheStats stats = offHeapResultCache.getStats();
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(1, stats.getRecycledSlabCount());
+        assertEquals(2 * SLAB_BYTES, stats.getAllocatedBytes());
+    }
+
+    @Test
+    void put_WhenOldestSlabIsBeingWritten_ShouldReuseAnotherSlab() throws Exception {
+        // Arrange
+        when(idempotentOperationConfigCache.getResultCacheDuration("order-service", "create-order")).thenReturn(Duration.ofMinutes(10));
+        offHeapResultCache.put("hashed-key-1", result("key-1", 5000));
+        offHeapResultCache.put("hashed-key-2", result("key-2", 5000));
+        OffHeapCachedResult responseBeingWritten = offHeapResultCache.get("hashed-key-1").orElseThrow();
+
+        // Act
+        offHeapResultCache.put("hashed-key-3", result("key-3", 5000));
+
+        // Assert
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        responseBeingWritten.writeTo(response);
+        responseBeingWritten.close();
+        assertArrayEquals(objectMapper.writeValueAsBytes(result("key-1", 5000)), response.toByteArray());
+        assertTrue(offHeapResultCache.get("hashed-key-2").isEmpty());
+        assertArrayEquals(objectMapper.writeValueAsBytes(result("key-3", 5000)), replay(offHeapResultCache, "hashed-key-3"));
+    }
+
+    @Test
+    void get_WhenEntryHasExpired_ShouldMiss() {
+        // Arrange
+        when(idempotentOperationConfigCache.getResultCacheDuration("order-service", "create-order")).thenReturn(Duration.ofNanos(1));
+        offHeapResultCache.put("hashed-key-1", result("key-1", 5000));
+
+        // Act & Assert
+        assertTrue(offHeapResultCache.get("hashed-key-1").isEmpty());
+        assertEquals(0, offHeapResultCache.getStats().getEntryCount());
+        assertEquals(1, offHeapResultCache.getStats().getMissCount());
+    }
+}
@@ -0,0 +1,153 @@
+package microservices.helper.idempotency.compression;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Random;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+
+@ExtendWith(MockitoExtension.class)
+class StoredResultCompressionListenerTest {
+
+    private static final String COLLECTION = "stored_idempotent_operation_result";
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    @Mock
+    private IdempotencyMetrics idempotencyMetrics;
+
+    private StoredResultCompressionListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new StoredResultCompressionListener(idempotentOperationConfigCache, idempotencyMetrics, true, 1);
+    }
+
+    private static String orderJson(int minLength) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        Random random = new Random(42);
+        while (json.length() < minLength) {
+            json.append("{\"sku\":\"SKU-").append(random.nextInt(1000)).append("\",\"name\":\"Заказ €\",\"quantity\":")
+                    .append(random.nextInt(10)).append("},");
+        }
+        return json.append("{}]}").toString();
+    }
+
+    private static Document storedResultDocument(String result) {
+        return new Document("_id", "v2:pcpWe72x8cTJjinitvBYBQ")
+                .append("service", "order-service")
+                .append("operation", "create-order")
+                .append("idempotencyKey", "test-key-123")
+                .append(StoredResultCompressionListener.RESULT, result);
+    }
+
+    private void beforeSave(Document document) {
+        listener.onBeforeSave(new BeforeSaveEvent<>(new StoredIdempotentOperationResult(), document, COLLECTION));
+    }
+
+    private void afterLoad(Document document) {
+        listener.onAfterLoad(new AfterLoadEvent<>(document, StoredIdempotentOperationResult.class, COLLECTION));
+    }
+
+    @Test
+    void onBeforeSave_WhenResultIsAboveThreshold_ShouldStoreCompressedBinaryThatLoadsBackUnchanged() {
+        // Arrange
+        String result = orderJson(100_000);
+        Document document = storedResultDocument(result);
+        when(idempotentOperationConfigCache.getResultCompressionThreshold("order-service", "create-order")).thenReturn(16384);
+
+        // Act
+        beforeSave(document);
+
+        // Assert
+        Binary compressed = assertInstanceOf(Binary.class, document.get(StoredResultCompressionListener.RESULT));
+        assertEquals("deflate", document.get(StoredResultCompressionListener.RESULT_CODEC));
+        assertTrue(compressed.length() < result.length() / 4);
+        verify(idempotencyMetrics).recordCompression(eq("order-service"), eq("create-order"), anyInt(), eq(compressed.length()), anyLong());
+
+        // Act
+        afterLoad(document);
+
+        // Assert
+        assertEquals(result, document.get(StoredResultCompressionListener.RESULT));
+        assertFalse(document.containsKey(StoredResultCompressionListener.RESULT_CODEC));
+        verify(idempotencyMetrics).recordDecompression(eq("order-service"), eq("create-order"), anyLong());
+    }
+
+    @Test
+    void onBeforeSave_WhenResultIsBelowThreshold_ShouldKeepPlainString() {
+        // Arrange
+        Document document = storedResultDocument("{\"orderId\":\"42\"}");
+        when(idempotentOperationConfigCache.getResultCompressionThreshold("order-service", "create-order")).thenReturn(16384);
+
+        // Act
+        beforeSave(document);
+
+        // Assert
+        assertEquals("{\"orderId\":\"42\"}", document.get(StoredResultCompressionListener.RESULT));
+        assertFalse(document.containsKey(StoredResultCompressionListener.RESULT_CODEC));
+        verifyNoInteractions(idempotencyMetrics);
+    }
+
+    @Test
+    void onBeforeSave_WhenResultDoesNotShrink_ShouldKeepPlainString() {
+        // Arrange
+        byte[] noise = new byte[3000];
+        new Random(7).nextBytes(noise);
+        String result = java.util.Base64.getEncoder().encodeToString(noise);
+        Document document = storedResultDocument(result);
+        when(idempotentOperationConfigCache.getResultCompressionThreshold("order-service", "create-order")).thenReturn(1);
+        listener = new StoredResultCompressionListener(idempotentOperationConfigCache, idempotencyMetrics, true, 0);
+
+        // Act
+        beforeSave(document);
+
+        // Assert
+        assertEquals(result, document.get(StoredResultCompressionListener.RESULT));
+        assertFalse(document.containsKey(StoredResultCompressionListener.RESULT_CODEC));
+    }
+
+    @Test
+    void onAfterLoad_WhenDocumentHasNoCodec_ShouldLeaveLegacyResultUntouched() {
+        // Arrange
+        Document document = storedResultDocument("{\"orderId\":\"42\"}");
+
+        // Act
+        afterLoad(document);
+
+        // Assert
+        assertEquals("{\"orderId\":\"42\"}", document.get(StoredResultCompressionListener.RESULT));
+        verifyNoInteractions(idempotencyMetrics);
+    }
+
+    @Test
+    void onAfterLoad_WhenCompressedResultIsCorrupted_ShouldThrow() {
+        // Arrange
+        String result = orderJson(20_000);
+        Document document = storedResultDocument(result);
+        when(idempotentOperationConfigCache.getResultCompressionThreshold("order-service", "create-order")).thenReturn(16384);
+        beforeSave(document);
+        byte[] corrupted = ((Binary) document.get(StoredResultCompressionListener.RESULT)).getData();
+        corrupted[corrupted.length - 1] ^= 1;
+        document.put(StoredResultCompressionListener.RESULT, new Binary(corrupted));
+
+        // Act & Assert
+        assertThrows(IdempotencyException.class, () -> afterLoad(document));
+    }
+}
@@ -0,0 +1,153 @@
+package microservices.helper.idempotency.concurrency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.enums.AdmissionPriority;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    // Updates only run when the test calls update()
+    private static AdaptiveConcurrencyLimiter limiter(String engine, int initialLimit, double acquisitionShare) {
+        return new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry(), true, engine, initialLimit, 2, 100, 1.5, 0.2,
+                acquisitionShare, Duration.ofHours(1), Duration.ofSeconds(2));
+    }
+
+    private static void hold(AdaptiveConcurrencyLimiter limiter, int permits) {
+        for (int i = 0; i < permits; i++) {
+            limiter.acquire(AdmissionPriority.RESULT_READ);
+        }
+    }
+
+    private static void update(AdaptiveConcurrencyLimiter limiter, Duration rtt) {
+        for (int i = 0; i < 10; i++) {
+            limiter.recordRoundTrip("find", rtt.toNanos());
+        }
+        limiter.update();
+    }
+
+    @Test
+    void acquire_WhenEngineIsNotMongo_ShouldNotLimit() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("log", 2, 0.5);
+
+        // Act
+        hold(limiter, 10);
+
+        // Assert
+        assertFalse(limiter.isEnabled());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void acquire_WhenLimitIsReached_ShouldRejectWithRetryAfterUntilReleased() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 4, 0.5);
+        hold(limiter, 4);
+
+        // Act
+        ServiceOverloadedException exception = assertThrows(ServiceOverloadedException.class,
+                () -> limiter.acquire(AdmissionPriority.COMPLETION));
+        limiter.release();
+        limiter.acquire(AdmissionPriority.COMPLETION);
+
+        // Assert
+        assertEquals(Duration.ofSeconds(2), exception.getRetryAfter());
+        assertEquals(1, limiter.getRejectedCount(AdmissionPriority.COMPLETION));
+        assertEquals(4, limiter.getInFlight());
+    }
+
+    @Test
+    void acquire_WhenAcquisitionShareIsUsed_ShouldStillAdmitResultReads() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 10, 0.5);
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(AdmissionPriority.LOCK_ACQUISITION);
+        }
+
+        // Act & Assert
+        assertThrows(ServiceOverloadedException.class, () -> limiter.acquire(AdmissionPriority.LOCK_ACQUISITION));
+        limiter.acquire(AdmissionPriority.RESULT_READ);
+        assertEquals(6, limiter.getInFlight());
+        assertEquals(1, limiter.getRejectedCount(AdmissionPriority.LOCK_ACQUISITION));
+        assertEquals(0, limiter.getRejectedCount(AdmissionPriority.RESULT_READ));
+    }
+
+    @Test
+    void admitLockAcquisition_WhenInFlightExceedsAcquisitionShare_ShouldReject() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 10, 0.5);
+        hold(limiter, 5);
+
+        // Act & Assert
+        limiter.admitLockAcquisition();
+        limiter.acquire(AdmissionPriority.RESULT_READ);
+        assertThrows(ServiceOverloadedException.class, limiter::admitLockAcquisition);
+    }
+
+    @Test
+    void update_WhenRoundTripsAreSteadyAndLimitIsUsed_ShouldGrowLimit() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 10, 0.8);
+        hold(limiter, 10);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            update(limiter, Duration.ofMillis(2));
+        }
+
+        // Assert
+        assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    void update_WhenRoundTripsRise_ShouldShrinkLimit() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 20, 0.8);
+        hold(limiter, 20);
+        update(limiter, Duration.ofMillis(2));
+        int steadyLimit = limiter.getLimit();
+
+        // Act
+        update(limiter, Duration.ofMillis(20));
+        update(limiter, Duration.ofMillis(20));
+
+        // Assert
+        assertTrue(limiter.getLimit() < steadyLimit);
+        assertEquals(20.0, limiter.getStats().getRecentRttMillis(), 0.001);
+    }
+
+    @Test
+    void update_WhenLimitIsFarFromUsed_ShouldKeepLimit() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 20, 0.8);
+        hold(limiter, 2);
+        update(limiter, Duration.ofMillis(2));
+
+        // Act
+        update(limiter, Duration.ofMillis(50));
+
+        // Assert
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void recordRoundTrip_WhenCommandIsChangeStreamGetMore_ShouldBeIgnored() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = limiter("mongo", 20, 0.8);
+        hold(limiter, 20);
+
+        // Act
+        limiter.recordRoundTrip("getMore", Duration.ofSeconds(1).toNanos());
+        limiter.update();
+
+        // Assert
+        assertEquals(0.0, limiter.getStats().getRecentRttMillis());
+        assertEquals(20, limiter.getLimit());
+    }
+}
@@ -0,0 +1,106 @@
+package microservices.helper.idempotency.concurrency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+class InFlightKeyTableTest {
+
+    @Test
+    void lookupResult_WhenLookupIsInFlight_ShouldShareItsOutcome() throws InterruptedException {
+        // Arrange
+        InFlightKeyTable table = new InFlightKeyTable(new SimpleMeterRegistry(), true, 4, Duration.ofSeconds(2));
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        Thread first = Thread.ofVirtual().start(() -> table.lookupResult("key", () -> {
+            reads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(storedResult);
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        AtomicReference<Optional<StoredIdempotentOperationResult>> shared = new AtomicReference<>();
+        Thread second = Thread.ofVirtual().start(() -> shared.set(table.lookupResult("key", () -> {
+            reads.incrementAndGet();
+            return Optional.empty();
+        })));
+
+        // Act
+        while (table.getSharedLookupCount() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+        first.join();
+        second.join();
+
+        // Assert
+        assertEquals(1, reads.get());
+        assertSame(storedResult, shared.get().orElseThrow());
+    }
+
+    @Test
+    void getLocalLock_WhenHeldAndReleased_ShouldOnlyAnswerWhileHeld() {
+        // Arrange
+        InFlightKeyTable table = new InFlightKeyTable(new SimpleMeterRegistry(), true, 4, Duration.ofSeconds(2));
+        IdempotentOperationLockTemp tempLock = newTempLock(Duration.ofMinutes(5));
+        table.holdLock("key", tempLock);
+
+        // Act & Assert
+        assertSame(tempLock, table.getLocalLock("key"));
+        table.release(tempLock.getIdempotencyId());
+        assertNull(table.getLocalLock("key"));
+        assertEquals(0, table.getLocalLockCount());
+        assertEquals(1, table.getLocalLockHitCount());
+    }
+
+    @Test
+    void getLocalLock_WhenMaxLockHoldHasPassed_ShouldNotAnswer() {
+        // Arrange
+        InFlightKeyTable table = new InFlightKeyTable(new SimpleMeterRegistry(), true, 4, Duration.ZERO);
+        table.holdLock("key", newTempLock(Duration.ofMinutes(5)));
+
+        // Act & Assert
+        assertNull(table.getLocalLock("key"));
+    }
+
+    @Test
+    void holdLock_WhenDisabled_ShouldNotTrackKeys() {
+        // Arrange
+        InFlightKeyTable table = new InFlightKeyTable(new SimpleMeterRegistry(), false, 4, Duration.ofSeconds(2));
+
+        // Act
+        table.holdLock("key", newTempLock(Duration.ofMinutes(5)));
+
+        // Assert
+        assertNull(table.getLocalLock("key"));
+        assertFalse(table.isEnabled());
+    }
+
+    private IdempotentOperationLockTemp newTempLock(Duration lockDuration) {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(UUID.randomUUID().toString());
+        tempLock.setLockedAt(Instant.now());
+        tempLock.setExpiredAt(Instant.now().plus(lockDuration));
+        return tempLock;
+    }
+}
@@ -0,0 +1,114 @@
+package microservices.helper.idempotency.concurrency;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+
+@ExtendWith(MockitoExtension.class)
+class MongoConcurrencyLimiterTest {
+
+    @Mock
+    private MethodInvocation invocation;
+
+    @Test
+    void invoke_WhenVirtualThreadsAreDisabled_ShouldNotLimit() throws Throwable {
+        // Arrange
+        MongoConcurrencyLimiter limiter = new MongoConcurrencyLimiter(false, 1, Duration.ofMillis(10));
+        when(invocation.proceed()).thenReturn("result");
+
+        // Act
+        Object result = limiter.invoke(invocation);
+
+        // Assert
+        assertEquals("result", result);
+        assertFalse(limiter.isEnabled());
+    }
+
+    @Test
+    void invoke_WhenPermitIsFree_ShouldProceedAndReleasePermit() throws Throwable {
+        // Arrange
+        MongoConcurrencyLimiter limiter = new MongoConcurrencyLimiter(true, 2, Duration.ofMillis(10));
+        when(invocation.proceed()).thenThrow(new IllegalStateException("Database error"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> limiter.invoke(invocation));
+        assertEquals(2, limiter.getAvailablePermits());
+    }
+
+    @Test
+    void invoke_WhenAllPermitsAreHeld_ShouldRejectAfterTimeout() throws Throwable {
+        // Arrange
+        MongoConcurrencyLimiter limiter = new MongoConcurrencyLimiter(true, 1, Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MethodInvocation slowInvocation = mock(MethodInvocation.class);
+        when(slowInvocation.proceed()).thenAnswer(call -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        when(invocation.getMethod()).thenReturn(Object.class.getMethod("toString"));
+        Thread holder = Thread.ofVirtual().start(() -> {
+            try {
+                limiter.invoke(slowInvocation);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // Act & Assert
+        assertThrows(ServiceOverloadedException.class, () -> limiter.invoke(invocation));
+        assertEquals(1, limiter.getRejectedCount());
+        verify(invocation, never()).proceed();
+
+        release.countDown();
+        holder.join();
+        assertEquals(1, limiter.getAvailablePermits());
+    }
+
+    @Test
+    void invoke_WhenThreadAlreadyHoldsPermit_ShouldReuseIt() throws Throwable {
+        // Arrange
+        MongoConcurrencyLimiter limiter = new MongoConcurrencyLimiter(true, 1, Duration.ofMillis(10));
+        MethodInvocation serviceInvocation = mock(MethodInvocation.class);
+        when(invocation.proceed()).thenReturn("result");
+        when(serviceInvocation.proceed()).thenAnswer(call -> limiter.invoke(invocation));
+
+        // Act
+        Object result = limiter.invoke(serviceInvocation);
+
+        // Assert
+        assertEquals("result", result);
+        assertEquals(0, limiter.getRejectedCount());
+        assertEquals(1, limiter.getAvailablePermits());
+    }
+
+    @Test
+    void invoke_WhenCallReturnsStream_ShouldHoldPermitUntilStreamIsClosed() throws Throwable {
+        // Arrange
+        MongoConcurrencyLimiter limiter = new MongoConcurrencyLimiter(true, 1, Duration.ofMillis(10));
+        when(invocation.proceed()).thenReturn(Stream.of("first", "second"));
+
+        // Act
+        Stream<?> stream = (Stream<?>) limiter.invoke(invocation);
+
+        // Assert
+        assertEquals(0, limiter.getAvailablePermits());
+        assertEquals(2, stream.count());
+        stream.close();
+        assertEquals(1, limiter.getAvailablePermits());
+    }
+}
@@ -0,0 +1,61 @@
+package microservices.helper.idempotency.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.service.IdempotencyService;
+import microservices.helper.idempotency.service.LockExpiryScheduler;
+import microservices.helper.idempotency.store.IdempotencyStore;
+
+/**
+ * The service proxy of the MongoDB permit limiter, with the limiter enabled by
+ * virtual threads.
+ */
+@SpringBootTest(properties = {"idempotent.storage.engine=in-memory", "management.health.mongo.enabled=false",
+        "spring.threads.virtual.enabled=true"})
+class IdempotencyServiceConfigTest {
+
+    @MockitoBean
+    private IdempotencyStore idempotencyStore;
+
+    @MockitoBean
+    private LockExpiryScheduler lockExpiryScheduler;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    @Test
+    void mongoConcurrencyLimiterPostProcessor_WhenApplicationIsReady_ShouldRescheduleRecoveredLocks() {
+        // Arrange
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId("test-lock-id");
+        tempLock.setExpiredAt(Instant.now().plusSeconds(60));
+        when(idempotencyStore.findRecoveredTempLocks()).thenReturn(List.of(tempLock));
+
+        // Act
+        applicationContext.publishEvent(new ApplicationReadyEvent(new SpringApplication(), new String[0], applicationContext, Duration.ZERO));
+
+        // Assert
+        verify(lockExpiryScheduler).schedule(eq("test-lock-id"), any(Runnable.class), eq(tempLock.getExpiredAt()));
+        assertTrue(AopUtils.isCglibProxy(idempotencyService));
+    }
+
+}
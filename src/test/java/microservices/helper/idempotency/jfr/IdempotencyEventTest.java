@@ -0,0 +1,130 @@
+package microservices.helper.idempotency.jfr;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class IdempotencyEventTest {
+
+    private static Configuration bundledConfiguration() throws Exception {
+        try (Reader reader = new InputStreamReader(IdempotencyEventTest.class.getResourceAsStream("/jfr/idempotency.jfc"), StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+
+    private static List<RecordedEvent> record(Map<String, String> settings, Runnable emit) throws Exception {
+        Path file = Files.createTempFile("idempotency", ".jfr");
+        try (Recording recording = new Recording(settings)) {
+            recording.start();
+            emit.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("microservices.helper.idempotency."))
+                    .toList();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void commit_WhenBundledProfileIsUsed_ShouldRecordOnlyEventsOverThreshold() throws Exception {
+        // Arrange
+        Map<String, String> settings = bundledConfiguration().getSettings();
+
+        // Act
+        List<RecordedEvent> events = record(settings, () -> {
+            LockAcquireEvent slow = new LockAcquireEvent();
+            slow.begin();
+            sleep(30);
+            slow.commit("test-service", "test-operation", "slow-key", "OPERATION_LOCKED_SUCCESSFULLY");
+            LockAcquireEvent fast = new LockAcquireEvent();
+            fast.begin();
+            fast.commit("test-service", "test-operation", "fast-key", "OPERATION_LOCKED_SUCCESSFULLY");
+        });
+
+        // Assert
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("microservices.helper.idempotency.LockAcquire", event.getEventType().getName());
+        assertEquals("test-service", event.getString("service"));
+        assertEquals("test-operation", event.getString("operation"));
+        assertEquals("slow-key", event.getString("hashedKey"));
+        assertEquals("OPERATION_LOCKED_SUCCESSFULLY", event.getString("outcome"));
+        assertTrue(event.getDuration().toMillis() >= 30);
+    }
+
+    @Test
+    void record_WhenSlowWorkFollowsEnd_ShouldNotTimeIt() throws Exception {
+        // Arrange
+        Map<String, String> settings = bundledConfiguration().getSettings();
+
+        // Act
+        List<RecordedEvent> events = record(settings, () -> {
+            LockAcquireEvent lockEvent = new LockAcquireEvent();
+            lockEvent.begin();
+            lockEvent.end();
+            sleep(30);
+            lockEvent.record("test-service", "test-operation", "fast-key", "OPERATION_LOCKED_SUCCESSFULLY");
+        });
+
+        // Assert
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void commit_WhenSweepBatchIsCommitted_ShouldRecordItRegardlessOfDuration() throws Exception {
+        // Arrange
+        Map<String, String> settings = bundledConfiguration().getSettings();
+
+        // Act
+        List<RecordedEvent> events = record(settings, () -> {
+            SweepBatchEvent batchEvent = new SweepBatchEvent();
+            batchEvent.begin();
+            batchEvent.commit(3, "SWEPT");
+        });
+
+        // Assert
+        assertEquals(1, events.size());
+        assertEquals(3, events.get(0).getInt("lockCount"));
+        assertEquals("SWEPT", events.get(0).getString("outcome"));
+    }
+
+    @Test
+    void commit_WhenRecordingUsesDefaultProfile_ShouldRecordNothing() throws Exception {
+        // Arrange
+        Map<String, String> settings = Configuration.getConfiguration("default").getSettings();
+
+        // Act
+        List<RecordedEvent> events = record(settings, () -> {
+            CompletionEvent completionEvent = new CompletionEvent();
+            completionEvent.begin();
+            sleep(30);
+            completionEvent.commit("test-service", "test-operation", "slow-key", "SAVED");
+        });
+
+        // Assert
+        assertTrue(events.isEmpty());
+    }
+}
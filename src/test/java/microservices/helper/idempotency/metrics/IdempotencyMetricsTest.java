@@ -0,0 +1,107 @@
+package microservices.helper.idempotency.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.repository.IdempotentOperationLockTempRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationStateRepository;
+import microservices.helper.idempotency.service.LockExpiryScheduler;
+import microservices.helper.idempotency.store.MongoIdempotencyStore;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyMetricsTest {
+
+    @Mock
+    private LockExpiryScheduler lockExpiryScheduler;
+
+    @Mock
+    private IdempotentOperationLockTempRepository idempotentOperationLockTempRepository;
+
+    @Mock
+    private IdempotentOperationStateRepository idempotentOperationStateRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyMetrics idempotencyMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyMetrics = new IdempotencyMetrics(meterRegistry, lockExpiryScheduler,
+                new MongoIdempotencyStore(null, null, null, idempotentOperationLockTempRepository, null, null, null), idempotentOperationStateRepository, "collections", 2, Duration.ofSeconds(10));
+    }
+
+    private double acquireCount(String service, String operation, ExecutionResult executionResult) {
+        return meterRegistry.get("idempotency.acquire")
+                .tags("service", service, "operation", operation, "outcome", executionResult.getValue())
+                .counter().count();
+    }
+
+    @Test
+    void recordAcquire_WhenTaggedOperationLimitIsReached_ShouldRecordLaterOperationsAsOther() {
+        // Act
+        idempotencyMetrics.recordAcquire("service-a", "operation-1", ExecutionResult.SUCCESS);
+        idempotencyMetrics.recordAcquire("service-a", "operation-2", ExecutionResult.SUCCESS);
+        idempotencyMetrics.recordAcquire("service-b", "operation-3", ExecutionResult.SUCCESS);
+        idempotencyMetrics.recordAcquire("service-a", "operation-1", ExecutionResult.OPERATION_ALREADY_LOCKED);
+
+        // Assert
+        assertEquals(1, acquireCount("service-a", "operation-1", ExecutionResult.SUCCESS));
+        assertEquals(1, acquireCount("service-a", "operation-1", ExecutionResult.OPERATION_ALREADY_LOCKED));
+        assertEquals(1, acquireCount("service-a", "operation-2", ExecutionResult.SUCCESS));
+        assertEquals(1, acquireCount(IdempotencyMetrics.OTHER, IdempotencyMetrics.OTHER, ExecutionResult.SUCCESS));
+        assertNull(meterRegistry.find("idempotency.acquire").tag("operation", "operation-3").counter());
+    }
+
+    @Test
+    void recordCompletionFailure_ShouldCountFailedOutcome() {
+        // Act
+        idempotencyMetrics.recordCompletion("service-a", "operation-1", CompletionResult.EXPIRED);
+        idempotencyMetrics.recordCompletionFailure("service-a", "operation-1");
+
+        // Assert
+        assertEquals(1, meterRegistry.get("idempotency.completion")
+                .tags("service", "service-a", "operation", "operation-1", "outcome", "EXPIRED").counter().count());
+        assertEquals(1, meterRegistry.get("idempotency.completion")
+                .tags("service", "service-a", "operation", "operation-1", "outcome", "FAILED").counter().count());
+    }
+
+    @Test
+    void refreshNearExpiryLocks_ShouldPublishTempLockCount() {
+        // Arrange
+        when(idempotentOperationLockTempRepository.countByExpiredAtBefore(any(Instant.class))).thenReturn(42L);
+        when(lockExpiryScheduler.getPendingCount()).thenReturn(7);
+
+        // Act
+        idempotencyMetrics.refreshNearExpiryLocks();
+
+        // Assert
+        assertEquals(42, meterRegistry.get("idempotency.lock.near.expiry").gauge().value());
+        assertEquals(7, meterRegistry.get("idempotency.lock.expiry.pending").gauge().value());
+        verifyNoInteractions(idempotentOperationStateRepository);
+    }
+
+    @Test
+    void recordSweep_ShouldCountSweptLocksAndPublishLagInSeconds() {
+        // Act
+        idempotencyMetrics.recordSweptLocks(1000);
+        idempotencyMetrics.recordSweptLocks(3);
+        idempotencyMetrics.recordSweepLag(Duration.ofMillis(90_500));
+
+        // Assert
+        assertEquals(1003, meterRegistry.get("idempotency.lock.swept").counter().count());
+        assertEquals(90.5, meterRegistry.get("idempotency.lock.sweep.lag").gauge().value());
+    }
+}
@@ -0,0 +1,79 @@
+package microservices.helper.idempotency.migration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotentOperationStateMigrationTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private IdempotentOperationStateMigration idempotentOperationStateMigration;
+
+    @BeforeEach
+    void setUp() {
+        idempotentOperationStateMigration = new IdempotentOperationStateMigration(mongoTemplate, new IdempotencyKeyHasher(KeyHashVersion.V2, false), 2);
+    }
+
+    private static StoredIdempotentOperationResult storedResult(String idempotencyKey) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setService("test-service");
+        storedResult.setOperation("test-operation");
+        storedResult.setIdempotencyKey(idempotencyKey);
+        storedResult.setIdempotentOperationResult("{\"status\":\"SUCCESS\"}");
+        return storedResult;
+    }
+
+    private static BulkWriteResult upserted(int count) {
+        List<BulkWriteUpsert> upserts = Stream.iterate(0, index -> index + 1).limit(count)
+                .map(index -> new BulkWriteUpsert(index, new BsonString("state-" + index)))
+                .toList();
+        return BulkWriteResult.acknowledged(0, 0, 0, 0, upserts, List.of());
+    }
+
+    @Test
+    void migrateStoredResults_WhenSomeKeysWereAlreadyMigrated_ShouldCountOnlyInsertedDocuments() {
+        // Arrange
+        when(mongoTemplate.stream(any(Query.class), eq(StoredIdempotentOperationResult.class)))
+                .thenReturn(Stream.of(storedResult("key-1"), storedResult("key-2"), storedResult("key-3")));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, IdempotentOperationState.class)).thenReturn(bulkOperations);
+        when(bulkOperations.upsert(anyList())).thenReturn(bulkOperations);
+        // The first batch matched one existing state document, the second inserted its only key
+        when(bulkOperations.execute()).thenReturn(upserted(1), upserted(1));
+
+        // Act
+        Long migrated = ReflectionTestUtils.invokeMethod(idempotentOperationStateMigration, "migrateStoredResults");
+
+        // Assert
+        assertEquals(2L, migrated);
+        verify(bulkOperations, times(2)).execute();
+    }
+
+}
@@ -0,0 +1,83 @@
+package microservices.helper.idempotency.migration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+@ExtendWith(MockitoExtension.class)
+class RetentionIndexInitializerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    @InjectMocks
+    private RetentionIndexInitializer retentionIndexInitializer;
+
+    @Test
+    void createTtlIndexes_ShouldCreateExpireAtTtlIndexOnEveryGrowthCollection() {
+        // Arrange
+        when(mongoTemplate.indexOps(any(Class.class))).thenReturn(indexOperations);
+
+        // Act
+        retentionIndexInitializer.createTtlIndexes();
+
+        // Assert
+        ArgumentCaptor<IndexDefinition> indexCaptor = ArgumentCaptor.forClass(IndexDefinition.class);
+        verify(indexOperations, times(4)).createIndex(indexCaptor.capture());
+        for (IndexDefinition index : indexCaptor.getAllValues()) {
+            assertEquals(new Document("expireAt", 1), index.getIndexKeys());
+            assertEquals(0L, index.getIndexOptions().get("expireAfterSeconds"));
+            assertTrue(RetentionIndexInitializer.TTL_INDEXES.containsValue(index.getIndexOptions().getString("name")));
+        }
+    }
+
+    @Test
+    void createTtlIndexes_WhenOneIndexFails_ShouldStillCreateTheOthers() {
+        // Arrange
+        IndexOperations failingIndexOperations = mock(IndexOperations.class);
+        when(mongoTemplate.indexOps(any(Class.class))).thenReturn(indexOperations);
+        when(mongoTemplate.indexOps(IdempotentOperation.class)).thenReturn(failingIndexOperations);
+        when(failingIndexOperations.createIndex(any(Index.class))).thenThrow(new RuntimeException("IndexOptionsConflict"));
+
+        // Act & Assert
+        assertDoesNotThrow(() -> retentionIndexInitializer.createTtlIndexes());
+        verify(indexOperations, times(3)).createIndex(any(Index.class));
+    }
+
+    @Test
+    void ttlIndexes_ShouldMatchSchemaScript() throws Exception {
+        // Arrange
+        String schema = Files.readString(Path.of("schema/idempotency-service-collections.js"));
+
+        // Act & Assert
+        RetentionIndexInitializer.TTL_INDEXES.forEach((entityClass, indexName) -> {
+            String collectionName = entityClass.getAnnotation(org.springframework.data.mongodb.core.mapping.Document.class).collection();
+            Pattern ttlIndex = Pattern.compile("db\\." + collectionName + "\\.createIndex\\(\\s*\\{ \"expireAt\": 1 },\\s*\\{\\s*name: \""
+                    + indexName + "\",\\s*expireAfterSeconds: 0,");
+            assertTrue(ttlIndex.matcher(schema).find(), "Missing TTL index " + indexName + " on " + collectionName);
+        });
+        assertTrue(RetentionIndexInitializer.TTL_INDEXES.containsKey(StoredIdempotentOperationResult.class));
+    }
+}
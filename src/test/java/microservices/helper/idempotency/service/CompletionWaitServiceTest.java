@@ -0,0 +1,199 @@
+package microservices.helper.idempotency.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.completion.CompletionWaiterRegistry;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.FailedIdempotentOperationResultRepository;
+import microservices.helper.idempotency.store.MongoIdempotencyStore;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+@ExtendWith(MockitoExtension.class)
+class CompletionWaitServiceTest {
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private FailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository;
+
+    private final IdempotencyKeyHasher idempotencyKeyHasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+    private CompletionWaiterRegistry completionWaiterRegistry;
+    private CompletionWaitService completionWaitService;
+    private IdempotentOperationResult testInput;
+    private String idempotencyId;
+
+    @BeforeEach
+    void setUp() {
+        completionWaiterRegistry = new CompletionWaiterRegistry(new SimpleMeterRegistry(), 10);
+        completionWaitService = new CompletionWaitService(idempotencyService,
+                new MongoIdempotencyStore(null, null, null, null, failedIdempotentOperationResultRepository, null, null),
+                completionWaiterRegistry, idempotencyKeyHasher, Duration.ofSeconds(30), Duration.ofSeconds(60));
+        testInput = new IdempotentOperationResult();
+        testInput.setService("test-service");
+        testInput.setOperation("test-operation");
+        testInput.setIdempotencyKey("test-key-123");
+        idempotencyId = UUID.randomUUID().toString();
+    }
+
+    private IdempotentOperationResult status(ExecutionResult executionResult, Duration expiresIn) {
+        IdempotentOperationResult status = new IdempotentOperationResult();
+        status.setIdempotencyId(executionResult == ExecutionResult.OPERATION_ALREADY_LOCKED ? idempotencyId : null);
+        status.setService("test-service");
+        status.setOperation("test-operation");
+        status.setIdempotencyKey("test-key-123");
+        status.setExpiredAt(executionResult == ExecutionResult.OPERATION_ALREADY_LOCKED ? Instant.now().plus(expiresIn) : null);
+        status.setExecutionResult(executionResult.getValue());
+        status.setIdempotentOperationResult(executionResult == ExecutionResult.SUCCESS ? "existing-result" : null);
+        return status;
+    }
+
+    private String hashedKey() {
+        return idempotencyKeyHasher.hash("test-service", "test-operation", "test-key-123");
+    }
+
+    @Test
+    void waitForCompletion_WhenOperationIsNotLocked_ShouldReturnStatusWithoutWaiting() {
+        // Arrange
+        when(idempotencyService.getExecutionStatuses(anyList())).thenReturn(List.of(status(ExecutionResult.SUCCESS, null)));
+
+        // Act
+        CompletableFuture<IdempotentOperationResult> result = completionWaitService.waitForCompletion(testInput, null);
+
+        // Assert
+        assertTrue(result.isDone());
+        assertEquals("existing-result", result.join().getIdempotentOperationResult());
+        assertEquals(0, completionWaiterRegistry.getWaiterCount());
+    }
+
+    @Test
+    void waitForCompletion_WhenResultIsSavedWhileWaiting_ShouldReturnStoredResult() throws Exception {
+        // Arrange
+        IdempotentOperationResult locked = status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMinutes(1));
+        when(idempotencyService.getExecutionStatuses(anyList()))
+                .thenReturn(List.of(locked))
+                .thenReturn(List.of(locked))
+                .thenReturn(List.of(status(ExecutionResult.SUCCESS, null)));
+
+        // Act
+        CompletableFuture<IdempotentOperationResult> result = completionWaitService.waitForCompletion(testInput, Duration.ofSeconds(10));
+        assertFalse(result.isDone());
+        completionWaiterRegistry.signal(hashedKey());
+
+        // Assert
+        IdempotentOperationResult output = result.get(5, TimeUnit.SECONDS);
+        assertEquals(ExecutionResult.SUCCESS.getValue(), output.getExecutionResult());
+        assertEquals("existing-result", output.getIdempotentOperationResult());
+        assertEquals(0, completionWaiterRegistry.getWaiterCount());
+    }
+
+    @Test
+    void waitForCompletion_WhenFailureIsSavedOnAnotherNode_ShouldReturnTheFailure() throws Exception {
+        // Arrange
+        IdempotentOperationResult locked = status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMinutes(1));
+        when(idempotencyService.getExecutionStatuses(anyList()))
+                .thenReturn(List.of(locked))
+                .thenReturn(List.of(locked))
+                .thenReturn(List.of(status(ExecutionResult.OPERATION_NOT_FOUND, null)));
+        FailedIdempotentOperationResult failedResult = new FailedIdempotentOperationResult();
+        failedResult.setId(idempotencyId);
+        failedResult.setErrorMessage("card declined");
+        when(failedIdempotentOperationResultRepository.findById(idempotencyId)).thenReturn(Optional.of(failedResult));
+
+        // Act
+        CompletableFuture<IdempotentOperationResult> result = completionWaitService.waitForCompletion(testInput, Duration.ofSeconds(10));
+        completionWaiterRegistry.signal(idempotencyId);
+
+        // Assert
+        IdempotentOperationResult output = result.get(5, TimeUnit.SECONDS);
+        assertEquals(ExecutionResult.OPERATION_FAILED.getValue(), output.getExecutionResult());
+        assertEquals("card declined", output.getIdempotentOperationResult());
+        assertEquals(idempotencyId, output.getIdempotencyId());
+    }
+
+    @Test
+    void waitForCompletion_WhenDeadlinePassesFirst_ShouldReturnAlreadyLocked() throws Exception {
+        // Arrange
+        when(idempotencyService.getExecutionStatuses(anyList()))
+                .thenReturn(List.of(status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMinutes(1))));
+
+        // Act
+        CompletableFuture<IdempotentOperationResult> result = completionWaitService.waitForCompletion(testInput, Duration.ofMillis(50));
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue(), result.get(5, TimeUnit.SECONDS).getExecutionResult());
+        verifyNoInteractions(failedIdempotentOperationResultRepository);
+    }
+
+    @Test
+    void waitForCompletion_WhenLockExpiresFirst_ShouldReturnExpired() throws Exception {
+        // Arrange
+        when(idempotencyService.getExecutionStatuses(anyList()))
+                .thenReturn(List.of(status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMillis(50))));
+
+        // Act
+        CompletableFuture<IdempotentOperationResult> result = completionWaitService.waitForCompletion(testInput, Duration.ofSeconds(10));
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_EXPIRED.getValue(), result.get(5, TimeUnit.SECONDS).getExecutionResult());
+    }
+
+    @Test
+    void waitForCompletion_WhenLeaseIsRenewedWhileWaiting_ShouldWaitPastTheFormerExpiry() throws Exception {
+        // Arrange
+        when(idempotencyService.getExecutionStatuses(anyList()))
+                .thenReturn(List.of(status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMillis(50))))
+                .thenReturn(List.of(status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMinutes(1))));
+
+        // Act
+        CompletableFuture<IdempotentOperationResult> result = completionWaitService.waitForCompletion(testInput, Duration.ofMillis(300));
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue(), result.get(5, TimeUnit.SECONDS).getExecutionResult());
+    }
+
+    @Test
+    void waitForCompletion_WhenTooManyRequestsAreWaiting_ShouldRejectWithoutWaiting() {
+        // Arrange
+        completionWaiterRegistry = new CompletionWaiterRegistry(new SimpleMeterRegistry(), 1);
+        completionWaitService = new CompletionWaitService(idempotencyService,
+                new MongoIdempotencyStore(null, null, null, null, failedIdempotentOperationResultRepository, null, null),
+                completionWaiterRegistry, idempotencyKeyHasher, Duration.ofSeconds(30), Duration.ofSeconds(60));
+        when(idempotencyService.getExecutionStatuses(anyList()))
+                .thenReturn(List.of(status(ExecutionResult.OPERATION_ALREADY_LOCKED, Duration.ofMinutes(1))));
+        completionWaitService.waitForCompletion(testInput, Duration.ofSeconds(10));
+
+        // Act & Assert
+        assertThrows(ServiceOverloadedException.class, () -> completionWaitService.waitForCompletion(testInput, Duration.ofSeconds(10)));
+        assertEquals(1, completionWaiterRegistry.getWaiterCount());
+    }
+
+    @Test
+    void getTimeout_ShouldApplyDefaultAndCap() {
+        assertEquals(Duration.ofSeconds(30), completionWaitService.getTimeout(null));
+        assertEquals(Duration.ofSeconds(5), completionWaitService.getTimeout(Duration.ofSeconds(5)));
+        assertEquals(Duration.ofSeconds(60), completionWaitService.getTimeout(Duration.ofMinutes(10)));
+    }
+}
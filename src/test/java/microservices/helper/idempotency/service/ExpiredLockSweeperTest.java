@@ -0,0 +1,140 @@
+package microservices.helper.idempotency.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.repository.FailedIdempotentOperationResultRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationLockRepository;
+import microservices.helper.idempotency.repository.IdempotentOperationLockTempRepository;
+import microservices.helper.idempotency.store.MongoIdempotencyStore;
+
+@ExtendWith(MockitoExtension.class)
+class ExpiredLockSweeperTest {
+
+    @Mock
+    private IdempotentOperationLockTempRepository idempotentOperationLockTempRepository;
+
+    @Mock
+    private IdempotentOperationLockRepository idempotentOperationLockRepository;
+
+    @Mock
+    private FailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository;
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    @Mock
+    private IdempotencyMetrics idempotencyMetrics;
+
+    private ExpiredLockSweeper expiredLockSweeper;
+
+    @BeforeEach
+    void setUp() {
+        expiredLockSweeper = new ExpiredLockSweeper(new MongoIdempotencyStore(null, idempotentOperationLockRepository, null,
+                        idempotentOperationLockTempRepository, failedIdempotentOperationResultRepository, null, null),
+                idempotentOperationConfigCache, idempotencyMetrics, 2, Duration.ofSeconds(45));
+    }
+
+    private IdempotentOperationLockTemp expiredLock() {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(UUID.randomUUID().toString());
+        tempLock.setLockedAt(Instant.now().minus(Duration.ofMinutes(2)));
+        tempLock.setExpiredAt(Instant.now().minus(Duration.ofMinutes(1)));
+        return tempLock;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cleanLockedOperations_WhenExpiredTempLocksFound_ShouldSettleEachPageInBulk() {
+        // Arrange
+        IdempotentOperationLockTemp lock1 = expiredLock();
+        IdempotentOperationLockTemp lock2 = expiredLock();
+        IdempotentOperationLockTemp lock3 = expiredLock();
+        when(idempotentOperationLockTempRepository.findByExpiredAtBefore(any(Instant.class), any(Pageable.class)))
+                .thenReturn(List.of(lock1, lock2), List.of(lock3));
+        when(idempotentOperationLockTempRepository.findFirstByExpiredAtBeforeOrderByExpiredAtAsc(any(Instant.class)))
+                .thenReturn(Optional.empty());
+
+        // Act
+        assertDoesNotThrow(() -> expiredLockSweeper.cleanLockedOperations());
+
+        // Assert
+        ArgumentCaptor<Pageable> pageCaptor = ArgumentCaptor.forClass(Pageable.class);
+        verify(idempotentOperationLockTempRepository, times(2)).findByExpiredAtBefore(any(Instant.class), pageCaptor.capture());
+        assertEquals(2, pageCaptor.getValue().getPageSize());
+        assertEquals(0, pageCaptor.getValue().getPageNumber());
+
+        ArgumentCaptor<List<FailedIdempotentOperationResult>> failedCaptor = ArgumentCaptor.forClass(List.class);
+        verify(failedIdempotentOperationResultRepository, times(2)).insertAllUnordered(failedCaptor.capture());
+        FailedIdempotentOperationResult failedResult = failedCaptor.getAllValues().get(0).get(0);
+        assertEquals(lock1.getIdempotencyId(), failedResult.getId());
+        assertEquals(lock1.getId(), failedResult.getLockId());
+        assertEquals(ExecutionResult.OPERATION_EXPIRED.getValue(), failedResult.getErrorMessage());
+
+        verify(idempotentOperationLockRepository, times(2)).insertAllUnordered(anyList());
+        verify(idempotentOperationLockTempRepository).deleteAllById(Set.of(lock1.getId(), lock2.getId()));
+        verify(idempotentOperationLockTempRepository).deleteAllById(Set.of(lock3.getId()));
+        verify(idempotencyMetrics).recordSweptLocks(2);
+        verify(idempotencyMetrics).recordSweptLocks(1);
+        verify(idempotencyMetrics).recordSweepLag(Duration.ZERO);
+    }
+
+    @Test
+    void cleanLockedOperations_WhenHistoryInsertFails_ShouldKeepTempLocksForNextRun() {
+        // Arrange
+        IdempotentOperationLockTemp lock = expiredLock();
+        when(idempotentOperationLockTempRepository.findByExpiredAtBefore(any(Instant.class), any(Pageable.class)))
+                .thenReturn(List.of(lock));
+        when(idempotentOperationLockRepository.insertAllUnordered(anyList()))
+                .thenThrow(new RuntimeException("insert failed"));
+        when(idempotentOperationLockTempRepository.findFirstByExpiredAtBeforeOrderByExpiredAtAsc(any(Instant.class)))
+                .thenReturn(Optional.of(lock));
+
+        // Act & Assert
+        assertDoesNotThrow(() -> expiredLockSweeper.cleanLockedOperations());
+
+        verify(idempotentOperationLockTempRepository, never()).deleteAllById(any());
+        verify(idempotencyMetrics, never()).recordSweptLocks(anyInt());
+        verify(idempotencyMetrics).recordSweepLag(argThat(lag -> lag.compareTo(Duration.ofMinutes(1)) >= 0));
+    }
+
+    @Test
+    void cleanLockedOperations_WhenTimeBudgetIsExhausted_ShouldStopBeforeNextPage() {
+        // Arrange
+        expiredLockSweeper = new ExpiredLockSweeper(new MongoIdempotencyStore(null, idempotentOperationLockRepository, null,
+                        idempotentOperationLockTempRepository, failedIdempotentOperationResultRepository, null, null),
+                idempotentOperationConfigCache, idempotencyMetrics, 2, Duration.ZERO);
+        when(idempotentOperationLockTempRepository.findFirstByExpiredAtBeforeOrderByExpiredAtAsc(any(Instant.class)))
+                .thenReturn(Optional.of(expiredLock()));
+
+        // Act
+        expiredLockSweeper.cleanLockedOperations();
+
+        // Assert
+        verify(idempotentOperationLockTempRepository, never()).findByExpiredAtBefore(any(Instant.class), any(Pageable.class));
+        verify(idempotencyMetrics).recordSweepLag(any(Duration.class));
+    }
+}
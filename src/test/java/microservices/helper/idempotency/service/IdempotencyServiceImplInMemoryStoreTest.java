@@ -0,0 +1,125 @@
+package microservices.helper.idempotency.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.audit.IdempotentOperationAuditWriter;
+import microservices.helper.idempotency.cache.CompletedKeyFilter;
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.OffHeapResultCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.completion.CompletionWaiterRegistry;
+import microservices.helper.idempotency.concurrency.AdaptiveConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.InFlightKeyTable;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.store.InMemoryIdempotencyStore;
+import microservices.helper.idempotency.tuning.LockDurationLearner;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+/**
+ * Runs the collections mode service against the in-memory engine instead of
+ * mocked repositories, so the lock, save and replay sequence is exercised end
+ * to end on one store.
+ */
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceImplInMemoryStoreTest {
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    @Mock
+    private StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+
+    @Mock
+    private OffHeapResultCache offHeapResultCache;
+
+    @Mock
+    private CompletionWaiterRegistry completionWaiterRegistry;
+
+    @Mock
+    private CompletedKeyFilter completedKeyFilter;
+
+    @Mock
+    private IdempotentOperationAuditWriter idempotentOperationAuditWriter;
+
+    @Mock
+    private LockExpiryScheduler lockExpiryScheduler;
+
+    @Mock
+    private IdempotencyMetrics idempotencyMetrics;
+
+    @Mock
+    private LockDurationLearner lockDurationLearner;
+
+    @Mock
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+    private InMemoryIdempotencyStore idempotencyStore;
+    private IdempotencyServiceImpl idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyStore = new InMemoryIdempotencyStore(3);
+        idempotencyService = new IdempotencyServiceImpl(idempotencyStore, idempotentOperationConfigCache, storedIdempotentOperationResultCache,
+                offHeapResultCache, completionWaiterRegistry, new InFlightKeyTable(new SimpleMeterRegistry(), true, 4, Duration.ofSeconds(2)),
+                completedKeyFilter, idempotentOperationAuditWriter, lockExpiryScheduler, new IdempotencyKeyHasher(KeyHashVersion.V2, false),
+                idempotencyMetrics, lockDurationLearner, adaptiveConcurrencyLimiter);
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(5));
+    }
+
+    private static IdempotentOperationResult input(String idempotencyKey) {
+        IdempotentOperationResult input = new IdempotentOperationResult();
+        input.setService("test-service");
+        input.setOperation("test-operation");
+        input.setIdempotencyKey(idempotencyKey);
+        return input;
+    }
+
+    @Test
+    void saveIdempotentOperationResult_WhenLockIsHeld_ShouldReplayResultToTheNextRequest() {
+        // Arrange
+        IdempotentOperationResult locked = idempotencyService.getStoredExecutionResultOrLockOperation(input("test-key"));
+        IdempotentOperationResult completion = input("test-key");
+        completion.setLockId(locked.getLockId());
+        completion.setIdempotencyId(locked.getIdempotencyId());
+        completion.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        completion.setIdempotentOperationResult("test-result");
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(completion);
+        IdempotentOperationResult replayed = idempotencyService.getStoredExecutionResultOrLockOperation(input("test-key"));
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), locked.getExecutionResult());
+        assertEquals(ExecutionResult.SUCCESS.getValue(), replayed.getExecutionResult());
+        assertEquals("test-result", replayed.getIdempotentOperationResult());
+        assertFalse(idempotencyStore.existsTempLock(locked.getLockId()));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenKeyIsLocked_ShouldRejectSecondAttempt() {
+        // Arrange
+        idempotencyService.getStoredExecutionResultOrLockOperation(input("test-key"));
+
+        // Act
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultOrLockOperation(input("test-key")));
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED, exception.getExecutionResult());
+    }
+
+}
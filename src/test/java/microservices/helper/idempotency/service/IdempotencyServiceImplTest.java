@@ -6,35 +6,59 @@ import static org.mockito.Mockito.*;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.util.DigestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.audit.IdempotentOperationAuditWriter;
+import microservices.helper.idempotency.cache.CompletedKeyFilter;
 import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.OffHeapCachedResult;
+import microservices.helper.idempotency.cache.OffHeapResultCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.completion.CompletionWaiterRegistry;
+import microservices.helper.idempotency.concurrency.AdaptiveConcurrencyLimiter;
+import microservices.helper.idempotency.concurrency.InFlightKeyTable;
 import microservices.helper.idempotency.entity.FailedIdempotentOperationResult;
 import microservices.helper.idempotency.entity.IdempotentOperation;
 import microservices.helper.idempotency.entity.IdempotentOperationLock;
 import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
 import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.AdmissionPriority;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
 import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.enums.LeaseResult;
+import microservices.helper.idempotency.enums.LifecyclePhase;
 import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.exception.ServiceOverloadedException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseResult;
 import microservices.helper.idempotency.model.IdempotentOperationResult;
 import microservices.helper.idempotency.repository.FailedIdempotentOperationResultRepository;
 import microservices.helper.idempotency.repository.IdempotentOperationLockRepository;
 import microservices.helper.idempotency.repository.IdempotentOperationLockTempRepository;
 import microservices.helper.idempotency.repository.IdempotentOperationRepository;
 import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.store.IdempotencyStore;
+import microservices.helper.idempotency.store.MongoIdempotencyStore;
+import microservices.helper.idempotency.tuning.LockDurationLearner;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
 
 @ExtendWith(MockitoExtension.class)
 class IdempotencyServiceImplTest {
@@ -57,7 +81,39 @@ class IdempotencyServiceImplTest {
     @Mock
     private IdempotentOperationConfigCache idempotentOperationConfigCache;
 
-    @InjectMocks
+    @Mock
+    private StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+
+    @Mock
+    private OffHeapResultCache offHeapResultCache;
+
+    @Mock
+    private CompletionWaiterRegistry completionWaiterRegistry;
+
+    @Spy
+    private InFlightKeyTable inFlightKeyTable = new InFlightKeyTable(new SimpleMeterRegistry(), true, 4, Duration.ofSeconds(2));
+
+    @Mock
+    private CompletedKeyFilter completedKeyFilter;
+
+    @Mock
+    private IdempotentOperationAuditWriter idempotentOperationAuditWriter;
+
+    @Mock
+    private LockExpiryScheduler lockExpiryScheduler;
+
+    @Spy
+    private IdempotencyKeyHasher idempotencyKeyHasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+    @Mock
+    private IdempotencyMetrics idempotencyMetrics;
+
+    @Mock
+    private LockDurationLearner lockDurationLearner;
+
+    @Mock
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
     private IdempotencyServiceImpl idempotencyService;
 
     private IdempotentOperationResult testInput;
@@ -67,6 +123,12 @@ class IdempotencyServiceImplTest {
 
     @BeforeEach
     void setUp() {
+        MongoIdempotencyStore idempotencyStore = new MongoIdempotencyStore(idempotentOperationRepository, idempotentOperationLockRepository,
+                storedIdempotentOperationResultRepository, idempotentOperationLockTempRepository, failedIdempotentOperationResultRepository, null, null);
+        idempotencyService = new IdempotencyServiceImpl(idempotencyStore, idempotentOperationConfigCache, storedIdempotentOperationResultCache,
+                offHeapResultCache, completionWaiterRegistry, inFlightKeyTable, completedKeyFilter, idempotentOperationAuditWriter,
+                lockExpiryScheduler, idempotencyKeyHasher, idempotencyMetrics, lockDurationLearner, adaptiveConcurrencyLimiter);
+
         testInput = new IdempotentOperationResult();
         testInput.setService("test-service");
         testInput.setOperation("test-operation");
@@ -98,7 +160,7 @@ class IdempotencyServiceImplTest {
     }
 
     private String hashedKey(String service, String operation, String idempotencyKey) {
-        return Base64.getEncoder().encodeToString(DigestUtils.md5Digest((service + "-" + operation + "-" + idempotencyKey).getBytes()));
+        return idempotencyKeyHasher.hash(service, operation, idempotencyKey);
     }
 
     @Test
@@ -121,6 +183,96 @@ class IdempotencyServiceImplTest {
         verifyNoInteractions(idempotentOperationLockTempRepository);
     }
 
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultIsInNearCache_ShouldNotReadMongo() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultCache.get(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.of(testStoredResult));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.SUCCESS.getValue(), result.getExecutionResult());
+        assertEquals("existing-result", result.getIdempotentOperationResult());
+
+        verifyNoInteractions(storedIdempotentOperationResultRepository);
+        verifyNoInteractions(idempotentOperationLockTempRepository);
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultFoundInMongo_ShouldFillNearCache() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultRepository.findById(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.of(testStoredResult));
+
+        // Act
+        idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        verify(storedIdempotentOperationResultCache).put(testStoredResult);
+        verify(offHeapResultCache).put(eq(hashedKey("test-service", "test-operation", "test-key-123")), any(IdempotentOperationResult.class));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenKeyIsDefinitelyNotCompleted_ShouldLockWithoutReadingResult() {
+        // Arrange
+        String key = hashedKey("test-service", "test-operation", "test-key-123");
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(completedKeyFilter.isDefinitelyNotCompleted(eq(key), any())).thenReturn(true);
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), result.getExecutionResult());
+        verifyNoInteractions(storedIdempotentOperationResultRepository);
+        verify(idempotentOperationLockTempRepository).insert(any(IdempotentOperationLockTemp.class));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultIsOffHeap_ShouldReturnItWithoutReadingMongo() {
+        // Arrange
+        OffHeapCachedResult offHeapResult = mock(OffHeapCachedResult.class);
+        when(offHeapResult.getExecutionResult()).thenReturn(ExecutionResult.SUCCESS.getValue());
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(offHeapResultCache.get(hashedKey("test-service", "test-operation", "test-key-123"))).thenReturn(Optional.of(offHeapResult));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertSame(offHeapResult, result);
+        verify(idempotentOperationRepository).insert(any(IdempotentOperation.class));
+        verify(idempotencyMetrics).recordAcquire("test-service", "test-operation", ExecutionResult.SUCCESS);
+        verifyNoInteractions(storedIdempotentOperationResultCache, storedIdempotentOperationResultRepository, idempotentOperationLockTempRepository);
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultStoredUnderMd5Key_ShouldReturnItAndCacheUnderNewKey() {
+        // Arrange
+        IdempotencyKeyHasher fallbackLookupHasher = new IdempotencyKeyHasher(KeyHashVersion.V2, true);
+        ReflectionTestUtils.setField(idempotencyService, "idempotencyKeyHasher", fallbackLookupHasher);
+        String newKey = fallbackLookupHasher.hash("test-service", "test-operation", "test-key-123");
+        String md5Key = IdempotencyKeyHasher.hashMd5("test-service", "test-operation", "test-key-123");
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultRepository.findById(newKey)).thenReturn(Optional.empty());
+        when(storedIdempotentOperationResultRepository.findById(md5Key)).thenReturn(Optional.of(testStoredResult));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.SUCCESS.getValue(), result.getExecutionResult());
+        assertEquals("existing-result", result.getIdempotentOperationResult());
+        verify(storedIdempotentOperationResultCache).put(newKey, testStoredResult);
+        verify(idempotentOperationLockTempRepository, never()).insert(any(IdempotentOperationLockTemp.class));
+    }
+
     @Test
     void getStoredExecutionResultOrLockOperation_WhenNoExistingResult_ShouldAcquireLock() {
         // Arrange
@@ -163,6 +315,81 @@ class IdempotencyServiceImplTest {
         assertTrue(exception.getMessage().contains("Operation is already locked by another process"));
     }
 
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenLockIsHeldByThisNode_ShouldThrowWithoutReadingMongo() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultRepository.findById(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.empty());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Act & Assert
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultOrLockOperation(testInput));
+
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED, exception.getExecutionResult());
+        verify(idempotentOperationRepository, times(2)).insert(any(IdempotentOperation.class));
+        verify(storedIdempotentOperationResultRepository).findById(hashedKey("test-service", "test-operation", "test-key-123"));
+        verify(idempotentOperationLockTempRepository).insert(any(IdempotentOperationLockTemp.class));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenLockAlreadyExists_ShouldRecordAlreadyLockedOutcome() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultRepository.findById(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.empty());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        doThrow(new DuplicateKeyException("Lock already exists"))
+                .when(idempotentOperationLockTempRepository).insert(any(IdempotentOperationLockTemp.class));
+
+        // Act
+        assertThrows(IdempotencyException.class, () -> idempotencyService.getStoredExecutionResultOrLockOperation(testInput));
+
+        // Assert
+        verify(idempotencyMetrics).recordAcquire("test-service", "test-operation", ExecutionResult.OPERATION_ALREADY_LOCKED);
+        verify(idempotencyMetrics).recordPhase(eq(LifecyclePhase.RESULT_LOOKUP), eq("test-service"), eq("test-operation"), anyLong());
+        verify(idempotencyMetrics, never()).recordPhase(eq(LifecyclePhase.LOCK_INSERT), anyString(), anyString(), anyLong());
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenLockAcquisitionIsShed_ShouldRejectWithoutInsertingLock() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultRepository.findById(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.empty());
+        doThrow(new ServiceOverloadedException("Concurrency limit reached", Duration.ofSeconds(1)))
+                .when(adaptiveConcurrencyLimiter).admitLockAcquisition();
+
+        // Act
+        assertThrows(ServiceOverloadedException.class, () -> idempotencyService.getStoredExecutionResultOrLockOperation(testInput));
+
+        // Assert
+        verify(adaptiveConcurrencyLimiter).acquire(AdmissionPriority.RESULT_READ);
+        verify(adaptiveConcurrencyLimiter).release();
+        verifyNoInteractions(idempotentOperationLockTempRepository);
+        verify(idempotencyMetrics, never()).recordAcquire(anyString(), anyString(), any(ExecutionResult.class));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultIsInNearCache_ShouldNotBeHeldToAcquisitionShare() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(storedIdempotentOperationResultCache.get(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.of(testStoredResult));
+
+        // Act
+        idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        verify(adaptiveConcurrencyLimiter).acquire(AdmissionPriority.RESULT_READ);
+        verify(adaptiveConcurrencyLimiter, never()).admitLockAcquisition();
+        verify(adaptiveConcurrencyLimiter).release();
+    }
+
     @Test
     void getStoredExecutionResultOrLockOperation_WhenIdempotentOperationCreationFails_ShouldThrowException() {
         // Arrange
@@ -177,6 +404,25 @@ class IdempotencyServiceImplTest {
         assertTrue(exception.getMessage().contains("Failed to create idempotent operation"));
     }
 
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenWriteBehindEnabled_ShouldQueueRecordAndKeepIdempotencyId() {
+        // Arrange
+        when(idempotentOperationAuditWriter.isWriteBehind()).thenReturn(true);
+        when(storedIdempotentOperationResultRepository.findById(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.empty());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        ArgumentCaptor<IdempotentOperation> captor = ArgumentCaptor.forClass(IdempotentOperation.class);
+        verify(idempotentOperationAuditWriter).write(captor.capture());
+        assertEquals(captor.getValue().getId(), result.getIdempotencyId());
+        verify(idempotentOperationRepository, never()).insert(any(IdempotentOperation.class));
+    }
+
     @Test
     void getStoredExecutionResultOrLockOperation_WhenLockAcquisitionFails_ShouldThrowException() {
         // Arrange
@@ -218,6 +464,73 @@ class IdempotencyServiceImplTest {
         verify(idempotentOperationLockRepository).insert(any(IdempotentOperationLock.class));
         verify(storedIdempotentOperationResultRepository).insert(any(StoredIdempotentOperationResult.class));
         verifyNoInteractions(failedIdempotentOperationResultRepository);
+        verify(completionWaiterRegistry).signal(hashedKey("test-service", "test-operation", "test-key-123"));
+        verify(lockDurationLearner).recordExecution(eq(testTempLock.getService()), eq(testTempLock.getOperation()), eq(testTempLock.getLockedAt()), any(Instant.class));
+    }
+
+    @Test
+    void saveIdempotentOperationResult_WhenSuccessfulOperation_ShouldAddKeyToCompletedKeyFilterBeforeInsert() {
+        // Arrange
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(testInput);
+
+        // Assert
+        InOrder inOrder = inOrder(completedKeyFilter, storedIdempotentOperationResultRepository);
+        inOrder.verify(completedKeyFilter).add(hashedKey("test-service", "test-operation", "test-key-123"));
+        inOrder.verify(storedIdempotentOperationResultRepository).insert(any(StoredIdempotentOperationResult.class));
+    }
+
+    @Test
+    void saveIdempotentOperationResult_WhenSuccessfulOperation_ShouldReleaseLocalLock() {
+        // Arrange
+        String key = hashedKey("test-service", "test-operation", "test-key-123");
+        inFlightKeyTable.holdLock(key, testTempLock);
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(testInput);
+
+        // Assert
+        assertNull(inFlightKeyTable.getLocalLock(key));
+    }
+
+    @Test
+    void saveIdempotentOperationResult_WhenOperationHasRetention_ShouldStampExpireAtOnResultAndLockRecord() {
+        // Arrange
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        Instant expireAt = Instant.now().plus(Duration.ofHours(24));
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+        when(idempotentOperationConfigCache.getExpireAt(eq("test-service"), eq("test-operation"), any(Instant.class)))
+                .thenReturn(expireAt);
+        when(storedIdempotentOperationResultRepository.insert(any(StoredIdempotentOperationResult.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(testInput);
+
+        // Assert
+        ArgumentCaptor<StoredIdempotentOperationResult> resultCaptor = ArgumentCaptor.forClass(StoredIdempotentOperationResult.class);
+        verify(storedIdempotentOperationResultRepository).insert(resultCaptor.capture());
+        assertEquals(expireAt, resultCaptor.getValue().getExpireAt());
+        ArgumentCaptor<IdempotentOperationLock> lockCaptor = ArgumentCaptor.forClass(IdempotentOperationLock.class);
+        verify(idempotentOperationLockRepository).insert(lockCaptor.capture());
+        assertEquals(expireAt, lockCaptor.getValue().getExpireAt());
     }
 
     @Test
@@ -263,6 +576,7 @@ class IdempotencyServiceImplTest {
         verifyNoInteractions(idempotentOperationLockRepository);
         verifyNoInteractions(storedIdempotentOperationResultRepository);
         verifyNoInteractions(failedIdempotentOperationResultRepository);
+        verifyNoInteractions(lockDurationLearner);
     }
 
     @Test
@@ -315,6 +629,25 @@ class IdempotencyServiceImplTest {
         verify(storedIdempotentOperationResultRepository).insert(any(StoredIdempotentOperationResult.class));
     }
 
+    @Test
+    void saveIdempotentOperationResult_WhenDuplicateResultExists_ShouldRecordDuplicateOutcome() {
+        // Arrange
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+        when(storedIdempotentOperationResultRepository.insert(any(StoredIdempotentOperationResult.class)))
+                .thenThrow(new DuplicateKeyException("Result already exists"));
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(testInput);
+
+        // Assert
+        verify(idempotencyMetrics).recordCompletion("test-service", "test-operation", CompletionResult.DUPLICATE);
+    }
+
     @Test
     void saveIdempotentOperationResult_WhenSaveSuccessfulResultFails_ShouldThrowException() {
         // Arrange
@@ -335,6 +668,24 @@ class IdempotencyServiceImplTest {
         assertTrue(exception.getMessage().contains("Failed to save operation result"));
     }
 
+    @Test
+    void saveIdempotentOperationResult_WhenResultInsertIsShed_ShouldRejectAsOverloaded() {
+        // Arrange
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+        when(storedIdempotentOperationResultRepository.insert(any(StoredIdempotentOperationResult.class)))
+                .thenThrow(new ServiceOverloadedException("Too many concurrent MongoDB operations, retry later"));
+
+        // Act & Assert
+        assertThrows(ServiceOverloadedException.class, () -> idempotencyService.saveIdempotentOperationResult(testInput));
+
+        verifyNoInteractions(failedIdempotentOperationResultRepository);
+    }
+
     @Test
     void saveIdempotentOperationResult_WhenCleanupTempLockFails_ShouldNotThrowException() {
         // Arrange
@@ -409,6 +760,45 @@ class IdempotencyServiceImplTest {
         assertEquals("payload", saved.getIdempotentOperationResult());
     }
 
+    @Test
+    void saveIdempotentOperationResult_WhenSuccessfulOperation_ShouldFillNearCache() {
+        // Arrange
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(testInput);
+
+        // Assert
+        ArgumentCaptor<StoredIdempotentOperationResult> captor =
+                ArgumentCaptor.forClass(StoredIdempotentOperationResult.class);
+        verify(storedIdempotentOperationResultCache).put(captor.capture());
+        assertEquals(hashedKey("test-service", "test-operation", "test-key-123"), captor.getValue().getId());
+    }
+
+    @Test
+    void saveIdempotentOperationResult_WhenDuplicateResultExists_ShouldNotFillNearCache() {
+        // Arrange
+        testInput.setLockId(testTempLock.getId());
+        testInput.setIdempotencyId(testTempLock.getIdempotencyId());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findById(testInput.getLockId()))
+                .thenReturn(Optional.of(testTempLock));
+        when(storedIdempotentOperationResultRepository.insert(any(StoredIdempotentOperationResult.class)))
+                .thenThrow(new DuplicateKeyException("Result already exists"));
+
+        // Act
+        idempotencyService.saveIdempotentOperationResult(testInput);
+
+        // Assert
+        verify(storedIdempotentOperationResultCache, never()).put(any(StoredIdempotentOperationResult.class));
+    }
+
     @Test
     void saveIdempotentOperationResult_WhenLockInsertFails_ShouldStillSaveResultAndNotThrow() {
         // Arrange
@@ -448,46 +838,365 @@ class IdempotencyServiceImplTest {
         verifyNoInteractions(storedIdempotentOperationResultRepository);
     }
 
+    private IdempotentOperationResult batchItem(String idempotencyKey) {
+        IdempotentOperationResult item = new IdempotentOperationResult();
+        item.setService("test-service");
+        item.setOperation("test-operation");
+        item.setIdempotencyKey(idempotencyKey);
+        return item;
+    }
+
     @Test
-    void cleanLockedOperations_WhenExpiredTempLocksFound_ShouldDeleteAndSaveExpiredFailure() {
+    void getStoredExecutionResultsOrLockOperations_ShouldReturnOneOutcomePerItemInInputOrder() {
         // Arrange
-        IdempotentOperationLockTemp lock1 = new IdempotentOperationLockTemp();
-        lock1.setId(UUID.randomUUID().toString());
-        lock1.setIdempotencyId(UUID.randomUUID().toString());
+        List<IdempotentOperationResult> inputs = List.of(
+                batchItem("test-key-123"), // already completed
+                batchItem("new-key"),      // lock acquired
+                batchItem("locked-key"),   // locked by another process
+                batchItem("new-key"));     // repeated in the same batch
+        when(storedIdempotentOperationResultRepository.findAllById(any()))
+                .thenReturn(List.of(testStoredResult));
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insertAllUnordered(anyList()))
+                .thenReturn(Set.of(1));
 
-        IdempotentOperationLockTemp lock2 = new IdempotentOperationLockTemp();
-        lock2.setId(UUID.randomUUID().toString());
-        lock2.setIdempotencyId(UUID.randomUUID().toString());
+        // Act
+        List<IdempotentOperationResult> results = idempotencyService.getStoredExecutionResultsOrLockOperations(inputs);
 
-        when(idempotentOperationLockTempRepository.findByExpiredAtIsAfter(any(Instant.class)))
-                .thenReturn(List.of(lock1, lock2));
+        // Assert
+        assertEquals(4, results.size());
+        assertEquals(ExecutionResult.SUCCESS.getValue(), results.get(0).getExecutionResult());
+        assertEquals("existing-result", results.get(0).getIdempotentOperationResult());
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), results.get(1).getExecutionResult());
+        assertNotNull(results.get(1).getLockId());
+        assertEquals("new-key", results.get(1).getIdempotencyKey());
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue(), results.get(2).getExecutionResult());
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue(), results.get(3).getExecutionResult());
+
+        verify(idempotentOperationRepository).insertAllUnordered(argThat(operations -> operations.size() == 4));
+        verify(storedIdempotentOperationResultRepository).findAllById(any());
+        verify(idempotentOperationLockTempRepository).insertAllUnordered(argThat(tempLocks -> tempLocks.size() == 2));
+        verify(idempotentOperationLockTempRepository, never()).insert(any(IdempotentOperationLockTemp.class));
+    }
+
+    @Test
+    void getStoredExecutionResultsOrLockOperations_WhenLockInsertFails_ShouldThrowException() {
+        // Arrange
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insertAllUnordered(anyList()))
+                .thenThrow(new RuntimeException("Database error"));
+
+        // Act & Assert
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultsOrLockOperations(List.of(batchItem("new-key"))));
+
+        assertEquals(ExecutionResult.OPERATION_FAILED, exception.getExecutionResult());
+    }
+
+    @Test
+    void getStoredExecutionResultsOrLockOperations_WhenLockInsertFailsPartway_ShouldReleaseWrittenLocks() {
+        // Arrange
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insertAllUnordered(anyList()))
+                .thenThrow(new RuntimeException("Write concern error after a partial insert"));
+        ArgumentCaptor<List<IdempotentOperationLockTemp>> insertedCaptor = ArgumentCaptor.captor();
 
         // Act
-        assertDoesNotThrow(() -> idempotencyService.cleanLockedOperations());
+        assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultsOrLockOperations(List.of(batchItem("new-key"), batchItem("other-key"))));
 
         // Assert
-        verify(idempotentOperationLockTempRepository).deleteById(lock1.getId());
-        verify(idempotentOperationLockTempRepository).deleteById(lock2.getId());
-        verify(failedIdempotentOperationResultRepository, times(2)).insert(any(FailedIdempotentOperationResult.class));
+        verify(idempotentOperationLockTempRepository).insertAllUnordered(insertedCaptor.capture());
+        verify(idempotentOperationLockTempRepository).deleteAllById(Set.of(insertedCaptor.getValue().get(0).getId(), insertedCaptor.getValue().get(1).getId()));
+        verify(lockExpiryScheduler, never()).schedule(anyString(), any(Runnable.class), any(Instant.class));
     }
 
     @Test
-    void cleanLockedOperations_WhenFailedResultInsertThrows_ShouldStillDeleteLocksAndNotThrow() {
+    void getStoredExecutionResultsOrLockOperations_WhenReleasingFailedLocksFails_ShouldScheduleTheirExpiry() {
         // Arrange
-        IdempotentOperationLockTemp lock = new IdempotentOperationLockTemp();
-        lock.setId(UUID.randomUUID().toString());
-        lock.setIdempotencyId(UUID.randomUUID().toString());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insertAllUnordered(anyList()))
+                .thenThrow(new RuntimeException("Write concern error after a partial insert"));
+        doThrow(new RuntimeException("Database error")).when(idempotentOperationLockTempRepository).deleteAllById(any());
 
-        when(idempotentOperationLockTempRepository.findByExpiredAtIsAfter(any(Instant.class)))
-                .thenReturn(List.of(lock));
-        doThrow(new RuntimeException("insert failed"))
-                .when(failedIdempotentOperationResultRepository).insert(any(FailedIdempotentOperationResult.class));
+        // Act
+        assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultsOrLockOperations(List.of(batchItem("new-key"), batchItem("other-key"))));
+
+        // Assert
+        verify(lockExpiryScheduler, times(2)).schedule(anyString(), any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void getExecutionStatuses_ShouldNotTakeLocks() {
+        // Arrange
+        IdempotentOperationLockTemp lockedTempLock = new IdempotentOperationLockTemp();
+        lockedTempLock.setId(UUID.randomUUID().toString());
+        lockedTempLock.setService("test-service");
+        lockedTempLock.setOperation("test-operation");
+        lockedTempLock.setIdempotencyKey("locked-key");
+
+        when(storedIdempotentOperationResultRepository.findAllById(any()))
+                .thenReturn(List.of(testStoredResult));
+        when(idempotentOperationLockTempRepository.findByServiceAndOperationAndIdempotencyKeyIn(eq("test-service"), eq("test-operation"), any()))
+                .thenReturn(List.of(lockedTempLock));
+
+        // Act
+        List<IdempotentOperationResult> results = idempotencyService.getExecutionStatuses(
+                List.of(batchItem("test-key-123"), batchItem("locked-key"), batchItem("unknown-key")));
+
+        // Assert
+        assertEquals(ExecutionResult.SUCCESS.getValue(), results.get(0).getExecutionResult());
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue(), results.get(1).getExecutionResult());
+        assertNull(results.get(1).getLockId());
+        assertEquals(ExecutionResult.OPERATION_NOT_FOUND.getValue(), results.get(2).getExecutionResult());
+
+        verifyNoInteractions(idempotentOperationRepository);
+        verify(idempotentOperationLockTempRepository, never()).insertAllUnordered(anyList());
+    }
+
+    private IdempotentOperationResult completionItem(IdempotentOperationLockTemp tempLock, String executionResult) {
+        IdempotentOperationResult item = batchItem(tempLock.getIdempotencyKey());
+        item.setLockId(tempLock.getId());
+        item.setIdempotencyId(tempLock.getIdempotencyId());
+        item.setExecutionResult(executionResult);
+        item.setIdempotentOperationResult("payload");
+        return item;
+    }
+
+    @Test
+    void saveIdempotentOperationResults_ShouldReportSavedExpiredAndDuplicatePerItem() {
+        // Arrange
+        IdempotentOperationLockTemp failedTempLock = new IdempotentOperationLockTemp();
+        failedTempLock.setId(UUID.randomUUID().toString());
+        failedTempLock.setIdempotencyId(UUID.randomUUID().toString());
+        failedTempLock.setService("test-service");
+        failedTempLock.setOperation("test-operation");
+        failedTempLock.setIdempotencyKey("failed-key");
+
+        IdempotentOperationLockTemp expiredTempLock = new IdempotentOperationLockTemp();
+        expiredTempLock.setId(UUID.randomUUID().toString());
+        expiredTempLock.setIdempotencyId(UUID.randomUUID().toString());
+        expiredTempLock.setService("test-service");
+        expiredTempLock.setOperation("test-operation");
+        expiredTempLock.setIdempotencyKey("expired-key");
+
+        List<IdempotentOperationResult> inputs = List.of(
+                completionItem(testTempLock, ExecutionResult.SUCCESS.getValue()),
+                completionItem(failedTempLock, ExecutionResult.OPERATION_FAILED.getValue()),
+                completionItem(expiredTempLock, ExecutionResult.SUCCESS.getValue()),
+                completionItem(testTempLock, ExecutionResult.SUCCESS.getValue()));
+        when(idempotentOperationLockTempRepository.findAllById(any()))
+                .thenReturn(List.of(testTempLock, failedTempLock));
+
+        // Act
+        List<IdempotentOperationCompletionResult> results = idempotencyService.saveIdempotentOperationResults(inputs);
+
+        // Assert
+        assertEquals(CompletionResult.SAVED.getValue(), results.get(0).getCompletionResult());
+        assertEquals(CompletionResult.SAVED.getValue(), results.get(1).getCompletionResult());
+        assertEquals(CompletionResult.EXPIRED.getValue(), results.get(2).getCompletionResult());
+        assertEquals(CompletionResult.DUPLICATE.getValue(), results.get(3).getCompletionResult());
+
+        verify(idempotentOperationLockTempRepository).deleteAllById(Set.of(testTempLock.getId(), failedTempLock.getId()));
+        verify(idempotentOperationLockRepository).insertAllUnordered(argThat(locks -> locks.size() == 2));
+        verify(storedIdempotentOperationResultRepository).insertAllUnordered(argThat(storedResults -> storedResults.size() == 1));
+        verify(failedIdempotentOperationResultRepository).insertAllUnordered(argThat(failedResults -> failedResults.size() == 1));
+        verify(idempotentOperationLockTempRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void saveIdempotentOperationResults_WhenResultAlreadyStored_ShouldReportDuplicate() {
+        // Arrange
+        when(idempotentOperationLockTempRepository.findAllById(any()))
+                .thenReturn(List.of(testTempLock));
+        when(storedIdempotentOperationResultRepository.insertAllUnordered(anyList()))
+                .thenReturn(Set.of(0));
+
+        // Act
+        List<IdempotentOperationCompletionResult> results = idempotencyService.saveIdempotentOperationResults(
+                List.of(completionItem(testTempLock, ExecutionResult.SUCCESS.getValue())));
+
+        // Assert
+        assertEquals(CompletionResult.DUPLICATE.getValue(), results.get(0).getCompletionResult());
+        verify(storedIdempotentOperationResultCache, never()).put(any(StoredIdempotentOperationResult.class));
+    }
+
+    @Test
+    void saveIdempotentOperationResults_WhenLockIdIsNull_ShouldThrowException() {
+        // Arrange
+        IdempotentOperationResult item = batchItem("test-key-123");
+        item.setIdempotencyId(UUID.randomUUID().toString());
 
         // Act & Assert
-        assertDoesNotThrow(() -> idempotencyService.cleanLockedOperations());
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.saveIdempotentOperationResults(List.of(item)));
+
+        assertTrue(exception.getMessage().contains("Lock Id is required"));
+        verifyNoInteractions(idempotentOperationLockTempRepository);
+    }
+
+    @Test
+    void rescheduleRecoveredLocks_WhenStoreRecoveredLocks_ShouldScheduleTheirExpiry() {
+        // Arrange
+        IdempotencyStore recoveringStore = mock(IdempotencyStore.class);
+        when(recoveringStore.findRecoveredTempLocks()).thenReturn(List.of(testTempLock));
+        IdempotencyServiceImpl recoveringService = new IdempotencyServiceImpl(recoveringStore, idempotentOperationConfigCache,
+                storedIdempotentOperationResultCache, offHeapResultCache, completionWaiterRegistry, inFlightKeyTable, completedKeyFilter,
+                idempotentOperationAuditWriter, lockExpiryScheduler, idempotencyKeyHasher, idempotencyMetrics, lockDurationLearner, adaptiveConcurrencyLimiter);
+
+        // Act
+        recoveringService.rescheduleRecoveredLocks();
 
         // Assert
-        verify(idempotentOperationLockTempRepository).deleteById(lock.getId());
-        verify(failedIdempotentOperationResultRepository).insert(any(FailedIdempotentOperationResult.class));
+        verify(lockExpiryScheduler).schedule(eq(testTempLock.getId()), any(Runnable.class), eq(testTempLock.getExpiredAt()));
+    }
+
+    @Test
+    void rescheduleRecoveredLocks_WhenStoreIsShared_ShouldScheduleNothing() {
+        // Act
+        idempotencyService.rescheduleRecoveredLocks();
+
+        // Assert
+        verifyNoInteractions(lockExpiryScheduler);
+    }
+
+    private IdempotencyServiceImpl serviceWithStore(IdempotencyStore store) {
+        return new IdempotencyServiceImpl(store, idempotentOperationConfigCache, storedIdempotentOperationResultCache, offHeapResultCache,
+                completionWaiterRegistry, inFlightKeyTable, completedKeyFilter, idempotentOperationAuditWriter, lockExpiryScheduler,
+                idempotencyKeyHasher, idempotencyMetrics, lockDurationLearner, adaptiveConcurrencyLimiter);
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenOperationIsDurable_ShouldLookUpAndLockThroughDurableStore() {
+        // Arrange
+        IdempotencyStore defaultStore = mock(IdempotencyStore.class);
+        IdempotencyStore durableStore = mock(IdempotencyStore.class);
+        when(defaultStore.insertOperation(any(IdempotentOperation.class))).thenReturn(testOperation);
+        when(defaultStore.withConsistency(ConsistencyProfile.DURABLE)).thenReturn(durableStore);
+        when(durableStore.findResult(anyString())).thenReturn(Optional.empty());
+        when(idempotentOperationConfigCache.getConsistencyProfile("test-service", "test-operation")).thenReturn(ConsistencyProfile.DURABLE);
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(5));
+
+        // Act
+        IdempotentOperationResult result = serviceWithStore(defaultStore).getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), result.getExecutionResult());
+        verify(durableStore).findResult(hashedKey("test-service", "test-operation", "test-key-123"));
+        verify(durableStore).insertTempLock(any(IdempotentOperationLockTemp.class));
+        verify(defaultStore, never()).findResult(anyString());
+        verify(defaultStore, never()).insertTempLock(any(IdempotentOperationLockTemp.class));
+    }
+
+    @Test
+    void getStoredExecutionResultsOrLockOperations_WhenProfilesDiffer_ShouldUseStrongestProfileForBatch() {
+        // Arrange
+        IdempotentOperationResult other = batchItem("other-key");
+        other.setOperation("other-operation");
+        IdempotencyStore defaultStore = mock(IdempotencyStore.class);
+        IdempotencyStore durableStore = mock(IdempotencyStore.class);
+        when(defaultStore.withConsistency(ConsistencyProfile.DURABLE)).thenReturn(durableStore);
+        when(durableStore.findResults(any())).thenReturn(List.of());
+        when(durableStore.insertTempLocks(anyList())).thenReturn(Set.of());
+        when(idempotentOperationConfigCache.getConsistencyProfile("test-service", "test-operation")).thenReturn(ConsistencyProfile.RELAXED);
+        when(idempotentOperationConfigCache.getConsistencyProfile("test-service", "other-operation")).thenReturn(ConsistencyProfile.DURABLE);
+        when(idempotentOperationConfigCache.getLockDuration(eq("test-service"), anyString())).thenReturn(Duration.ofMinutes(5));
+
+        // Act
+        List<IdempotentOperationResult> results = serviceWithStore(defaultStore).getStoredExecutionResultsOrLockOperations(List.of(batchItem("test-key-123"), other));
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), results.get(0).getExecutionResult());
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), results.get(1).getExecutionResult());
+        verify(durableStore).insertTempLocks(argThat(tempLocks -> tempLocks.size() == 2));
+        verify(defaultStore, never()).withConsistency(ConsistencyProfile.RELAXED);
+        verify(defaultStore, never()).insertTempLocks(anyList());
+    }
+
+    private IdempotentOperationResult leaseItem(String lockId) {
+        IdempotentOperationResult item = batchItem("test-key-123");
+        item.setLockId(lockId);
+        return item;
+    }
+
+    @Test
+    void renewLeases_ShouldRenewHeldLocksAndReportMissingOnesExpired() {
+        // Arrange
+        Instant expiredAt = testTempLock.getExpiredAt();
+        when(idempotentOperationLockTempRepository.findAllById(any())).thenReturn(List.of(testTempLock));
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(10));
+        when(idempotentOperationLockTempRepository.renewAll(anyList())).thenReturn(Set.of());
+
+        // Act
+        List<IdempotentOperationLeaseResult> results = idempotencyService.renewLeases(
+                List.of(leaseItem(testTempLock.getId()), leaseItem(UUID.randomUUID().toString())));
+
+        // Assert
+        assertEquals(LeaseResult.RENEWED.getValue(), results.get(0).getLeaseResult());
+        assertTrue(results.get(0).getExpiredAt().isAfter(expiredAt));
+        assertEquals(testTempLock.getIdempotencyId(), results.get(0).getIdempotencyId());
+        assertEquals(LeaseResult.EXPIRED.getValue(), results.get(1).getLeaseResult());
+        assertNull(results.get(1).getExpiredAt());
+
+        verify(idempotentOperationLockTempRepository).renewAll(argThat(renewals -> renewals.size() == 1
+                && renewals.get(0).lockId().equals(testTempLock.getId()) && renewals.get(0).expiredAt().equals(expiredAt)));
+        verify(lockExpiryScheduler).schedule(eq(testTempLock.getId()), any(Runnable.class), eq(results.get(0).getExpiredAt()));
+        verify(idempotencyMetrics).recordLease("test-service", "test-operation", LeaseResult.RENEWED);
+        verify(idempotencyMetrics).recordLease("test-service", "test-operation", LeaseResult.EXPIRED);
+    }
+
+    @Test
+    void renewLeases_WhenConcurrentHeartbeatRenewedFirst_ShouldReportItsExpiry() {
+        // Arrange
+        IdempotentOperationLockTemp renewedTempLock = new IdempotentOperationLockTemp();
+        renewedTempLock.setId(testTempLock.getId());
+        renewedTempLock.setIdempotencyId(testTempLock.getIdempotencyId());
+        renewedTempLock.setService("test-service");
+        renewedTempLock.setOperation("test-operation");
+        renewedTempLock.setIdempotencyKey("test-key-123");
+        renewedTempLock.setExpiredAt(Instant.now().plus(Duration.ofMinutes(8)));
+        when(idempotentOperationLockTempRepository.findAllById(any()))
+                .thenReturn(List.of(testTempLock))
+                .thenReturn(List.of(renewedTempLock));
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(10));
+        when(idempotentOperationLockTempRepository.renewAll(anyList())).thenReturn(Set.of(0));
+
+        // Act
+        List<IdempotentOperationLeaseResult> results = idempotencyService.renewLeases(List.of(leaseItem(testTempLock.getId())));
+
+        // Assert
+        assertEquals(LeaseResult.RENEWED.getValue(), results.get(0).getLeaseResult());
+        assertEquals(renewedTempLock.getExpiredAt(), results.get(0).getExpiredAt());
+        verify(lockExpiryScheduler, never()).schedule(anyString(), any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void renewLeases_WhenLockIsPastItsExpiry_ShouldReportExpiredWithoutWriting() {
+        // Arrange
+        testTempLock.setExpiredAt(Instant.now().minusSeconds(1));
+        when(idempotentOperationLockTempRepository.findAllById(any())).thenReturn(List.of(testTempLock));
+
+        // Act
+        List<IdempotentOperationLeaseResult> results = idempotencyService.renewLeases(List.of(leaseItem(testTempLock.getId())));
+
+        // Assert
+        assertEquals(LeaseResult.EXPIRED.getValue(), results.get(0).getLeaseResult());
+        verify(idempotentOperationLockTempRepository, never()).renewAll(anyList());
+        verifyNoInteractions(lockExpiryScheduler);
+    }
+
+    @Test
+    void renewLeases_WhenLockIdIsNull_ShouldThrowException() {
+        // Act & Assert
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.renewLeases(List.of(batchItem("test-key-123"))));
+
+        assertTrue(exception.getMessage().contains("Lock Id is required"));
+        verifyNoInteractions(idempotentOperationLockTempRepository);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package microservices.helper.idempotency.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationLock;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.reactive.ReactiveFailedIdempotentOperationResultRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveIdempotentOperationLockRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveIdempotentOperationLockTempRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveIdempotentOperationRepository;
+import microservices.helper.idempotency.repository.reactive.ReactiveStoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveIdempotencyServiceImplTest {
+
+    @Mock
+    private ReactiveIdempotentOperationRepository idempotentOperationRepository;
+
+    @Mock
+    private ReactiveIdempotentOperationLockRepository idempotentOperationLockRepository;
+
+    @Mock
+    private ReactiveStoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository;
+
+    @Mock
+    private ReactiveIdempotentOperationLockTempRepository idempotentOperationLockTempRepository;
+
+    @Mock
+    private ReactiveFailedIdempotentOperationResultRepository failedIdempotentOperationResultRepository;
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    @Mock
+    private StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+
+    @Mock
+    private IdempotencyMetrics idempotencyMetrics;
+
+    private ReactiveIdempotencyServiceImpl idempotencyService;
+
+    private IdempotentOperationResult testInput;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new ReactiveIdempotencyServiceImpl(idempotentOperationRepository, idempotentOperationLockRepository,
+                storedIdempotentOperationResultRepository, idempotentOperationLockTempRepository, failedIdempotentOperationResultRepository,
+                idempotentOperationConfigCache, storedIdempotentOperationResultCache, 4, new IdempotencyKeyHasher(KeyHashVersion.V2, false), idempotencyMetrics);
+
+        testInput = new IdempotentOperationResult();
+        testInput.setService("test-service");
+        testInput.setOperation("test-operation");
+        testInput.setIdempotencyKey("test-key-123");
+    }
+
+    private IdempotentOperationLockTemp tempLock(String lockId) {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(lockId);
+        tempLock.setIdempotencyId(UUID.randomUUID().toString());
+        tempLock.setService("test-service");
+        tempLock.setOperation("test-operation");
+        tempLock.setIdempotencyKey("test-key-123");
+        tempLock.setLockedAt(Instant.now());
+        tempLock.setExpiredAt(Instant.now().plus(Duration.ofMinutes(5)));
+        return tempLock;
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenNoResultExists_ShouldAcquireLock() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(storedIdempotentOperationResultCache.get(anyString())).thenReturn(Optional.empty());
+        when(storedIdempotentOperationResultRepository.findById(anyString())).thenReturn(Mono.empty());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insert(any(IdempotentOperationLockTemp.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput).block();
+
+        // Assert
+        assertNotNull(result);
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), result.getExecutionResult());
+        assertNotNull(result.getLockId());
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenLockExists_ShouldFailWithAlreadyLocked() {
+        // Arrange
+        when(idempotentOperationRepository.insert(any(IdempotentOperation.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(storedIdempotentOperationResultCache.get(anyString())).thenReturn(Optional.empty());
+        when(storedIdempotentOperationResultRepository.findById(anyString())).thenReturn(Mono.empty());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insert(any(IdempotentOperationLockTemp.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("Lock already exists")));
+
+        // Act & Assert
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultOrLockOperation(testInput).block());
+
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED, exception.getExecutionResult());
+    }
+
+    @Test
+    void getStoredExecutionResultsOrLockOperations_WhenKeyIsRepeated_ShouldLockOnlyFirstOccurrence() {
+        // Arrange
+        when(idempotentOperationRepository.insert(anyList())).thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(0)));
+        when(storedIdempotentOperationResultCache.get(anyString())).thenReturn(Optional.empty());
+        when(storedIdempotentOperationResultRepository.findAllById(anySet())).thenReturn(Flux.empty());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationLockTempRepository.insert(any(IdempotentOperationLockTemp.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        // Act
+        List<IdempotentOperationResult> results = idempotencyService.getStoredExecutionResultsOrLockOperations(List.of(testInput, testInput)).block();
+
+        // Assert
+        assertNotNull(results);
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), results.get(0).getExecutionResult());
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED.getValue(), results.get(1).getExecutionResult());
+        verify(idempotentOperationLockTempRepository, times(1)).insert(any(IdempotentOperationLockTemp.class));
+    }
+
+    @Test
+    void saveIdempotentOperationResults_WhenOneLockIsMissing_ShouldReportExpiredAndSaveTheOther() {
+        // Arrange
+        String lockId = UUID.randomUUID().toString();
+        IdempotentOperationResult saved = new IdempotentOperationResult();
+        saved.setService("test-service");
+        saved.setOperation("test-operation");
+        saved.setIdempotencyKey("test-key-123");
+        saved.setLockId(lockId);
+        saved.setIdempotencyId(UUID.randomUUID().toString());
+        saved.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        saved.setIdempotentOperationResult("payload");
+
+        IdempotentOperationResult expired = new IdempotentOperationResult();
+        expired.setService("test-service");
+        expired.setOperation("test-operation");
+        expired.setIdempotencyKey("test-key-456");
+        expired.setLockId(UUID.randomUUID().toString());
+        expired.setIdempotencyId(UUID.randomUUID().toString());
+        expired.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        when(idempotentOperationLockTempRepository.findAllById(anySet())).thenReturn(Flux.just(tempLock(lockId)));
+        when(idempotentOperationLockTempRepository.deleteAllById(anySet())).thenReturn(Mono.empty());
+        when(idempotentOperationLockRepository.insert(any(IdempotentOperationLock.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(storedIdempotentOperationResultRepository.insert(any(StoredIdempotentOperationResult.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        // Act
+        List<IdempotentOperationCompletionResult> results = idempotencyService.saveIdempotentOperationResults(List.of(saved, expired)).block();
+
+        // Assert
+        assertNotNull(results);
+        assertEquals(CompletionResult.SAVED.getValue(), results.get(0).getCompletionResult());
+        assertEquals(CompletionResult.EXPIRED.getValue(), results.get(1).getCompletionResult());
+        verify(storedIdempotentOperationResultCache).put(any(StoredIdempotentOperationResult.class));
+    }
+}
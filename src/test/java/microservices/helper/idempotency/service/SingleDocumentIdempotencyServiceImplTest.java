@@ -0,0 +1,278 @@
+package microservices.helper.idempotency.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.cache.StoredIdempotentOperationResultCache;
+import microservices.helper.idempotency.entity.IdempotentOperationState;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.CompletionResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.enums.KeyHashVersion;
+import microservices.helper.idempotency.enums.LeaseResult;
+import microservices.helper.idempotency.enums.OperationState;
+import microservices.helper.idempotency.exception.IdempotencyException;
+import microservices.helper.idempotency.metrics.IdempotencyMetrics;
+import microservices.helper.idempotency.model.IdempotentOperationCompletionResult;
+import microservices.helper.idempotency.model.IdempotentOperationLeaseResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.repository.IdempotentOperationStateRepository;
+import microservices.helper.idempotency.repository.StoredIdempotentOperationResultRepository;
+import microservices.helper.idempotency.util.IdempotencyKeyHasher;
+
+@ExtendWith(MockitoExtension.class)
+class SingleDocumentIdempotencyServiceImplTest {
+
+    @Mock
+    private IdempotentOperationStateRepository idempotentOperationStateRepository;
+
+    @Mock
+    private StoredIdempotentOperationResultRepository storedIdempotentOperationResultRepository;
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    @Mock
+    private StoredIdempotentOperationResultCache storedIdempotentOperationResultCache;
+
+    @Mock
+    private LockExpiryScheduler lockExpiryScheduler;
+
+    @Mock
+    private IdempotencyMetrics idempotencyMetrics;
+
+    private final IdempotencyKeyHasher idempotencyKeyHasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+    private SingleDocumentIdempotencyServiceImpl idempotencyService;
+
+    private IdempotentOperationResult testInput;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new SingleDocumentIdempotencyServiceImpl(idempotentOperationStateRepository,
+                storedIdempotentOperationResultRepository, idempotentOperationConfigCache, storedIdempotentOperationResultCache, lockExpiryScheduler, idempotencyKeyHasher, idempotencyMetrics, false);
+
+        testInput = new IdempotentOperationResult();
+        testInput.setService("test-service");
+        testInput.setOperation("test-operation");
+        testInput.setIdempotencyKey("test-key-123");
+    }
+
+    private String hashedKey(String service, String operation, String idempotencyKey) {
+        return idempotencyKeyHasher.hash(service, operation, idempotencyKey);
+    }
+
+    private IdempotentOperationState state(OperationState operationState, String lockId) {
+        IdempotentOperationState state = new IdempotentOperationState();
+        state.setId(hashedKey("test-service", "test-operation", "test-key-123"));
+        state.setService("test-service");
+        state.setOperation("test-operation");
+        state.setIdempotencyKey("test-key-123");
+        state.setState(operationState);
+        state.setLockId(lockId);
+        state.setIdempotencyId(UUID.randomUUID().toString());
+        state.setLockedAt(Instant.now());
+        state.setExpiredAt(Instant.now().plus(Duration.ofMinutes(5)));
+        return state;
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenLockIsFree_ShouldReturnFreshLock() {
+        // Arrange
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationStateRepository.acquire(any(IdempotentOperationState.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), result.getExecutionResult());
+        assertNotNull(result.getLockId());
+        assertNotNull(result.getIdempotencyId());
+        verify(idempotentOperationStateRepository).acquire(argThat(candidate ->
+                hashedKey("test-service", "test-operation", "test-key-123").equals(candidate.getId())));
+        verify(lockExpiryScheduler).schedule(eq(result.getLockId()), any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void getStoredExecutionResultsOrLockOperations_WhenLaterItemFails_ShouldKeepEarlierLocksAndReportFailure() {
+        // Arrange
+        IdempotentOperationResult failingInput = new IdempotentOperationResult();
+        failingInput.setService("test-service");
+        failingInput.setOperation("test-operation");
+        failingInput.setIdempotencyKey("test-key-456");
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationStateRepository.acquire(any(IdempotentOperationState.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(new RuntimeException("Database error"));
+
+        // Act
+        List<IdempotentOperationResult> results = idempotencyService.getStoredExecutionResultsOrLockOperations(List.of(testInput, failingInput));
+
+        // Assert
+        assertEquals(2, results.size());
+        assertEquals(ExecutionResult.OPERATION_LOCKED_SUCCESSFULLY.getValue(), results.get(0).getExecutionResult());
+        assertNotNull(results.get(0).getLockId());
+        assertEquals(ExecutionResult.OPERATION_FAILED.getValue(), results.get(1).getExecutionResult());
+        assertEquals("test-key-456", results.get(1).getIdempotencyKey());
+        verify(lockExpiryScheduler).schedule(eq(results.get(0).getLockId()), any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenAlreadySucceeded_ShouldReturnStoredResult() {
+        // Arrange
+        IdempotentOperationState succeeded = state(OperationState.SUCCEEDED, UUID.randomUUID().toString());
+        succeeded.setIdempotentOperationResult("existing-result");
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationStateRepository.acquire(any(IdempotentOperationState.class))).thenReturn(succeeded);
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.SUCCESS.getValue(), result.getExecutionResult());
+        assertEquals("existing-result", result.getIdempotentOperationResult());
+        verify(storedIdempotentOperationResultCache).put(any(StoredIdempotentOperationResult.class));
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenLockedByAnotherProcess_ShouldThrowException() {
+        // Arrange
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(5));
+        when(idempotentOperationStateRepository.acquire(any(IdempotentOperationState.class)))
+                .thenReturn(state(OperationState.LOCKED, UUID.randomUUID().toString()));
+
+        // Act & Assert
+        IdempotencyException exception = assertThrows(IdempotencyException.class,
+                () -> idempotencyService.getStoredExecutionResultOrLockOperation(testInput));
+
+        assertEquals(ExecutionResult.OPERATION_ALREADY_LOCKED, exception.getExecutionResult());
+    }
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultIsInNearCache_ShouldNotTouchMongo() {
+        // Arrange
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setIdempotentOperationResult("existing-result");
+        when(storedIdempotentOperationResultCache.get(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.of(storedResult));
+
+        // Act
+        IdempotentOperationResult result = idempotencyService.getStoredExecutionResultOrLockOperation(testInput);
+
+        // Assert
+        assertEquals(ExecutionResult.SUCCESS.getValue(), result.getExecutionResult());
+        verifyNoInteractions(idempotentOperationStateRepository);
+    }
+
+    @Test
+    void saveIdempotentOperationResult_WhenLockIsHeld_ShouldCompleteWithOneConditionalUpdate() {
+        // Arrange
+        testInput.setLockId(UUID.randomUUID().toString());
+        testInput.setIdempotencyId(UUID.randomUUID().toString());
+        testInput.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+        testInput.setIdempotentOperationResult("payload");
+        when(idempotentOperationStateRepository.complete(hashedKey("test-service", "test-operation", "test-key-123"),
+                testInput.getLockId(), OperationState.SUCCEEDED, "payload", null)).thenReturn(true);
+
+        // Act
+        assertDoesNotThrow(() -> idempotencyService.saveIdempotentOperationResult(testInput));
+
+        // Assert
+        verify(storedIdempotentOperationResultCache).put(any(StoredIdempotentOperationResult.class));
+        verify(idempotentOperationStateRepository, never()).findById(anyString());
+        verify(lockExpiryScheduler).cancel(testInput.getLockId());
+    }
+
+    @Test
+    void renewLeases_ShouldRenewHeldLocksAndReportExpiredOnes() {
+        // Arrange
+        IdempotentOperationState renewed = state(OperationState.LOCKED, UUID.randomUUID().toString());
+        renewed.setExpiredAt(Instant.now().plus(Duration.ofMinutes(10)));
+        IdempotentOperationResult held = new IdempotentOperationResult();
+        held.setService("test-service");
+        held.setOperation("test-operation");
+        held.setIdempotencyKey("test-key-123");
+        held.setLockId(renewed.getLockId());
+        testInput.setLockId(UUID.randomUUID().toString());
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation"))
+                .thenReturn(Duration.ofMinutes(10));
+        when(idempotentOperationStateRepository.renew(eq(renewed.getId()), eq(renewed.getLockId()), any(Instant.class), any(Instant.class)))
+                .thenReturn(renewed);
+
+        // Act
+        List<IdempotentOperationLeaseResult> results = idempotencyService.renewLeases(List.of(held, testInput));
+
+        // Assert
+        assertEquals(LeaseResult.RENEWED.getValue(), results.get(0).getLeaseResult());
+        assertEquals(renewed.getExpiredAt(), results.get(0).getExpiredAt());
+        assertEquals(LeaseResult.EXPIRED.getValue(), results.get(1).getLeaseResult());
+        assertNull(results.get(1).getExpiredAt());
+        verify(lockExpiryScheduler).schedule(eq(renewed.getLockId()), any(Runnable.class), eq(renewed.getExpiredAt()));
+        verify(lockExpiryScheduler, never()).schedule(eq(testInput.getLockId()), any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void saveIdempotentOperationResults_WhenLockExpiredOrAlreadyCompleted_ShouldReportPerItem() {
+        // Arrange
+        String completedLockId = UUID.randomUUID().toString();
+        IdempotentOperationResult completed = new IdempotentOperationResult();
+        completed.setService("test-service");
+        completed.setOperation("test-operation");
+        completed.setIdempotencyKey("test-key-123");
+        completed.setLockId(completedLockId);
+        completed.setIdempotencyId(UUID.randomUUID().toString());
+        completed.setExecutionResult(ExecutionResult.OPERATION_FAILED.getValue());
+        completed.setIdempotentOperationResult("error");
+
+        when(idempotentOperationStateRepository.complete(anyString(), anyString(), any(OperationState.class), any(), any()))
+                .thenReturn(false);
+        when(idempotentOperationStateRepository.findById(hashedKey("test-service", "test-operation", "test-key-123")))
+                .thenReturn(Optional.of(state(OperationState.FAILED, completedLockId)));
+
+        IdempotentOperationResult expired = new IdempotentOperationResult();
+        expired.setService("test-service");
+        expired.setOperation("test-operation");
+        expired.setIdempotencyKey("test-key-123");
+        expired.setLockId(UUID.randomUUID().toString());
+        expired.setIdempotencyId(UUID.randomUUID().toString());
+        expired.setExecutionResult(ExecutionResult.SUCCESS.getValue());
+
+        // Act
+        List<IdempotentOperationCompletionResult> results = idempotencyService.saveIdempotentOperationResults(List.of(completed, expired));
+
+        // Assert
+        assertEquals(CompletionResult.DUPLICATE.getValue(), results.get(0).getCompletionResult());
+        assertEquals(CompletionResult.EXPIRED.getValue(), results.get(1).getCompletionResult());
+        verifyNoInteractions(storedIdempotentOperationResultCache);
+    }
+
+    @Test
+    void expireLockedOperations_ShouldExpireAllOverdueLocksInOneUpdate() {
+        // Arrange
+        when(idempotentOperationStateRepository.expireAll(any(Instant.class))).thenReturn(3L);
+
+        // Act & Assert
+        assertDoesNotThrow(() -> idempotencyService.expireLockedOperations());
+        verify(idempotentOperationStateRepository).expireAll(any(Instant.class));
+    }
+}
@@ -0,0 +1,116 @@
+package microservices.helper.idempotency.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ConsistencyProfile;
+
+@ExtendWith(MockitoExtension.class)
+class ConsistentMongoIdempotencyStoreTest {
+
+    @Mock
+    private IdempotencyStore defaults;
+
+    @Mock
+    private MongoConsistencyProfiles mongoConsistencyProfiles;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        when(mongoConsistencyProfiles.execute(anyString(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+    }
+
+    private ConsistentMongoIdempotencyStore store(ConsistencyProfile consistencyProfile) {
+        when(mongoConsistencyProfiles.getMongoTemplate(consistencyProfile)).thenReturn(mongoTemplate);
+        return new ConsistentMongoIdempotencyStore(defaults, mongoConsistencyProfiles, consistencyProfile);
+    }
+
+    private static StoredIdempotentOperationResult storedResult(String id) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(id);
+        return storedResult;
+    }
+
+    @Test
+    void findResult_WhenSecondaryMisses_ShouldConfirmOnPrimary() {
+        // Arrange
+        ConsistentMongoIdempotencyStore store = store(ConsistencyProfile.RELAXED);
+        // The lagging secondary has not replicated the result yet
+        when(mongoTemplate.findOne(any(Query.class), eq(StoredIdempotentOperationResult.class)))
+                .thenReturn(null)
+                .thenReturn(storedResult("result-1"));
+
+        // Act
+        Optional<StoredIdempotentOperationResult> result = store.findResult("result-1");
+
+        // Assert
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).findOne(queries.capture(), eq(StoredIdempotentOperationResult.class));
+        assertTrue(result.isPresent());
+        assertEquals(ReadPreference.secondaryPreferred(), queries.getAllValues().get(0).getReadPreference());
+        assertEquals(ReadPreference.primary(), queries.getAllValues().get(1).getReadPreference());
+        assertEquals(ReadConcern.LOCAL, queries.getAllValues().get(1).getReadConcern());
+    }
+
+    @Test
+    void findResult_WhenDurableMisses_ShouldReadOnlyOnce() {
+        // Arrange
+        ConsistentMongoIdempotencyStore store = store(ConsistencyProfile.DURABLE);
+
+        // Act
+        Optional<StoredIdempotentOperationResult> result = store.findResult("result-1");
+
+        // Assert
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findOne(query.capture(), eq(StoredIdempotentOperationResult.class));
+        assertTrue(result.isEmpty());
+        assertEquals(ReadPreference.primary(), query.getValue().getReadPreference());
+        assertEquals(ReadConcern.LOCAL, query.getValue().getReadConcern());
+    }
+
+    @Test
+    void findResults_WhenSecondaryMissesSomeIds_ShouldReadOnlyThoseOnPrimary() {
+        // Arrange
+        ConsistentMongoIdempotencyStore store = store(ConsistencyProfile.RELAXED);
+        when(mongoTemplate.find(any(Query.class), eq(StoredIdempotentOperationResult.class)))
+                .thenReturn(List.of(storedResult("result-1")))
+                .thenReturn(List.of(storedResult("result-2")));
+
+        // Act
+        List<StoredIdempotentOperationResult> results = store.findResults(List.of("result-1", "result-2"));
+
+        // Assert
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(StoredIdempotentOperationResult.class));
+        assertEquals(2, results.size());
+        Query primaryQuery = queries.getAllValues().get(1);
+        assertEquals(ReadPreference.primary(), primaryQuery.getReadPreference());
+        assertEquals(ReadConcern.LOCAL, primaryQuery.getReadConcern());
+        assertEquals(Set.of("result-2"), new HashSet<>((Collection<?>) primaryQuery.getQueryObject().get("_id", Document.class).get("$in")));
+    }
+
+}
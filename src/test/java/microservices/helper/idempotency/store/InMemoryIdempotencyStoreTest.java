@@ -0,0 +1,291 @@
+package microservices.helper.idempotency.store;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import microservices.helper.idempotency.entity.IdempotentOperation;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+
+class InMemoryIdempotencyStoreTest {
+
+    private InMemoryIdempotencyStore idempotencyStore;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyStore = new InMemoryIdempotencyStore(100000);
+    }
+
+    private IdempotentOperationLockTemp tempLock(String idempotencyKey, Instant expiredAt) {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(UUID.randomUUID().toString());
+        tempLock.setService("test-service");
+        tempLock.setOperation("test-operation");
+        tempLock.setIdempotencyKey(idempotencyKey);
+        tempLock.setLockedAt(Instant.now());
+        tempLock.setExpiredAt(expiredAt);
+        return tempLock;
+    }
+
+    private StoredIdempotentOperationResult storedResult(String id, String idempotencyKey, Instant expireAt) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(id);
+        storedResult.setService("test-service");
+        storedResult.setOperation("test-operation");
+        storedResult.setIdempotencyKey(idempotencyKey);
+        storedResult.setIdempotentOperationResult("result");
+        storedResult.setExpireAt(expireAt);
+        return storedResult;
+    }
+
+    @Test
+    void insertTempLock_WhenManyThreadsLockTheSameKey_ShouldLetExactlyOneWin() throws InterruptedException {
+        // Arrange
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            IdempotentOperationLockTemp tempLock = tempLock("test-key", Instant.now().plus(Duration.ofMinutes(1)));
+            workers.add(Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                    idempotencyStore.insertTempLock(tempLock);
+                    acquired.incrementAndGet();
+                } catch (DuplicateKeyException e) {
+                    duplicates.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        // Act
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Assert
+        assertEquals(1, acquired.get());
+        assertEquals(threads - 1, duplicates.get());
+        assertEquals(1, idempotencyStore.findTempLocks("test-service", "test-operation", List.of("test-key")).size());
+    }
+
+    @Test
+    void deleteTempLock_WhenLockIsReleased_ShouldFreeTheKey() {
+        // Arrange
+        IdempotentOperationLockTemp first = tempLock("test-key", Instant.now().plus(Duration.ofMinutes(1)));
+        idempotencyStore.insertTempLock(first);
+
+        // Act
+        idempotencyStore.deleteTempLock(first.getId());
+
+        // Assert
+        assertFalse(idempotencyStore.existsTempLock(first.getId()));
+        IdempotentOperationLockTemp second = tempLock("test-key", Instant.now().plus(Duration.ofMinutes(1)));
+        assertDoesNotThrow(() -> idempotencyStore.insertTempLock(second));
+        assertEquals(second, idempotencyStore.findTempLock(second.getId()).orElseThrow());
+    }
+
+    @Test
+    void insertTempLocks_WhenSomeKeysAreLocked_ShouldReportTheirPositionsAndInsertTheRest() {
+        // Arrange
+        idempotencyStore.insertTempLock(tempLock("key-1", Instant.now().plus(Duration.ofMinutes(1))));
+        List<IdempotentOperationLockTemp> tempLocks = List.of(
+                tempLock("key-0", Instant.now().plus(Duration.ofMinutes(1))),
+                tempLock("key-1", Instant.now().plus(Duration.ofMinutes(1))),
+                tempLock("key-0", Instant.now().plus(Duration.ofMinutes(1))),
+                tempLock("key-2", Instant.now().plus(Duration.ofMinutes(1))));
+
+        // Act
+        Set<Integer> duplicatePositions = idempotencyStore.insertTempLocks(tempLocks);
+
+        // Assert
+        assertEquals(Set.of(1, 2), duplicatePositions);
+        assertTrue(idempotencyStore.existsTempLock(tempLocks.get(0).getId()));
+        assertTrue(idempotencyStore.existsTempLock(tempLocks.get(3).getId()));
+        assertFalse(idempotencyStore.existsTempLock(tempLocks.get(2).getId()));
+    }
+
+    @Test
+    void findExpiredTempLocks_ShouldReturnOnlyExpiredLocksOldestFirst() {
+        // Arrange
+        Instant now = Instant.now();
+        IdempotentOperationLockTemp oldest = tempLock("key-0", now.minus(Duration.ofMinutes(3)));
+        IdempotentOperationLockTemp older = tempLock("key-1", now.minus(Duration.ofMinutes(2)));
+        IdempotentOperationLockTemp old = tempLock("key-2", now.minus(Duration.ofMinutes(1)));
+        IdempotentOperationLockTemp live = tempLock("key-3", now.plus(Duration.ofMinutes(1)));
+        idempotencyStore.insertTempLocks(List.of(live, old, oldest, older));
+        idempotencyStore.deleteTempLock(older.getId());
+
+        // Act
+        List<IdempotentOperationLockTemp> expired = idempotencyStore.findExpiredTempLocks(now, 10);
+
+        // Assert
+        assertEquals(List.of(oldest, old), expired);
+        assertEquals(List.of(oldest), idempotencyStore.findExpiredTempLocks(now, 1));
+        assertEquals(oldest, idempotencyStore.findOldestExpiredTempLock(now).orElseThrow());
+        assertEquals(2, idempotencyStore.countTempLocksExpiringBefore(now));
+        assertEquals(3, idempotencyStore.countTempLocksExpiringBefore(now.plus(Duration.ofMinutes(2))));
+    }
+
+    @Test
+    void renewTempLocks_ShouldMoveOnlyLocksStillAtTheExpectedExpiry() {
+        // Arrange
+        Instant now = Instant.now();
+        IdempotentOperationLockTemp held = tempLock("key-0", now.plus(Duration.ofSeconds(1)));
+        IdempotentOperationLockTemp renewedElsewhere = tempLock("key-1", now.plus(Duration.ofSeconds(1)));
+        idempotencyStore.insertTempLocks(List.of(held, renewedElsewhere));
+        Instant renewedExpiredAt = now.plus(Duration.ofMinutes(1));
+
+        // Act
+        Set<Integer> notRenewed = idempotencyStore.renewTempLocks(List.of(
+                new TempLockRenewal(held.getId(), held.getExpiredAt(), renewedExpiredAt),
+                new TempLockRenewal(renewedElsewhere.getId(), now, renewedExpiredAt),
+                new TempLockRenewal(UUID.randomUUID().toString(), now, renewedExpiredAt)));
+
+        // Assert
+        assertEquals(Set.of(1, 2), notRenewed);
+        IdempotentOperationLockTemp renewed = idempotencyStore.findTempLock(held.getId()).orElseThrow();
+        assertEquals(renewedExpiredAt, renewed.getExpiredAt());
+        assertEquals(renewed, idempotencyStore.findTempLocks("test-service", "test-operation", List.of("key-0")).get(0));
+        assertEquals(List.of(renewedElsewhere), idempotencyStore.findExpiredTempLocks(now.plus(Duration.ofSeconds(2)), 10));
+        assertEquals(1, idempotencyStore.countTempLocksExpiringBefore(now.plus(Duration.ofSeconds(2))));
+        idempotencyStore.deleteTempLock(held.getId());
+        assertEquals(1, idempotencyStore.countTempLocksExpiringBefore(now.plus(Duration.ofMinutes(2))));
+        assertDoesNotThrow(() -> idempotencyStore.insertTempLock(tempLock("key-0", renewedExpiredAt)));
+    }
+
+    @Test
+    void insertResult_WhenIdOrKeyIsStored_ShouldThrowDuplicateKeyException() {
+        // Arrange
+        idempotencyStore.insertResult(storedResult("hash-1", "key-1", null));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> idempotencyStore.insertResult(storedResult("hash-1", "key-2", null)));
+        assertThrows(DuplicateKeyException.class, () -> idempotencyStore.insertResult(storedResult("hash-2", "key-1", null)));
+        assertTrue(idempotencyStore.findResult("hash-2").isEmpty());
+        assertEquals(1, idempotencyStore.findResults(List.of("hash-1", "hash-2", "hash-1")).size());
+    }
+
+    @Test
+    void purgeExpired_ShouldRemoveOnlyDocumentsPastTheirExpireAt() {
+        // Arrange
+        Instant now = Instant.now();
+        idempotencyStore.insertResult(storedResult("expired", "key-1", now.minusSeconds(1)));
+        idempotencyStore.insertResult(storedResult("retained", "key-2", now.plus(Duration.ofDays(1))));
+        idempotencyStore.insertResult(storedResult("kept", "key-3", null));
+        IdempotentOperation idempotentOperation = new IdempotentOperation();
+        idempotentOperation.setId(UUID.randomUUID().toString());
+        idempotentOperation.setExpireAt(now.minusSeconds(1));
+        idempotencyStore.insertOperation(idempotentOperation);
+
+        // Act
+        int purged = idempotencyStore.purgeExpired(now);
+
+        // Assert
+        assertEquals(2, purged);
+        assertTrue(idempotencyStore.findResult("expired").isEmpty());
+        assertTrue(idempotencyStore.findResult("retained").isPresent());
+        assertTrue(idempotencyStore.findResult("kept").isPresent());
+        // The unique key of the purged result is free again
+        assertDoesNotThrow(() -> idempotencyStore.insertResult(storedResult("expired-again", "key-1", null)));
+    }
+
+    @Test
+    void insertOperation_WhenAuditRecordsExceedTheLimit_ShouldEvictTheOldest() {
+        // Arrange
+        InMemoryIdempotencyStore boundedStore = new InMemoryIdempotencyStore(3);
+        List<IdempotentOperation> idempotentOperations = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            IdempotentOperation idempotentOperation = new IdempotentOperation();
+            idempotentOperation.setId(UUID.randomUUID().toString());
+            idempotentOperations.add(idempotentOperation);
+        }
+
+        // Act
+        idempotentOperations.forEach(boundedStore::insertOperation);
+
+        // Assert
+        assertEquals(3, boundedStore.getAuditRecordCount());
+        // The evicted _id can be written again, the retained one is still a duplicate
+        assertDoesNotThrow(() -> boundedStore.insertOperation(idempotentOperations.get(0)));
+        assertThrows(DuplicateKeyException.class, () -> boundedStore.insertOperation(idempotentOperations.get(4)));
+    }
+
+    @Test
+    void insertOperation_WhenNoAuditRecordsAreKept_ShouldNotStoreThem() {
+        // Arrange
+        InMemoryIdempotencyStore auditFreeStore = new InMemoryIdempotencyStore(0);
+        IdempotentOperation idempotentOperation = new IdempotentOperation();
+        idempotentOperation.setId(UUID.randomUUID().toString());
+
+        // Act
+        auditFreeStore.insertOperation(idempotentOperation);
+
+        // Assert
+        assertEquals(0, auditFreeStore.getAuditRecordCount());
+    }
+
+    @Test
+    void insertConfig_WhenOperationIsRegistered_ShouldThrowDuplicateKeyException() {
+        // Arrange
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("test-service");
+        operationConfig.setOperation("test-operation");
+        idempotencyStore.insertConfig(operationConfig);
+        IdempotentOperationConfig duplicate = new IdempotentOperationConfig();
+        duplicate.setId(UUID.randomUUID().toString());
+        duplicate.setService("test-service");
+        duplicate.setOperation("test-operation");
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> idempotencyStore.insertConfig(duplicate));
+        assertEquals(operationConfig, idempotencyStore.findConfig("test-service", "test-operation").orElseThrow());
+        assertEquals(List.of(operationConfig), idempotencyStore.findConfigs());
+    }
+
+    @Test
+    void updateLearnedLockDuration_ShouldReplaceTheConfigAndKeepItsOtherFields() {
+        // Arrange
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("test-service");
+        operationConfig.setOperation("test-operation");
+        operationConfig.setLockDuration(Duration.ofMinutes(1));
+        operationConfig.setRetentionDuration(Duration.ofDays(7));
+        idempotencyStore.insertConfig(operationConfig);
+        Instant learnedAt = Instant.now();
+
+        // Act
+        boolean updated = idempotencyStore.updateLearnedLockDuration("test-service", "test-operation", Duration.ofSeconds(20), learnedAt);
+
+        // Assert
+        assertTrue(updated);
+        IdempotentOperationConfig learnedOperationConfig = idempotencyStore.findConfig("test-service", "test-operation").orElseThrow();
+        assertEquals(Duration.ofSeconds(20), learnedOperationConfig.getLearnedLockDuration());
+        assertEquals(learnedAt, learnedOperationConfig.getLearnedAt());
+        assertEquals(Duration.ofMinutes(1), learnedOperationConfig.getLockDuration());
+        assertEquals(Duration.ofDays(7), learnedOperationConfig.getRetentionDuration());
+        assertNull(operationConfig.getLearnedLockDuration());
+        assertFalse(idempotencyStore.updateLearnedLockDuration("test-service", "other-operation", Duration.ofSeconds(20), learnedAt));
+    }
+
+}
@@ -0,0 +1,290 @@
+package microservices.helper.idempotency.store.log;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import microservices.helper.idempotency.config.IdempotencyServiceConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.entity.IdempotentOperationLockTemp;
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.store.TempLockRenewal;
+
+class LogIdempotencyStoreTest {
+
+    @TempDir
+    private Path directory;
+
+    private LogIdempotencyStore idempotencyStore;
+
+    @AfterEach
+    void tearDown() {
+        if (idempotencyStore != null) {
+            idempotencyStore.close();
+        }
+    }
+
+    private LogIdempotencyStore open(long segmentBytes) {
+        return new LogIdempotencyStore(new IdempotencyServiceConfig().objectMapper(), new SimpleMeterRegistry(),
+                directory.toString(), segmentBytes, 1024, 0.5);
+    }
+
+    private void reopen(long segmentBytes) {
+        idempotencyStore.close();
+        idempotencyStore = open(segmentBytes);
+    }
+
+    private IdempotentOperationLockTemp tempLock(String idempotencyKey, Instant expiredAt) {
+        IdempotentOperationLockTemp tempLock = new IdempotentOperationLockTemp();
+        tempLock.setId(UUID.randomUUID().toString());
+        tempLock.setIdempotencyId(UUID.randomUUID().toString());
+        tempLock.setService("test-service");
+        tempLock.setOperation("test-operation");
+        tempLock.setIdempotencyKey(idempotencyKey);
+        tempLock.setLockedAt(Instant.now());
+        tempLock.setExpiredAt(expiredAt);
+        return tempLock;
+    }
+
+    private StoredIdempotentOperationResult storedResult(String id, String idempotencyKey, Instant expireAt) {
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(id);
+        storedResult.setService("test-service");
+        storedResult.setOperation("test-operation");
+        storedResult.setIdempotencyKey(idempotencyKey);
+        storedResult.setIdempotentOperationResult("result-" + idempotencyKey);
+        storedResult.setExpireAt(expireAt);
+        return storedResult;
+    }
+
+    @Test
+    void insertTempLock_WhenManyThreadsLockTheSameKey_ShouldLetExactlyOneWin() throws InterruptedException {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        Instant expiredAt = Instant.now().plus(Duration.ofMinutes(1));
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                    idempotencyStore.insertTempLock(tempLock("key", expiredAt));
+                    acquired.incrementAndGet();
+                } catch (DuplicateKeyException e) {
+                    duplicates.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // Act
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Assert
+        assertEquals(1, acquired.get());
+        assertEquals(threads - 1, duplicates.get());
+    }
+
+    @Test
+    void insertResult_WhenIdIsStored_ShouldThrowDuplicateKey() {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        idempotencyStore.insertResult(storedResult("id-1", "key", null));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> idempotencyStore.insertResult(storedResult("id-1", "key", null)));
+        assertEquals(Set.of(0), idempotencyStore.insertResults(List.of(storedResult("id-1", "key", null), storedResult("id-2", "other", null))));
+        assertEquals("result-other", idempotencyStore.findResult("id-2").orElseThrow().getIdempotentOperationResult());
+    }
+
+    @Test
+    void findResult_WhenResultIsPastItsExpireAt_ShouldReturnEmpty() {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        idempotencyStore.insertResult(storedResult("expired", "key", Instant.now().minusSeconds(1)));
+
+        // Act & Assert
+        assertTrue(idempotencyStore.findResult("expired").isEmpty());
+    }
+
+    @Test
+    void open_AfterOrderlyClose_ShouldRecoverInFlightLocksResultsAndConfigs() {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        IdempotentOperationLockTemp inFlight = tempLock("in-flight", Instant.now().plus(Duration.ofMinutes(1)));
+        IdempotentOperationLockTemp released = tempLock("released", Instant.now().plus(Duration.ofMinutes(1)));
+        idempotencyStore.insertTempLock(inFlight);
+        idempotencyStore.insertTempLock(released);
+        idempotencyStore.deleteTempLock(released.getId());
+        idempotencyStore.insertResult(storedResult("id-1", "released", null));
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("test-service");
+        operationConfig.setOperation("test-operation");
+        operationConfig.setLockDuration(Duration.ofSeconds(30));
+        idempotencyStore.insertConfig(operationConfig);
+
+        // Act
+        reopen(1 << 20);
+
+        // Assert
+        assertEquals(List.of(inFlight.getId()), idempotencyStore.findRecoveredTempLocks().stream().map(IdempotentOperationLockTemp::getId).toList());
+        assertTrue(idempotencyStore.existsTempLock(inFlight.getId()));
+        assertFalse(idempotencyStore.existsTempLock(released.getId()));
+        assertTrue(idempotencyStore.findResult("id-1").isPresent());
+        assertEquals(Duration.ofSeconds(30), idempotencyStore.findConfig("test-service", "test-operation").orElseThrow().getLockDuration());
+        assertThrows(DuplicateKeyException.class, () -> idempotencyStore.insertTempLock(tempLock("in-flight", Instant.now())));
+    }
+
+    @Test
+    void renewTempLocks_AfterReopen_ShouldRecoverTheRenewedExpiry() {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        IdempotentOperationLockTemp tempLock = tempLock("in-flight", Instant.now().plus(Duration.ofSeconds(1)));
+        idempotencyStore.insertTempLock(tempLock);
+        Instant renewedExpiredAt = Instant.now().plus(Duration.ofMinutes(1));
+
+        // Act
+        Set<Integer> notRenewed = idempotencyStore.renewTempLocks(List.of(
+                new TempLockRenewal(tempLock.getId(), tempLock.getExpiredAt(), renewedExpiredAt),
+                new TempLockRenewal(tempLock.getId(), tempLock.getExpiredAt(), renewedExpiredAt.plusSeconds(1))));
+        reopen(1 << 20);
+
+        // Assert
+        assertEquals(Set.of(1), notRenewed);
+        assertEquals(List.of(renewedExpiredAt), idempotencyStore.findRecoveredTempLocks().stream().map(IdempotentOperationLockTemp::getExpiredAt).toList());
+        assertEquals(renewedExpiredAt, idempotencyStore.findTempLock(tempLock.getId()).orElseThrow().getExpiredAt());
+        idempotencyStore.deleteTempLock(tempLock.getId());
+        reopen(1 << 20);
+        assertTrue(idempotencyStore.findRecoveredTempLocks().isEmpty());
+    }
+
+    @Test
+    void open_WhenIndexWasNotClosed_ShouldRebuildItFromTheLog() throws IOException {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        for (int i = 0; i < 100; i++) {
+            idempotencyStore.insertResult(storedResult("id-" + i, "key-" + i, null));
+        }
+        idempotencyStore.close();
+        Files.delete(directory.resolve("index.bin"));
+
+        // Act
+        idempotencyStore = open(1 << 20);
+
+        // Assert
+        for (int i = 0; i < 100; i++) {
+            assertEquals("result-key-" + i, idempotencyStore.findResult("id-" + i).orElseThrow().getIdempotentOperationResult());
+        }
+        assertThrows(DuplicateKeyException.class, () -> idempotencyStore.insertResult(storedResult("id-7", "key-7", null)));
+    }
+
+    @Test
+    void open_WhenLastRecordIsTorn_ShouldTruncateItAndKeepAppending() throws IOException {
+        // Arrange
+        idempotencyStore = open(1 << 20);
+        idempotencyStore.insertResult(storedResult("id-1", "key-1", null));
+        idempotencyStore.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        long validBytes = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 1, 0, 42, 42}, StandardOpenOption.APPEND);
+
+        // Act
+        idempotencyStore = open(1 << 20);
+        idempotencyStore.insertResult(storedResult("id-2", "key-2", null));
+        reopen(1 << 20);
+
+        // Assert
+        assertTrue(Files.size(segment) > validBytes);
+        assertTrue(idempotencyStore.findResult("id-1").isPresent());
+        assertTrue(idempotencyStore.findResult("id-2").isPresent());
+    }
+
+    @Test
+    void compact_WhenSegmentsHoldReleasedLocks_ShouldDropThemAndKeepLiveRecords() {
+        // Arrange
+        idempotencyStore = open(4096);
+        IdempotentOperationLockTemp inFlight = tempLock("in-flight", Instant.now().plus(Duration.ofMinutes(1)));
+        idempotencyStore.insertTempLock(inFlight);
+        idempotencyStore.insertResult(storedResult("kept", "kept", null));
+        for (int i = 0; i < 200; i++) {
+            IdempotentOperationLockTemp tempLock = tempLock("key-" + i, Instant.now().plus(Duration.ofMinutes(1)));
+            idempotencyStore.insertTempLock(tempLock);
+            idempotencyStore.deleteTempLock(tempLock.getId());
+        }
+        long sizeBefore = directorySize();
+
+        // Act
+        idempotencyStore.compact();
+        idempotencyStore.compact();
+
+        // Assert
+        assertTrue(directorySize() < sizeBefore);
+        assertTrue(idempotencyStore.findResult("kept").isPresent());
+        reopen(4096);
+        assertTrue(idempotencyStore.findResult("kept").isPresent());
+        assertEquals(List.of(inFlight.getId()), idempotencyStore.findRecoveredTempLocks().stream().map(IdempotentOperationLockTemp::getId).toList());
+    }
+
+    @Test
+    void updateLearnedLockDuration_AfterCompactionAndReopen_ShouldRecoverTheLatestValue() {
+        // Arrange
+        idempotencyStore = open(4096);
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("test-service");
+        operationConfig.setOperation("test-operation");
+        operationConfig.setLockDuration(Duration.ofSeconds(30));
+        idempotencyStore.insertConfig(operationConfig);
+        for (int i = 1; i <= 100; i++) {
+            idempotencyStore.updateLearnedLockDuration("test-service", "test-operation", Duration.ofSeconds(i), Instant.now());
+        }
+
+        // Act
+        idempotencyStore.compact();
+        idempotencyStore.compact();
+        reopen(4096);
+
+        // Assert
+        IdempotentOperationConfig recovered = idempotencyStore.findConfig("test-service", "test-operation").orElseThrow();
+        assertEquals(Duration.ofSeconds(100), recovered.getLearnedLockDuration());
+        assertEquals(Duration.ofSeconds(30), recovered.getLockDuration());
+        assertEquals(1, idempotencyStore.findConfigs().size());
+    }
+
+    private long directorySize() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).mapToLong(path -> path.toFile().length()).sum();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
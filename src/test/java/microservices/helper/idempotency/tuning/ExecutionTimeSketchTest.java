@@ -0,0 +1,81 @@
+package microservices.helper.idempotency.tuning;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class ExecutionTimeSketchTest {
+
+    private final ExecutionTimeSketch sketch = new ExecutionTimeSketch(0.01);
+
+    @Test
+    void quantile_WhenNothingIsRecorded_ShouldReturnNull() {
+        assertNull(sketch.quantile(0.99));
+        assertEquals(0, sketch.getCount());
+    }
+
+    @Test
+    void quantile_ShouldStayWithinTheRelativeAccuracy() {
+        // Arrange
+        for (int millis = 1; millis <= 10000; millis++) {
+            sketch.record(Duration.ofMillis(millis));
+        }
+
+        // Act
+        Duration median = sketch.quantile(0.5);
+        Duration p99 = sketch.quantile(0.99);
+
+        // Assert
+        assertEquals(10000, sketch.getCount());
+        assertEquals(5000, median.toMillis(), 50);
+        assertEquals(9900, p99.toMillis(), 100);
+    }
+
+    @Test
+    void record_WhenTimeIsOutOfRange_ShouldClampIt() {
+        // Arrange
+        sketch.record(Duration.ZERO);
+        sketch.record(Duration.ofDays(3));
+
+        // Act & Assert
+        assertEquals(1, sketch.quantile(0.5).toMillis());
+        assertEquals(Duration.ofDays(1).toMillis(), sketch.quantile(1).toMillis(), Duration.ofDays(1).toMillis() * 0.01);
+    }
+
+    @Test
+    void decay_ShouldHalveTheCountsAndKeepTheQuantiles() {
+        // Arrange
+        for (int i = 0; i < 100; i++) {
+            sketch.record(Duration.ofSeconds(2));
+        }
+        sketch.record(Duration.ofSeconds(30));
+
+        // Act
+        sketch.decay();
+
+        // Assert
+        assertEquals(51, sketch.getCount());
+        assertEquals(2000, sketch.quantile(0.98).toMillis(), 20);
+    }
+
+    @Test
+    void decay_WhenTailHoldsASingleExecution_ShouldKeepIt() {
+        // Arrange
+        for (int i = 0; i < 1000; i++) {
+            sketch.record(Duration.ofSeconds(2));
+        }
+        sketch.record(Duration.ofSeconds(30));
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            sketch.decay();
+        }
+
+        // Assert
+        assertEquals(33, sketch.getCount());
+        assertEquals(30000, sketch.quantile(1).toMillis(), 300);
+    }
+
+}
@@ -0,0 +1,152 @@
+package microservices.helper.idempotency.tuning;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import microservices.helper.idempotency.cache.IdempotentOperationConfigCache;
+import microservices.helper.idempotency.entity.IdempotentOperationConfig;
+import microservices.helper.idempotency.model.LockDurationLearningStats;
+import microservices.helper.idempotency.store.InMemoryIdempotencyStore;
+
+@ExtendWith(MockitoExtension.class)
+class LockDurationLearnerTest {
+
+    @Mock
+    private IdempotentOperationConfigCache idempotentOperationConfigCache;
+
+    private InMemoryIdempotencyStore idempotencyStore;
+    private LockDurationLearner lockDurationLearner;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyStore = new InMemoryIdempotencyStore(100000);
+        IdempotentOperationConfig operationConfig = new IdempotentOperationConfig();
+        operationConfig.setId(UUID.randomUUID().toString());
+        operationConfig.setService("test-service");
+        operationConfig.setOperation("test-operation");
+        operationConfig.setLockDuration(Duration.ofMinutes(1));
+        idempotencyStore.insertConfig(operationConfig);
+        lockDurationLearner = learner(true);
+    }
+
+    private LockDurationLearner learner(boolean enabled) {
+        return new LockDurationLearner(idempotencyStore, idempotentOperationConfigCache, enabled, true, 0.99, 2.0,
+                Duration.ofSeconds(5), Duration.ofMinutes(30), 100, 10);
+    }
+
+    private void recordExecutions(int count, Duration executionTime) {
+        Instant lockedAt = Instant.now();
+        for (int i = 0; i < count; i++) {
+            lockDurationLearner.recordExecution("test-service", "test-operation", lockedAt, lockedAt.plus(executionTime));
+        }
+    }
+
+    private Duration learnedLockDuration() {
+        return idempotencyStore.findConfig("test-service", "test-operation").orElseThrow().getLearnedLockDuration();
+    }
+
+    @Test
+    void update_WhenEnoughExecutionsAreRecorded_ShouldStoreQuantileTimesSafetyFactor() {
+        // Arrange
+        recordExecutions(200, Duration.ofSeconds(10));
+
+        // Act
+        lockDurationLearner.update();
+
+        // Assert
+        assertEquals(Duration.ofSeconds(20), learnedLockDuration());
+        assertEquals(Duration.ofMinutes(1), idempotencyStore.findConfig("test-service", "test-operation").orElseThrow().getLockDuration());
+        verify(idempotentOperationConfigCache).refresh();
+    }
+
+    @Test
+    void update_WhenTooFewExecutionsAreRecorded_ShouldKeepAccumulating() {
+        // Arrange
+        recordExecutions(60, Duration.ofSeconds(10));
+
+        // Act
+        lockDurationLearner.update();
+        recordExecutions(60, Duration.ofSeconds(10));
+        lockDurationLearner.update();
+
+        // Assert
+        assertEquals(Duration.ofSeconds(20), learnedLockDuration());
+        verify(idempotentOperationConfigCache, times(1)).refresh();
+    }
+
+    @Test
+    void update_ShouldClampTheLearnedDurationToTheBounds() {
+        // Arrange
+        recordExecutions(200, Duration.ofMillis(100));
+
+        // Act
+        lockDurationLearner.update();
+        Duration shortest = learnedLockDuration();
+        recordExecutions(1000, Duration.ofHours(1));
+        lockDurationLearner.update();
+
+        // Assert
+        assertEquals(Duration.ofSeconds(5), shortest);
+        assertEquals(Duration.ofMinutes(30), learnedLockDuration());
+    }
+
+    @Test
+    void update_WhenLearnedDurationIsUnchanged_ShouldNotWriteItAgain() {
+        // Arrange
+        recordExecutions(200, Duration.ofSeconds(10));
+        lockDurationLearner.update();
+
+        // Act
+        recordExecutions(200, Duration.ofSeconds(10));
+        lockDurationLearner.update();
+
+        // Assert
+        verify(idempotentOperationConfigCache, times(1)).refresh();
+    }
+
+    @Test
+    void recordExecution_WhenDisabled_ShouldNotLearn() {
+        // Arrange
+        lockDurationLearner = learner(false);
+        recordExecutions(200, Duration.ofSeconds(10));
+
+        // Act
+        lockDurationLearner.update();
+        LockDurationLearningStats stats = lockDurationLearner.getStats();
+
+        // Assert
+        assertNull(learnedLockDuration());
+        assertFalse(stats.isEnabled());
+        assertTrue(stats.getOperations().isEmpty());
+        verifyNoInteractions(idempotentOperationConfigCache);
+    }
+
+    @Test
+    void getStats_ShouldReportObservedAndLearnedDurations() {
+        // Arrange
+        recordExecutions(200, Duration.ofSeconds(10));
+        lockDurationLearner.update();
+        when(idempotentOperationConfigCache.getLockDuration("test-service", "test-operation")).thenReturn(Duration.ofSeconds(20));
+
+        // Act
+        LockDurationLearningStats stats = lockDurationLearner.getStats();
+
+        // Assert
+        assertEquals(1, stats.getOperations().size());
+        assertEquals(100, stats.getOperations().get(0).getSamples());
+        assertEquals(10000, stats.getOperations().get(0).getObservedQuantile().toMillis(), 100);
+        assertEquals(Duration.ofSeconds(20), stats.getOperations().get(0).getLearnedLockDuration());
+        assertEquals(Duration.ofSeconds(20), stats.getOperations().get(0).getLockDuration());
+    }
+
+}
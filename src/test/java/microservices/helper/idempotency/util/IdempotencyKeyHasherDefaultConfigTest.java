@@ -0,0 +1,51 @@
+package microservices.helper.idempotency.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import microservices.helper.idempotency.entity.StoredIdempotentOperationResult;
+import microservices.helper.idempotency.enums.ExecutionResult;
+import microservices.helper.idempotency.model.IdempotentOperationResult;
+import microservices.helper.idempotency.service.IdempotencyService;
+import microservices.helper.idempotency.store.IdempotencyStore;
+
+/**
+ * The shipped key hash settings, so an upgrade keeps resolving the results
+ * stored under the original MD5 ids.
+ */
+@SpringBootTest(properties = {"idempotent.storage.engine=in-memory", "management.health.mongo.enabled=false"})
+class IdempotencyKeyHasherDefaultConfigTest {
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Test
+    void getStoredExecutionResultOrLockOperation_WhenResultWasSavedUnderMd5_ShouldReplayItWithDefaultConfig() {
+        // Arrange
+        StoredIdempotentOperationResult storedResult = new StoredIdempotentOperationResult();
+        storedResult.setId(IdempotencyKeyHasher.hashMd5("test-service", "test-operation", "md5-key"));
+        storedResult.setService("test-service");
+        storedResult.setOperation("test-operation");
+        storedResult.setIdempotencyKey("md5-key");
+        storedResult.setIdempotentOperationResult("test-result");
+        idempotencyStore.insertResult(storedResult);
+        IdempotentOperationResult input = new IdempotentOperationResult();
+        input.setService("test-service");
+        input.setOperation("test-operation");
+        input.setIdempotencyKey("md5-key");
+
+        // Act
+        IdempotentOperationResult output = idempotencyService.getStoredExecutionResultOrLockOperation(input);
+
+        // Assert
+        assertEquals(ExecutionResult.SUCCESS.getValue(), output.getExecutionResult());
+        assertEquals("test-result", output.getIdempotentOperationResult());
+    }
+
+}
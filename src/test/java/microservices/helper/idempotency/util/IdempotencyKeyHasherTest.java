@@ -0,0 +1,81 @@
+package microservices.helper.idempotency.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.DigestUtils;
+
+import microservices.helper.idempotency.enums.KeyHashVersion;
+
+class IdempotencyKeyHasherTest {
+
+    @Test
+    void hash_WhenVersionIsV2_ShouldReturnPrefixedUrlSafeId() {
+        // Arrange
+        IdempotencyKeyHasher hasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+        // Act
+        String hashedKey = hasher.hash("test-service", "test-operation", "test-key-123");
+
+        // Assert
+        assertEquals("v2:pcpWe72x8cTJjinitvBYBQ", hashedKey);
+        assertTrue(hashedKey.matches("v2:[A-Za-z0-9_-]{22}"));
+    }
+
+    @Test
+    void hash_WhenSeparatorMovesBetweenParts_ShouldNotCollide() {
+        // Arrange
+        IdempotencyKeyHasher hasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+        // Act & Assert
+        assertNotEquals(hasher.hash("a-b", "c", "k"), hasher.hash("a", "b-c", "k"));
+        assertNotEquals(hasher.hash("ab", "", "k"), hasher.hash("a", "b", "k"));
+        // The legacy format joins the parts with "-", so both keys share one id
+        assertEquals(IdempotencyKeyHasher.hashMd5("a-b", "c", "k"), IdempotencyKeyHasher.hashMd5("a", "b-c", "k"));
+    }
+
+    @Test
+    void hash_WhenKeyIsNotAscii_ShouldHashItsUtf8Bytes() {
+        // Arrange
+        IdempotencyKeyHasher hasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+        // Act & Assert
+        assertEquals("v2:TmXn2pHqO5224zSSqG94RQ", hasher.hash("платежи", "списание", "ключ-🔑-€"));
+        // An unpaired surrogate is hashed as '?', like String.getBytes(UTF_8) encodes it
+        assertEquals(hasher.hash("x", "y", "a?b"), hasher.hash("x", "y", "a\uD800b"));
+    }
+
+    @Test
+    void hash_WhenVersionIsMd5_ShouldKeepLegacyFormat() {
+        // Arrange
+        IdempotencyKeyHasher hasher = new IdempotencyKeyHasher(KeyHashVersion.MD5, true);
+        String expected = Base64.getEncoder().encodeToString(
+                DigestUtils.md5Digest("test-service-test-operation-test-key-123".getBytes(StandardCharsets.UTF_8)));
+
+        // Act & Assert
+        assertEquals(expected, hasher.hash("test-service", "test-operation", "test-key-123"));
+    }
+
+    @Test
+    void fallbackHash_WhenFallbackLookupIsEnabled_ShouldReturnIdOfOtherVersion() {
+        // Arrange
+        IdempotencyKeyHasher v2 = new IdempotencyKeyHasher(KeyHashVersion.V2, true);
+        IdempotencyKeyHasher md5 = new IdempotencyKeyHasher(KeyHashVersion.MD5, true);
+
+        // Act & Assert
+        assertEquals(md5.hash("test-service", "test-operation", "test-key-123"), v2.fallbackHash("test-service", "test-operation", "test-key-123"));
+        assertEquals(v2.hash("test-service", "test-operation", "test-key-123"), md5.fallbackHash("test-service", "test-operation", "test-key-123"));
+    }
+
+    @Test
+    void fallbackHash_WhenFallbackLookupIsDisabled_ShouldReturnNull() {
+        // Arrange
+        IdempotencyKeyHasher hasher = new IdempotencyKeyHasher(KeyHashVersion.V2, false);
+
+        // Act & Assert
+        assertNull(hasher.fallbackHash("test-service", "test-operation", "test-key-123"));
+    }
+}